@@ -2,6 +2,7 @@ package processing.app;
 
 import java.io.*;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import processing.app.contrib.*;
 import processing.core.*;
@@ -521,9 +522,10 @@ public class Library extends LocalContribution {
     List<File> librariesFolders = new ArrayList<>();
     librariesFolders.addAll(discover(folder));
 
-    for (File baseFolder : librariesFolders) {
-      libraries.add(new Library(baseFolder));
-    }
+    // Reading the jars of each library is independent of the others
+    libraries.addAll(librariesFolders.parallelStream()
+                     .map(Library::new)
+                     .collect(Collectors.toList()));
 
     /*
     // Support libraries inside of one level of subfolders? I believe this was
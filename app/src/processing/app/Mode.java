@@ -387,6 +387,8 @@ public abstract class Mode {
     for (Library lib : contribLibraries) {
       lib.addPackageList(newTable);
     }
+    // keep the packages found in new or changed jars for next time
+    PackageCache.save();
 
     // Make this Map thread-safe
     importToLibraryTable = Collections.unmodifiableMap(newTable);
@@ -0,0 +1,132 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License version 2
+  as published by the Free Software Foundation.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software Foundation,
+  Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package processing.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import processing.core.PApplet;
+import processing.data.StringList;
+
+
+/**
+ * Packages found in each jar, so that a jar is only opened again when it
+ * has changed. Kept in the settings folder between sessions, keyed by the
+ * path, size and modification time of each jar.
+ */
+class PackageCache {
+  static final String FILENAME = "packages.txt";
+
+  // "path\tlength\tmodified" -> packages (with slashes, not dots)
+  static private Map<String, String[]> packages;
+  static private boolean changed;
+
+
+  static private synchronized Map<String, String[]> getPackages() {
+    if (packages == null) {
+      packages = new ConcurrentHashMap<>();
+      File file = getFile();
+      if (file != null && file.exists()) {
+        String[] lines = PApplet.loadStrings(file);
+        if (lines != null) {
+          for (String line : lines) {
+            String[] pieces = PApplet.split(line, '\t');
+            if (pieces.length == 4) {
+              String stamp = pieces[0] + "\t" + pieces[1] + "\t" + pieces[2];
+              String[] list = (pieces[3].length() == 0) ?
+                new String[0] : PApplet.split(pieces[3], ' ');
+              packages.put(stamp, list);
+            }
+          }
+        }
+      }
+    }
+    return packages;
+  }
+
+
+  /**
+   * Get the packages in a jar from the cache.
+   * @return null if it hasn't been seen, or has changed since
+   */
+  static String[] get(File jar) {
+    return getPackages().get(getStamp(jar));
+  }
+
+
+  static void put(File jar, StringList list) {
+    getPackages().put(getStamp(jar), list.array());
+    synchronized (PackageCache.class) {
+      changed = true;
+    }
+  }
+
+
+  /**
+   * Write the cache to disk if jars were added since it was loaded,
+   * leaving out the ones that don't exist anymore (or have changed).
+   */
+  static synchronized void save() {
+    if (!changed) {
+      return;
+    }
+    File file = getFile();
+    if (file == null) {
+      return;
+    }
+    StringList lines = new StringList();
+    for (Map.Entry<String, String[]> entry : packages.entrySet()) {
+      String stamp = entry.getKey();
+      String path = stamp.substring(0, stamp.indexOf('\t'));
+      if (stamp.equals(getStamp(new File(path)))) {
+        lines.append(stamp + "\t" + PApplet.join(entry.getValue(), ' '));
+      }
+    }
+    File temp = new File(file.getParentFile(), FILENAME + ".tmp");
+    PApplet.saveStrings(temp, lines.array());
+    try {
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      temp.delete();
+    }
+    changed = false;
+  }
+
+
+  static private String getStamp(File jar) {
+    return jar.getAbsolutePath() + "\t" + jar.length() + "\t" + jar.lastModified();
+  }
+
+
+  static private File getFile() {
+    try {
+      return new File(Base.getSettingsFolder(), FILENAME);
+    } catch (Exception e) {
+      // no settings folder, keep it in memory only
+      return null;
+    }
+  }
+}
@@ -25,6 +25,8 @@ package processing.app;
 import java.io.*;
 import java.nio.file.Files;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.zip.*;
 
 import processing.core.PApplet;
@@ -550,8 +552,20 @@ public class Util {
 
 
   static private void packageListFromZip(String filename, StringList list) {
+    // the packages of jars that were already seen are cached
+    File jar = new File(filename);
+    String[] cached = PackageCache.get(jar);
+    if (cached != null) {
+      for (String packageName : cached) {
+        list.appendUnique(packageName);
+      }
+      return;
+    }
+
     try {
       ZipFile file = new ZipFile(filename);
+      StringList found = new StringList();
+      Set<String> seen = new HashSet<>();
       Enumeration<?> entries = file.entries();
       while (entries.hasMoreElements()) {
         ZipEntry entry = (ZipEntry) entries.nextElement();
@@ -565,12 +579,18 @@ public class Util {
             int slash = name.lastIndexOf('/');
             if (slash != -1) {
               String packageName = name.substring(0, slash);
-              list.appendUnique(packageName);
+              if (seen.add(packageName)) {
+                found.append(packageName);
+              }
             }
           }
         }
       }
       file.close();
+      PackageCache.put(jar, found);
+      for (String packageName : found) {
+        list.appendUnique(packageName);
+      }
     } catch (IOException e) {
       System.err.println("Ignoring " + filename + " (" + e.getMessage() + ")");
       //e.printStackTrace();
@@ -0,0 +1,61 @@
+package test.processing.mode.java;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import processing.mode.java.pdex.ImportStatement;
+import processing.mode.java.pdex.SourceUtils;
+
+public class SourceUtilsTests {
+
+  static final String TAB1 =
+      "void setup() {\n" +
+      "  size(200, 200);\n" +
+      "}\n";
+
+  static final String TAB2 =
+      "import java.util.Map;\n" +
+      "\n" +
+      "void draw() {\n" +
+      "}\n";
+
+  static final String IMPORT = "import java.util.Map;";
+
+  /**
+   * Imports are found in each tab on its own, but the edits that move them
+   * to the top have to be for the whole program.
+   */
+  @Test
+  public void importInSecondTab() {
+    String program = TAB1 + TAB2;
+    int offset = TAB1.length();
+
+    List<ImportStatement> imports = new ArrayList<>();
+    List<?> edits = SourceUtils.parseProgramImports(TAB2, offset, imports);
+    assertEquals(1, imports.size());
+    assertEquals("java.util.Map", imports.get(0).getFullClassName());
+
+    // same edits as when the whole program is parsed at once
+    List<ImportStatement> wholeImports = new ArrayList<>();
+    List<?> wholeEdits = SourceUtils.parseProgramImports(program, wholeImports);
+    assertEquals(String.valueOf(wholeEdits), String.valueOf(edits));
+
+    int start = program.indexOf(IMPORT);
+    int length = IMPORT.length();
+    assertEquals("Edit{from=" + start + ":" + length + ", to=0:" + length + "}",
+                 edits.get(0).toString());
+  }
+
+  @Test
+  public void importInFirstTab() {
+    List<ImportStatement> imports = new ArrayList<>();
+    List<?> edits = SourceUtils.parseProgramImports(TAB2, 0, imports);
+    assertEquals(1, imports.size());
+    int length = IMPORT.length();
+    assertEquals("Edit{from=0:" + length + ", to=0:" + length + "}",
+                 edits.get(0).toString());
+  }
+}
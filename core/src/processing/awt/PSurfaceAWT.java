@@ -51,6 +51,7 @@ import javax.swing.JFrame;
 
 import processing.core.PApplet;
 import processing.core.PConstants;
+import processing.core.PFrameTimings;
 import processing.core.PGraphics;
 import processing.core.PImage;
 import processing.core.PSurfaceNone;
@@ -1545,7 +1546,10 @@ public class PSurfaceAWT extends PSurfaceNone {
       @Override
       public void callDraw() {
         sketch.handleDraw();
+        long swapStart = System.nanoTime();
         render();
+        sketch.frameTimings().record(PFrameTimings.SWAP, swapStart,
+                                     System.nanoTime());
       }
     };
   }
@@ -67,16 +67,27 @@ import javax.xml.parsers.ParserConfigurationException;
 import org.xml.sax.SAXException;
 
 import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.text.*;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.regex.*;
 import java.util.zip.*;
 
@@ -1416,61 +1427,231 @@ public class PApplet implements PConstants {
   private final Object registerLock = new Object[0];
 
 
+  /**
+   * Typed versions of the methods that can be registered with
+   * registerMethod(). A library class that implements one of these is
+   * called directly, instead of through reflection, for example:
+   * <pre>
+   * public class MyLibrary implements PApplet.PreListener {
+   *   public MyLibrary(PApplet parent) {
+   *     parent.registerMethod("pre", this);
+   *   }
+   *   public void pre() { ... }
+   * }
+   * </pre>
+   * They can also be implemented inline, with an anonymous class:
+   * <pre>
+   * registerMethod("post", new PApplet.PostListener() {
+   *   public void post() {
+   *     counter++;
+   *   }
+   * });
+   * </pre>
+   */
+  public interface PreListener {
+    void pre();
+  }
+
+  /** @see PreListener */
+  public interface DrawListener {
+    void draw();
+  }
+
+  /** @see PreListener */
+  public interface PostListener {
+    void post();
+  }
+
+  /** @see PreListener */
+  public interface PauseListener {
+    void pause();
+  }
+
+  /** @see PreListener */
+  public interface ResumeListener {
+    void resume();
+  }
+
+  /** @see PreListener */
+  public interface DisposeListener {
+    void dispose();
+  }
+
+  /** @see PreListener */
+  public interface MouseEventListener {
+    void mouseEvent(processing.event.MouseEvent event);
+  }
+
+  /** @see PreListener */
+  public interface KeyEventListener {
+    void keyEvent(processing.event.KeyEvent event);
+  }
+
+  /** @see PreListener */
+  public interface TouchEventListener {
+    void touchEvent(processing.event.TouchEvent event);
+  }
+
+
+  /**
+   * Calls a registered method, with its target already bound. The argument
+   * is the event for the methods that take one, and null otherwise.
+   */
+  interface RegisteredInvoker {
+    void invoke(Object arg) throws Throwable;
+  }
+
+
+  /**
+   * Returns a direct call when the target implements the listener interface
+   * for the method name, or null if it doesn't.
+   */
+  static private RegisteredInvoker listenerInvoker(String name, Object o) {
+    switch (name) {
+    case "pre":
+      if (o instanceof PreListener) {
+        PreListener l = (PreListener) o;
+        return arg -> l.pre();
+      }
+      break;
+    case "draw":
+      if (o instanceof DrawListener) {
+        DrawListener l = (DrawListener) o;
+        return arg -> l.draw();
+      }
+      break;
+    case "post":
+      if (o instanceof PostListener) {
+        PostListener l = (PostListener) o;
+        return arg -> l.post();
+      }
+      break;
+    case "pause":
+      if (o instanceof PauseListener) {
+        PauseListener l = (PauseListener) o;
+        return arg -> l.pause();
+      }
+      break;
+    case "resume":
+      if (o instanceof ResumeListener) {
+        ResumeListener l = (ResumeListener) o;
+        return arg -> l.resume();
+      }
+      break;
+    case "dispose":
+      if (o instanceof DisposeListener) {
+        DisposeListener l = (DisposeListener) o;
+        return arg -> l.dispose();
+      }
+      break;
+    case "mouseEvent":
+      if (o instanceof MouseEventListener) {
+        MouseEventListener l = (MouseEventListener) o;
+        return arg -> l.mouseEvent((processing.event.MouseEvent) arg);
+      }
+      break;
+    case "keyEvent":
+      if (o instanceof KeyEventListener) {
+        KeyEventListener l = (KeyEventListener) o;
+        return arg -> l.keyEvent((processing.event.KeyEvent) arg);
+      }
+      break;
+    case "touchEvent":
+      if (o instanceof TouchEventListener) {
+        TouchEventListener l = (TouchEventListener) o;
+        return arg -> l.touchEvent((processing.event.TouchEvent) arg);
+      }
+      break;
+    }
+    return null;
+  }
+
+
+  /**
+   * Turns a method found through reflection into a method handle bound to
+   * its target, so that the access checks and the argument array of
+   * Method.invoke() are out of the way when it gets called each frame.
+   * If the method can't be unreflected (e.g. its class is not public),
+   * falls back to calling it through reflection.
+   */
+  static private RegisteredInvoker methodInvoker(Object o, Method method) {
+    try {
+      MethodHandle handle = MethodHandles.lookup().unreflect(method).bindTo(o);
+      if (method.getParameterCount() == 0) {
+        final MethodHandle h = handle.asType(MethodType.methodType(void.class));
+        return arg -> h.invokeExact();
+      } else {
+        final MethodHandle h =
+          handle.asType(MethodType.methodType(void.class, Object.class));
+        return arg -> h.invokeExact(arg);
+      }
+    } catch (IllegalAccessException e) {
+      if (method.getParameterCount() == 0) {
+        return arg -> invokeMethod(method, o);
+      } else {
+        return arg -> invokeMethod(method, o, arg);
+      }
+    }
+  }
+
+
+  static private void invokeMethod(Method method, Object o,
+                                   Object... args) throws Throwable {
+    try {
+      method.invoke(o, args);
+    } catch (InvocationTargetException e) {
+      // unwrap, so the exception is handled the same as with the others
+      throw e.getCause();
+    }
+  }
+
+
   class RegisteredMethods {
     int count;
     Object[] objects;
-    // Because the Method comes from the class being called,
-    // it will be unique for most, if not all, objects.
-    Method[] methods;
-    Object[] emptyArgs = new Object[] { };
+    RegisteredInvoker[] invokers;
 
 
     void handle() {
-      handle(emptyArgs);
+      handle((Object) null);
     }
 
 
     void handle(Object[] args) {
+      handle(args.length == 0 ? null : args[0]);
+    }
+
+
+    void handle(Object arg) {
       for (int i = 0; i < count; i++) {
         try {
-          methods[i].invoke(objects[i], args);
-        } catch (Exception e) {
-          // check for wrapped exception, get root exception
-          Throwable t;
-          if (e instanceof InvocationTargetException) {
-            InvocationTargetException ite = (InvocationTargetException) e;
-            t = ite.getCause();
-          } else {
-            t = e;
-          }
-          // check for RuntimeException, and allow to bubble up
-          if (t instanceof RuntimeException) {
-            // re-throw exception
-            throw (RuntimeException) t;
-          } else {
-            // trap and print as usual
-            printStackTrace(t);
-          }
+          invokers[i].invoke(arg);
+        } catch (RuntimeException e) {
+          // allow to bubble up
+          throw e;
+        } catch (Throwable t) {
+          // trap and print as usual
+          printStackTrace(t);
         }
       }
     }
 
 
-    void add(Object object, Method method) {
+    void add(Object object, RegisteredInvoker invoker, String name) {
       if (findIndex(object) == -1) {
         if (objects == null) {
           objects = new Object[5];
-          methods = new Method[5];
+          invokers = new RegisteredInvoker[5];
 
         } else if (count == objects.length) {
           objects = (Object[]) PApplet.expand(objects);
-          methods = (Method[]) PApplet.expand(methods);
+          invokers = Arrays.copyOf(invokers, count << 1);
         }
         objects[count] = object;
-        methods[count] = method;
+        invokers[count] = invoker;
         count++;
       } else {
-        die(method.getName() + "() already added for this instance of " +
+        die(name + "() already added for this instance of " +
             object.getClass().getName());
       }
     }
@@ -1490,11 +1671,11 @@ public class PApplet implements PConstants {
         count--;
         for (int i = index; i < count; i++) {
           objects[i] = objects[i+1];
-          methods[i] = methods[i+1];
+          invokers[i] = invokers[i+1];
         }
         // clean things out for the gc's sake
         objects[count] = null;
-        methods[count] = null;
+        invokers[count] = null;
       }
     }
 
@@ -1536,6 +1717,11 @@ public class PApplet implements PConstants {
    * </ul>
    * The older java.awt events are no longer supported.
    * See the Library Wiki page for more details.
+   * <p>
+   * Targets implementing the matching listener interface, such as
+   * {@link PreListener} or {@link MouseEventListener}, are called directly.
+   * Others are looked up through reflection once, here, and called through
+   * a method handle afterwards.
    * @param methodName name of the method to be called
    * @param target the target object that should receive the event
    */
@@ -1558,15 +1744,11 @@ public class PApplet implements PConstants {
   private void registerNoArgs(String name, Object o) {
     Class<?> c = o.getClass();
     try {
-      Method method = c.getMethod(name);
-      synchronized (registerLock) {
-        RegisteredMethods meth = registerMap.get(name);
-        if (meth == null) {
-          meth = new RegisteredMethods();
-          registerMap.put(name, meth);
-        }
-        meth.add(o, method);
+      RegisteredInvoker invoker = listenerInvoker(name, o);
+      if (invoker == null) {
+        invoker = methodInvoker(o, c.getMethod(name));
       }
+      addRegistered(name, o, invoker);
     } catch (NoSuchMethodException nsme) {
       die("There is no public " + name + "() method in the class " +
           o.getClass().getName());
@@ -1580,15 +1762,11 @@ public class PApplet implements PConstants {
   private void registerWithArgs(String name, Object o, Class<?> cargs[]) {
     Class<?> c = o.getClass();
     try {
-      Method method = c.getMethod(name, cargs);
-      synchronized (registerLock) {
-        RegisteredMethods meth = registerMap.get(name);
-        if (meth == null) {
-          meth = new RegisteredMethods();
-          registerMap.put(name, meth);
-        }
-        meth.add(o, method);
+      RegisteredInvoker invoker = listenerInvoker(name, o);
+      if (invoker == null) {
+        invoker = methodInvoker(o, c.getMethod(name, cargs));
       }
+      addRegistered(name, o, invoker);
     } catch (NoSuchMethodException nsme) {
       die("There is no public " + name + "() method in the class " +
           o.getClass().getName());
@@ -1599,6 +1777,18 @@ public class PApplet implements PConstants {
   }
 
 
+  private void addRegistered(String name, Object o, RegisteredInvoker invoker) {
+    synchronized (registerLock) {
+      RegisteredMethods meth = registerMap.get(name);
+      if (meth == null) {
+        meth = new RegisteredMethods();
+        registerMap.put(name, meth);
+      }
+      meth.add(o, invoker, name);
+    }
+  }
+
+
 //  public void registerMethod(String methodName, Object target, Object... args) {
 //    registerWithArgs(methodName, target, args);
 //  }
@@ -1641,6 +1831,20 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Same as handleMethods(String, Object[]) for methods taking a single
+   * argument, which avoids allocating an array for each event.
+   */
+  protected void handleMethods(String methodName, Object arg) {
+    synchronized (registerLock) {
+      RegisteredMethods meth = registerMap.get(methodName);
+      if (meth != null) {
+        meth.handle(arg);
+      }
+    }
+  }
+
+
   /*
   @Deprecated
   public void registerSize(Object o) {
@@ -2389,6 +2593,29 @@ public class PApplet implements PConstants {
   /** Last time in nanoseconds that frameRate was checked */
   protected long frameRateLastNanos = 0;
 
+  /** Durations of the latest frames, see frameTimings() */
+  protected PFrameTimings frameTimings = new PFrameTimings();
+
+  /** Nanoseconds between fixed updates, or 0 when they're disabled */
+  protected long updatePeriod;
+  protected int maxUpdatesPerFrame;
+  protected long updateLastNanos;
+  protected long updateAccumulator;
+
+  // Set by noLoop(), which may be called from any thread, so that the
+  // animation thread resets the timings before the next frame.
+  protected volatile boolean timingsPaused;
+
+  /**
+   * With fixedTimestep(), the fraction of an update period that has passed
+   * since the last call to update(), between 0 and 1. Used to interpolate
+   * between the previous and the current state of the simulation in draw().
+   */
+  public float updateAlpha;
+
+  /** Number of times update() has been called. */
+  public int updateCount;
+
 
   public void handleDraw() {
     //debug("handleDraw() " + g + " " + looping + " " + redraw + " valid:" + this.isValid() + " visible:" + this.isVisible());
@@ -2422,6 +2649,7 @@ public class PApplet implements PConstants {
     }
 
     long now = System.nanoTime();
+    long stageStart = now;
 
     if (frameCount == 0) {
         // 3.0a5 should be no longer needed; handled by PSurface
@@ -2469,9 +2697,27 @@ public class PApplet implements PConstants {
         frameRate = (float) (1.0 / avgFrameTimeSecs);
       }
 
+      if (timingsPaused) {
+        // don't count the pause as a long frame or as time to simulate
+        timingsPaused = false;
+        frameTimings.reset();
+        updateLastNanos = 0;
+      }
+      frameTimings.beginFrame(now);
+
       if (frameCount != 0) {
         handleMethods("pre");
       }
+      handleAnimationTasks();
+      stageStart = System.nanoTime();
+      frameTimings.record(PFrameTimings.PRE, now, stageStart);
+
+      if (updatePeriod != 0) {
+        handleUpdates(now);
+        long updateEnd = System.nanoTime();
+        frameTimings.record(PFrameTimings.UPDATE, stageStart, updateEnd);
+        stageStart = updateEnd;
+      }
 
       // use dmouseX/Y as previous mouse pos, since this is the
       // last position the mouse was in during the previous draw.
@@ -2481,6 +2727,8 @@ public class PApplet implements PConstants {
         //println("Calling draw()");
       draw();
         //println("Done calling draw()");
+      long drawEnd = System.nanoTime();
+      frameTimings.record(PFrameTimings.DRAW, stageStart, drawEnd);
 
       // dmouseX/Y is updated only once per frame (unlike emouseX/Y)
       dmouseX = mouseX;
@@ -2491,6 +2739,8 @@ public class PApplet implements PConstants {
       // be before, since a call to background() would wipe
       // out anything that had been drawn so far.
       dequeueEvents();
+      stageStart = System.nanoTime();
+      frameTimings.record(PFrameTimings.EVENTS, drawEnd, stageStart);
 
       handleMethods("draw");
 
@@ -2510,6 +2760,7 @@ public class PApplet implements PConstants {
 
     if (frameCount != 0) {
       handleMethods("post");
+      frameTimings.record(PFrameTimings.POST, stageStart, System.nanoTime());
     }
 
     frameRateLastNanos = now;
@@ -2517,6 +2768,108 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Runs as many fixed updates as fit in the time elapsed since the last
+   * frame, and sets updateAlpha to the fraction of an update left over.
+   */
+  protected void handleUpdates(long now) {
+    if (updateLastNanos == 0) {
+      // first frame in fixed timestep mode, run a single update
+      updateLastNanos = now;
+      updateAccumulator = updatePeriod;
+    } else {
+      updateAccumulator += now - updateLastNanos;
+      updateLastNanos = now;
+    }
+    // When the sketch can't keep up (or was paused), drop the time that
+    // doesn't fit in maxUpdatesPerFrame instead of falling further behind.
+    long maxAccumulator = updatePeriod * maxUpdatesPerFrame;
+    if (updateAccumulator > maxAccumulator) {
+      updateAccumulator = maxAccumulator;
+    }
+    float dt = updatePeriod / 1e9f;
+    while (updateAccumulator >= updatePeriod) {
+      update(dt);
+      updateCount++;
+      updateAccumulator -= updatePeriod;
+    }
+    updateAlpha = (float) updateAccumulator / updatePeriod;
+  }
+
+
+  /**
+   * Called at a fixed rate when fixedTimestep() is enabled, before each
+   * draw(), to advance the simulation by dt seconds. It may be called
+   * several times per frame, or not at all, depending on how long frames
+   * take. Use updateAlpha to interpolate between the last two simulation
+   * states in draw().
+   *
+   * @param dt duration of an update in seconds
+   * @see PApplet#fixedTimestep(float)
+   */
+  public void update(float dt) {
+  }
+
+
+  /**
+   * Decouples the simulation from the rendering: update(dt) is called
+   * updatesPerSecond times a second with a constant dt, no matter how
+   * often draw() runs. At most 5 updates are run per frame, see the
+   * two-parameter version to change it. This also makes the animation
+   * thread pace frames more precisely, by parking the thread until just
+   * before the next frame and spinning the rest of the time.
+   *
+   * @param updatesPerSecond number of calls to update() per second
+   * @see PApplet#update(float)
+   * @see PApplet#noFixedTimestep()
+   * @see PApplet#frameTimings()
+   */
+  public void fixedTimestep(float updatesPerSecond) {
+    fixedTimestep(updatesPerSecond, 5);
+  }
+
+
+  /**
+   * @param maxUpdatesPerFrame updates allowed before the simulation is
+   * slowed down to let draw() run
+   */
+  public void fixedTimestep(float updatesPerSecond, int maxUpdatesPerFrame) {
+    if (updatesPerSecond <= 0 || maxUpdatesPerFrame < 1) {
+      throw new IllegalArgumentException("fixedTimestep() needs a positive " +
+                                         "rate and at least one update " +
+                                         "per frame");
+    }
+    updatePeriod = (long) (1000000000.0 / updatesPerSecond);
+    this.maxUpdatesPerFrame = maxUpdatesPerFrame;
+    updateLastNanos = 0;
+    updateAccumulator = 0;
+  }
+
+
+  /**
+   * Goes back to calling draw() only, without fixed updates.
+   */
+  public void noFixedTimestep() {
+    updatePeriod = 0;
+    updateAlpha = 0;
+  }
+
+
+  public boolean isFixedTimestep() {
+    return updatePeriod != 0;
+  }
+
+
+  /**
+   * Returns the durations of the stages of the latest frames.
+   *
+   * @see PFrameTimings
+   */
+  public PFrameTimings frameTimings() {
+    return frameTimings;
+  }
+
+
 //  /** Not official API, not guaranteed to work in the future. */
 //  public boolean canDraw() {
 //    return g != null && (looping || redraw);
@@ -2614,6 +2967,7 @@ public class PApplet implements PConstants {
   synchronized public void noLoop() {
     if (looping) {
       looping = false;
+      timingsPaused = true;
     }
   }
 
@@ -2626,7 +2980,7 @@ public class PApplet implements PConstants {
   //////////////////////////////////////////////////////////////
 
 
-  BlockingQueue<Event> eventQueue = new LinkedBlockingQueue<>();
+  PEventQueue eventQueue = new PEventQueue();
   private final Object eventQueueDequeueLock = new Object[0];
 
 
@@ -2635,7 +2989,7 @@ public class PApplet implements PConstants {
    * the sketch is not currently looping.
    */
   public void postEvent(processing.event.Event pe) {
-    eventQueue.add(pe);
+    eventQueue.offer(pe);
 
     if (!looping) {
       dequeueEvents();
@@ -2643,10 +2997,23 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Returns the queue holding the events posted to the sketch until the
+   * next frame, e.g. to turn on coalescing of mouse motion.
+   *
+   * @see PEventQueue
+   */
+  public PEventQueue eventQueue() {
+    return eventQueue;
+  }
+
+
   protected void dequeueEvents() {
+    // Only taken by the animation thread, unless noLoop() makes the
+    // surface's event thread handle its events itself.
     synchronized (eventQueueDequeueLock) {
-      while (!eventQueue.isEmpty()) {
-        Event e = eventQueue.remove();
+      Event e;
+      while ((e = eventQueue.poll()) != null) {
         switch (e.getFlavor()) {
         case Event.MOUSE:
           handleMouseEvent((MouseEvent) e);
@@ -2746,7 +3113,7 @@ public class PApplet implements PConstants {
       break;
     }
 
-    handleMethods("mouseEvent", new Object[] { event });
+    handleMethods("mouseEvent", (Object) event);
 
     switch (action) {
     case MouseEvent.PRESS:
@@ -3018,7 +3385,7 @@ public class PApplet implements PConstants {
     }
     */
 
-    handleMethods("keyEvent", new Object[] { event });
+    handleMethods("keyEvent", (Object) event);
 
     // if someone else wants to intercept the key, they should
     // set key to zero (or something besides the ESC).
@@ -3835,6 +4202,8 @@ public class PApplet implements PConstants {
       }
       // run dispose() methods registered by libraries
       handleMethods("dispose");
+      // stop the threads started by the sketch
+      disposeWorkers();
     }
 
     if (platform == MACOSX) {
@@ -3899,13 +4268,132 @@ public class PApplet implements PConstants {
    * @see PApplet#noLoop()
    */
   public void thread(final String name) {
-    Thread later = new Thread() {
-      @Override
-      public void run() {
-        method(name);
+    synchronized (workerLock) {
+      if (threadPool == null) {
+        // Unbounded, since these often loop for as long as the sketch runs,
+        // but idle threads are reused instead of starting one per call.
+        threadPool = Executors.newCachedThreadPool(workerFactory("thread", false));
       }
+      threadPool.execute(() -> method(name));
+    }
+  }
+
+
+  // pool of threads used by thread(), created when first needed
+  ExecutorService threadPool;
+  // pool used by async(), sized to the number of cores
+  ExecutorService asyncPool;
+  boolean asyncVirtualThreads;
+  private final Object workerLock = new Object[0];
+
+  // tasks to be run by the animation thread before the next draw()
+  protected final Queue<Runnable> animationTasks =
+    new ConcurrentLinkedQueue<>();
+
+
+  /**
+   * Threads from thread() are not daemons, same as when each call started
+   * its own Thread, so a sketch keeps running until they're done. Those of
+   * async() are, since they're only there to compute results for draw().
+   */
+  static private ThreadFactory workerFactory(final String prefix,
+                                             final boolean daemon) {
+    final AtomicInteger count = new AtomicInteger();
+    return r -> {
+      Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+      t.setDaemon(daemon);
+      return t;
     };
-    later.start();
+  }
+
+
+  /**
+   * Runs a task on a pool of background threads, one per core, and returns
+   * a handle to check from draw() whether its result is ready. The pool is
+   * shut down along with the sketch.
+   *
+   * @param task the code to run, see PFuture for an example
+   * @see PFuture
+   * @see PApplet#runOnAnimationThread(Runnable)
+   */
+  public <T> PFuture<T> async(Callable<T> task) {
+    PFuture<T> future = new PFuture<>(task);
+    synchronized (workerLock) {
+      if (asyncPool == null) {
+        asyncPool = createAsyncPool();
+      }
+      asyncPool.execute(future.task);
+    }
+    return future;
+  }
+
+
+  public PFuture<?> async(Runnable task) {
+    return async(Executors.callable(task));
+  }
+
+
+  /**
+   * Runs async() tasks on virtual threads instead of a pool sized to the
+   * number of cores, for tasks that mostly wait on I/O. Only has an effect
+   * on Java 21 and later, and only if called before the first async().
+   */
+  public void useVirtualThreads(boolean virtual) {
+    asyncVirtualThreads = virtual;
+  }
+
+
+  private ExecutorService createAsyncPool() {
+    if (asyncVirtualThreads) {
+      try {
+        // looked up by name, since the core is built for Java 8
+        Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        return (ExecutorService) m.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        // not available before Java 21, use platform threads
+      }
+    }
+    int cores = Runtime.getRuntime().availableProcessors();
+    return Executors.newFixedThreadPool(cores, workerFactory("async", true));
+  }
+
+
+  /**
+   * Queues a task to be run by the animation thread, before the next call
+   * to draw(). Use this from another thread (e.g. an async() task or a
+   * library callback) to change variables used for drawing without
+   * synchronizing them. With noLoop(), the task runs after the next
+   * redraw().
+   */
+  public void runOnAnimationThread(Runnable task) {
+    animationTasks.add(task);
+  }
+
+
+  protected void handleAnimationTasks() {
+    Runnable task;
+    while ((task = animationTasks.poll()) != null) {
+      task.run();
+    }
+  }
+
+
+  /**
+   * Stops the threads started by thread() and async(), interrupting the
+   * tasks that are still running.
+   */
+  protected void disposeWorkers() {
+    synchronized (workerLock) {
+      if (threadPool != null) {
+        threadPool.shutdownNow();
+        threadPool = null;
+      }
+      if (asyncPool != null) {
+        asyncPool.shutdownNow();
+        asyncPool = null;
+      }
+    }
+    animationTasks.clear();
   }
 
 
@@ -5299,19 +5787,7 @@ public class PApplet implements PConstants {
    */
   public float noise(float x, float y, float z) {
     if (perlin == null) {
-      if (perlinRandom == null) {
-        perlinRandom = new Random();
-      }
-      perlin = new float[PERLIN_SIZE + 1];
-      for (int i = 0; i < PERLIN_SIZE + 1; i++) {
-        perlin[i] = perlinRandom.nextFloat(); //(float)Math.random();
-      }
-      // [toxi 031112]
-      // noise broke due to recent change of cos table in PGraphics
-      // this will take care of it
-      perlin_cosTable = PGraphics.cosLUT;
-      perlin_TWOPI = perlin_PI = PGraphics.SINCOS_LENGTH;
-      perlin_PI >>= 1;
+      noiseInit();
     }
 
     if (x<0) x=-x;
@@ -5363,6 +5839,37 @@ public class PApplet implements PConstants {
     return r;
   }
 
+  private void noiseInit() {
+    if (perlinRandom == null) {
+      perlinRandom = new Random();
+    }
+    // [toxi 031112]
+    // noise broke due to recent change of cos table in PGraphics
+    // this will take care of it
+    perlin_cosTable = PGraphics.cosLUT;
+    perlin_TWOPI = perlin_PI = PGraphics.SINCOS_LENGTH;
+    perlin_PI >>= 1;
+    perlin = PNoise.createTable(perlinRandom);
+  }
+
+
+  /**
+   * Returns a generator that produces the same values as noise() with the
+   * current seed and detail settings. Unlike noise(), the generator is
+   * immutable, so it can be used from any thread, and it has methods to
+   * fill whole grids of noise values at once. Later calls to noiseSeed()
+   * and noiseDetail() don't affect generators already returned.
+   *
+   * @see PNoise
+   * @see PApplet#noise(float, float, float)
+   */
+  public PNoise noiseGenerator() {
+    if (perlin == null) {
+      noiseInit();
+    }
+    return new PNoise(perlin, perlin_octaves, perlin_amp_falloff);
+  }
+
   // [toxi 031112]
   // now adjusts to the size of the cosLUT used via
   // the new variables, defined above
@@ -7497,6 +8004,67 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Maps a file into memory instead of reading it into a byte array, so
+   * that the operating system loads its pages as they are accessed, and
+   * the file doesn't take space on the Java heap. Useful for files of
+   * hundreds of megabytes or more, which loadBytes() would have to copy.
+   * <p>
+   * The file is looked for in the data folder, then in the sketch folder.
+   * For .gz files, urls and files inside a jar, which can't be mapped, the
+   * bytes are loaded as with loadBytes() and wrapped in a buffer. Either
+   * way, the buffer returned is read-only. Files larger than 2 GB can't be
+   * mapped in a single buffer.
+   *
+   * @param filename name of a file in the data folder or a URL
+   * @see PApplet#loadBytes(String)
+   */
+  public ByteBuffer mapBytes(String filename) {
+    String lower = filename.toLowerCase();
+    if (!lower.endsWith(".gz") && !lower.endsWith(".svgz")) {
+      File file = dataFile(filename);
+      if (!file.exists()) {
+        file = sketchFile(filename);
+      }
+      if (file.isFile()) {
+        return mapBytes(file);
+      }
+    }
+    byte[] bytes = loadBytes(filename);
+    return (bytes == null) ? null : ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public ByteBuffer mapBytes(File file) {
+    if (!file.exists()) {
+      System.err.println(file + " does not exist, mapBytes() will return null");
+      return null;
+    }
+    if (file.getName().toLowerCase().endsWith(".gz")) {
+      byte[] bytes = loadBytes(file);
+      return (bytes == null) ? null : ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                StandardOpenOption.READ)) {
+      long length = channel.size();
+      if (length > Integer.MAX_VALUE) {
+        System.err.println("Cannot use mapBytes() on a file larger than " +
+                           Integer.MAX_VALUE);
+        return null;
+      }
+      // the mapping stays valid after the channel is closed
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+
   /**
    * @nowebref
    */
@@ -7631,6 +8199,178 @@ public class PApplet implements PConstants {
 
 
 
+  /**
+   * Reads the lines of a file or url one at a time, instead of loading all
+   * of them into an array like loadStrings() does, so that files larger
+   * than the available memory can be read in a for loop:
+   * <pre>
+   * for (String line : lines("huge.log")) {
+   *   if (line.startsWith("ERROR")) errors++;
+   * }
+   * </pre>
+   * The file is found the same way as with createInput(), and .gz files
+   * are decompressed on the fly. It's opened again each time the lines are
+   * iterated, and closed once the last line has been read. When leaving
+   * the loop early with break, call close() so that the file isn't kept
+   * open (and locked, on Windows):
+   * <pre>
+   * Lines log = lines("huge.log");
+   * for (String line : log) {
+   *   if (line.startsWith("ERROR")) break;
+   * }
+   * log.close();
+   * </pre>
+   * For a java.util.stream.Stream of the lines, use
+   * createReader(filename).lines() instead.
+   *
+   * @param filename name of the file or url to read
+   * @see PApplet#loadStrings(String)
+   */
+  public Lines lines(final String filename) {
+    // opened now so that the error shows up right away, and used for the
+    // first loop, so that a url is only requested once
+    InputStream is = createInput(filename);
+    if (is == null) {
+      System.err.println("The file \"" + filename + "\" " +
+                         "is missing or inaccessible, make sure " +
+                         "the URL is valid or that the file has been " +
+                         "added to your sketch and is readable.");
+      return null;
+    }
+    return new Lines(is, () -> createInput(filename));
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public Lines lines(final File file) {
+    if (!file.exists()) {
+      System.err.println(file + " does not exist, lines() will return null");
+      return null;
+    }
+    return new Lines(null, () -> createInput(file));
+  }
+
+
+  /**
+   * Lines of a file, as returned by lines(). Each loop over them reads the
+   * file from the start, and closes it after the last line. close() closes
+   * it when a loop stops before the end.
+   */
+  static public class Lines implements Iterable<String>, Closeable {
+    private final Supplier<InputStream> opener;
+    // opened by lines() to check the file, used by the first loop
+    private InputStream first;
+    // readers of the loops that haven't reached the end yet
+    private final List<BufferedReader> open = new ArrayList<>();
+
+
+    protected Lines(InputStream first, Supplier<InputStream> opener) {
+      this.first = first;
+      this.opener = opener;
+    }
+
+
+    @Override
+    public Iterator<String> iterator() {
+      InputStream input;
+      synchronized (open) {
+        input = first;
+        first = null;
+      }
+      if (input == null) {
+        input = opener.get();
+        if (input == null) {
+          throw new RuntimeException("Could not open the file again");
+        }
+      }
+      BufferedReader reader = createReader(input);
+      synchronized (open) {
+        open.add(reader);
+      }
+      return lines(reader);
+    }
+
+
+    /**
+     * Close the file, for a loop that stopped before the last line. Loops
+     * that read all the lines close it on their own.
+     */
+    @Override
+    public void close() {
+      List<BufferedReader> readers;
+      synchronized (open) {
+        readers = new ArrayList<>(open);
+        open.clear();
+        if (first != null) {
+          try {
+            first.close();
+          } catch (IOException e) { }
+          first = null;
+        }
+      }
+      for (BufferedReader reader : readers) {
+        try {
+          reader.close();
+        } catch (IOException e) { }
+      }
+    }
+
+
+    /**
+     * Iterates over the lines of a reader, closing it after the last one.
+     */
+    protected Iterator<String> lines(final BufferedReader reader) {
+      return new Iterator<String>() {
+        String next;
+        boolean done;
+
+        @Override
+        public boolean hasNext() {
+          if (next == null && !done) {
+            try {
+              next = reader.readLine();
+              if (next == null) {
+                done = true;
+                reader.close();
+                synchronized (open) {
+                  open.remove(reader);
+                }
+              }
+            } catch (IOException e) {
+              if (isClosed()) {
+                // close() was called from another thread
+                done = true;
+                return false;
+              }
+              // Re-wrap rather than forcing novices to learn about exceptions
+              throw new RuntimeException(e);
+            }
+          }
+          return next != null;
+        }
+
+        private boolean isClosed() {
+          synchronized (open) {
+            return !open.contains(reader);
+          }
+        }
+
+        @Override
+        public String next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          String outgoing = next;
+          next = null;
+          return outgoing;
+        }
+      };
+    }
+  }
+
+
   //////////////////////////////////////////////////////////////
 
   // FILE OUTPUT
@@ -7945,6 +8685,90 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Writes lines to a file as they are produced, e.g. by a loop or by
+   * lines(), so that they never all have to be in memory at once. The text
+   * is encoded into a single buffer that's written through a FileChannel,
+   * without the copies made by a PrintWriter. Files ending in .gz are
+   * compressed as with saveStrings().
+   *
+   * @param filename filename for output
+   * @param lines the lines to be written
+   */
+  public void saveStrings(String filename, Iterable<? extends CharSequence> lines) {
+    saveStrings(saveFile(filename), lines);
+  }
+
+
+  /**
+   * @nowebref
+   */
+  static public void saveStrings(File file,
+                                 Iterable<? extends CharSequence> lines) {
+    if (file.getName().toLowerCase().endsWith(".gz")) {
+      PrintWriter writer = createWriter(createOutput(file));
+      for (CharSequence line : lines) {
+        writer.println(line);
+      }
+      writer.flush();
+      writer.close();
+      return;
+    }
+
+    createPath(file);  // make sure the path exists
+    try (FileChannel channel =
+         FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                          StandardOpenOption.TRUNCATE_EXISTING,
+                          StandardOpenOption.WRITE)) {
+      CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+      // same line endings as println()
+      CharBuffer separator = CharBuffer.wrap(System.lineSeparator());
+      for (CharSequence line : lines) {
+        encodeLine(channel, encoder, buffer, CharBuffer.wrap(line));
+        separator.rewind();
+        encodeLine(channel, encoder, buffer, separator);
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+
+    } catch (IOException e) {
+      System.err.println("Could not saveStrings() to " + file);
+      e.printStackTrace();
+    }
+  }
+
+
+  // Each line is encoded on its own, as the end of the input, so that a
+  // lone surrogate at its end is replaced like println() does, not dropped.
+  static private void encodeLine(FileChannel channel, CharsetEncoder encoder,
+                                 ByteBuffer buffer,
+                                 CharBuffer chars) throws IOException {
+    encoder.reset();
+    while (encoder.encode(chars, buffer, true).isOverflow()) {
+      writeBuffer(channel, buffer);
+    }
+    while (encoder.flush(buffer).isOverflow()) {
+      writeBuffer(channel, buffer);
+    }
+  }
+
+
+  // The buffer is full, write it out and keep going.
+  static private void writeBuffer(FileChannel channel,
+                                  ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+
   //////////////////////////////////////////////////////////////
 
 
@@ -9249,9 +10073,79 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Finds the same tokens as splitTokens(), but instead of creating a
+   * String for each one, stores where it is: token i goes from
+   * bounds[i*2] to bounds[i*2 + 1] (exclusive). Use with parseInt() and
+   * parseFloat() that take a start and end to read numbers from a large
+   * amount of text without allocating anything.
+   * <p>
+   * Returns the number of tokens. If bounds is null or too short, only
+   * the ones that fit are stored, but all are counted, so that the array
+   * can be made large enough once and reused:
+   * <pre>
+   * int count = splitTokens(line, ",", bounds);
+   * if (count * 2 > bounds.length) {
+   *   bounds = new int[count * 2];
+   *   splitTokens(line, ",", bounds);
+   * }
+   * </pre>
+   */
+  static public int splitTokens(CharSequence value, String delim,
+                                int[] bounds) {
+    int limit = (bounds == null) ? 0 : bounds.length / 2;
+    int count = 0;
+    int length = value.length();
+    int i = 0;
+    while (i < length) {
+      // skip the separators
+      while (i < length && delim.indexOf(value.charAt(i)) != -1) {
+        i++;
+      }
+      if (i == length) {
+        break;
+      }
+      int start = i;
+      while (i < length && delim.indexOf(value.charAt(i)) == -1) {
+        i++;
+      }
+      if (count < limit) {
+        bounds[count*2] = start;
+        bounds[count*2 + 1] = i;
+      }
+      count++;
+    }
+    return count;
+  }
+
+
+  /**
+   * Same as split(String, char), storing where each piece starts and ends
+   * in bounds instead of creating Strings, like splitTokens(CharSequence,
+   * String, int[]). Empty pieces are kept, as with split().
+   */
+  static public int split(CharSequence value, char delim, int[] bounds) {
+    int limit = (bounds == null) ? 0 : bounds.length / 2;
+    int count = 0;
+    int start = 0;
+    int length = value.length();
+    for (int i = 0; i <= length; i++) {
+      if (i == length || value.charAt(i) == delim) {
+        if (count < limit) {
+          bounds[count*2] = start;
+          bounds[count*2 + 1] = i;
+        }
+        count++;
+        start = i + 1;
+      }
+    }
+    return count;
+  }
+
+
   static protected LinkedHashMap<String, Pattern> matchPatterns;
 
-  static Pattern matchPattern(String regexp) {
+  static synchronized Pattern matchPattern(String regexp) {
     Pattern p = null;
     if (matchPatterns == null) {
       matchPatterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
@@ -9774,6 +10668,159 @@ public class PApplet implements PConstants {
     return otherwise;
   }
 
+
+  /**
+   * Parses the characters from start to end (exclusive) as an int, without
+   * creating a String for them. Like parseInt(String), anything after a
+   * decimal point is ignored. Returns 0 if the value is bad.
+   */
+  static final public int parseInt(CharSequence what, int start, int end) {
+    return parseInt(what, start, end, 0);
+  }
+
+
+  static final public int parseInt(CharSequence what, int start, int end,
+                                   int otherwise) {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (what.charAt(i) == '-' || what.charAt(i) == '+')) {
+      negative = what.charAt(i) == '-';
+      i++;
+    }
+    if (i == end) {
+      return otherwise;
+    }
+    // accumulate as a negative number, which also fits Integer.MIN_VALUE
+    long value = 0;
+    for (; i < end; i++) {
+      char c = what.charAt(i);
+      if (c == '.') {
+        if (i == start || !Character.isDigit(what.charAt(i - 1))) {
+          return otherwise;
+        }
+        break;
+      }
+      if (c < '0' || c > '9') {
+        return otherwise;
+      }
+      value = value * 10 - (c - '0');
+      if (value < Integer.MIN_VALUE) {
+        return otherwise;
+      }
+    }
+    if (negative) {
+      return (int) value;
+    }
+    return (value == Integer.MIN_VALUE) ? otherwise : (int) -value;
+  }
+
+
+  /**
+   * Parses the characters from start to end (exclusive) as a float,
+   * without creating a String for them in the common cases. Returns NaN if
+   * the value is bad.
+   */
+  static final public float parseFloat(CharSequence what, int start, int end) {
+    return parseFloat(what, start, end, Float.NaN);
+  }
+
+
+  static final public float parseFloat(CharSequence what, int start, int end,
+                                       float otherwise) {
+    double value = parseDecimal(what, start, end);
+    if (value == value) {
+      // Rounding the double to a float gives the same result as rounding
+      // the decimal value directly, except when the double falls exactly
+      // half-way between two floats (and the decimal value might not).
+      long bits = Double.doubleToRawLongBits(value);
+      if ((bits & 0x1FFFFFFFL) != 0x10000000L) {
+        return (float) value;
+      }
+    }
+    // exponents, NaN, Infinity, too many digits and bad values
+    return parseFloat(what.subSequence(start, end).toString(), otherwise);
+  }
+
+
+  /**
+   * Fast path for plain decimal numbers like -12.375 or 1e-5: when the
+   * digits fit in the 53 bits of a double and the power of ten is exact,
+   * one multiplication or division gives the correctly rounded value.
+   * Returns NaN for anything else, so that the caller can fall back to
+   * Float.parseFloat() or Double.parseDouble().
+   */
+  static private double parseDecimal(CharSequence what, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (what.charAt(i) == '-' || what.charAt(i) == '+')) {
+      negative = what.charAt(i) == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int exponent = 0;
+    int digits = 0;
+    boolean point = false;
+    for (; i < end; i++) {
+      char c = what.charAt(i);
+      if (c >= '0' && c <= '9') {
+        if (mantissa >= (1L << 53) / 10) {
+          return Double.NaN;  // too many digits
+        }
+        mantissa = mantissa * 10 + (c - '0');
+        digits++;
+        if (point) {
+          exponent--;
+        }
+      } else if (c == '.' && !point) {
+        point = true;
+      } else if ((c == 'e' || c == 'E') && digits > 0) {
+        break;
+      } else {
+        return Double.NaN;
+      }
+    }
+    if (digits == 0) {
+      return Double.NaN;
+    }
+    if (i < end) {  // exponent
+      i++;
+      boolean negativeExponent = false;
+      if (i < end && (what.charAt(i) == '-' || what.charAt(i) == '+')) {
+        negativeExponent = what.charAt(i) == '-';
+        i++;
+      }
+      if (i == end || end - i > 3) {
+        return Double.NaN;
+      }
+      int e = 0;
+      for (; i < end; i++) {
+        char c = what.charAt(i);
+        if (c < '0' || c > '9') {
+          return Double.NaN;
+        }
+        e = e * 10 + (c - '0');
+      }
+      exponent += negativeExponent ? -e : e;
+    }
+    if (exponent < -22 || exponent > 22) {
+      return Double.NaN;
+    }
+    double value = mantissa;
+    if (exponent < 0) {
+      value /= POWERS_OF_TEN[-exponent];
+    } else if (exponent > 0) {
+      value *= POWERS_OF_TEN[exponent];
+    }
+    return negative ? -value : value;
+  }
+
+
+  // exact in a double up to 1e22
+  static private final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
   static final public float[] parseFloat(byte[] what) {
@@ -409,6 +409,15 @@ public interface PConstants {
    */
   static final int SHAPE = 5;
 
+  /**
+   * textMode(SDF) draws text using signed distance fields of the glyphs
+   * stored in a texture, which keep the outlines crisp at any scale or
+   * rotation without creating a new font for each size.
+   * <p/>
+   * Currently, textMode(SDF) is only supported by the OpenGL renderers.
+   */
+  static final int SDF = 6;
+
 
   // text alignment modes
   // are inherited from LEFT, CENTER, RIGHT
@@ -0,0 +1,226 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.ArrayDeque;
+
+import processing.event.Event;
+import processing.event.MouseEvent;
+
+
+/**
+ * Queue of the input events posted to a sketch, drained by the animation
+ * thread at the start of each frame. Use {@link PApplet#eventQueue()} to
+ * get the one of a sketch.
+ * <p>
+ * Events are stored in a fixed-size ring buffer, so posting one doesn't
+ * allocate. The surface posts events from a single thread, so the lock
+ * taken to add them is uncontended, and the animation thread takes them
+ * out without locking at all.
+ * <p>
+ * When the buffer is full, mouse move and drag events are dropped, since a
+ * later one replaces them anyway. Other events (presses, releases, keys)
+ * are never dropped: they are kept in a separate list, in order, until the
+ * sketch catches up.
+ * <p>
+ * With coalesce(true), consecutive move or drag events with the same
+ * button and modifiers are merged into the last one, so that a sketch
+ * receives a single mouseMoved() or mouseDragged() per burst of motion
+ * instead of one per event from high rate devices (pen tablets, touch
+ * walls). The counters of dropped and coalesced events can be used to see
+ * whether the sketch keeps up with its input.
+ */
+public class PEventQueue {
+  static final int DEFAULT_CAPACITY = 1024;
+
+  protected final Event[] events;
+  protected final int mask;
+
+  // Index of the next event to read, only written by the consumer
+  protected volatile long head;
+  // Index of the next event to write, only written by the producer
+  protected volatile long tail;
+
+  protected final Object producerLock = new Object[0];
+  // Events that didn't fit in the buffer, guarded by producerLock
+  protected final ArrayDeque<Event> overflow = new ArrayDeque<>();
+  protected volatile boolean overflowing;
+
+  // Event taken out of the buffer while looking for motion to coalesce
+  protected Event pending;
+
+  protected volatile boolean coalescing;
+  protected volatile long dropped;
+  protected volatile long coalesced;
+
+
+  public PEventQueue() {
+    this(DEFAULT_CAPACITY);
+  }
+
+
+  /**
+   * @param capacity size of the ring buffer, rounded up to a power of 2
+   */
+  public PEventQueue(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("The capacity must be at least 1");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    events = new Event[size];
+    mask = size - 1;
+  }
+
+
+  /**
+   * Adds an event at the end of the queue. Safe to call from any thread.
+   */
+  public void offer(Event event) {
+    synchronized (producerLock) {
+      if (!overflowing) {
+        long t = tail;
+        if (t - head < events.length) {
+          events[(int) t & mask] = event;
+          // the volatile write publishes the event to the consumer
+          tail = t + 1;
+          return;
+        }
+      }
+      if (isMotion(event)) {
+        dropped++;
+      } else {
+        // Once events go to the overflow, the following ones have to as
+        // well, until it's drained, so that the order is kept.
+        overflow.add(event);
+        overflowing = true;
+      }
+    }
+  }
+
+
+  /**
+   * Takes the next event out of the queue, or returns null if it's empty.
+   * Only one thread at a time may call this.
+   */
+  public Event poll() {
+    Event event = pending;
+    if (event != null) {
+      pending = null;
+    } else {
+      event = take();
+    }
+    if (event != null && coalescing && isMotion(event)) {
+      Event next;
+      while ((next = take()) != null) {
+        if (sameMotion(event, next)) {
+          event = next;
+          coalesced++;
+        } else {
+          pending = next;
+          break;
+        }
+      }
+    }
+    return event;
+  }
+
+
+  protected Event take() {
+    long h = head;
+    if (h != tail) {
+      int index = (int) h & mask;
+      Event event = events[index];
+      events[index] = null;
+      head = h + 1;
+      return event;
+    }
+    // Everything in the overflow is newer than what was in the buffer,
+    // and the buffer isn't written again until the overflow is empty.
+    if (overflowing) {
+      synchronized (producerLock) {
+        Event event = overflow.poll();
+        if (overflow.isEmpty()) {
+          overflowing = false;
+        }
+        return event;
+      }
+    }
+    return null;
+  }
+
+
+  public boolean isEmpty() {
+    return pending == null && head == tail && !overflowing;
+  }
+
+
+  /**
+   * Merges consecutive mouse move and drag events into the last one.
+   * Off by default.
+   */
+  public void coalesce(boolean coalesce) {
+    coalescing = coalesce;
+  }
+
+
+  public boolean isCoalescing() {
+    return coalescing;
+  }
+
+
+  /** Number of motion events dropped because the queue was full. */
+  public long droppedCount() {
+    return dropped;
+  }
+
+
+  /** Number of motion events merged into a later one by coalesce(). */
+  public long coalescedCount() {
+    return coalesced;
+  }
+
+
+  public int capacity() {
+    return events.length;
+  }
+
+
+  static protected boolean isMotion(Event event) {
+    if (event.getFlavor() == Event.MOUSE) {
+      int action = event.getAction();
+      return action == MouseEvent.MOVE || action == MouseEvent.DRAG;
+    }
+    return false;
+  }
+
+
+  static protected boolean sameMotion(Event a, Event b) {
+    return isMotion(b) &&
+      a.getAction() == b.getAction() &&
+      a.getModifiers() == b.getModifiers() &&
+      ((MouseEvent) a).getButton() == ((MouseEvent) b).getButton();
+  }
+}
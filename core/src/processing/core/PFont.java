@@ -538,6 +538,16 @@ public class PFont implements PConstants {
   }
 
 
+  /**
+   * Return the number of pixels around the glyphs covered by their signed
+   * distance fields, which is the largest distance to the outline that the
+   * fields can encode.
+   */
+  public int getDistanceFieldSpread() {
+    return Math.max(2, size / 8);
+  }
+
+
 //  public void setDefaultSize(int size) {
 //    defaultSize = size;
 //  }
@@ -962,6 +972,70 @@ public class PFont implements PConstants {
   }
 
 
+  /**
+   * Resolution multiplier used to rasterize the glyph outlines when
+   * computing their distance fields.
+   */
+  static protected final int DISTANCE_FIELD_SUPERSAMPLING = 4;
+
+
+  /**
+   * Squared euclidean distance from every pixel to the nearest pixel that is
+   * inside (or outside) of the shape, using the two-pass algorithm from
+   * Felzenszwalb and Huttenlocher, "Distance Transforms of Sampled Functions".
+   */
+  static protected float[] distanceTransform(boolean[] inside, int w, int h,
+                                             boolean toInside) {
+    float inf = (float) (w * w + h * h);
+    float[] grid = new float[w * h];
+    for (int i = 0; i < grid.length; i++) {
+      grid[i] = inside[i] == toInside ? 0 : inf;
+    }
+
+    int n = Math.max(w, h);
+    float[] f = new float[n];
+    float[] d = new float[n];
+    float[] z = new float[n + 1];
+    int[] v = new int[n];
+    for (int x = 0; x < w; x++) {
+      for (int y = 0; y < h; y++) f[y] = grid[y * w + x];
+      distanceTransform(f, h, d, v, z);
+      for (int y = 0; y < h; y++) grid[y * w + x] = d[y];
+    }
+    for (int y = 0; y < h; y++) {
+      System.arraycopy(grid, y * w, f, 0, w);
+      distanceTransform(f, w, d, v, z);
+      System.arraycopy(d, 0, grid, y * w, w);
+    }
+    return grid;
+  }
+
+
+  static private void distanceTransform(float[] f, int n,
+                                        float[] d, int[] v, float[] z) {
+    int k = 0;
+    v[0] = 0;
+    z[0] = Float.NEGATIVE_INFINITY;
+    z[1] = Float.POSITIVE_INFINITY;
+    for (int q = 1; q < n; q++) {
+      float s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2 * q - 2 * v[k]);
+      while (s <= z[k]) {
+        k--;
+        s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2 * q - 2 * v[k]);
+      }
+      k++;
+      v[k] = q;
+      z[k] = s;
+      z[k + 1] = Float.POSITIVE_INFINITY;
+    }
+    k = 0;
+    for (int q = 0; q < n; q++) {
+      while (z[k + 1] < q) k++;
+      d[q] = (q - v[k]) * (q - v[k]) + f[v[k]];
+    }
+  }
+
+
   //////////////////////////////////////////////////////////////
 
 
@@ -970,6 +1044,7 @@ public class PFont implements PConstants {
    */
   public class Glyph {
     public PImage image;
+    protected PImage distanceField;
     public int value;
     public int height;
     public int width;
@@ -1057,6 +1132,79 @@ public class PFont implements PConstants {
     }
 
 
+    /**
+     * Return the signed distance field of this glyph, computed the first
+     * time it is requested. The field is an ALPHA image that extends the
+     * glyph's bitmap by getDistanceFieldSpread() pixels on each side, where
+     * 128 corresponds to the outline and larger values are inside it.
+     * The outline of the native font is used when available, otherwise
+     * the field is computed from the glyph's bitmap.
+     */
+    public PImage getDistanceField() {
+      if (distanceField == null) {
+        int spread = getDistanceFieldSpread();
+        int ss = DISTANCE_FIELD_SUPERSAMPLING;
+        int w = (width + 2 * spread) * ss;
+        int h = (height + 2 * spread) * ss;
+        boolean[] inside = new boolean[w * h];
+
+        if (font != null) {
+          // Rasterize the outline at a higher resolution, with the origin
+          // at the top-left corner of the distance field.
+          BufferedImage mask = new BufferedImage(w, h,
+                                                 BufferedImage.TYPE_BYTE_GRAY);
+          Graphics2D g = mask.createGraphics();
+          g.setColor(Color.white);
+          g.scale(ss, ss);
+          g.translate(spread - leftExtent, spread + topExtent);
+          Font base = font.deriveFont((float) size);
+          FontRenderContext frc = g.getFontRenderContext();
+          g.fill(base.createGlyphVector(frc, new char[] { (char) value }).getOutline());
+          g.dispose();
+          byte[] samples = ((DataBufferByte) mask.getRaster().getDataBuffer()).getData();
+          for (int i = 0; i < samples.length; i++) {
+            inside[i] = (samples[i] & 0xff) >= 128;
+          }
+        } else if (image != null) {
+          for (int y = 0; y < h; y++) {
+            int gy = y / ss - spread;
+            if (gy < 0 || height <= gy) continue;
+            for (int x = 0; x < w; x++) {
+              int gx = x / ss - spread;
+              if (gx < 0 || width <= gx) continue;
+              inside[y * w + x] = (image.pixels[gy * width + gx] & 0xff) >= 128;
+            }
+          }
+        }
+
+        float[] outer = distanceTransform(inside, w, h, true);
+        float[] inner = distanceTransform(inside, w, h, false);
+
+        int dw = w / ss;
+        int dh = h / ss;
+        distanceField = new PImage(dw, dh, ALPHA);
+        int[] pixels = distanceField.pixels;
+        float norm = 1f / (ss * ss * ss * 2 * spread);
+        for (int y = 0; y < dh; y++) {
+          for (int x = 0; x < dw; x++) {
+            // Averaging the signed distances of the supersampled block.
+            float sum = 0;
+            for (int j = y * ss; j < (y + 1) * ss; j++) {
+              for (int i = x * ss; i < (x + 1) * ss; i++) {
+                int idx = j * w + i;
+                sum += inside[idx] ? (float) Math.sqrt(inner[idx]) - 0.5f :
+                                     0.5f - (float) Math.sqrt(outer[idx]);
+              }
+            }
+            float val = 0.5f + sum * norm;
+            pixels[y * dw + x] = Math.max(0, Math.min(255, (int) (255 * val + 0.5f)));
+          }
+        }
+      }
+      return distanceField;
+    }
+
+
     protected Glyph(char c) {
       int mbox3 = size * 3;
       lazyGraphics.setColor(Color.white);
@@ -0,0 +1,214 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.Arrays;
+
+
+/**
+ * Durations of the stages of the most recent frames, kept in a ring buffer
+ * so that a sketch can look at the frame pacing and the jitter, not only at
+ * the averaged frameRate. Use {@link PApplet#frameTimings()} to get the one
+ * of a sketch:
+ * <pre>
+ * PFrameTimings t = frameTimings();
+ * println(t.percentile(PFrameTimings.FRAME, 99), t.last(PFrameTimings.DRAW));
+ * </pre>
+ * Times are reported in milliseconds. A frame is added to the buffer when
+ * the next one begins, so the frame being drawn is never included.
+ * <p>
+ * The buffer is written from the animation thread and not synchronized, so
+ * it should be read from that thread as well (i.e. from draw() or the
+ * event handlers).
+ */
+public class PFrameTimings {
+  /** Time between the start of this frame and the start of the next one. */
+  static public final int FRAME = 0;
+  /** Fixed timestep updates, see {@link PApplet#fixedTimestep(float)}. */
+  static public final int UPDATE = 1;
+  /** Methods registered as "pre" by libraries. */
+  static public final int PRE = 2;
+  /** The draw() method of the sketch. */
+  static public final int DRAW = 3;
+  /** Mouse and key events queued during the frame. */
+  static public final int EVENTS = 4;
+  /** Methods registered as "draw" and "post", and the end of the frame. */
+  static public final int POST = 5;
+  /**
+   * Copying the frame to the screen: drawing the image of the default
+   * renderer on the window, or swapping the buffers with P2D and P3D.
+   */
+  static public final int SWAP = 6;
+
+  static final int STAGES = 7;
+
+  static final int DEFAULT_CAPACITY = 256;
+
+  protected final long[][] nanos;
+  protected final long[] current = new long[STAGES];
+  protected int head;
+  protected int count;
+  protected long frameStart = -1;
+  protected long[] scratch;
+
+
+  public PFrameTimings() {
+    this(DEFAULT_CAPACITY);
+  }
+
+
+  public PFrameTimings(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("The capacity must be at least 1");
+    }
+    nanos = new long[STAGES][capacity];
+  }
+
+
+  /**
+   * Marks the start of a new frame, which stores the previous one in the
+   * buffer with its total time being the time between the two starts.
+   */
+  void beginFrame(long now) {
+    if (frameStart != -1) {
+      current[FRAME] = now - frameStart;
+      int cap = capacity();
+      for (int s = 0; s < STAGES; s++) {
+        nanos[s][head] = current[s];
+      }
+      head = (head + 1) % cap;
+      if (count < cap) count++;
+    }
+    Arrays.fill(current, 0);
+    frameStart = now;
+  }
+
+
+  /**
+   * Adds the time between start and end to the given stage of the current
+   * frame. Used by the surfaces to report the SWAP stage.
+   */
+  public void record(int stage, long start, long end) {
+    current[stage] += end - start;
+  }
+
+
+  /**
+   * Forgets the start of the current frame, so that the next one is not
+   * counted as lasting through a pause (e.g. after noLoop()).
+   */
+  public void reset() {
+    frameStart = -1;
+  }
+
+
+  /** Removes all the frames from the buffer. */
+  public void clear() {
+    count = 0;
+    head = 0;
+    frameStart = -1;
+  }
+
+
+  public int capacity() {
+    return nanos[0].length;
+  }
+
+
+  /** Number of frames in the buffer, at most capacity(). */
+  public int count() {
+    return count;
+  }
+
+
+  /**
+   * Returns the duration, in nanoseconds, of the given stage in a frame,
+   * with 0 being the last complete frame, 1 the one before, etc.
+   */
+  public long nanos(int stage, int framesAgo) {
+    if (framesAgo < 0 || framesAgo >= count) {
+      throw new IndexOutOfBoundsException("Only " + count + " frames " +
+                                          "are available");
+    }
+    int cap = capacity();
+    return nanos[stage][(head - 1 - framesAgo + cap) % cap];
+  }
+
+
+  /** Duration in milliseconds of the stage in the last complete frame. */
+  public float last(int stage) {
+    return (count == 0) ? 0 : nanos(stage, 0) / 1e6f;
+  }
+
+
+  /** Average duration in milliseconds of the stage over the buffer. */
+  public float average(int stage) {
+    if (count == 0) return 0;
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += nanos[stage][i];
+    }
+    return (float) (sum / 1e6 / count);
+  }
+
+
+  /** Longest duration in milliseconds of the stage over the buffer. */
+  public float max(int stage) {
+    long max = 0;
+    for (int i = 0; i < count; i++) {
+      max = Math.max(max, nanos[stage][i]);
+    }
+    return max / 1e6f;
+  }
+
+
+  /**
+   * Returns the given percentile (between 0 and 100) of the durations of a
+   * stage over the buffer, in milliseconds, using the nearest rank.
+   */
+  public float percentile(int stage, float p) {
+    if (count == 0) return 0;
+    if (scratch == null || scratch.length < count) {
+      scratch = new long[capacity()];
+    }
+    System.arraycopy(nanos[stage], 0, scratch, 0, count);
+    Arrays.sort(scratch, 0, count);
+    int rank = (int) Math.ceil(PApplet.constrain(p, 0, 100) / 100 * count);
+    return scratch[Math.max(0, rank - 1)] / 1e6f;
+  }
+
+
+  public float p50(int stage) {
+    return percentile(stage, 50);
+  }
+
+
+  public float p95(int stage) {
+    return percentile(stage, 95);
+  }
+
+
+  public float p99(int stage) {
+    return percentile(stage, 99);
+  }
+}
@@ -0,0 +1,144 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+
+/**
+ * Result of a task started with {@link PApplet#async(Callable)}, meant to
+ * be checked from draw() without blocking:
+ * <pre>
+ * import java.util.concurrent.Callable;
+ *
+ * PFuture&lt;String[]&gt; lines;
+ *
+ * void setup() {
+ *   lines = async(new Callable&lt;String[]&gt;() {
+ *     public String[] call() {
+ *       return loadStrings("http://example.com/data.txt");
+ *     }
+ *   });
+ * }
+ *
+ * void draw() {
+ *   if (lines.isDone()) {
+ *     println(lines.get().length);
+ *   }
+ * }
+ * </pre>
+ * If the task threw an exception, get() throws it again on the thread
+ * calling it, wrapped in a RuntimeException when it's a checked one.
+ */
+public class PFuture<T> {
+  protected final FutureTask<T> task;
+
+
+  protected PFuture(Callable<T> callable) {
+    task = new FutureTask<>(callable);
+  }
+
+
+  /** True once the task has finished, failed, or was cancelled. */
+  public boolean isDone() {
+    return task.isDone();
+  }
+
+
+  /** True if the task finished by throwing an exception. */
+  public boolean isFailed() {
+    return getError() != null;
+  }
+
+
+  public boolean isCancelled() {
+    return task.isCancelled();
+  }
+
+
+  /**
+   * Returns the result of the task, or null if it's not done yet.
+   * Never blocks.
+   */
+  public T get() {
+    if (!task.isDone() || task.isCancelled()) {
+      return null;
+    }
+    return await();
+  }
+
+
+  /**
+   * Waits for the task to finish and returns its result. Avoid calling
+   * this from draw(), since the sketch will freeze until the task is done.
+   */
+  public T await() {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (CancellationException e) {
+      return null;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+
+  /**
+   * Returns the exception thrown by the task, or null if it has not
+   * failed (or is not done yet).
+   */
+  public Throwable getError() {
+    if (!task.isDone() || task.isCancelled()) {
+      return null;
+    }
+    try {
+      task.get();
+      return null;
+    } catch (ExecutionException e) {
+      return e.getCause();
+    } catch (InterruptedException | CancellationException e) {
+      return null;
+    }
+  }
+
+
+  /**
+   * Stops the task if it hasn't started yet, or interrupts it if it's
+   * running. Returns false if it had already finished.
+   */
+  public boolean cancel() {
+    return task.cancel(true);
+  }
+}
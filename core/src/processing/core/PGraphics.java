@@ -4393,7 +4393,7 @@ public class PGraphics extends PImage implements PConstants {
    * ( end auto-generated )
    *
    * @webref typography:attributes
-   * @param mode either MODEL or SHAPE
+   * @param mode either MODEL, SHAPE or SDF
    * @see PApplet#loadFont(String)
    * @see PFont#PFont
    * @see PGraphics#text(String, float, float)
@@ -4419,6 +4419,7 @@ public class PGraphics extends PImage implements PConstants {
       switch (mode) {
         case MODEL: modeStr = "MODEL"; break;
         case SHAPE: modeStr = "SHAPE"; break;
+        case SDF: modeStr = "SDF"; break;
       }
       showWarning("textMode(" + modeStr + ") is not supported by this renderer.");
     }
@@ -0,0 +1,479 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+
+/**
+ * An immutable Perlin noise generator, producing the same values as
+ * {@link PApplet#noise(float, float, float)} for the same seed and detail
+ * settings. Since it has no mutable state, a single generator can be shared
+ * by any number of threads.
+ * <p>
+ * Besides the scalar noise() methods, the fill() methods evaluate the noise
+ * on a regular grid and write the results into a float array or buffer,
+ * x varying fastest. The sample at grid position (i, j, k) is taken at
+ * (x0 + i*dx, y0 + j*dy, z0 + k*dz), so it matches exactly what noise()
+ * returns for the same coordinates. Grids with at least
+ * {@link #PARALLEL_MIN_SAMPLES} samples are split in bands of rows that are
+ * filled in parallel.
+ * <p>
+ * A generator with the current settings of a sketch is returned by
+ * {@link PApplet#noiseGenerator()}, or one can be created from a seed:
+ * <pre>
+ * PNoise gen = new PNoise(1234, 8, 0.5f);
+ * float[] field = new float[width * height];
+ * gen.fill(field, width, height, 0, 0, 0.01f, 0.01f);
+ * </pre>
+ *
+ * @see PApplet#noise(float, float, float)
+ */
+public final class PNoise {
+  // Same lattice as PApplet, see the comments on the implementation there.
+  static final int PERLIN_YWRAPB = PApplet.PERLIN_YWRAPB;
+  static final int PERLIN_YWRAP = PApplet.PERLIN_YWRAP;
+  static final int PERLIN_ZWRAPB = PApplet.PERLIN_ZWRAPB;
+  static final int PERLIN_ZWRAP = PApplet.PERLIN_ZWRAP;
+  static final int PERLIN_WWRAPB = 10;
+  static final int PERLIN_WWRAP = 1<<PERLIN_WWRAPB;
+  static final int PERLIN_SIZE = PApplet.PERLIN_SIZE;
+
+  static final float[] perlin_cosTable = PGraphics.cosLUT;
+  static final int perlin_TWOPI = PGraphics.SINCOS_LENGTH;
+  static final int perlin_PI = PGraphics.SINCOS_LENGTH >> 1;
+
+  /** Number of samples above which the fill() methods run in parallel. */
+  static public int PARALLEL_MIN_SAMPLES = 64 * 1024;
+
+  /** Number of samples filled by each parallel task, at least one row. */
+  static public int PARALLEL_BAND_SAMPLES = 16 * 1024;
+
+  final float[] perlin;
+  final int octaves;
+  final float falloff;
+
+
+  /**
+   * Creates a generator with the default detail (4 octaves, 0.5 falloff)
+   * and the given seed, equivalent to calling noiseSeed(seed).
+   */
+  public PNoise(long seed) {
+    this(seed, 4, 0.5f);
+  }
+
+
+  /**
+   * Creates a generator equivalent to calling noiseSeed(seed) followed by
+   * noiseDetail(octaves, falloff).
+   */
+  public PNoise(long seed, int octaves, float falloff) {
+    this(createTable(new Random(seed)), octaves, falloff);
+  }
+
+
+  /**
+   * Uses the table as is, without copying it, so it must not be modified
+   * after this call.
+   */
+  PNoise(float[] perlin, int octaves, float falloff) {
+    if (octaves <= 0) {
+      throw new IllegalArgumentException("The number of octaves must be " +
+                                         "greater than 0");
+    }
+    if (falloff <= 0) {
+      throw new IllegalArgumentException("The falloff must be greater than 0");
+    }
+    this.perlin = perlin;
+    this.octaves = octaves;
+    this.falloff = falloff;
+  }
+
+
+  static float[] createTable(Random random) {
+    float[] table = new float[PERLIN_SIZE + 1];
+    for (int i = 0; i < PERLIN_SIZE + 1; i++) {
+      table[i] = random.nextFloat();
+    }
+    return table;
+  }
+
+
+  /**
+   * Returns a generator with the same table and the given detail.
+   */
+  public PNoise detail(int octaves, float falloff) {
+    return new PNoise(perlin, octaves, falloff);
+  }
+
+
+  public int octaves() {
+    return octaves;
+  }
+
+
+  public float falloff() {
+    return falloff;
+  }
+
+
+
+  //////////////////////////////////////////////////////////////
+
+  // SCALAR NOISE
+
+
+  public float noise(float x) {
+    return noise1(x < 0 ? -x : x);
+  }
+
+
+  public float noise(float x, float y) {
+    return noise2(x < 0 ? -x : x, y < 0 ? -y : y);
+  }
+
+
+  public float noise(float x, float y, float z) {
+    return noise3(x < 0 ? -x : x, y < 0 ? -y : y, z < 0 ? -z : z);
+  }
+
+
+  /**
+   * Four dimensional noise, for instance a 3D field changing over time.
+   * There is no 4D version of noise() in PApplet, but for w = 0 this
+   * returns the same as noise(x, y, z).
+   */
+  public float noise(float x, float y, float z, float w) {
+    return noise4(x < 0 ? -x : x, y < 0 ? -y : y, z < 0 ? -z : z,
+                  w < 0 ? -w : w);
+  }
+
+
+
+  //////////////////////////////////////////////////////////////
+
+  // GRIDS
+
+
+  /**
+   * Fills the first nx elements of the array with 1D noise starting at x0,
+   * with a step of dx between samples.
+   */
+  public float[] fill(float[] out, int nx, float x0, float dx) {
+    checkSize(out.length, nx);
+    fillRows(out, null, 0, nx, 1, 1, x0, 0, 0, 0, dx, 0, 0, 1);
+    return out;
+  }
+
+
+  /**
+   * Fills an nx by ny grid of 2D noise, stored row by row.
+   */
+  public float[] fill(float[] out, int nx, int ny,
+                      float x0, float y0, float dx, float dy) {
+    checkSize(out.length, nx, ny);
+    fillRows(out, null, 0, nx, ny, 1, x0, y0, 0, 0, dx, dy, 0, 2);
+    return out;
+  }
+
+
+  /**
+   * Fills an nx by ny by nz grid of 3D noise, stored slice by slice.
+   */
+  public float[] fill(float[] out, int nx, int ny, int nz,
+                      float x0, float y0, float z0,
+                      float dx, float dy, float dz) {
+    checkSize(out.length, nx, ny, nz);
+    fillRows(out, null, 0, nx, ny, nz, x0, y0, z0, 0, dx, dy, dz, 3);
+    return out;
+  }
+
+
+  /**
+   * Fills an nx by ny by nz grid with the 4D noise at the given w, which
+   * is usually the time of an animated volume.
+   */
+  public float[] fill(float[] out, int nx, int ny, int nz,
+                      float x0, float y0, float z0, float w,
+                      float dx, float dy, float dz) {
+    checkSize(out.length, nx, ny, nz);
+    fillRows(out, null, 0, nx, ny, nz, x0, y0, z0, w, dx, dy, dz, 4);
+    return out;
+  }
+
+
+  /**
+   * Same as {@link #fill(float[], int, float, float)}, writing to the
+   * buffer starting at its current position. The position is not changed.
+   */
+  public FloatBuffer fill(FloatBuffer out, int nx, float x0, float dx) {
+    checkSize(out.remaining(), nx);
+    fillRows(null, out, out.position(), nx, 1, 1, x0, 0, 0, 0, dx, 0, 0, 1);
+    return out;
+  }
+
+
+  public FloatBuffer fill(FloatBuffer out, int nx, int ny,
+                          float x0, float y0, float dx, float dy) {
+    checkSize(out.remaining(), nx, ny);
+    fillRows(null, out, out.position(), nx, ny, 1,
+             x0, y0, 0, 0, dx, dy, 0, 2);
+    return out;
+  }
+
+
+  public FloatBuffer fill(FloatBuffer out, int nx, int ny, int nz,
+                          float x0, float y0, float z0,
+                          float dx, float dy, float dz) {
+    checkSize(out.remaining(), nx, ny, nz);
+    fillRows(null, out, out.position(), nx, ny, nz,
+             x0, y0, z0, 0, dx, dy, dz, 3);
+    return out;
+  }
+
+
+  public FloatBuffer fill(FloatBuffer out, int nx, int ny, int nz,
+                          float x0, float y0, float z0, float w,
+                          float dx, float dy, float dz) {
+    checkSize(out.remaining(), nx, ny, nz);
+    fillRows(null, out, out.position(), nx, ny, nz,
+             x0, y0, z0, w, dx, dy, dz, 4);
+    return out;
+  }
+
+
+  static private void checkSize(int available, int... counts) {
+    long total = 1;
+    for (int n : counts) {
+      if (n < 0) {
+        throw new IllegalArgumentException("Grid sizes cannot be negative");
+      }
+      total *= n;
+    }
+    if (total > available) {
+      throw new IndexOutOfBoundsException("A grid of " + total +
+                                          " samples does not fit in " +
+                                          available + " elements");
+    }
+  }
+
+
+  private void fillRows(final float[] arr, final FloatBuffer buf,
+                        final int offset, final int nx, int ny, int nz,
+                        final float x0, final float y0, final float z0,
+                        final float w, final float dx, final float dy,
+                        final float dz, final int dim) {
+    final int rows = ny * nz;
+    final int ny0 = ny;
+    long samples = (long) rows * nx;
+    if (samples == 0) return;
+
+    if (samples < PARALLEL_MIN_SAMPLES || rows == 1) {
+      fillBand(arr, buf, offset, 0, rows, nx, ny0,
+               x0, y0, z0, w, dx, dy, dz, dim);
+    } else {
+      final int bandRows = Math.max(1, PARALLEL_BAND_SAMPLES / nx);
+      int bands = (rows + bandRows - 1) / bandRows;
+      IntStream.range(0, bands).parallel().forEach(b -> {
+        int r0 = b * bandRows;
+        int r1 = Math.min(rows, r0 + bandRows);
+        fillBand(arr, buf, offset, r0, r1, nx, ny0,
+                 x0, y0, z0, w, dx, dy, dz, dim);
+      });
+    }
+  }
+
+
+  /**
+   * Fills rows r0 (inclusive) to r1 (exclusive), each row being nx samples
+   * along x, and rows ordered by y and then by z.
+   */
+  private void fillBand(float[] arr, FloatBuffer buf, int offset,
+                        int r0, int r1, int nx, int ny,
+                        float x0, float y0, float z0, float w,
+                        float dx, float dy, float dz, int dim) {
+    // Absolute values are taken per sample, to match noise() when the
+    // grid crosses zero.
+    float aw = w < 0 ? -w : w;
+    for (int r = r0; r < r1; r++) {
+      float y = y0 + (r % ny) * dy;
+      float z = z0 + (r / ny) * dz;
+      float ay = y < 0 ? -y : y;
+      float az = z < 0 ? -z : z;
+      int index = offset + r * nx;
+      for (int i = 0; i < nx; i++, index++) {
+        float x = x0 + i * dx;
+        float ax = x < 0 ? -x : x;
+        float value;
+        switch (dim) {
+        case 1:  value = noise1(ax); break;
+        case 2:  value = noise2(ax, ay); break;
+        case 3:  value = noise3(ax, ay, az); break;
+        default: value = noise4(ax, ay, az, aw); break;
+        }
+        if (arr != null) {
+          arr[index] = value;
+        } else {
+          buf.put(index, value);
+        }
+      }
+    }
+  }
+
+
+
+  //////////////////////////////////////////////////////////////
+
+  // KERNELS
+
+  // Coordinates are expected to be non-negative. The 1D and 2D kernels
+  // drop the interpolation along the missing axes, which in the 3D version
+  // is a multiplication by noise_fsc(0) = 0, so the results are identical.
+
+
+  private float noise1(float x) {
+    int xi = (int)x;
+    float xf = x - xi;
+    float r = 0;
+    float ampl = 0.5f;
+    for (int i = 0; i < octaves; i++) {
+      float rxf = noise_fsc(xf);
+      float n1 = perlin[xi & PERLIN_SIZE];
+      n1 += rxf*(perlin[(xi+1) & PERLIN_SIZE]-n1);
+      r += n1*ampl;
+      ampl *= falloff;
+      xi <<= 1; xf *= 2;
+      if (xf >= 1.0f) { xi++; xf--; }
+    }
+    return r;
+  }
+
+
+  private float noise2(float x, float y) {
+    int xi = (int)x, yi = (int)y;
+    float xf = x - xi;
+    float yf = y - yi;
+    float r = 0;
+    float ampl = 0.5f;
+    for (int i = 0; i < octaves; i++) {
+      int of = xi + (yi<<PERLIN_YWRAPB);
+      float rxf = noise_fsc(xf);
+      float ryf = noise_fsc(yf);
+      float n1, n2;
+      n1  = perlin[of&PERLIN_SIZE];
+      n1 += rxf*(perlin[(of+1)&PERLIN_SIZE]-n1);
+      n2  = perlin[(of+PERLIN_YWRAP)&PERLIN_SIZE];
+      n2 += rxf*(perlin[(of+PERLIN_YWRAP+1)&PERLIN_SIZE]-n2);
+      n1 += ryf*(n2-n1);
+      r += n1*ampl;
+      ampl *= falloff;
+      xi <<= 1; xf *= 2;
+      yi <<= 1; yf *= 2;
+      if (xf >= 1.0f) { xi++; xf--; }
+      if (yf >= 1.0f) { yi++; yf--; }
+    }
+    return r;
+  }
+
+
+  private float noise3(float x, float y, float z) {
+    int xi = (int)x, yi = (int)y, zi = (int)z;
+    float xf = x - xi;
+    float yf = y - yi;
+    float zf = z - zi;
+    float r = 0;
+    float ampl = 0.5f;
+    for (int i = 0; i < octaves; i++) {
+      int of = xi + (yi<<PERLIN_YWRAPB) + (zi<<PERLIN_ZWRAPB);
+      float rxf = noise_fsc(xf);
+      float ryf = noise_fsc(yf);
+      float n1 = lerp2(of, rxf, ryf);
+      float n2 = lerp2(of + PERLIN_ZWRAP, rxf, ryf);
+      n1 += noise_fsc(zf)*(n2-n1);
+      r += n1*ampl;
+      ampl *= falloff;
+      xi <<= 1; xf *= 2;
+      yi <<= 1; yf *= 2;
+      zi <<= 1; zf *= 2;
+      if (xf >= 1.0f) { xi++; xf--; }
+      if (yf >= 1.0f) { yi++; yf--; }
+      if (zf >= 1.0f) { zi++; zf--; }
+    }
+    return r;
+  }
+
+
+  private float noise4(float x, float y, float z, float w) {
+    int xi = (int)x, yi = (int)y, zi = (int)z, wi = (int)w;
+    float xf = x - xi;
+    float yf = y - yi;
+    float zf = z - zi;
+    float wf = w - wi;
+    float r = 0;
+    float ampl = 0.5f;
+    for (int i = 0; i < octaves; i++) {
+      int of = xi + (yi<<PERLIN_YWRAPB) + (zi<<PERLIN_ZWRAPB) +
+               (wi<<PERLIN_WWRAPB);
+      float rxf = noise_fsc(xf);
+      float ryf = noise_fsc(yf);
+      float rzf = noise_fsc(zf);
+      float n1 = lerp2(of, rxf, ryf);
+      float n2 = lerp2(of + PERLIN_ZWRAP, rxf, ryf);
+      n1 += rzf*(n2-n1);
+      of += PERLIN_WWRAP;
+      float n3 = lerp2(of, rxf, ryf);
+      float n4 = lerp2(of + PERLIN_ZWRAP, rxf, ryf);
+      n3 += rzf*(n4-n3);
+      n1 += noise_fsc(wf)*(n3-n1);
+      r += n1*ampl;
+      ampl *= falloff;
+      xi <<= 1; xf *= 2;
+      yi <<= 1; yf *= 2;
+      zi <<= 1; zf *= 2;
+      wi <<= 1; wf *= 2;
+      if (xf >= 1.0f) { xi++; xf--; }
+      if (yf >= 1.0f) { yi++; yf--; }
+      if (zf >= 1.0f) { zi++; zf--; }
+      if (wf >= 1.0f) { wi++; wf--; }
+    }
+    return r;
+  }
+
+
+  /** Bilinear interpolation of the xy face of the lattice cell at of. */
+  private float lerp2(int of, float rxf, float ryf) {
+    float n1, n2;
+    n1  = perlin[of&PERLIN_SIZE];
+    n1 += rxf*(perlin[(of+1)&PERLIN_SIZE]-n1);
+    n2  = perlin[(of+PERLIN_YWRAP)&PERLIN_SIZE];
+    n2 += rxf*(perlin[(of+PERLIN_YWRAP+1)&PERLIN_SIZE]-n2);
+    return n1 + ryf*(n2-n1);
+  }
+
+
+  static private float noise_fsc(float i) {
+    return 0.5f*(1.0f-perlin_cosTable[(int)(i*perlin_PI)%perlin_TWOPI]);
+  }
+}
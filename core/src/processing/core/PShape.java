@@ -2314,6 +2314,22 @@ public class PShape implements PConstants {
   }
 
 
+  /**
+   * Sets the positions of the first vertices of the shape from a list of
+   * vectors, e.g. the positions of a particle system, in a single call.
+   * Extra vectors past getVertexCount() are ignored.
+   *
+   * @param vectors the new positions
+   * @see PShape#setVertex(int, PVector)
+   */
+  public void setVertices(PVectorArray vectors) {
+    int n = Math.min(vectors.size(), getVertexCount());
+    for (int i = 0; i < n; i++) {
+      setVertex(i, vectors.x[i], vectors.y[i], vectors.z[i]);
+    }
+  }
+
+
   public PVector getNormal(int index) {
     return getNormal(index, null);
   }
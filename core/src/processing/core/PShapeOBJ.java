@@ -165,6 +165,7 @@ public class PShapeOBJ extends PShape {
       readv = readvn = readvt = false;
       String line;
       String gname = "object";
+      int[] tokens = new int[8];
       while ((line = reader.readLine()) != null) {
        // Parse the line.
         line = line.trim();
@@ -192,32 +193,43 @@ public class PShapeOBJ extends PShape {
         }
         // END OF RHINO OBJ FILES HACK
 
-        String[] parts = line.split("\\s+");
-        // if not a blank line, process the line.
-        if (parts.length > 0) {
-          if (parts[0].equals("v")) {
+        // Vertex data is most of a large file, so those lines are parsed
+        // in place instead of being split into a String for each number.
+        int tokenCount = PApplet.splitTokens(line, WHITESPACE, tokens);
+        if (tokenCount * 2 > tokens.length) {
+          tokens = new int[tokenCount * 2];
+          PApplet.splitTokens(line, WHITESPACE, tokens);
+        }
+        if (line.charAt(0) == 'v' && tokens[1] <= 2) {
+          char kind = (tokens[1] == 1) ? ' ' : line.charAt(1);
+          if (kind == ' ') {
             // vertex
-            PVector tempv = new PVector(Float.valueOf(parts[1]).floatValue(),
-                                        Float.valueOf(parts[2]).floatValue(),
-                                        Float.valueOf(parts[3]).floatValue());
-            coords.add(tempv);
+            coords.add(new PVector(parseToken(line, tokens, tokenCount, 1),
+                                   parseToken(line, tokens, tokenCount, 2),
+                                   parseToken(line, tokens, tokenCount, 3)));
             readv = true;
-          } else if (parts[0].equals("vn")) {
+            continue;
+          } else if (kind == 'n') {
             // normal
-            PVector tempn = new PVector(Float.valueOf(parts[1]).floatValue(),
-                                        Float.valueOf(parts[2]).floatValue(),
-                                        Float.valueOf(parts[3]).floatValue());
-            normals.add(tempn);
+            normals.add(new PVector(parseToken(line, tokens, tokenCount, 1),
+                                    parseToken(line, tokens, tokenCount, 2),
+                                    parseToken(line, tokens, tokenCount, 3)));
             readvn = true;
-          } else if (parts[0].equals("vt")) {
+            continue;
+          } else if (kind == 't') {
             // uv, inverting v to take into account Processing's inverted Y axis
             // with respect to OpenGL.
-            PVector tempv = new PVector(Float.valueOf(parts[1]).floatValue(),
-                                        1 - Float.valueOf(parts[2]).
-                                        floatValue());
-            texcoords.add(tempv);
+            texcoords.add(new PVector(parseToken(line, tokens, tokenCount, 1),
+                                      1 - parseToken(line, tokens, tokenCount, 2)));
             readvt = true;
-          } else if (parts[0].equals("o")) {
+            continue;
+          }
+        }
+
+        String[] parts = line.split("\\s+");
+        // if not a blank line, process the line.
+        if (parts.length > 0) {
+          if (parts[0].equals("o")) {
             // Object name is ignored, for now.
           } else if (parts[0].equals("mtllib")) {
             if (parts[1] != null) {
@@ -317,6 +329,24 @@ public class PShapeOBJ extends PShape {
   }
 
 
+  /**
+   * Parses a number from a line split with PApplet.splitTokens(), throwing
+   * an error like Float.valueOf() would if it's missing or bad.
+   */
+  static private float parseToken(String line, int[] tokens, int count,
+                                  int index) {
+    if (index >= count) {
+      throw new RuntimeException("Missing value in line: " + line);
+    }
+    float value = PApplet.parseFloat(line, tokens[index*2], tokens[index*2 + 1]);
+    if (value != value) {
+      // check whether it was an actual NaN or a bad value
+      Float.parseFloat(line.substring(tokens[index*2], tokens[index*2 + 1]));
+    }
+    return value;
+  }
+
+
   static protected void parseMTL(PApplet parent, String mtlfn, String path,
                                  BufferedReader reader,
                                  ArrayList<OBJMaterial> materials,
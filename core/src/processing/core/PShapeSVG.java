@@ -556,10 +556,14 @@ public class PShapeSVG extends PShape {
     }
 
     // use whitespace constant to get rid of extra spaces and CR or LF
-    String[] pathTokens =
-      PApplet.splitTokens(pathBuffer.toString(), "|" + WHITESPACE);
-    vertices = new float[pathTokens.length][2];
-    vertexCodes = new int[pathTokens.length];
+    String pathString = pathBuffer.toString();
+    String pathDelim = "|" + WHITESPACE;
+    int tokenCount = PApplet.splitTokens(pathString, pathDelim, null);
+    // the numbers are read from their bounds, without a String for each
+    int[] pathTokens = new int[tokenCount * 2];
+    PApplet.splitTokens(pathString, pathDelim, pathTokens);
+    vertices = new float[tokenCount][2];
+    vertexCodes = new int[tokenCount];
 
     float cx = 0;
     float cy = 0;
@@ -573,8 +577,8 @@ public class PShapeSVG extends PShape {
     float movetoX = 0;
     float movetoY = 0;
 
-    while (i < pathTokens.length) {
-      char c = pathTokens[i].charAt(0);
+    while (i < tokenCount) {
+      char c = pathString.charAt(pathTokens[i*2]);
       if (((c >= '0' && c <= '9') || (c == '-')) && implicitCommand != '\0') {
         c = implicitCommand;
         i--;
@@ -584,8 +588,8 @@ public class PShapeSVG extends PShape {
       switch (c) {
 
       case 'M':  // M - move to (absolute)
-        cx = PApplet.parseFloat(pathTokens[i + 1]);
-        cy = PApplet.parseFloat(pathTokens[i + 2]);
+        cx = parsePathFloat(pathString, pathTokens, i + 1);
+        cy = parsePathFloat(pathString, pathTokens, i + 2);
         movetoX = cx;
         movetoY = cy;
         parsePathMoveto(cx, cy);
@@ -594,8 +598,8 @@ public class PShapeSVG extends PShape {
         break;
 
       case 'm':  // m - move to (relative)
-        cx = cx + PApplet.parseFloat(pathTokens[i + 1]);
-        cy = cy + PApplet.parseFloat(pathTokens[i + 2]);
+        cx = cx + parsePathFloat(pathString, pathTokens, i + 1);
+        cy = cy + parsePathFloat(pathString, pathTokens, i + 2);
         movetoX = cx;
         movetoY = cy;
         parsePathMoveto(cx, cy);
@@ -604,53 +608,53 @@ public class PShapeSVG extends PShape {
         break;
 
       case 'L':
-        cx = PApplet.parseFloat(pathTokens[i + 1]);
-        cy = PApplet.parseFloat(pathTokens[i + 2]);
+        cx = parsePathFloat(pathString, pathTokens, i + 1);
+        cy = parsePathFloat(pathString, pathTokens, i + 2);
         parsePathLineto(cx, cy);
         i += 3;
         break;
 
       case 'l':
-        cx = cx + PApplet.parseFloat(pathTokens[i + 1]);
-        cy = cy + PApplet.parseFloat(pathTokens[i + 2]);
+        cx = cx + parsePathFloat(pathString, pathTokens, i + 1);
+        cy = cy + parsePathFloat(pathString, pathTokens, i + 2);
         parsePathLineto(cx, cy);
         i += 3;
         break;
 
         // horizontal lineto absolute
       case 'H':
-        cx = PApplet.parseFloat(pathTokens[i + 1]);
+        cx = parsePathFloat(pathString, pathTokens, i + 1);
         parsePathLineto(cx, cy);
         i += 2;
         break;
 
         // horizontal lineto relative
       case 'h':
-        cx = cx + PApplet.parseFloat(pathTokens[i + 1]);
+        cx = cx + parsePathFloat(pathString, pathTokens, i + 1);
         parsePathLineto(cx, cy);
         i += 2;
         break;
 
       case 'V':
-        cy = PApplet.parseFloat(pathTokens[i + 1]);
+        cy = parsePathFloat(pathString, pathTokens, i + 1);
         parsePathLineto(cx, cy);
         i += 2;
         break;
 
       case 'v':
-        cy = cy + PApplet.parseFloat(pathTokens[i + 1]);
+        cy = cy + parsePathFloat(pathString, pathTokens, i + 1);
         parsePathLineto(cx, cy);
         i += 2;
         break;
 
         // C - curve to (absolute)
       case 'C': {
-        float ctrlX1 = PApplet.parseFloat(pathTokens[i + 1]);
-        float ctrlY1 = PApplet.parseFloat(pathTokens[i + 2]);
-        float ctrlX2 = PApplet.parseFloat(pathTokens[i + 3]);
-        float ctrlY2 = PApplet.parseFloat(pathTokens[i + 4]);
-        float endX = PApplet.parseFloat(pathTokens[i + 5]);
-        float endY = PApplet.parseFloat(pathTokens[i + 6]);
+        float ctrlX1 = parsePathFloat(pathString, pathTokens, i + 1);
+        float ctrlY1 = parsePathFloat(pathString, pathTokens, i + 2);
+        float ctrlX2 = parsePathFloat(pathString, pathTokens, i + 3);
+        float ctrlY2 = parsePathFloat(pathString, pathTokens, i + 4);
+        float endX = parsePathFloat(pathString, pathTokens, i + 5);
+        float endY = parsePathFloat(pathString, pathTokens, i + 6);
         parsePathCurveto(ctrlX1, ctrlY1, ctrlX2, ctrlY2, endX, endY);
         cx = endX;
         cy = endY;
@@ -661,12 +665,12 @@ public class PShapeSVG extends PShape {
 
         // c - curve to (relative)
       case 'c': {
-        float ctrlX1 = cx + PApplet.parseFloat(pathTokens[i + 1]);
-        float ctrlY1 = cy + PApplet.parseFloat(pathTokens[i + 2]);
-        float ctrlX2 = cx + PApplet.parseFloat(pathTokens[i + 3]);
-        float ctrlY2 = cy + PApplet.parseFloat(pathTokens[i + 4]);
-        float endX = cx + PApplet.parseFloat(pathTokens[i + 5]);
-        float endY = cy + PApplet.parseFloat(pathTokens[i + 6]);
+        float ctrlX1 = cx + parsePathFloat(pathString, pathTokens, i + 1);
+        float ctrlY1 = cy + parsePathFloat(pathString, pathTokens, i + 2);
+        float ctrlX2 = cx + parsePathFloat(pathString, pathTokens, i + 3);
+        float ctrlY2 = cy + parsePathFloat(pathString, pathTokens, i + 4);
+        float endX = cx + parsePathFloat(pathString, pathTokens, i + 5);
+        float endY = cy + parsePathFloat(pathString, pathTokens, i + 6);
         parsePathCurveto(ctrlX1, ctrlY1, ctrlX2, ctrlY2, endX, endY);
         cx = endX;
         cy = endY;
@@ -700,10 +704,10 @@ public class PShapeSVG extends PShape {
           ctrlX = px + (px - ppx);
           ctrlY = py + (py - ppy);
         }
-        float ctrlX2 = PApplet.parseFloat(pathTokens[i + 1]);
-        float ctrlY2 = PApplet.parseFloat(pathTokens[i + 2]);
-        float endX = PApplet.parseFloat(pathTokens[i + 3]);
-        float endY = PApplet.parseFloat(pathTokens[i + 4]);
+        float ctrlX2 = parsePathFloat(pathString, pathTokens, i + 1);
+        float ctrlY2 = parsePathFloat(pathString, pathTokens, i + 2);
+        float endX = parsePathFloat(pathString, pathTokens, i + 3);
+        float endY = parsePathFloat(pathString, pathTokens, i + 4);
         parsePathCurveto(ctrlX, ctrlY, ctrlX2, ctrlY2, endX, endY);
         cx = endX;
         cy = endY;
@@ -725,10 +729,10 @@ public class PShapeSVG extends PShape {
           ctrlX = px + (px - ppx);
           ctrlY = py + (py - ppy);
         }
-        float ctrlX2 = cx + PApplet.parseFloat(pathTokens[i + 1]);
-        float ctrlY2 = cy + PApplet.parseFloat(pathTokens[i + 2]);
-        float endX = cx + PApplet.parseFloat(pathTokens[i + 3]);
-        float endY = cy + PApplet.parseFloat(pathTokens[i + 4]);
+        float ctrlX2 = cx + parsePathFloat(pathString, pathTokens, i + 1);
+        float ctrlY2 = cy + parsePathFloat(pathString, pathTokens, i + 2);
+        float endX = cx + parsePathFloat(pathString, pathTokens, i + 3);
+        float endY = cy + parsePathFloat(pathString, pathTokens, i + 4);
         parsePathCurveto(ctrlX, ctrlY, ctrlX2, ctrlY2, endX, endY);
         cx = endX;
         cy = endY;
@@ -745,10 +749,10 @@ public class PShapeSVG extends PShape {
       // to draw a polybézier. At the end of the command, the new current point
       // becomes the final (x,y) coordinate pair used in the polybézier.
       case 'Q': {
-        ctrlX = PApplet.parseFloat(pathTokens[i + 1]);
-        ctrlY = PApplet.parseFloat(pathTokens[i + 2]);
-        float endX = PApplet.parseFloat(pathTokens[i + 3]);
-        float endY = PApplet.parseFloat(pathTokens[i + 4]);
+        ctrlX = parsePathFloat(pathString, pathTokens, i + 1);
+        ctrlY = parsePathFloat(pathString, pathTokens, i + 2);
+        float endX = parsePathFloat(pathString, pathTokens, i + 3);
+        float endY = parsePathFloat(pathString, pathTokens, i + 4);
         //parsePathQuadto(cx, cy, ctrlX, ctrlY, endX, endY);
         parsePathQuadto(ctrlX, ctrlY, endX, endY);
         cx = endX;
@@ -760,10 +764,10 @@ public class PShapeSVG extends PShape {
 
       // q - quadratic curve to (relative)
       case 'q': {
-        ctrlX = cx + PApplet.parseFloat(pathTokens[i + 1]);
-        ctrlY = cy + PApplet.parseFloat(pathTokens[i + 2]);
-        float endX = cx + PApplet.parseFloat(pathTokens[i + 3]);
-        float endY = cy + PApplet.parseFloat(pathTokens[i + 4]);
+        ctrlX = cx + parsePathFloat(pathString, pathTokens, i + 1);
+        ctrlY = cy + parsePathFloat(pathString, pathTokens, i + 2);
+        float endX = cx + parsePathFloat(pathString, pathTokens, i + 3);
+        float endY = cy + parsePathFloat(pathString, pathTokens, i + 4);
         //parsePathQuadto(cx, cy, ctrlX, ctrlY, endX, endY);
         parsePathQuadto(ctrlX, ctrlY, endX, endY);
         cx = endX;
@@ -791,8 +795,8 @@ public class PShapeSVG extends PShape {
           ctrlX = px + (px - ppx);
           ctrlY = py + (py - ppy);
         }
-        float endX = PApplet.parseFloat(pathTokens[i + 1]);
-        float endY = PApplet.parseFloat(pathTokens[i + 2]);
+        float endX = parsePathFloat(pathString, pathTokens, i + 1);
+        float endY = parsePathFloat(pathString, pathTokens, i + 2);
         //parsePathQuadto(cx, cy, ctrlX, ctrlY, endX, endY);
         parsePathQuadto(ctrlX, ctrlY, endX, endY);
         cx = endX;
@@ -815,8 +819,8 @@ public class PShapeSVG extends PShape {
           ctrlX = px + (px - ppx);
           ctrlY = py + (py - ppy);
         }
-        float endX = cx + PApplet.parseFloat(pathTokens[i + 1]);
-        float endY = cy + PApplet.parseFloat(pathTokens[i + 2]);
+        float endX = cx + parsePathFloat(pathString, pathTokens, i + 1);
+        float endY = cy + parsePathFloat(pathString, pathTokens, i + 2);
         //parsePathQuadto(cx, cy, ctrlX, ctrlY, endX, endY);
         parsePathQuadto(ctrlX, ctrlY, endX, endY);
         cx = endX;
@@ -828,13 +832,13 @@ public class PShapeSVG extends PShape {
 
       // A - elliptical arc to (absolute)
       case 'A': {
-        float rx = PApplet.parseFloat(pathTokens[i + 1]);
-        float ry = PApplet.parseFloat(pathTokens[i + 2]);
-        float angle = PApplet.parseFloat(pathTokens[i + 3]);
-        boolean fa = PApplet.parseFloat(pathTokens[i + 4]) != 0;
-        boolean fs = PApplet.parseFloat(pathTokens[i + 5]) != 0;
-        float endX = PApplet.parseFloat(pathTokens[i + 6]);
-        float endY = PApplet.parseFloat(pathTokens[i + 7]);
+        float rx = parsePathFloat(pathString, pathTokens, i + 1);
+        float ry = parsePathFloat(pathString, pathTokens, i + 2);
+        float angle = parsePathFloat(pathString, pathTokens, i + 3);
+        boolean fa = parsePathFloat(pathString, pathTokens, i + 4) != 0;
+        boolean fs = parsePathFloat(pathString, pathTokens, i + 5) != 0;
+        float endX = parsePathFloat(pathString, pathTokens, i + 6);
+        float endY = parsePathFloat(pathString, pathTokens, i + 7);
         parsePathArcto(cx, cy, rx, ry, angle, fa, fs, endX, endY);
         cx = endX;
         cy = endY;
@@ -845,13 +849,13 @@ public class PShapeSVG extends PShape {
 
       // a - elliptical arc to (relative)
       case 'a': {
-        float rx = PApplet.parseFloat(pathTokens[i + 1]);
-        float ry = PApplet.parseFloat(pathTokens[i + 2]);
-        float angle = PApplet.parseFloat(pathTokens[i + 3]);
-        boolean fa = PApplet.parseFloat(pathTokens[i + 4]) != 0;
-        boolean fs = PApplet.parseFloat(pathTokens[i + 5]) != 0;
-        float endX = cx + PApplet.parseFloat(pathTokens[i + 6]);
-        float endY = cy + PApplet.parseFloat(pathTokens[i + 7]);
+        float rx = parsePathFloat(pathString, pathTokens, i + 1);
+        float ry = parsePathFloat(pathString, pathTokens, i + 2);
+        float angle = parsePathFloat(pathString, pathTokens, i + 3);
+        boolean fa = parsePathFloat(pathString, pathTokens, i + 4) != 0;
+        boolean fs = parsePathFloat(pathString, pathTokens, i + 5) != 0;
+        float endX = cx + parsePathFloat(pathString, pathTokens, i + 6);
+        float endY = cy + parsePathFloat(pathString, pathTokens, i + 7);
         parsePathArcto(cx, cy, rx, ry, angle, fa, fs, endX, endY);
         cx = endX;
         cy = endY;
@@ -872,19 +876,25 @@ public class PShapeSVG extends PShape {
         break;
 
       default:
-        String parsed =
-          PApplet.join(PApplet.subset(pathTokens, 0, i), ",");
-        String unparsed =
-          PApplet.join(PApplet.subset(pathTokens, i), ",");
+        String parsed = pathString.substring(0, pathTokens[i*2]);
+        String unparsed = pathString.substring(pathTokens[i*2]);
         System.err.println("parsed: " + parsed);
         System.err.println("unparsed: " + unparsed);
-        throw new RuntimeException("shape command not handled: " + pathTokens[i]);
+        throw new RuntimeException("shape command not handled: " +
+                                   pathString.substring(pathTokens[i*2],
+                                                        pathTokens[i*2 + 1]));
       }
 //      prevCommand = c;
     }
   }
 
 
+  /** Parses token i of the path data, as found by splitTokens(). */
+  static private float parsePathFloat(String path, int[] tokens, int i) {
+    return PApplet.parseFloat(path, tokens[i*2], tokens[i*2 + 1]);
+  }
+
+
 //      private void parsePathCheck(int num) {
 //        if (vertexCount + num-1 >= vertices.length) {
 //          //vertices = (float[][]) PApplet.expand(vertices);
@@ -22,6 +22,8 @@
 
 package processing.core;
 
+import java.util.concurrent.locks.LockSupport;
+
 
 /**
  * Surface that's not really visible. Used for PDF and friends, or as a base
@@ -38,6 +40,13 @@ public class PSurfaceNone implements PSurface {
   protected float frameRateTarget = 60;
   protected long frameRatePeriod = 1000000000L / 60L;
 
+  /**
+   * With fixedTimestep(), the animation thread parks until this long before
+   * the next frame is due and spins the rest of the time, since parking is
+   * not precise enough on most platforms.
+   */
+  static protected long PACING_SPIN_NANOS = 1000000L;
+
 
   public PSurfaceNone(PGraphics graphics) {
     this.graphics = graphics;
@@ -271,6 +280,9 @@ public class PSurfaceNone implements PSurface {
       // animation thread yields to other running threads.
       final int NO_DELAYS_PER_YIELD = 15;
 
+      // When the next frame is due, used with fixedTimestep()
+      long frameDeadline = 0L;
+
       /*
       // If size un-initialized, might be a Canvas. Call setSize() here since
       // we now have a parent object that this Canvas can use as a peer.
@@ -338,7 +350,23 @@ public class PSurfaceNone implements PSurface {
         //System.out.println("time diff is " + timeDiff);
         long sleepTime = (frameRatePeriod - timeDiff) - overSleepTime;
 
-        if (sleepTime > 0) {  // some time left in this cycle
+        if (sketch.isFixedTimestep()) {
+          // Schedule frames on absolute deadlines, so that the errors of
+          // each wait don't accumulate, unless more than a whole frame
+          // behind, in which case there's no point trying to catch up.
+          if (frameDeadline == 0L) {
+            frameDeadline = beforeTime;
+          }
+          frameDeadline += frameRatePeriod;
+          if (afterTime - frameDeadline > frameRatePeriod) {
+            frameDeadline = afterTime;
+          }
+          waitUntil(frameDeadline);
+          overSleepTime = 0L;
+          noDelays = 0;
+
+        } else if (sleepTime > 0) {  // some time left in this cycle
+          frameDeadline = 0L;
           try {
             Thread.sleep(sleepTime / 1000000L, (int) (sleepTime % 1000000L));
             noDelays = 0;  // Got some sleep, not delaying anymore
@@ -347,6 +375,7 @@ public class PSurfaceNone implements PSurface {
           overSleepTime = (System.nanoTime() - afterTime) - sleepTime;
 
         } else {    // sleepTime <= 0; the frame took longer than the period
+          frameDeadline = 0L;
           overSleepTime = 0L;
           noDelays++;
 
@@ -367,5 +396,19 @@ public class PSurfaceNone implements PSurface {
         sketch.exitActual();
       }
     }
+
+    /**
+     * Parks the thread until shortly before the deadline, then spins until
+     * it is reached.
+     */
+    protected void waitUntil(long deadline) {
+      long remaining;
+      while ((remaining = deadline - System.nanoTime()) > PACING_SPIN_NANOS) {
+        LockSupport.parkNanos(remaining - PACING_SPIN_NANOS);
+      }
+      while (deadline - System.nanoTime() > 0) {
+        Thread.yield();
+      }
+    }
   }
 }
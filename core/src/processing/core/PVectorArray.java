@@ -0,0 +1,593 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import processing.data.ParallelOps;
+
+
+/**
+ * A list of vectors stored as three float arrays, one per component,
+ * instead of as separate PVector objects. Meant for particle systems and
+ * other sketches that move large numbers of points every frame:
+ * <pre>
+ * PVectorArray position = new PVectorArray(n);
+ * PVectorArray velocity = new PVectorArray(n);
+ * ...
+ * void draw() {
+ *   velocity.add(gravity).limit(maxSpeed);
+ *   position.add(velocity);
+ * }
+ * </pre>
+ * The operations apply to every vector of the list at once, in place,
+ * without creating any objects, so they don't cause garbage collection
+ * pauses however many vectors there are. The components can also be read
+ * and written directly through the public x, y and z arrays, which are at
+ * least size() long.
+ * <p>
+ * With parallel(true), operations on large lists are split across the
+ * available cores.
+ */
+public class PVectorArray {
+  public float[] x;
+  public float[] y;
+  public float[] z;
+
+  protected int count;
+  protected boolean parallel;
+
+
+  public PVectorArray() {
+    this(10);
+  }
+
+
+  /**
+   * Creates a list with room for <b>capacity</b> vectors, but empty.
+   */
+  public PVectorArray(int capacity) {
+    x = new float[capacity];
+    y = new float[capacity];
+    z = new float[capacity];
+  }
+
+
+  public PVectorArray(PVector... vectors) {
+    this(vectors.length);
+    for (PVector v : vectors) {
+      append(v);
+    }
+  }
+
+
+  /**
+   * Get the number of vectors in the list.
+   */
+  public int size() {
+    return count;
+  }
+
+
+  /**
+   * Sets the number of vectors in the list. New ones are set to zero.
+   */
+  public void setSize(int length) {
+    if (length > x.length) {
+      resize(length);
+    } else if (length > count) {
+      Arrays.fill(x, count, length, 0);
+      Arrays.fill(y, count, length, 0);
+      Arrays.fill(z, count, length, 0);
+    }
+    count = length;
+  }
+
+
+  public void clear() {
+    count = 0;
+  }
+
+
+  public void append(float x, float y, float z) {
+    if (count == this.x.length) {
+      resize(count << 1 | 1);
+    }
+    this.x[count] = x;
+    this.y[count] = y;
+    this.z[count] = z;
+    count++;
+  }
+
+
+  public void append(PVector v) {
+    append(v.x, v.y, v.z);
+  }
+
+
+  /**
+   * Removes a vector by moving the last one into its place, so the order
+   * of the list is not kept, but nothing else has to be moved.
+   */
+  public void removeFast(int index) {
+    boundsProblem(index, "removeFast");
+    count--;
+    x[index] = x[count];
+    y[index] = y[count];
+    z[index] = z[count];
+  }
+
+
+  protected void resize(int length) {
+    x = Arrays.copyOf(x, length);
+    y = Arrays.copyOf(y, length);
+    z = Arrays.copyOf(z, length);
+  }
+
+
+  /**
+   * Copies a vector of the list into <b>target</b>, or into a new PVector
+   * if target is null.
+   */
+  public PVector get(int index, PVector target) {
+    boundsProblem(index, "get");
+    if (target == null) {
+      target = new PVector();
+    }
+    return target.set(x[index], y[index], z[index]);
+  }
+
+
+  public PVector get(int index) {
+    return get(index, null);
+  }
+
+
+  public void set(int index, float x, float y, float z) {
+    boundsProblem(index, "set");
+    this.x[index] = x;
+    this.y[index] = y;
+    this.z[index] = z;
+  }
+
+
+  public void set(int index, PVector v) {
+    set(index, v.x, v.y, v.z);
+  }
+
+
+  public PVectorArray copy() {
+    PVectorArray outgoing = new PVectorArray(count);
+    System.arraycopy(x, 0, outgoing.x, 0, count);
+    System.arraycopy(y, 0, outgoing.y, 0, count);
+    System.arraycopy(z, 0, outgoing.z, 0, count);
+    outgoing.count = count;
+    outgoing.parallel = parallel;
+    return outgoing;
+  }
+
+
+  /**
+   * Runs the operations on large lists on all the cores. Off by default.
+   */
+  public PVectorArray parallel(boolean parallel) {
+    this.parallel = parallel;
+    return this;
+  }
+
+
+  public boolean isParallel() {
+    return parallel;
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // OPERATIONS
+
+
+  /**
+   * Adds the vectors of another list to these, one by one.
+   */
+  public PVectorArray add(PVectorArray v) {
+    return add(v, 1);
+  }
+
+
+  /**
+   * Adds the vectors of another list scaled by a factor, i.e. does
+   * position.add(velocity * dt) for all the vectors.
+   */
+  public PVectorArray add(PVectorArray v, float scale) {
+    sizeProblem(v, "add");
+    final float[] vx = v.x, vy = v.y, vz = v.z;
+    run((from, to) -> {
+      for (int i = from; i < to; i++) {
+        x[i] += vx[i] * scale;
+        y[i] += vy[i] * scale;
+        z[i] += vz[i] * scale;
+      }
+    });
+    return this;
+  }
+
+
+  /**
+   * Adds the same vector to all the vectors of the list.
+   */
+  public PVectorArray add(float dx, float dy, float dz) {
+    run((from, to) -> {
+      for (int i = from; i < to; i++) {
+        x[i] += dx;
+        y[i] += dy;
+        z[i] += dz;
+      }
+    });
+    return this;
+  }
+
+
+  public PVectorArray add(PVector v) {
+    return add(v.x, v.y, v.z);
+  }
+
+
+  public PVectorArray sub(PVectorArray v) {
+    return add(v, -1);
+  }
+
+
+  public PVectorArray sub(float dx, float dy, float dz) {
+    return add(-dx, -dy, -dz);
+  }
+
+
+  public PVectorArray sub(PVector v) {
+    return add(-v.x, -v.y, -v.z);
+  }
+
+
+  public PVectorArray mult(float n) {
+    run((from, to) -> {
+      for (int i = from; i < to; i++) {
+        x[i] *= n;
+        y[i] *= n;
+        z[i] *= n;
+      }
+    });
+    return this;
+  }
+
+
+  public PVectorArray div(float n) {
+    return mult(1 / n);
+  }
+
+
+  /**
+   * Sets all the vectors to a length of 1. Vectors of length 0 are left
+   * as they are.
+   */
+  public PVectorArray normalize() {
+    run((from, to) -> {
+      for (int i = from; i < to; i++) {
+        float m = x[i]*x[i] + y[i]*y[i] + z[i]*z[i];
+        if (m != 0 && m != 1) {
+          m = 1 / (float) Math.sqrt(m);
+          x[i] *= m;
+          y[i] *= m;
+          z[i] *= m;
+        }
+      }
+    });
+    return this;
+  }
+
+
+  /**
+   * Limits the magnitude of all the vectors to <b>max</b>.
+   */
+  public PVectorArray limit(float max) {
+    final float maxSq = max * max;
+    run((from, to) -> {
+      for (int i = from; i < to; i++) {
+        float m = x[i]*x[i] + y[i]*y[i] + z[i]*z[i];
+        if (m > maxSq) {
+          m = max / (float) Math.sqrt(m);
+          x[i] *= m;
+          y[i] *= m;
+          z[i] *= m;
+        }
+      }
+    });
+    return this;
+  }
+
+
+  /**
+   * Sets the magnitude of all the vectors to <b>len</b>.
+   */
+  public PVectorArray setMag(float len) {
+    run((from, to) -> {
+      for (int i = from; i < to; i++) {
+        float m = x[i]*x[i] + y[i]*y[i] + z[i]*z[i];
+        if (m != 0) {
+          m = len / (float) Math.sqrt(m);
+          x[i] *= m;
+          y[i] *= m;
+          z[i] *= m;
+        }
+      }
+    });
+    return this;
+  }
+
+
+  /**
+   * Moves each vector towards the matching one in another list.
+   *
+   * @param amt between 0.0 (no change) and 1.0 (all the way to v)
+   */
+  public PVectorArray lerp(PVectorArray v, float amt) {
+    sizeProblem(v, "lerp");
+    final float[] vx = v.x, vy = v.y, vz = v.z;
+    run((from, to) -> {
+      for (int i = from; i < to; i++) {
+        x[i] += (vx[i] - x[i]) * amt;
+        y[i] += (vy[i] - y[i]) * amt;
+        z[i] += (vz[i] - z[i]) * amt;
+      }
+    });
+    return this;
+  }
+
+
+  /**
+   * Moves all the vectors towards the same point.
+   */
+  public PVectorArray lerp(float tx, float ty, float tz, float amt) {
+    run((from, to) -> {
+      for (int i = from; i < to; i++) {
+        x[i] += (tx - x[i]) * amt;
+        y[i] += (ty - y[i]) * amt;
+        z[i] += (tz - z[i]) * amt;
+      }
+    });
+    return this;
+  }
+
+
+  public PVectorArray lerp(PVector v, float amt) {
+    return lerp(v.x, v.y, v.z, amt);
+  }
+
+
+  /**
+   * Calculates the magnitude of every vector.
+   *
+   * @param target array to fill, or null to create a new one
+   * @return target, or a new array of size() elements
+   */
+  public float[] mag(float[] target) {
+    final float[] outgoing = target(target);
+    run((from, to) -> {
+      for (int i = from; i < to; i++) {
+        outgoing[i] = (float) Math.sqrt(x[i]*x[i] + y[i]*y[i] + z[i]*z[i]);
+      }
+    });
+    return outgoing;
+  }
+
+
+  /**
+   * Calculates the distance from every vector to a point.
+   *
+   * @param target array to fill, or null to create a new one
+   * @return target, or a new array of size() elements
+   */
+  public float[] dist(float px, float py, float pz, float[] target) {
+    final float[] outgoing = target(target);
+    run((from, to) -> {
+      for (int i = from; i < to; i++) {
+        float dx = x[i] - px;
+        float dy = y[i] - py;
+        float dz = z[i] - pz;
+        outgoing[i] = (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
+      }
+    });
+    return outgoing;
+  }
+
+
+  public float[] dist(PVector v, float[] target) {
+    return dist(v.x, v.y, v.z, target);
+  }
+
+
+  /**
+   * Calculates the distance between each vector and the matching one in
+   * another list.
+   *
+   * @param target array to fill, or null to create a new one
+   * @return target, or a new array of size() elements
+   */
+  public float[] dist(PVectorArray v, float[] target) {
+    sizeProblem(v, "dist");
+    final float[] vx = v.x, vy = v.y, vz = v.z;
+    final float[] outgoing = target(target);
+    run((from, to) -> {
+      for (int i = from; i < to; i++) {
+        float dx = x[i] - vx[i];
+        float dy = y[i] - vy[i];
+        float dz = z[i] - vz[i];
+        outgoing[i] = (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
+      }
+    });
+    return outgoing;
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // BUFFERS
+
+
+  /**
+   * Returns the x components as a FloatBuffer backed by the x array, so
+   * nothing is copied and changes go both ways. The buffer is only valid
+   * until the list grows, since the arrays are then replaced.
+   */
+  public FloatBuffer xBuffer() {
+    return FloatBuffer.wrap(x, 0, count).slice();
+  }
+
+
+  /** @see PVectorArray#xBuffer() */
+  public FloatBuffer yBuffer() {
+    return FloatBuffer.wrap(y, 0, count).slice();
+  }
+
+
+  /** @see PVectorArray#xBuffer() */
+  public FloatBuffer zBuffer() {
+    return FloatBuffer.wrap(z, 0, count).slice();
+  }
+
+
+  /**
+   * Writes the vectors as x, y, z triplets, the layout used for vertex
+   * positions, starting at index <b>offset</b> of <b>target</b>.
+   *
+   * @param target array to fill, or null to create a new one
+   * @return target, or a new array of 3 * size() elements
+   */
+  public float[] interleave(float[] target, int offset) {
+    if (target == null) {
+      target = new float[offset + 3 * count];
+    }
+    final float[] outgoing = target;
+    run((from, to) -> {
+      int index = offset + 3 * from;
+      for (int i = from; i < to; i++) {
+        outgoing[index++] = x[i];
+        outgoing[index++] = y[i];
+        outgoing[index++] = z[i];
+      }
+    });
+    return outgoing;
+  }
+
+
+  /**
+   * Puts the vectors as x, y, z triplets into a buffer, e.g. a direct one
+   * to be passed to glBufferData() or glBufferSubData(), advancing its
+   * position by 3 * size().
+   */
+  public FloatBuffer interleave(FloatBuffer target) {
+    final int start = target.position();
+    if (target.remaining() < 3 * count) {
+      throw new IllegalArgumentException("The buffer has room for " +
+                                         target.remaining() / 3 +
+                                         " vectors, not " + count);
+    }
+    run((from, to) -> {
+      int index = start + 3 * from;
+      for (int i = from; i < to; i++) {
+        target.put(index++, x[i]);
+        target.put(index++, y[i]);
+        target.put(index++, z[i]);
+      }
+    });
+    target.position(start + 3 * count);
+    return target;
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+
+  protected interface Kernel {
+    void run(int from, int to);
+  }
+
+
+  /**
+   * Runs a kernel over the whole list, split in chunks across the cores
+   * when parallel is on and the list is large enough.
+   */
+  protected void run(Kernel kernel) {
+    int chunks = parallel ? ParallelOps.chunkCount(count) : 1;
+    ParallelOps.forEachChunk(count, chunks,
+                             (c, start, stop) -> kernel.run(start, stop));
+  }
+
+
+  protected float[] target(float[] target) {
+    if (target == null) {
+      return new float[count];
+    }
+    if (target.length < count) {
+      throw new IllegalArgumentException("The target array has " +
+                                         target.length + " elements, " +
+                                         "not " + count);
+    }
+    return target;
+  }
+
+
+  protected void sizeProblem(PVectorArray v, String method) {
+    if (v.count < count) {
+      throw new IllegalArgumentException(method + "() needs " + count +
+                                         " vectors, but the other list " +
+                                         "has " + v.count);
+    }
+  }
+
+
+  protected void boundsProblem(int index, String method) {
+    if (index < 0 || index >= count) {
+      final String msg = String.format("The list size is %d. " +
+        "You cannot %s() to element %d.", count, method, index);
+      throw new ArrayIndexOutOfBoundsException(msg);
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(getClass().getSimpleName() + " size=" + count + " [ ");
+    for (int i = 0; i < Math.min(count, 10); i++) {
+      if (i != 0) {
+        sb.append(", ");
+      }
+      sb.append("[ " + x[i] + ", " + y[i] + ", " + z[i] + " ]");
+    }
+    if (count > 10) {
+      sb.append(", ...");
+    }
+    sb.append(" ]");
+    return sb.toString();
+  }
+}
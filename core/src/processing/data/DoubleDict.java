@@ -711,6 +711,17 @@ public class DoubleDict {
 
   protected void sortImpl(final boolean useKeys, final boolean reverse,
                           final boolean stable) {
+    if (!useKeys) {
+      // sort the values as primitives, and move the keys along with them
+      long[] sortKeys = new long[count];
+      for (int i = 0; i < count; i++) {
+        sortKeys[i] = Sort.key(values[i], reverse);
+      }
+      reorder(Sort.order(sortKeys, count, keys, stable, reverse));
+      resetIndices();
+      return;
+    }
+
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -773,6 +784,19 @@ public class DoubleDict {
   }
 
 
+  /** Moves entry order[i] to position i, for all the entries. */
+  private void reorder(int[] order) {
+    String[] newKeys = new String[keys.length];
+    double[] newValues = new double[values.length];
+    for (int i = 0; i < count; i++) {
+      newKeys[i] = keys[order[i]];
+      newValues[i] = values[order[i]];
+    }
+    keys = newKeys;
+    values = newValues;
+  }
+
+
   /**
    * Sum all of the values in this dictionary, then return a new FloatDict of
    * each key, divided by the total sum. The total for all values will be ~1.0.
@@ -5,6 +5,8 @@ import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
 
 import processing.core.PApplet;
 
@@ -667,45 +669,9 @@ public class FloatList implements Iterable<Float> {
    * @brief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
-    new Sort() {
-      @Override
-      public int size() {
-        // if empty, don't even mess with the NaN check, it'll AIOOBE
-        if (count == 0) {
-          return 0;
-        }
-        // move NaN values to the end of the list and don't sort them
-        int right = count - 1;
-        while (data[right] != data[right]) {
-          right--;
-          if (right == -1) {  // all values are NaN
-            return 0;
-          }
-        }
-        for (int i = right; i >= 0; --i) {
-          float v = data[i];
-          if (v != v) {
-            data[i] = data[right];
-            data[right] = v;
-            --right;
-          }
-        }
-        return right + 1;
-      }
-
-      @Override
-      public int compare(int a, int b) {
-        float diff = data[b] - data[a];
-        return diff == 0 ? 0 : (diff < 0 ? -1 : 1);
-      }
-
-      @Override
-      public void swap(int a, int b) {
-        float temp = data[a];
-        data[a] = data[b];
-        data[b] = temp;
-      }
-    }.run();
+    sort();
+    // NaN values end up at the end, and stay there
+    Sort.reverse(data, count);
   }
 
 
@@ -867,6 +833,108 @@ public class FloatList implements Iterable<Float> {
   }
 
 
+  /**
+   * Sorts the list in place, lowest to highest, splitting the work across
+   * all the cores. Faster than sort() on lists with a million or so values
+   * and more, slower on short ones.
+   */
+  public void parallelSort() {
+    Arrays.parallelSort(data, 0, count);
+  }
+
+
+  /**
+   * Sums the values using all the cores. The sum is compensated, so it is
+   * usually more accurate than sumDouble() on large lists. NaN values make
+   * it NaN and infinite ones make it infinite, as with sum().
+   */
+  public double parallelSum() {
+    return ParallelOps.sum(data, count);
+  }
+
+
+  /**
+   * Average of the values, computed from parallelSum().
+   */
+  public double parallelMean() {
+    checkMinMax("parallelMean");
+    return parallelSum() / count;
+  }
+
+
+  /**
+   * Same as min(), using all the cores or NaN if all the values are NaN.
+   */
+  public float parallelMin() {
+    checkMinMax("parallelMin");
+    int index = ParallelOps.extremeIndex(data, count, false);
+    return index == -1 ? Float.NaN : data[index];
+  }
+
+
+  /**
+   * Same as max(), using all the cores or NaN if all the values are NaN.
+   */
+  public float parallelMax() {
+    checkMinMax("parallelMax");
+    int index = ParallelOps.extremeIndex(data, count, true);
+    return index == -1 ? Float.NaN : data[index];
+  }
+
+
+  /**
+   * Returns a new list with op applied to each value, using all the cores.
+   * The function may be called from several threads at once, so it should
+   * not modify anything outside of itself.
+   */
+  public FloatList parallelMap(DoubleUnaryOperator op) {
+    FloatList outgoing = new FloatList(0);
+    outgoing.data = ParallelOps.map(data, count, op);
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  /**
+   * Returns a new list with the values for which test returns true, in the
+   * same order, using all the cores.
+   */
+  public FloatList parallelFilter(DoublePredicate test) {
+    int[] found = new int[1];
+    FloatList outgoing = new FloatList(0);
+    outgoing.data = ParallelOps.filter(data, count, test, found);
+    outgoing.count = found[0];
+    return outgoing;
+  }
+
+
+  /**
+   * Returns a new list where each value is the sum of this one and all the
+   * ones before it in this list (a running total).
+   */
+  public FloatList getPrefixSum() {
+    FloatList outgoing = new FloatList(0);
+    outgoing.data = ParallelOps.prefixSum(data, count);
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  /**
+   * Counts how many values fall in each of a number of bins of equal width
+   * between low and high. A value equal to high goes in the last bin, and
+   * values outside the range (or NaN) are not counted.
+   *
+   * @param bins number of bins, the size of the list returned
+   */
+  public IntList getHistogram(float low, float high, int bins) {
+    IntList outgoing = new IntList(0);
+    outgoing.data = ParallelOps.histogram(data, count, low, high, bins);
+    outgoing.count = bins;
+    return outgoing;
+  }
+
+
   public FloatList getSubset(int start) {
     return getSubset(start, count - start);
   }
@@ -5,6 +5,8 @@ import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
 
 import processing.core.PApplet;
 
@@ -625,7 +627,7 @@ public class IntList implements Iterable<Integer> {
    * @brief Sorts the array, lowest to highest
    */
   public void sort() {
-    Arrays.sort(data, 0, count);
+    Sort.sort(data, count);
   }
 
 
@@ -636,24 +638,8 @@ public class IntList implements Iterable<Integer> {
    * @brief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
-    new Sort() {
-      @Override
-      public int size() {
-        return count;
-      }
-
-      @Override
-      public int compare(int a, int b) {
-        return data[b] - data[a];
-      }
-
-      @Override
-      public void swap(int a, int b) {
-        int temp = data[a];
-        data[a] = data[b];
-        data[b] = temp;
-      }
-    }.run();
+    sort();
+    reverse();
   }
 
 
@@ -867,6 +853,105 @@ public class IntList implements Iterable<Integer> {
 //  }
 
 
+  /**
+   * Sorts the list in place, lowest to highest, splitting the work across
+   * all the cores. Faster than sort() on lists with a million or so values
+   * and more, slower on short ones.
+   */
+  public void parallelSort() {
+    Arrays.parallelSort(data, 0, count);
+  }
+
+
+  /**
+   * Sums the values using all the cores. The result is a long, so it does
+   * not overflow the way sum() can.
+   */
+  public long parallelSum() {
+    return ParallelOps.sum(data, count);
+  }
+
+
+  /**
+   * Average of the values, computed from parallelSum().
+   */
+  public double parallelMean() {
+    checkMinMax("parallelMean");
+    return (double) parallelSum() / count;
+  }
+
+
+  /**
+   * Same as min(), using all the cores.
+   */
+  public int parallelMin() {
+    checkMinMax("parallelMin");
+    return data[ParallelOps.extremeIndex(data, count, false)];
+  }
+
+
+  /**
+   * Same as max(), using all the cores.
+   */
+  public int parallelMax() {
+    checkMinMax("parallelMax");
+    return data[ParallelOps.extremeIndex(data, count, true)];
+  }
+
+
+  /**
+   * Returns a new list with op applied to each value, using all the cores.
+   * The function may be called from several threads at once, so it should
+   * not modify anything outside of itself.
+   */
+  public IntList parallelMap(IntUnaryOperator op) {
+    IntList outgoing = new IntList(0);
+    outgoing.data = ParallelOps.map(data, count, op);
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  /**
+   * Returns a new list with the values for which test returns true, in the
+   * same order, using all the cores.
+   */
+  public IntList parallelFilter(IntPredicate test) {
+    int[] found = new int[1];
+    IntList outgoing = new IntList(0);
+    outgoing.data = ParallelOps.filter(data, count, test, found);
+    outgoing.count = found[0];
+    return outgoing;
+  }
+
+
+  /**
+   * Returns a new list where each value is the sum of this one and all the
+   * ones before it in this list (a running total).
+   */
+  public LongList getPrefixSum() {
+    LongList outgoing = new LongList(0);
+    outgoing.data = ParallelOps.prefixSum(data, count);
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  /**
+   * Counts how many values fall in each of a number of bins of equal width
+   * between low and high. Both low and high are included, and values
+   * outside the range are not counted.
+   *
+   * @param bins number of bins, the size of the list returned
+   */
+  public IntList getHistogram(int low, int high, int bins) {
+    IntList outgoing = new IntList(0);
+    outgoing.data = ParallelOps.histogram(data, count, low, high, bins);
+    outgoing.count = bins;
+    return outgoing;
+  }
+
+
   public IntList getSubset(int start) {
     return getSubset(start, count - start);
   }
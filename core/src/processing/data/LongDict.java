@@ -685,6 +685,17 @@ public class LongDict {
 
   protected void sortImpl(final boolean useKeys, final boolean reverse,
                           final boolean stable) {
+    if (!useKeys) {
+      // sort the values as primitives, and move the keys along with them
+      long[] sortKeys = new long[count];
+      for (int i = 0; i < count; i++) {
+        sortKeys[i] = Sort.key(values[i], reverse);
+      }
+      reorder(Sort.order(sortKeys, count, keys, stable, reverse));
+      resetIndices();
+      return;
+    }
+
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -726,6 +737,19 @@ public class LongDict {
   }
 
 
+  /** Moves entry order[i] to position i, for all the entries. */
+  private void reorder(int[] order) {
+    String[] newKeys = new String[keys.length];
+    long[] newValues = new long[values.length];
+    for (int i = 0; i < count; i++) {
+      newKeys[i] = keys[order[i]];
+      newValues[i] = values[order[i]];
+    }
+    keys = newKeys;
+    values = newValues;
+  }
+
+
   /**
    * Sum all of the values in this dictionary, then return a new FloatDict of
    * each key, divided by the total sum. The total for all values will be ~1.0.
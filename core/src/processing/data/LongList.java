@@ -5,6 +5,8 @@ import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
 
 import processing.core.PApplet;
 
@@ -636,25 +638,8 @@ public class LongList implements Iterable<Long> {
    * @brief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
-    new Sort() {
-      @Override
-      public int size() {
-        return count;
-      }
-
-      @Override
-      public int compare(int a, int b) {
-        long diff = data[b] - data[a];
-        return diff == 0 ? 0 : (diff < 0 ? -1 : 1);
-      }
-
-      @Override
-      public void swap(int a, int b) {
-        long temp = data[a];
-        data[a] = data[b];
-        data[b] = temp;
-      }
-    }.run();
+    sort();
+    reverse();
   }
 
 
@@ -868,6 +853,104 @@ public class LongList implements Iterable<Long> {
 //  }
 
 
+  /**
+   * Sorts the list in place, lowest to highest, splitting the work across
+   * all the cores. Faster than sort() on lists with a million or so values
+   * and more, slower on short ones.
+   */
+  public void parallelSort() {
+    Arrays.parallelSort(data, 0, count);
+  }
+
+
+  /**
+   * Sums the values using all the cores.
+   */
+  public long parallelSum() {
+    return ParallelOps.sum(data, count);
+  }
+
+
+  /**
+   * Average of the values, computed from parallelSum().
+   */
+  public double parallelMean() {
+    checkMinMax("parallelMean");
+    return (double) parallelSum() / count;
+  }
+
+
+  /**
+   * Same as min(), using all the cores.
+   */
+  public long parallelMin() {
+    checkMinMax("parallelMin");
+    return data[ParallelOps.extremeIndex(data, count, false)];
+  }
+
+
+  /**
+   * Same as max(), using all the cores.
+   */
+  public long parallelMax() {
+    checkMinMax("parallelMax");
+    return data[ParallelOps.extremeIndex(data, count, true)];
+  }
+
+
+  /**
+   * Returns a new list with op applied to each value, using all the cores.
+   * The function may be called from several threads at once, so it should
+   * not modify anything outside of itself.
+   */
+  public LongList parallelMap(LongUnaryOperator op) {
+    LongList outgoing = new LongList(0);
+    outgoing.data = ParallelOps.map(data, count, op);
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  /**
+   * Returns a new list with the values for which test returns true, in the
+   * same order, using all the cores.
+   */
+  public LongList parallelFilter(LongPredicate test) {
+    int[] found = new int[1];
+    LongList outgoing = new LongList(0);
+    outgoing.data = ParallelOps.filter(data, count, test, found);
+    outgoing.count = found[0];
+    return outgoing;
+  }
+
+
+  /**
+   * Returns a new list where each value is the sum of this one and all the
+   * ones before it in this list (a running total).
+   */
+  public LongList getPrefixSum() {
+    LongList outgoing = new LongList(0);
+    outgoing.data = ParallelOps.prefixSum(data, count);
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  /**
+   * Counts how many values fall in each of a number of bins of equal width
+   * between low and high. Both low and high are included, and values
+   * outside the range are not counted.
+   *
+   * @param bins number of bins, the size of the list returned
+   */
+  public IntList getHistogram(long low, long high, int bins) {
+    IntList outgoing = new IntList(0);
+    outgoing.data = ParallelOps.histogram(data, count, low, high, bins);
+    outgoing.count = bins;
+    return outgoing;
+  }
+
+
   public LongList getSubset(int start) {
     return getSubset(start, count - start);
   }
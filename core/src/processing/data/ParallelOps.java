@@ -0,0 +1,600 @@
+package processing.data;
+
+import java.util.Arrays;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.IntStream;
+
+
+/**
+ * Parallel loops over the backing arrays of IntList, LongList, FloatList
+ * and DoubleList (and the arrays of PVectorArray). The first count elements of an array are split into
+ * contiguous chunks that run on the common fork/join pool, each chunk
+ * writes its result to its own slot of a primitive array, and the slots are
+ * combined on the calling thread. Lists too short to be worth it are
+ * handled as a single chunk on the calling thread.
+ * <p>
+ * Internal helper, not official API.
+ */
+public class ParallelOps {
+  // smallest number of elements handed to a separate task
+  static final int MIN_CHUNK = 1 << 14;
+
+
+  public interface ChunkTask {
+    void run(int chunk, int start, int stop);
+  }
+
+
+  /**
+   * Number of chunks to split count elements into, 1 when there are too
+   * few of them to be worth running in parallel.
+   */
+  static public int chunkCount(int count) {
+    int chunks = (count + MIN_CHUNK - 1) / MIN_CHUNK;
+    // a few chunks per core, so that a slow one doesn't hold up the rest
+    int limit = Runtime.getRuntime().availableProcessors() * 4;
+    return Math.max(1, Math.min(chunks, limit));
+  }
+
+
+  static int chunkStart(int chunk, int chunks, int count) {
+    return (int) ((long) count * chunk / chunks);
+  }
+
+
+  static public void forEachChunk(int count, int chunks, ChunkTask task) {
+    if (chunks == 1) {
+      task.run(0, 0, count);
+    } else {
+      IntStream.range(0, chunks).parallel().forEach(c ->
+        task.run(c, chunkStart(c, chunks, count), chunkStart(c+1, chunks, count)));
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // SUM
+
+
+  /**
+   * Compensated (Kahan-Babuska) sum, so the rounding error does not grow
+   * with the number of elements. Each chunk keeps its own sum and
+   * compensation, which are then added together the same way. With
+   * infinite values (or an overflow) the plain sum is returned, since the
+   * compensation would be inf - inf, which is NaN.
+   */
+  static double sum(float[] data, int count) {
+    int chunks = chunkCount(count);
+    double[] sums = new double[chunks];
+    double[] comps = new double[chunks];
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      double sum = 0;
+      double comp = 0;
+      for (int i = start; i < stop; i++) {
+        double v = data[i];
+        double t = sum + v;
+        if (Math.abs(sum) >= Math.abs(v)) {
+          comp += (sum - t) + v;
+        } else {
+          comp += (v - t) + sum;
+        }
+        sum = t;
+      }
+      sums[c] = sum;
+      comps[c] = comp;
+    });
+    return combine(sums, comps);
+  }
+
+
+  static double sum(double[] data, int count) {
+    int chunks = chunkCount(count);
+    double[] sums = new double[chunks];
+    double[] comps = new double[chunks];
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      double sum = 0;
+      double comp = 0;
+      for (int i = start; i < stop; i++) {
+        double v = data[i];
+        double t = sum + v;
+        if (Math.abs(sum) >= Math.abs(v)) {
+          comp += (sum - t) + v;
+        } else {
+          comp += (v - t) + sum;
+        }
+        sum = t;
+      }
+      sums[c] = sum;
+      comps[c] = comp;
+    });
+    return combine(sums, comps);
+  }
+
+
+  static private double combine(double[] sums, double[] comps) {
+    double sum = 0;
+    double comp = 0;
+    for (int c = 0; c < sums.length; c++) {
+      double v = sums[c];
+      double t = sum + v;
+      if (Math.abs(sum) >= Math.abs(v)) {
+        comp += (sum - t) + v;
+      } else {
+        comp += (v - t) + sum;
+      }
+      sum = t;
+      comp += comps[c];
+    }
+    if (Double.isInfinite(sum) || Double.isNaN(sum)) {
+      // the compensation is only meaningful when every step was finite
+      return sum;
+    }
+    return sum + comp;
+  }
+
+
+  static long sum(int[] data, int count) {
+    int chunks = chunkCount(count);
+    long[] sums = new long[chunks];
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      long sum = 0;
+      for (int i = start; i < stop; i++) {
+        sum += data[i];
+      }
+      sums[c] = sum;
+    });
+    long sum = 0;
+    for (long s : sums) {
+      sum += s;
+    }
+    return sum;
+  }
+
+
+  static long sum(long[] data, int count) {
+    int chunks = chunkCount(count);
+    long[] sums = new long[chunks];
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      long sum = 0;
+      for (int i = start; i < stop; i++) {
+        sum += data[i];
+      }
+      sums[c] = sum;
+    });
+    long sum = 0;
+    for (long s : sums) {
+      sum += s;
+    }
+    return sum;
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // MIN/MAX
+
+
+  /**
+   * Index of the smallest (or largest) value, skipping NaN values, or -1
+   * if they're all NaN. Ties go to the first index, as with minIndex().
+   */
+  static int extremeIndex(float[] data, int count, boolean max) {
+    int chunks = chunkCount(count);
+    int[] found = new int[chunks];
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      int mi = -1;
+      float m = Float.NaN;
+      for (int i = start; i < stop; i++) {
+        float d = data[i];
+        if (d == d && (mi == -1 || (max ? d > m : d < m))) {
+          m = d;
+          mi = i;
+        }
+      }
+      found[c] = mi;
+    });
+    int mi = -1;
+    for (int index : found) {
+      if (index != -1 &&
+          (mi == -1 || (max ? data[index] > data[mi] : data[index] < data[mi]))) {
+        mi = index;
+      }
+    }
+    return mi;
+  }
+
+
+  static int extremeIndex(double[] data, int count, boolean max) {
+    int chunks = chunkCount(count);
+    int[] found = new int[chunks];
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      int mi = -1;
+      double m = Double.NaN;
+      for (int i = start; i < stop; i++) {
+        double d = data[i];
+        if (d == d && (mi == -1 || (max ? d > m : d < m))) {
+          m = d;
+          mi = i;
+        }
+      }
+      found[c] = mi;
+    });
+    int mi = -1;
+    for (int index : found) {
+      if (index != -1 &&
+          (mi == -1 || (max ? data[index] > data[mi] : data[index] < data[mi]))) {
+        mi = index;
+      }
+    }
+    return mi;
+  }
+
+
+  static int extremeIndex(int[] data, int count, boolean max) {
+    int chunks = chunkCount(count);
+    int[] found = new int[chunks];
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      int mi = start;
+      for (int i = start + 1; i < stop; i++) {
+        if (max ? data[i] > data[mi] : data[i] < data[mi]) {
+          mi = i;
+        }
+      }
+      found[c] = mi;
+    });
+    int mi = found[0];
+    for (int index : found) {
+      if (max ? data[index] > data[mi] : data[index] < data[mi]) {
+        mi = index;
+      }
+    }
+    return mi;
+  }
+
+
+  static int extremeIndex(long[] data, int count, boolean max) {
+    int chunks = chunkCount(count);
+    int[] found = new int[chunks];
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      int mi = start;
+      for (int i = start + 1; i < stop; i++) {
+        if (max ? data[i] > data[mi] : data[i] < data[mi]) {
+          mi = i;
+        }
+      }
+      found[c] = mi;
+    });
+    int mi = found[0];
+    for (int index : found) {
+      if (max ? data[index] > data[mi] : data[index] < data[mi]) {
+        mi = index;
+      }
+    }
+    return mi;
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // MAP
+
+
+  static float[] map(float[] data, int count, DoubleUnaryOperator op) {
+    float[] outgoing = new float[count];
+    forEachChunk(count, chunkCount(count), (c, start, stop) -> {
+      for (int i = start; i < stop; i++) {
+        outgoing[i] = (float) op.applyAsDouble(data[i]);
+      }
+    });
+    return outgoing;
+  }
+
+
+  static double[] map(double[] data, int count, DoubleUnaryOperator op) {
+    double[] outgoing = new double[count];
+    forEachChunk(count, chunkCount(count), (c, start, stop) -> {
+      for (int i = start; i < stop; i++) {
+        outgoing[i] = op.applyAsDouble(data[i]);
+      }
+    });
+    return outgoing;
+  }
+
+
+  static int[] map(int[] data, int count, IntUnaryOperator op) {
+    int[] outgoing = new int[count];
+    forEachChunk(count, chunkCount(count), (c, start, stop) -> {
+      for (int i = start; i < stop; i++) {
+        outgoing[i] = op.applyAsInt(data[i]);
+      }
+    });
+    return outgoing;
+  }
+
+
+  static long[] map(long[] data, int count, LongUnaryOperator op) {
+    long[] outgoing = new long[count];
+    forEachChunk(count, chunkCount(count), (c, start, stop) -> {
+      for (int i = start; i < stop; i++) {
+        outgoing[i] = op.applyAsLong(data[i]);
+      }
+    });
+    return outgoing;
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // FILTER
+
+
+  /**
+   * Each chunk moves the values that pass to the front of its own range of
+   * a scratch array, then the ranges are copied one after the other, so
+   * that the values keep their order. Returns the scratch array, with the
+   * number of values kept stored in found[0].
+   */
+  static float[] filter(float[] data, int count, DoublePredicate test,
+                        int[] found) {
+    int chunks = chunkCount(count);
+    float[] scratch = new float[count];
+    int[] kept = new int[chunks];
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      int k = start;
+      for (int i = start; i < stop; i++) {
+        if (test.test(data[i])) {
+          scratch[k++] = data[i];
+        }
+      }
+      kept[c] = k - start;
+    });
+    int k = 0;
+    for (int c = 0; c < chunks; c++) {
+      int start = chunkStart(c, chunks, count);
+      System.arraycopy(scratch, start, scratch, k, kept[c]);
+      k += kept[c];
+    }
+    found[0] = k;
+    return scratch;
+  }
+
+
+  static double[] filter(double[] data, int count, DoublePredicate test,
+                         int[] found) {
+    int chunks = chunkCount(count);
+    double[] scratch = new double[count];
+    int[] kept = new int[chunks];
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      int k = start;
+      for (int i = start; i < stop; i++) {
+        if (test.test(data[i])) {
+          scratch[k++] = data[i];
+        }
+      }
+      kept[c] = k - start;
+    });
+    int k = 0;
+    for (int c = 0; c < chunks; c++) {
+      int start = chunkStart(c, chunks, count);
+      System.arraycopy(scratch, start, scratch, k, kept[c]);
+      k += kept[c];
+    }
+    found[0] = k;
+    return scratch;
+  }
+
+
+  static int[] filter(int[] data, int count, IntPredicate test, int[] found) {
+    int chunks = chunkCount(count);
+    int[] scratch = new int[count];
+    int[] kept = new int[chunks];
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      int k = start;
+      for (int i = start; i < stop; i++) {
+        if (test.test(data[i])) {
+          scratch[k++] = data[i];
+        }
+      }
+      kept[c] = k - start;
+    });
+    int k = 0;
+    for (int c = 0; c < chunks; c++) {
+      int start = chunkStart(c, chunks, count);
+      System.arraycopy(scratch, start, scratch, k, kept[c]);
+      k += kept[c];
+    }
+    found[0] = k;
+    return scratch;
+  }
+
+
+  static long[] filter(long[] data, int count, LongPredicate test,
+                       int[] found) {
+    int chunks = chunkCount(count);
+    long[] scratch = new long[count];
+    int[] kept = new int[chunks];
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      int k = start;
+      for (int i = start; i < stop; i++) {
+        if (test.test(data[i])) {
+          scratch[k++] = data[i];
+        }
+      }
+      kept[c] = k - start;
+    });
+    int k = 0;
+    for (int c = 0; c < chunks; c++) {
+      int start = chunkStart(c, chunks, count);
+      System.arraycopy(scratch, start, scratch, k, kept[c]);
+      k += kept[c];
+    }
+    found[0] = k;
+    return scratch;
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // PREFIX SUM
+
+
+  static float[] prefixSum(float[] data, int count) {
+    // accumulate in double, otherwise the error builds up quickly
+    double[] sums = new double[count];
+    for (int i = 0; i < count; i++) {
+      sums[i] = data[i];
+    }
+    Arrays.parallelPrefix(sums, Double::sum);
+    float[] outgoing = new float[count];
+    for (int i = 0; i < count; i++) {
+      outgoing[i] = (float) sums[i];
+    }
+    return outgoing;
+  }
+
+
+  static double[] prefixSum(double[] data, int count) {
+    double[] outgoing = Arrays.copyOf(data, count);
+    Arrays.parallelPrefix(outgoing, Double::sum);
+    return outgoing;
+  }
+
+
+  static long[] prefixSum(int[] data, int count) {
+    long[] outgoing = new long[count];
+    for (int i = 0; i < count; i++) {
+      outgoing[i] = data[i];
+    }
+    Arrays.parallelPrefix(outgoing, Long::sum);
+    return outgoing;
+  }
+
+
+  static long[] prefixSum(long[] data, int count) {
+    long[] outgoing = Arrays.copyOf(data, count);
+    Arrays.parallelPrefix(outgoing, Long::sum);
+    return outgoing;
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // HISTOGRAM
+
+
+  /**
+   * Counts the values in bins of equal width between low and high. A value
+   * equal to high goes in the last bin. Values outside the range, and NaN,
+   * are not counted.
+   */
+  static int[] histogram(float[] data, int count,
+                         double low, double high, int bins) {
+    checkBins(low, high, bins);
+    int chunks = chunkCount(count);
+    int[][] counts = new int[chunks][];
+    double scale = bins / (high - low);
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      int[] local = new int[bins];
+      for (int i = start; i < stop; i++) {
+        double v = data[i];
+        if (v >= low && v <= high) {
+          local[Math.min((int) ((v - low) * scale), bins - 1)]++;
+        }
+      }
+      counts[c] = local;
+    });
+    return merge(counts, bins);
+  }
+
+
+  static int[] histogram(double[] data, int count,
+                         double low, double high, int bins) {
+    checkBins(low, high, bins);
+    int chunks = chunkCount(count);
+    int[][] counts = new int[chunks][];
+    double scale = bins / (high - low);
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      int[] local = new int[bins];
+      for (int i = start; i < stop; i++) {
+        double v = data[i];
+        if (v >= low && v <= high) {
+          local[Math.min((int) ((v - low) * scale), bins - 1)]++;
+        }
+      }
+      counts[c] = local;
+    });
+    return merge(counts, bins);
+  }
+
+
+  /**
+   * Same as above, with low and high both included, so that each bin
+   * covers the same number of integers when the range divides evenly.
+   */
+  static int[] histogram(int[] data, int count, long low, long high, int bins) {
+    // high is included, so a single value is a valid range
+    checkBins(low, high + 1.0, bins);
+    int chunks = chunkCount(count);
+    int[][] counts = new int[chunks][];
+    double scale = bins / ((double) high - low + 1);
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      int[] local = new int[bins];
+      for (int i = start; i < stop; i++) {
+        long v = data[i];
+        if (v >= low && v <= high) {
+          local[Math.min((int) (((double) v - low) * scale), bins - 1)]++;
+        }
+      }
+      counts[c] = local;
+    });
+    return merge(counts, bins);
+  }
+
+
+  static int[] histogram(long[] data, int count, long low, long high, int bins) {
+    checkBins(low, high + 1.0, bins);
+    int chunks = chunkCount(count);
+    int[][] counts = new int[chunks][];
+    double scale = bins / ((double) high - low + 1);
+    forEachChunk(count, chunks, (c, start, stop) -> {
+      int[] local = new int[bins];
+      for (int i = start; i < stop; i++) {
+        long v = data[i];
+        if (v >= low && v <= high) {
+          local[Math.min((int) (((double) v - low) * scale), bins - 1)]++;
+        }
+      }
+      counts[c] = local;
+    });
+    return merge(counts, bins);
+  }
+
+
+  static private void checkBins(double low, double high, int bins) {
+    if (bins < 1) {
+      throw new IllegalArgumentException("A histogram needs at least one bin");
+    }
+    if (!(high > low)) {
+      throw new IllegalArgumentException("The high end of a histogram " +
+                                         "must be larger than the low end");
+    }
+  }
+
+
+  static private int[] merge(int[][] counts, int bins) {
+    int[] outgoing = counts[0];
+    for (int c = 1; c < counts.length; c++) {
+      int[] local = counts[c];
+      for (int b = 0; b < bins; b++) {
+        outgoing[b] += local[b];
+      }
+    }
+    return outgoing;
+  }
+}
@@ -1,9 +1,15 @@
 package processing.data;
 
+import java.util.Arrays;
+
 
 /**
  * Internal sorter used by several data classes.
  * Advanced users only, not official API.
+ * <p>
+ * Subclasses sort anything that can be compared and swapped by index.
+ * The static methods are faster versions for primitive values, which the
+ * lists, dicts and tables use when sorting numbers.
  */
 public abstract class Sort implements Runnable {
 
@@ -43,4 +49,290 @@ public abstract class Sort implements Runnable {
   abstract public int size();
   abstract public int compare(int a, int b);
   abstract public void swap(int a, int b);
+
+
+  //////////////////////////////////////////////////////////////
+
+  // PRIMITIVE KERNELS
+
+
+  // below this size, insertion sort beats partitioning
+  static final int INSERTION_THRESHOLD = 32;
+  // above this size, radix sort beats Arrays.sort() on int values
+  static final int RADIX_THRESHOLD = 1 << 16;
+
+
+  /**
+   * Sorts the first count values of an int array, lowest to highest. Large
+   * arrays are sorted with a radix sort, which makes four passes over the
+   * data regardless of its order, but needs a second array of count ints.
+   */
+  static public void sort(int[] data, int count) {
+    if (count < RADIX_THRESHOLD) {
+      Arrays.sort(data, 0, count);
+    } else {
+      radixSort(data, count);
+    }
+  }
+
+
+  /**
+   * LSD radix sort on 8 bits at a time. Flipping the sign bit makes the
+   * unsigned order of the digits match the signed order of the values.
+   */
+  static void radixSort(int[] data, int count) {
+    int[] src = data;
+    int[] dst = new int[count];
+    int[] offsets = new int[256];
+    for (int shift = 0; shift < 32; shift += 8) {
+      Arrays.fill(offsets, 0);
+      for (int i = 0; i < count; i++) {
+        offsets[((src[i] ^ 0x80000000) >>> shift) & 0xFF]++;
+      }
+      // skip the pass if every value has the same digit
+      if (offsets[((src[0] ^ 0x80000000) >>> shift) & 0xFF] == count) {
+        continue;
+      }
+      int total = 0;
+      for (int d = 0; d < 256; d++) {
+        int c = offsets[d];
+        offsets[d] = total;
+        total += c;
+      }
+      for (int i = 0; i < count; i++) {
+        int v = src[i];
+        dst[offsets[((v ^ 0x80000000) >>> shift) & 0xFF]++] = v;
+      }
+      int[] temp = src;
+      src = dst;
+      dst = temp;
+    }
+    if (src != data) {
+      System.arraycopy(src, 0, data, 0, count);
+    }
+  }
+
+
+  /**
+   * Reverses the first count values of an array that has been sorted,
+   * leaving any NaN values at the end.
+   */
+  static void reverse(float[] data, int count) {
+    while (count > 0 && data[count-1] != data[count-1]) {
+      count--;
+    }
+    for (int i = 0, j = count - 1; i < j; i++, j--) {
+      float temp = data[i];
+      data[i] = data[j];
+      data[j] = temp;
+    }
+  }
+
+
+  static void reverse(double[] data, int count) {
+    while (count > 0 && data[count-1] != data[count-1]) {
+      count--;
+    }
+    for (int i = 0, j = count - 1; i < j; i++, j--) {
+      double temp = data[i];
+      data[i] = data[j];
+      data[j] = temp;
+    }
+  }
+
+
+  /**
+   * Key for sorting a float as a long, in the same order as the float
+   * values, with -0 equal to 0 and NaN at the end. Pass reverse to get
+   * the keys for highest to lowest (NaN still at the end).
+   */
+  static long key(float value, boolean reverse) {
+    if (value != value) {
+      return Long.MAX_VALUE;
+    }
+    int bits = Float.floatToIntBits(value + 0f);  // + 0 turns -0 into 0
+    long key = bits ^ ((bits >> 31) & 0x7FFFFFFF);
+    return reverse ? ~key : key;
+  }
+
+
+  static long key(double value, boolean reverse) {
+    if (value != value) {
+      return Long.MAX_VALUE;
+    }
+    long bits = Double.doubleToLongBits(value + 0d);
+    long key = bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    return reverse ? ~key : key;
+  }
+
+
+  static long key(long value, boolean reverse) {
+    return reverse ? ~value : value;
+  }
+
+
+  /**
+   * Sorts the first count keys, lowest to highest, and moves the entries
+   * of order the same way, so that order[i] tells where the i-th key was
+   * before sorting. Only the relative order of equal keys is arbitrary.
+   */
+  static public void sort(long[] keys, int[] order, int count) {
+    dualPivot(keys, order, 0, count - 1);
+  }
+
+
+  /**
+   * Yaroslavskiy's dual-pivot quicksort, with the values equal to the
+   * pivots taken out of the middle part so that many duplicates don't
+   * make it quadratic.
+   */
+  static private void dualPivot(long[] a, int[] o, int left, int right) {
+    while (right - left >= INSERTION_THRESHOLD) {
+      int third = (right - left) / 3;
+      int m1 = left + third;
+      int m2 = right - third;
+      if (a[m1] > a[m2]) {
+        swap(a, o, m1, m2);
+      }
+      swap(a, o, m1, left);
+      swap(a, o, m2, right);
+      long p = a[left];
+      long q = a[right];
+
+      int less = left + 1;
+      int great = right - 1;
+      for (int k = less; k <= great; k++) {
+        if (a[k] < p) {
+          swap(a, o, k, less++);
+        } else if (a[k] > q) {
+          while (a[great] > q && k < great) {
+            great--;
+          }
+          swap(a, o, k, great--);
+          if (a[k] < p) {
+            swap(a, o, k, less++);
+          }
+        }
+      }
+      less--;
+      great++;
+      swap(a, o, left, less);
+      swap(a, o, right, great);
+
+      dualPivot(a, o, left, less - 1);
+      dualPivot(a, o, great + 1, right);
+
+      if (p == q) {
+        return;  // everything in the middle equals the pivots
+      }
+      // move the values equal to the pivots to the ends of the middle part
+      int lo = less + 1;
+      int hi = great - 1;
+      for (int k = lo; k <= hi; k++) {
+        if (a[k] == p) {
+          swap(a, o, k, lo++);
+        } else if (a[k] == q) {
+          while (a[hi] == q && k < hi) {
+            hi--;
+          }
+          swap(a, o, k, hi--);
+          if (a[k] == p) {
+            swap(a, o, k, lo++);
+          }
+        }
+      }
+      // continue with what's left of the middle, instead of recursing
+      left = lo;
+      right = hi;
+    }
+    insertionSort(a, o, left, right);
+  }
+
+
+  static private void insertionSort(long[] a, int[] o, int left, int right) {
+    for (int i = left + 1; i <= right; i++) {
+      long key = a[i];
+      int index = o[i];
+      int j = i - 1;
+      while (j >= left && a[j] > key) {
+        a[j+1] = a[j];
+        o[j+1] = o[j];
+        j--;
+      }
+      a[j+1] = key;
+      o[j+1] = index;
+    }
+  }
+
+
+  static private void swap(long[] a, int[] o, int i, int j) {
+    long t = a[i];
+    a[i] = a[j];
+    a[j] = t;
+    int u = o[i];
+    o[i] = o[j];
+    o[j] = u;
+  }
+
+
+  /**
+   * Returns the order of the entries of a dict sorted by the given keys,
+   * as computed by key(). With stable set, entries with the same key are
+   * ordered by name (ignoring case), like the dict sorts have always done.
+   */
+  static int[] order(long[] keys, int count, String[] names,
+                     boolean stable, boolean reverse) {
+    int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    sort(keys, order, count);
+    if (stable) {
+      int start = 0;
+      while (start < count) {
+        int stop = start + 1;
+        while (stop < count && keys[stop] == keys[start]) {
+          stop++;
+        }
+        if (stop - start > 1) {
+          sortByName(order, start, stop, names, reverse);
+        }
+        start = stop;
+      }
+    }
+    return order;
+  }
+
+
+  static private void sortByName(int[] order, int start, int stop,
+                                 String[] names, boolean reverse) {
+    if (stop - start > INSERTION_THRESHOLD) {
+      // long runs are common, e.g. the many words counted only once
+      Integer[] run = new Integer[stop - start];
+      for (int i = start; i < stop; i++) {
+        run[i - start] = order[i];
+      }
+      Arrays.sort(run, (a, b) -> compareNames(names[a], names[b], reverse));
+      for (int i = start; i < stop; i++) {
+        order[i] = run[i - start];
+      }
+      return;
+    }
+    for (int i = start + 1; i < stop; i++) {
+      int index = order[i];
+      int j = i - 1;
+      while (j >= start &&
+             compareNames(names[order[j]], names[index], reverse) > 0) {
+        order[j+1] = order[j];
+        j--;
+      }
+      order[j+1] = index;
+    }
+  }
+
+
+  static private int compareNames(String a, String b, boolean reverse) {
+    int diff = a.compareToIgnoreCase(b);
+    return reverse ? -diff : diff;
+  }
 }
\ No newline at end of file
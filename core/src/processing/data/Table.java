@@ -408,6 +408,8 @@ public class Table {
     if (rowCount == 0) {
       setRowCount(10);
     }
+    // start and stop of each piece of a TSV line, reused for all of them
+    int[] pieceBounds = new int[32];
     //int prev = 0;  //-1;
     try {
       while ((line = reader.readLine()) != null) {
@@ -417,8 +419,20 @@ public class Table {
         if (row == 0 && header) {
           setColumnTitles(tsv ? PApplet.split(line, '\t') : splitLineCSV(line, reader));
           header = false;
+        } else if (tsv) {
+          int count = PApplet.split(line, '\t', pieceBounds);
+          if (count * 2 > pieceBounds.length) {
+            pieceBounds = new int[count * 2];
+            PApplet.split(line, '\t', pieceBounds);
+          }
+          setRow(row, line, pieceBounds, count);
+          row++;
         } else {
-          setRow(row, tsv ? PApplet.split(line, '\t') : splitLineCSV(line, reader));
+          if (csl == null) {
+            csl = new CommaSeparatedLine();
+          }
+          csl.scan(line, reader);
+          setRow(row, csl, csl.bounds, csl.columnCount);
           row++;
         }
 
@@ -557,24 +571,51 @@ public class Table {
   */
 
 
-  static class CommaSeparatedLine {
-    char[] c;
-    String[] pieces;
+  /**
+   * Splits lines of CSV. The characters of the current line are kept in a
+   * buffer that's reused from one line to the next, along with the bounds
+   * of each piece, so that Strings only need to be created for the pieces
+   * that end up in String columns.
+   */
+  static class CommaSeparatedLine implements CharSequence {
+    char[] c = new char[256];
+    int length;  // number of chars of c used by the current line
+    // start and stop of each piece in c, for columnCount pieces
+    int[] bounds = new int[32];
     int pieceCount;
+    int columnCount;
 
 //    int offset;
     int start; //, stop;
 
     String[] handle(String line, BufferedReader reader) throws IOException {
+      scan(line, reader);
+      String[] pieces = new String[columnCount];
+      for (int i = 0; i < columnCount; i++) {
+        pieces[i] = new String(c, bounds[i*2], bounds[i*2 + 1] - bounds[i*2]);
+      }
+      return pieces;
+    }
+
+
+    /**
+     * Finds the pieces of the line (and the ones after it, if a quoted
+     * piece goes over several lines), leaving them in bounds.
+     */
+    void scan(String line, BufferedReader reader) throws IOException {
 //      PApplet.println("handle() called for: " + line);
       start = 0;
       pieceCount = 0;
-      c = line.toCharArray();
+      length = line.length();
+      if (c.length < length) {
+        c = new char[Math.max(length, c.length << 1)];
+      }
+      line.getChars(0, length, c, 0);
 
       // get tally of number of columns and allocate the array
       int cols = 1;  // the first comma indicates the second column
       boolean quote = false;
-      for (int i = 0; i < c.length; i++) {
+      for (int i = 0; i < length; i++) {
         if (!quote && (c[i] == ',')) {
           cols++;
         } else if (c[i] == '\"') {
@@ -583,11 +624,14 @@ public class Table {
           quote = !quote;
         }
       }
-      pieces = new String[cols];
+      columnCount = cols;
+      if (bounds.length < cols * 2) {
+        bounds = new int[cols * 2];
+      }
 
 //      while (offset < c.length) {
 //        start = offset;
-      while (start < c.length) {
+      while (start < length) {
         boolean enough = ingest();
         while (!enough) {
           // found a newline inside the quote, grab another line
@@ -600,13 +644,14 @@ public class Table {
           // for simplicity, not bothering to skip what's already been read
           // from c (and reset the offset to 0), opting to make a bigger array
           // with both lines.
-          char[] temp = new char[c.length + 1 + nextLine.length()];
-          PApplet.arrayCopy(c, temp, c.length);
+          char[] temp = new char[length + 1 + nextLine.length()];
+          PApplet.arrayCopy(c, temp, length);
           // NOTE: we're converting to \n here, which isn't perfect
-          temp[c.length] = '\n';
-          nextLine.getChars(0, nextLine.length(), temp, c.length + 1);
+          temp[length] = '\n';
+          nextLine.getChars(0, nextLine.length(), temp, length + 1);
 //          c = temp;
-          return handle(new String(temp), reader);
+          scan(new String(temp), reader);
+          return;
           //System.out.println("  full line is now " + new String(c));
           //stop = nextComma(c, offset);
           //System.out.println("stop is now " + stop);
@@ -616,11 +661,10 @@ public class Table {
 
       // Make any remaining entries blanks instead of nulls. Empty columns from
       // CSV are always "" not null, so this handles successive commas in a line
-      for (int i = pieceCount; i < pieces.length; i++) {
-        pieces[i] = "";
+      for (int i = pieceCount; i < columnCount; i++) {
+        bounds[i*2] = 0;
+        bounds[i*2 + 1] = 0;
       }
-//      PApplet.printArray(pieces);
-      return pieces;
     }
 
     protected void addPiece(int start, int stop, boolean quotes) {
@@ -635,11 +679,11 @@ public class Table {
           }
           dest++;
         }
-        pieces[pieceCount++] = new String(c, start, dest - start);
-
-      } else {
-        pieces[pieceCount++] = new String(c, start, stop - start);
+        stop = dest;
       }
+      bounds[pieceCount*2] = start;
+      bounds[pieceCount*2 + 1] = stop;
+      pieceCount++;
     }
 
     /**
@@ -659,15 +703,15 @@ public class Table {
         start++; // step over the quote
       }
       int i = start;
-      while (i < c.length) {
+      while (i < length) {
 //        PApplet.println(c[i] + " i=" + i);
         if (c[i] == '\"') {
           // if this fella started with a quote
           if (quoted) {
-            if (i == c.length-1) {
+            if (i == length-1) {
               // closing quote for field; last field on the line
               addPiece(start, i, hasEscapedQuotes);
-              start = c.length;
+              start = length;
               return true;
 
             } else if (c[i+1] == '\"') {
@@ -689,7 +733,7 @@ public class Table {
             }
 
           } else {  // not a quoted line
-            if (i == c.length-1) {
+            if (i == length-1) {
               // we're at the end of the line, can't have an unescaped quote
               throw new RuntimeException("Unterminated quote at end of line");
 
@@ -707,9 +751,9 @@ public class Table {
           start = i+1;
           return true;
 
-        } else if (!quoted && i == c.length-1) {
-          addPiece(start, c.length, hasEscapedQuotes);
-          start = c.length;
+        } else if (!quoted && i == length-1) {
+          addPiece(start, length, hasEscapedQuotes);
+          start = length;
           return true;
 
         } else {  // nothing all that interesting
@@ -736,6 +780,27 @@ public class Table {
 
       throw new RuntimeException("not sure how...");
     }
+
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return c[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new String(c, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      return new String(c, 0, length);
+    }
   }
 
 
@@ -2558,6 +2623,32 @@ public class Table {
   }
 
 
+  /**
+   * Same as setRow(int, Object[]) for pieces of a line of text, with piece
+   * i going from bounds[i*2] to bounds[i*2 + 1]. Int and float columns are
+   * parsed in place, so only the String columns need a String per piece.
+   */
+  protected void setRow(int row, CharSequence text, int[] bounds, int count) {
+    ensureBounds(row, count - 1);
+    for (int col = 0; col < count; col++) {
+      int start = bounds[col*2];
+      int stop = bounds[col*2 + 1];
+      switch (columnTypes[col]) {
+      case INT:
+        int[] intData = (int[]) columns[col];
+        intData[row] = PApplet.parseInt(text, start, stop, missingInt);
+        break;
+      case FLOAT:
+        float[] floatData = (float[]) columns[col];
+        floatData[row] = PApplet.parseFloat(text, start, stop, missingFloat);
+        break;
+      default:
+        setRowCol(row, col, text.subSequence(start, stop).toString());
+      }
+    }
+  }
+
+
   protected void setRowCol(int row, int col, Object piece) {
     switch (columnTypes[col]) {
       case STRING:
@@ -4325,31 +4416,19 @@ public class Table {
 
   protected void sort(final int column, final boolean reverse) {
     final int[] order = IntList.fromRange(getRowCount()).array();
-    Sort s = new Sort() {
+    if (getColumnType(column) == STRING) {
+      new Sort() {
 
-      @Override
-      public int size() {
-        return getRowCount();
-      }
+        @Override
+        public int size() {
+          return getRowCount();
+        }
 
-      @Override
-      public int compare(int index1, int index2) {
-        int a = reverse ? order[index2] : order[index1];
-        int b = reverse ? order[index1] : order[index2];
+        @Override
+        public int compare(int index1, int index2) {
+          int a = reverse ? order[index2] : order[index1];
+          int b = reverse ? order[index1] : order[index2];
 
-        switch (getColumnType(column)) {
-        case INT:
-          return getInt(a, column) - getInt(b, column);
-        case LONG:
-          long diffl = getLong(a, column) - getLong(b, column);
-          return diffl == 0 ? 0 : (diffl < 0 ? -1 : 1);
-        case FLOAT:
-          float difff = getFloat(a, column) - getFloat(b, column);
-          return difff == 0 ? 0 : (difff < 0 ? -1 : 1);
-        case DOUBLE:
-          double diffd = getDouble(a, column) - getDouble(b, column);
-          return diffd == 0 ? 0 : (diffd < 0 ? -1 : 1);
-        case STRING:
           String string1 = getString(a, column);
           if (string1 == null) {
             string1 = "";  // avoid NPE when cells are left empty
@@ -4359,22 +4438,19 @@ public class Table {
             string2 = "";
           }
           return string1.compareToIgnoreCase(string2);
-        case CATEGORY:
-          return getInt(a, column) - getInt(b, column);
-        default:
-          throw new IllegalArgumentException("Invalid column type: " + getColumnType(column));
         }
-      }
 
-      @Override
-      public void swap(int a, int b) {
-        int temp = order[a];
-        order[a] = order[b];
-        order[b] = temp;
-      }
+        @Override
+        public void swap(int a, int b) {
+          int temp = order[a];
+          order[a] = order[b];
+          order[b] = temp;
+        }
 
-    };
-    s.run();
+      }.run();
+    } else {
+      sortNumbers(column, reverse, order);
+    }
 
     //Object[] newColumns = new Object[getColumnCount()];
     for (int col = 0; col < getColumnCount(); col++) {
@@ -4425,6 +4501,45 @@ public class Table {
   }
 
 
+  /**
+   * Sorts the rows of a numeric column as primitives, which avoids the
+   * calls to compare() and swap() and the lookups of each cell they make.
+   */
+  private void sortNumbers(int column, boolean reverse, int[] order) {
+    long[] keys = new long[rowCount];
+    switch (getColumnType(column)) {
+    case INT:
+    case CATEGORY:
+      int[] intData = (int[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        keys[row] = Sort.key(intData[row], reverse);
+      }
+      break;
+    case LONG:
+      long[] longData = (long[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        keys[row] = Sort.key(longData[row], reverse);
+      }
+      break;
+    case FLOAT:
+      float[] floatData = (float[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        keys[row] = Sort.key(floatData[row], reverse);
+      }
+      break;
+    case DOUBLE:
+      double[] doubleData = (double[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        keys[row] = Sort.key(doubleData[row], reverse);
+      }
+      break;
+    default:
+      throw new IllegalArgumentException("Invalid column type: " + getColumnType(column));
+    }
+    Sort.sort(keys, order, rowCount);
+  }
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
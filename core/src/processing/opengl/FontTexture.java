@@ -30,7 +30,11 @@ import processing.core.PFont;
 import processing.core.PGraphics;
 import processing.core.PImage;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.WeakHashMap;
 
 /**
  * All the infrastructure needed for optimized font rendering
@@ -46,26 +50,52 @@ import java.util.HashMap;
  * OpenGL texture might not be enough to store all the glyphs,
  * so PFontTexture also takes care of spreading a single font
  * over several textures.
+ * <p/>
+ * The textures work as the pages of a glyph atlas: each page has
+ * a fixed size once created, and glyphs are packed in horizontal
+ * shelves. New glyphs are only copied into the page's CPU-side
+ * shelf buffers, and uploaded to the GPU in one sub-image call per
+ * modified shelf right before the geometry using them is drawn.
+ * When the maximum number of pages is reached, the least recently
+ * used page is cleared and its glyphs are re-added on demand. Pages
+ * used by retained shapes are never cleared, since those keep the
+ * texture coordinates of the glyphs; a new page is added instead
+ * when all of them are in use.
+ * <p/>
+ * In distance field mode, the pages store the signed distance field of
+ * each glyph instead of its bitmap, so they can be drawn at any scale
+ * with the distance field shader.
  * @author Andres Colubri
  */
 class FontTexture implements PConstants {
   protected PGL pgl;
   protected boolean is3D;
+  protected boolean sdf;
+  protected int padding;
 
   protected int minSize;
   protected int maxSize;
-  protected int offsetX;
-  protected int offsetY;
-  protected int lineHeight;
+  protected int maxPages;
   protected Texture[] textures = null;
   protected PImage[] images = null;
+  protected Page[] pages = null;
   protected int lastTex;
-  protected TextureInfo[] glyphTexinfos;
+  protected long useCount;
+  protected boolean pending;
+  protected int[] uploadBuffer;
   protected HashMap<PFont.Glyph, TextureInfo> texinfoMap;
 
   public FontTexture(PGraphicsOpenGL pg, PFont font, boolean is3D) {
+    this(pg, font, is3D, false);
+  }
+
+
+  public FontTexture(PGraphicsOpenGL pg, PFont font, boolean is3D,
+                     boolean sdf) {
     pgl = pg.pgl;
     this.is3D = is3D;
+    this.sdf = sdf;
+    padding = sdf ? font.getDistanceFieldSpread() : 0;
 
     initTexture(pg, font);
   }
@@ -92,71 +122,48 @@ class FontTexture implements PConstants {
                           PApplet.max(PGL.MIN_FONT_TEX_SIZE, spow));
     maxSize = PApplet.min(PGraphicsOpenGL.maxTextureSize,
                           PApplet.max(PGL.MAX_FONT_TEX_SIZE, 2 * spow));
+    maxPages = PApplet.max(1, PGL.MAX_FONT_TEX_PAGES);
 
     if (maxSize < spow) {
       PGraphics.showWarning("The font size is too large to be properly " +
                             "displayed with OpenGL");
     }
 
-    addTexture(pg);
-
-    offsetX = 0;
-    offsetY = 0;
-    lineHeight = 0;
+    // The first page is only as tall as needed to hold the glyphs that
+    // the font already contains, the following ones use the maximum size.
+    int area = 0;
+    for (int i = 0; i < font.getGlyphCount(); i++) {
+      PFont.Glyph glyph = font.getGlyph(i);
+      area += (glyph.width + 2 * padding + 2) *
+              (glyph.height + 2 * padding + 2);
+    }
+    int h = PGL.nextPowerOfTwo(PApplet.max(1, (5 * area / 4) / maxSize));
+    addTexture(pg, PApplet.constrain(h, minSize, maxSize));
 
     texinfoMap = new HashMap<PFont.Glyph, TextureInfo>();
-    glyphTexinfos = new TextureInfo[font.getGlyphCount()];
     addAllGlyphsToTexture(pg, font);
   }
 
 
   public boolean addTexture(PGraphicsOpenGL pg) {
-    int w, h;
-    boolean resize;
-
-    w = maxSize;
-    if (-1 < lastTex && textures[lastTex].glHeight < maxSize) {
-      // The height of the current texture is less than the maximum, this
-      // means we can replace it with a larger texture.
-      h = PApplet.min(2 * textures[lastTex].glHeight, maxSize);
-      resize = true;
-    } else {
-      h = minSize;
-      resize = false;
-    }
+    addTexture(pg, maxSize);
+    // Pages are never resized, so the texture coordinates of the glyphs
+    // already stored don't need to be updated.
+    return false;
+  }
 
-    Texture tex;
-    if (is3D) {
-      // Bilinear sampling ensures that the texture doesn't look pixelated
-      // either when it is magnified or minified...
-      tex = new Texture(pg, w, h,
-                        new Texture.Parameters(ARGB, Texture.BILINEAR, false));
-    } else {
-      // ...however, the effect of bilinear sampling is to add some blurriness
-      // to the text in its original size. In 2D, we assume that text will be
-      // shown at its original size, so linear sampling is chosen instead (which
-      // only affects minimized text).
-      tex = new Texture(pg, w, h,
-                        new Texture.Parameters(ARGB, Texture.LINEAR, false));
-    }
+
+  protected void addTexture(PGraphicsOpenGL pg, int h) {
+    Texture tex = createTexture(pg, maxSize, h);
 
     if (textures == null) {
       textures = new Texture[1];
       textures[0] = tex;
       images = new PImage[1];
       images[0] = pg.wrapTexture(tex);
+      pages = new Page[1];
+      pages[0] = new Page();
       lastTex = 0;
-    } else if (resize) {
-      // Replacing old smaller texture with larger one.
-      // But first we must copy the contents of the older
-      // texture into the new one.
-      Texture tex0 = textures[lastTex];
-      tex.put(tex0);
-      textures[lastTex] = tex;
-
-      pg.setCache(images[lastTex], tex);
-      images[lastTex].width = tex.width;
-      images[lastTex].height = tex.height;
     } else {
       // Adding new texture to the list.
       lastTex = textures.length;
@@ -169,12 +176,48 @@ class FontTexture implements PConstants {
       PApplet.arrayCopy(images, tempImg, images.length);
       tempImg[lastTex] = pg.wrapTexture(tex);
       images = tempImg;
+
+      Page[] tempPages = new Page[textures.length];
+      PApplet.arrayCopy(pages, tempPages, pages.length);
+      tempPages[lastTex] = new Page();
+      pages = tempPages;
     }
+    pages[lastTex].lastUse = ++useCount;
 
     // Make sure that the current texture is bound.
     tex.bind();
+  }
+
+
+  protected Texture createTexture(PGraphicsOpenGL pg, int w, int h) {
+    Texture tex = createPageTexture(pg, w, h);
+    tex.shapes = Collections.newSetFromMap(
+      new WeakHashMap<PShapeOpenGL, Boolean>());
+    return tex;
+  }
+
 
-    return resize;
+  protected Texture createPageTexture(PGraphicsOpenGL pg, int w, int h) {
+    if (sdf) {
+      // The distance fields need to be interpolated in all cases for the
+      // outlines to be reconstructed properly by the shader.
+      Texture tex = new Texture(pg, w, h,
+                      new Texture.Parameters(ARGB, Texture.BILINEAR, false));
+      tex.distanceField = true;
+      return tex;
+    } else if (is3D) {
+      // Bilinear sampling ensures that the texture doesn't look pixelated
+      // either when it is magnified or minified...
+      return new Texture(pg, w, h,
+                         new Texture.Parameters(ARGB, Texture.BILINEAR, false));
+    } else {
+      // ...however, the effect of bilinear sampling is to add some blurriness
+      // to the text in its original size. In 2D, we assume that text will be
+      // shown at its original size, so linear sampling is chosen instead (which
+      // only affects minimized text).
+      return new Texture(pg, w, h,
+                         new Texture.Parameters(ARGB, Texture.LINEAR, false));
+    }
   }
 
 
@@ -183,6 +226,7 @@ class FontTexture implements PConstants {
 
 
   public void end() {
+    updateTexture();
     for (int i = 0; i < textures.length; i++) {
       pgl.disableTexturing(textures[i].glTarget);
     }
@@ -198,35 +242,18 @@ class FontTexture implements PConstants {
   public void addAllGlyphsToTexture(PGraphicsOpenGL pg, PFont font) {
     // loop over current glyphs.
     for (int i = 0; i < font.getGlyphCount(); i++) {
-      addToTexture(pg, i, font.getGlyph(i));
-    }
-  }
-
-
-  public void updateGlyphsTexCoords() {
-    // loop over current glyphs.
-    for (int i = 0; i < glyphTexinfos.length; i++) {
-      TextureInfo tinfo = glyphTexinfos[i];
-      if (tinfo != null && tinfo.texIndex == lastTex) {
-        tinfo.updateUV();
-      }
+      addToTexture(pg, font.getGlyph(i));
     }
+    updateTexture();
   }
 
 
   public TextureInfo getTexInfo(PFont.Glyph glyph) {
     TextureInfo info = texinfoMap.get(glyph);
-    return info;
-  }
-
-
-  public TextureInfo addToTexture(PGraphicsOpenGL pg, PFont.Glyph glyph) {
-    int n = glyphTexinfos.length;
-    if (n == 0) {
-      glyphTexinfos = new TextureInfo[1];
+    if (info != null) {
+      pages[info.texIndex].lastUse = ++useCount;
     }
-    addToTexture(pg, n, glyph);
-    return glyphTexinfos[n];
+    return info;
   }
 
 
@@ -254,7 +281,7 @@ class FontTexture implements PConstants {
 
 
   // Adds this glyph to the opengl texture in PFont.
-  protected void addToTexture(PGraphicsOpenGL pg, int idx, PFont.Glyph glyph) {
+  public TextureInfo addToTexture(PGraphicsOpenGL pg, PFont.Glyph glyph) {
     // We add one pixel to avoid issues when sampling the font texture at
     // fractional screen positions. I.e.: the pixel on the screen only contains
     // half of the font rectangle, so it would sample half of the color from the
@@ -263,74 +290,200 @@ class FontTexture implements PConstants {
     // doesn't, this would result in a shaded pixel when the correct output is
     // blank. This is a consequence of putting all the glyphs in a common
     // texture with bilinear sampling.
-    int w = 1 + glyph.width + 1;
-    int h = 1 + glyph.height + 1;
+    PImage img = sdf ? glyph.getDistanceField() : glyph.image;
+    int w = 1 + img.width + 1;
+    int h = 1 + img.height + 1;
 
     // Converting the pixels array from the PImage into a valid RGBA array for
     // OpenGL.
     int[] rgba = new int[w * h];
+    int blank = blankPixel();
     int t = 0;
     int p = 0;
-    if (PGL.BIG_ENDIAN)  {
-      java.util.Arrays.fill(rgba, 0, w, 0xFFFFFF00); // Set the first row to blank pixels.
-      t = w;
-      for (int y = 0; y < glyph.height; y++) {
-        rgba[t++] = 0xFFFFFF00; // Set the leftmost pixel in this row as blank
-        for (int x = 0; x < glyph.width; x++) {
-          rgba[t++] = 0xFFFFFF00 | glyph.image.pixels[p++];
+    java.util.Arrays.fill(rgba, 0, w, blank); // Set the first row to blank pixels.
+    t = w;
+    for (int y = 0; y < img.height; y++) {
+      rgba[t++] = blank; // Set the leftmost pixel in this row as blank
+      if (PGL.BIG_ENDIAN)  {
+        for (int x = 0; x < img.width; x++) {
+          rgba[t++] = 0xFFFFFF00 | img.pixels[p++];
+        }
+      } else {
+        for (int x = 0; x < img.width; x++) {
+          rgba[t++] = (img.pixels[p++] << 24) | 0x00FFFFFF;
         }
-        rgba[t++] = 0xFFFFFF00; // Set the rightmost pixel in this row as blank
       }
-      java.util.Arrays.fill(rgba, (h - 1) * w, h * w, 0xFFFFFF00); // Set the last row to blank pixels.
-    } else {
-      java.util.Arrays.fill(rgba, 0, w, 0x00FFFFFF); // Set the first row to blank pixels.
-      t = w;
-      for (int y = 0; y < glyph.height; y++) {
-        rgba[t++] = 0x00FFFFFF; // Set the leftmost pixel in this row as blank
-        for (int x = 0; x < glyph.width; x++) {
-          rgba[t++] = (glyph.image.pixels[p++] << 24) | 0x00FFFFFF;
+      rgba[t++] = blank; // Set the rightmost pixel in this row as blank
+    }
+    java.util.Arrays.fill(rgba, (h - 1) * w, h * w, blank); // Set the last row to blank pixels.
+
+    Shelf shelf = findShelf(w, h);
+    if (shelf == null) {
+      // No room left in any of the pages, so a new one is added, or the least
+      // recently used page is recycled if the maximum count has been reached
+      // and some page isn't used by retained shapes.
+      int idx = textures.length < maxPages ? -1 : leastRecentlyUsedPage();
+      if (idx == -1) {
+        addTexture(pg, maxSize);
+      } else {
+        evictPage(pg, idx);
+      }
+      shelf = pages[lastTex].addShelf(lastTex, h);
+      if (shelf == null) {
+        PGraphics.showWarning("The glyph is too large to fit in the font " +
+                              "texture");
+        shelf = pages[lastTex].addShelf(lastTex,
+                                        textures[lastTex].glHeight);
+      }
+    }
+
+    TextureInfo tinfo = new TextureInfo(shelf.texIndex, shelf.offsetX,
+                                        shelf.offsetY, w, h, rgba);
+    shelf.add(tinfo);
+    pages[shelf.texIndex].lastUse = ++useCount;
+    pending = true;
+
+    texinfoMap.put(glyph, tinfo);
+    return tinfo;
+  }
+
+
+  // Best-fit search over the shelves of all pages: the shelf with the least
+  // vertical waste is chosen, unless that waste is large and a tighter shelf
+  // can still be opened in the page.
+  protected Shelf findShelf(int w, int h) {
+    Shelf best = null;
+    for (int i = 0; i < pages.length; i++) {
+      Page page = pages[i];
+      for (Shelf shelf: page.shelves) {
+        if (h <= shelf.height && shelf.offsetX + w <= maxSize &&
+            (best == null || shelf.height < best.height)) {
+          best = shelf;
         }
-        rgba[t++] = 0x00FFFFFF; // Set the rightmost pixel in this row as blank
       }
-      java.util.Arrays.fill(rgba, (h - 1) * w, h * w, 0x00FFFFFF); // Set the last row to blank pixels.
     }
+    if (best == null || h + h / 2 < best.height) {
+      for (int i = 0; i < pages.length; i++) {
+        Shelf shelf = pages[i].addShelf(i, h);
+        if (shelf != null) return shelf;
+      }
+    }
+    return best;
+  }
+
 
-    // Is there room for this glyph in the current line?
-    if (offsetX + w > textures[lastTex].glWidth) {
-      // No room, go to the next line:
-      offsetX = 0;
-      offsetY += lineHeight;
+  // Returns -1 if all the pages are still used by retained shapes.
+  protected int leastRecentlyUsedPage() {
+    int idx = -1;
+    for (int i = 0; i < pages.length; i++) {
+      if (textures[i].shapes.isEmpty() &&
+          (idx == -1 || pages[i].lastUse < pages[idx].lastUse)) idx = i;
     }
-    lineHeight = Math.max(lineHeight, h);
-
-    boolean resized = false;
-    if (offsetY + lineHeight > textures[lastTex].glHeight) {
-      // We run out of space in the current texture, so we add a new texture:
-      resized = addTexture(pg);
-      if (resized) {
-        // Because the current texture has been resized, we need to
-        // update the UV coordinates of all the glyphs associated to it:
-        updateGlyphsTexCoords();
-      } else {
-        // A new texture has been created. Reseting texture coordinates
-        // and line.
-        offsetX = 0;
-        offsetY = 0;
-        lineHeight = 0;
+    return idx;
+  }
+
+
+  protected void evictPage(PGraphicsOpenGL pg, int idx) {
+    // Any geometry still referring to the glyphs in the page has to be drawn
+    // before they get overwritten. Retained shapes can't be redrawn, which is
+    // why the pages they use are never evicted.
+    pg.flush();
+
+    Iterator<TextureInfo> it = texinfoMap.values().iterator();
+    while (it.hasNext()) {
+      if (it.next().texIndex == idx) it.remove();
+    }
+    pages[idx] = new Page();
+    pages[idx].lastUse = ++useCount;
+    lastTex = idx;
+  }
+
+
+  // Uploads the glyphs added since the last update, in a single call for each
+  // shelf containing new glyphs.
+  public void updateTexture() {
+    if (!pending) return;
+    for (int i = 0; i < pages.length; i++) {
+      for (Shelf shelf: pages[i].shelves) {
+        if (0 < shelf.pendingCount) shelf.upload();
       }
     }
+    pending = false;
+  }
+
+
+  protected int blankPixel() {
+    return PGL.BIG_ENDIAN ? 0xFFFFFF00 : 0x00FFFFFF;
+  }
+
 
-    TextureInfo tinfo = new TextureInfo(lastTex, offsetX, offsetY, w, h, rgba);
-    offsetX += w;
+  class Page {
+    ArrayList<Shelf> shelves = new ArrayList<Shelf>();
+    int offsetY;
+    long lastUse;
 
-    if (idx == glyphTexinfos.length) {
-      TextureInfo[] temp = new TextureInfo[glyphTexinfos.length + 1];
-      System.arraycopy(glyphTexinfos, 0, temp, 0, glyphTexinfos.length);
-      glyphTexinfos = temp;
+    Shelf addShelf(int tidx, int h) {
+      if (textures[tidx].glHeight < offsetY + h) return null;
+      Shelf shelf = new Shelf(tidx, offsetY, h);
+      shelves.add(shelf);
+      offsetY += h;
+      return shelf;
     }
+  }
 
-    glyphTexinfos[idx] = tinfo;
-    texinfoMap.put(glyph, tinfo);
+
+  class Shelf {
+    int texIndex;
+    int offsetX;
+    int offsetY;
+    int height;
+    int pendingX;
+    int pendingCount;
+    TextureInfo[] pendingInfos = new TextureInfo[16];
+
+    Shelf(int tidx, int y, int h) {
+      texIndex = tidx;
+      offsetY = y;
+      height = h;
+    }
+
+    void add(TextureInfo tinfo) {
+      if (pendingCount == 0) {
+        pendingX = offsetX;
+      } else if (pendingCount == pendingInfos.length) {
+        TextureInfo[] temp = new TextureInfo[2 * pendingCount];
+        System.arraycopy(pendingInfos, 0, temp, 0, pendingCount);
+        pendingInfos = temp;
+      }
+      pendingInfos[pendingCount++] = tinfo;
+      offsetX += tinfo.crop[2] + 2;
+    }
+
+    void upload() {
+      // The pending glyphs are contiguous along the shelf, and the space
+      // between them and the top of the shelf is still empty, so the whole
+      // region can be written at once.
+      int w = PApplet.min(offsetX, maxSize) - pendingX;
+      int h = height;
+      if (uploadBuffer == null || uploadBuffer.length < w * h) {
+        uploadBuffer = new int[w * h];
+      }
+      java.util.Arrays.fill(uploadBuffer, 0, w * h, blankPixel());
+      for (int i = 0; i < pendingCount; i++) {
+        TextureInfo tinfo = pendingInfos[i];
+        int gw = tinfo.crop[2] + 2;
+        int gh = -tinfo.crop[3] + 2;
+        int x0 = tinfo.crop[0] - 1 - pendingX;
+        for (int y = 0; y < PApplet.min(gh, h); y++) {
+          System.arraycopy(tinfo.pixels, y * gw, uploadBuffer, y * w + x0,
+                           PApplet.min(gw, w - x0));
+        }
+        tinfo.pixels = null;
+        pendingInfos[i] = null;
+      }
+      textures[texIndex].setNative(uploadBuffer, pendingX, offsetY, w, h);
+      pendingCount = 0;
+    }
   }
 
 
@@ -356,7 +509,6 @@ class FontTexture implements PConstants {
       crop[3] = -cropH + 2;
       pixels = pix;
       updateUV();
-      updateTex();
     }
 
 
@@ -369,11 +521,5 @@ class FontTexture implements PConstants {
       v0 = (float)(crop[1] + crop[3]) / (float)height;
       v1 = v0 - (float)crop[3] / (float)height;
     }
-
-
-    void updateTex() {
-      textures[texIndex].setNative(pixels, crop[0] - 1, crop[1] + crop[3] - 1,
-                                           crop[2] + 2, -crop[3] + 2);
-    }
   }
 }
@@ -110,6 +110,10 @@ public abstract class PGL {
   protected static int MIN_FONT_TEX_SIZE = 256;
   protected static int MAX_FONT_TEX_SIZE = 1024;
 
+  /** Maximum number of textures used to hold the glyphs of a font, after
+   * which the least recently used one is recycled. */
+  protected static int MAX_FONT_TEX_PAGES = 8;
+
   /** Minimum stroke weight needed to apply the full path stroking
    * algorithm that properly generates caps and joins.
    */
@@ -1198,11 +1202,9 @@ public abstract class PGL {
 
   protected void initTexture(int target, int format, int width, int height,
                             int initColor) {
-    int[] glcolor = new int[16 * 16];
-    Arrays.fill(glcolor, javaToNativeARGB(initColor));
-    IntBuffer texels = allocateDirectIntBuffer(16 * 16);
-    texels.put(glcolor);
-    texels.rewind();
+    IntBuffer texels = PixelConverter.getDirectBuffer(16 * 16);
+    int glcolor = javaToNativeARGB(initColor);
+    for (int i = 0; i < 16 * 16; i++) texels.put(i, glcolor);
     for (int y = 0; y < height; y += 16) {
       int h = PApplet.min(16, height - y);
       for (int x = 0; x < width; x += 16) {
@@ -1215,8 +1217,9 @@ public abstract class PGL {
 
   protected void copyToTexture(int target, int format, int id, int x, int y,
                                int w, int h, int[] buffer) {
-    copyToTexture(target, format, id, x, y, w, h, IntBuffer.wrap(buffer));
-
+    IntBuffer buf = USE_DIRECT_BUFFERS ?
+      PixelConverter.toDirectBuffer(buffer, w * h) : IntBuffer.wrap(buffer);
+    copyToTexture(target, format, id, x, y, w, h, buf);
   }
 
   protected void copyToTexture(int target, int format, int id, int x, int y,
@@ -1615,40 +1618,7 @@ public abstract class PGL {
    * flipped vertically.
    */
   protected static void nativeToJavaARGB(int[] pixels, int width, int height) {
-    int index = 0;
-    int yindex = (height - 1) * width;
-    for (int y = 0; y < height / 2; y++) {
-      for (int x = 0; x < width; x++) {
-        int pixy = pixels[yindex];
-        int pixi = pixels[index];
-        if (BIG_ENDIAN) { // RGBA to ARGB
-          pixels[index] = (pixy >>> 8) | (pixy << 24);
-          pixels[yindex] = (pixi >>> 8) | (pixi << 24);
-        } else { // ABGR to ARGB
-          int rbi = pixi & 0x00FF00FF;
-          int rby = pixy & 0x00FF00FF;
-          pixels[index] = (pixy & 0xFF00FF00) | (rby << 16) | (rby >> 16);
-          pixels[yindex] = (pixi & 0xFF00FF00) | (rbi << 16) | (rbi >> 16);
-        }
-        index++;
-        yindex++;
-      }
-      yindex -= width * 2;
-    }
-
-    if ((height % 2) == 1) { // Converts center row
-      index = (height / 2) * width;
-      for (int x = 0; x < width; x++) {
-        int pixi = pixels[index];
-        if (BIG_ENDIAN) { // RGBA to ARGB
-          pixels[index] = (pixi >>> 8) | (pixi << 24);
-        } else { // ABGR to ARGB
-          int rbi = pixi & 0x00FF00FF;
-          pixels[index] = (pixi & 0xFF00FF00) | (rbi << 16) | (rbi >> 16);
-        }
-        index++;
-      }
-    }
+    PixelConverter.convert(pixels, width, height, PixelConverter.NATIVE_TO_ARGB);
   }
 
 
@@ -1676,43 +1646,7 @@ public abstract class PGL {
    * vertically.
    */
   protected static void nativeToJavaRGB(int[] pixels, int width, int height) {
-    int index = 0;
-    int yindex = (height - 1) * width;
-    for (int y = 0; y < height / 2; y++) {
-      for (int x = 0; x < width; x++) {
-        int pixy = pixels[yindex];
-        int pixi = pixels[index];
-        if (BIG_ENDIAN) { // RGBA to ARGB
-          pixels[index] = (pixy >>> 8) | 0xFF000000;
-          pixels[yindex] = (pixi >>> 8) | 0xFF000000;
-        } else { // ABGR to ARGB
-          int rbi = pixi & 0x00FF00FF;
-          int rby = pixy & 0x00FF00FF;
-          pixels[index] = 0xFF000000 | (rby << 16) |
-                          (pixy & 0x0000FF00) | (rby >> 16);
-          pixels[yindex] = 0xFF000000 | (rbi << 16) |
-                           (pixi & 0x0000FF00) | (rbi >> 16);
-        }
-        index++;
-        yindex++;
-      }
-      yindex -= width * 2;
-    }
-
-    if ((height % 2) == 1) { // Converts center row
-      index = (height / 2) * width;
-      for (int x = 0; x < width; x++) {
-        int pixi = pixels[index];
-        if (BIG_ENDIAN) { // RGBA to ARGB
-          pixels[index] = (pixi >>> 8) | 0xFF000000;
-        } else { // ABGR to ARGB
-          int rbi = pixi & 0x00FF00FF;
-          pixels[index] = 0xFF000000 | (rbi << 16) |
-                          (pixi & 0x000FF00) | (rbi >> 16);
-        }
-        index++;
-      }
-    }
+    PixelConverter.convert(pixels, width, height, PixelConverter.NATIVE_TO_RGB);
   }
 
 
@@ -1737,40 +1671,7 @@ public abstract class PGL {
    * image is flipped vertically.
    */
   protected static void javaToNativeARGB(int[] pixels, int width, int height) {
-    int index = 0;
-    int yindex = (height - 1) * width;
-    for (int y = 0; y < height / 2; y++) {
-      for (int x = 0; x < width; x++) {
-        int pixy = pixels[yindex];
-        int pixi = pixels[index];
-        if (BIG_ENDIAN) { // ARGB to RGBA
-          pixels[index] = (pixy >>> 24) | (pixy << 8);
-          pixels[yindex] = (pixi >>> 24) | (pixi << 8);
-        } else { // ARGB to ABGR
-          int rbi = pixi & 0x00FF00FF;
-          int rby = pixy & 0x00FF00FF;
-          pixels[index] = (pixy & 0xFF00FF00) | (rby << 16) | (rby >> 16);
-          pixels[yindex] = (pixi & 0xFF00FF00) | (rbi << 16) | (rbi >> 16);
-        }
-        index++;
-        yindex++;
-      }
-      yindex -= width * 2;
-    }
-
-    if ((height % 2) == 1) { // Converts center row
-      index = (height / 2) * width;
-      for (int x = 0; x < width; x++) {
-        int pixi = pixels[index];
-        if (BIG_ENDIAN) { // ARGB to RGBA
-          pixels[index] = (pixi >>> 24) | (pixi << 8);
-        } else { // ARGB to ABGR
-          int rbi = pixi & 0x00FF00FF;
-          pixels[index] = (pixi & 0xFF00FF00) | (rbi << 16) | (rbi >> 16);
-        }
-        index++;
-      }
-    }
+    PixelConverter.convert(pixels, width, height, PixelConverter.ARGB_TO_NATIVE);
   }
 
 
@@ -1796,43 +1697,7 @@ public abstract class PGL {
    * flipped vertically.
    */
   protected static void javaToNativeRGB(int[] pixels, int width, int height) {
-    int index = 0;
-    int yindex = (height - 1) * width;
-    for (int y = 0; y < height / 2; y++) {
-      for (int x = 0; x < width; x++) {
-        int pixy = pixels[yindex];
-        int pixi = pixels[index];
-        if (BIG_ENDIAN) { // ARGB to RGB
-          pixels[index] = 0xFF | (pixy << 8);
-          pixels[yindex] = 0xFF | (pixi << 8);
-        } else { // ARGB to BGR
-          int rbi = pixi & 0x00FF00FF;
-          int rby = pixy & 0x00FF00FF;
-          pixels[index] = 0xFF000000 | (rby << 16) |
-                          (pixy & 0x0000FF00) | (rby >> 16);
-          pixels[yindex] = 0xFF000000 | (rbi << 16) |
-                           (pixi & 0x0000FF00) | (rbi >> 16);
-        }
-        index++;
-        yindex++;
-      }
-      yindex -= width * 2;
-    }
-
-    if ((height % 2) == 1) { // Converts center row
-      index = (height / 2) * width;
-      for (int x = 0; x < width; x++) {
-        int pixi = pixels[index];
-        if (BIG_ENDIAN) { // ARGB to RGB
-          pixels[index] = 0xFF | (pixi << 8);
-        } else { // ARGB to BGR
-          int rbi = pixi & 0x00FF00FF;
-          pixels[index] = 0xFF000000 | (rbi << 16) |
-                          (pixi & 0x0000FF00) | (rbi >> 16);
-        }
-        index++;
-      }
-    }
+    PixelConverter.convert(pixels, width, height, PixelConverter.RGB_TO_NATIVE);
   }
 
 
@@ -2241,6 +2106,16 @@ public abstract class PGL {
   }
 
 
+  /**
+   * Whether pixels can be uploaded with the BGRA format and the
+   * UNSIGNED_INT_8_8_8_8_REV type, which OpenGL reads as Java ARGB ints
+   * without any conversion. Only available on desktop OpenGL.
+   */
+  protected boolean hasBGRASupport() {
+    return !isES() && 0 < BGRA && 0 < UNSIGNED_INT_8_8_8_8_REV;
+  }
+
+
   protected boolean hasSynchronization() {
     int[] version = getGLVersion();
     if (isES()) {
@@ -2785,6 +2660,9 @@ public abstract class PGL {
   public static int ALPHA;
   public static int LUMINANCE;
   public static int LUMINANCE_ALPHA;
+  public static int BGRA;
+
+  public static int UNSIGNED_INT_8_8_8_8_REV;
 
   public static int UNSIGNED_SHORT_5_6_5;
   public static int UNSIGNED_SHORT_4_4_4_4;
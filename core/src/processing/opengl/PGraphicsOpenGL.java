@@ -32,6 +32,10 @@ import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.nio.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /**
@@ -47,6 +51,9 @@ public class PGraphicsOpenGL extends PGraphics {
   /** Font cache for texture objects. */
   protected WeakHashMap<PFont, FontTexture> fontMap;
 
+  /** Font cache for distance field texture objects. */
+  protected WeakHashMap<PFont, FontTexture> sdfFontMap;
+
   // ........................................................
 
   // Disposal of native resources
@@ -157,6 +164,7 @@ public class PGraphicsOpenGL extends PGraphics {
   static public boolean blendEqSupported;
   static public boolean readBufferSupported;
   static public boolean drawBufferSupported;
+  static public boolean bgraSupported;
 
   /** Some hardware limits */
   static public int maxTextureSize;
@@ -203,6 +211,10 @@ public class PGraphicsOpenGL extends PGraphics {
     PGraphicsOpenGL.class.getResource("/processing/opengl/shaders/PointFrag.glsl");
   static protected URL maskShaderFragURL =
     PGraphicsOpenGL.class.getResource("/processing/opengl/shaders/MaskFrag.glsl");
+  static protected URL sdfShaderFragURL =
+    PGraphicsOpenGL.class.getResource("/processing/opengl/shaders/SdfFrag.glsl");
+  static protected URL sdfLightShaderFragURL =
+    PGraphicsOpenGL.class.getResource("/processing/opengl/shaders/SdfLightFrag.glsl");
 
   protected PShader defColorShader;
   protected PShader defTextureShader;
@@ -211,6 +223,8 @@ public class PGraphicsOpenGL extends PGraphics {
   protected PShader defLineShader;
   protected PShader defPointShader;
   protected PShader maskShader;
+  protected PShader sdfShader;
+  protected PShader sdfLightShader;
 
   protected PShader polyShader;
   protected PShader lineShader;
@@ -248,6 +262,10 @@ public class PGraphicsOpenGL extends PGraphics {
   protected static final List<PGraphicsOpenGL.AsyncPixelReader>
       ongoingPixelTransfersIterable = new ArrayList<>();
 
+  // Worker converting the pixels read with requestPixels() and passing them
+  // to the callbacks, in the same order as they were requested.
+  protected static ExecutorService pixelCallbackExecutor;
+
   // ........................................................
 
   // Camera:
@@ -618,6 +636,7 @@ public class PGraphicsOpenGL extends PGraphics {
     if (primary) {
       fbStack = new FrameBuffer[FB_STACK_DEPTH];
       fontMap = new WeakHashMap<>();
+      sdfFontMap = new WeakHashMap<>();
       tessellator = new Tessellator();
     } else {
       tessellator = getPrimaryPG().tessellator;
@@ -848,7 +867,11 @@ public class PGraphicsOpenGL extends PGraphics {
 
 
   protected void setFontTexture(PFont font, FontTexture fontTexture) {
-    getPrimaryPG().fontMap.put(font, fontTexture);
+    if (fontTexture.sdf) {
+      getPrimaryPG().sdfFontMap.put(font, fontTexture);
+    } else {
+      getPrimaryPG().fontMap.put(font, fontTexture);
+    }
   }
 
 
@@ -857,8 +880,18 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  protected FontTexture getFontTexture(PFont font, boolean sdf) {
+    if (sdf) {
+      return getPrimaryPG().sdfFontMap.get(font);
+    } else {
+      return getPrimaryPG().fontMap.get(font);
+    }
+  }
+
+
   protected void removeFontTexture(PFont font) {
     getPrimaryPG().fontMap.remove(font);
+    getPrimaryPG().sdfFontMap.remove(font);
   }
 
 
@@ -2288,6 +2321,12 @@ public class PGraphicsOpenGL extends PGraphics {
 
     boolean hasPixels = modified && pixels != null;
 
+    if (textTex != null) {
+      // Glyphs added to the font texture since the last flush need to be
+      // uploaded before drawing the geometry that uses them.
+      textTex.updateTexture();
+    }
+
     if (hasPixels) {
       // If the user has been manipulating individual pixels,
       // the changes need to be copied to the screen before
@@ -2375,7 +2414,9 @@ public class PGraphicsOpenGL extends PGraphics {
 
       // If the renderer is 2D, then lights should always be false,
       // so no need to worry about that.
-      PShader shader = getPolyShader(lights, tex != null);
+      PShader shader = tex != null && tex.distanceField ?
+                       getDistanceFieldShader(lights) :
+                       getPolyShader(lights, tex != null);
       shader.bind();
 
       int first = texCache.firstCache[i];
@@ -2476,7 +2517,9 @@ public class PGraphicsOpenGL extends PGraphics {
 
       // If the renderer is 2D, then lights should always be false,
       // so no need to worry about that.
-      PShader shader = getPolyShader(lights, tex != null);
+      PShader shader = tex != null && tex.distanceField ?
+                       getDistanceFieldShader(lights) :
+                       getPolyShader(lights, tex != null);
       shader.bind();
 
       shader.setVertexAttribute(bufPolyVertex.glId, 4, PGL.FLOAT, 0,
@@ -3445,7 +3488,8 @@ public class PGraphicsOpenGL extends PGraphics {
 
   @Override
   protected boolean textModeCheck(int mode) {
-    return mode == MODEL || (mode == SHAPE && PGL.SHAPE_TEXT_SUPPORTED);
+    return mode == MODEL || mode == SDF ||
+           (mode == SHAPE && PGL.SHAPE_TEXT_SUPPORTED);
   }
 
   // public void textSize(float size)
@@ -3518,11 +3562,12 @@ public class PGraphicsOpenGL extends PGraphics {
                   "use an .otf or .ttf instead.");
       textMode(MODEL);
     }
-    if (textMode == MODEL) {
-      textTex = getFontTexture(textFont);
+    if (textMode == MODEL || textMode == SDF) {
+      boolean sdf = textMode == SDF;
+      textTex = getFontTexture(textFont, sdf);
 
       if (textTex == null || textTex.contextIsOutdated()) {
-        textTex = new FontTexture(this, textFont, is3D());
+        textTex = new FontTexture(this, textFont, is3D(), sdf);
         setFontTexture(textFont, textTex);
       }
 
@@ -3577,7 +3622,7 @@ public class PGraphicsOpenGL extends PGraphics {
   protected void textCharImpl(char ch, float x, float y) {
     PFont.Glyph glyph = textFont.getGlyph(ch);
     if (glyph != null) {
-      if (textMode == MODEL) {
+      if (textMode == MODEL || textMode == SDF) {
         FontTexture.TextureInfo tinfo = textTex.getTexInfo(glyph);
 
         if (tinfo == null) {
@@ -3585,10 +3630,12 @@ public class PGraphicsOpenGL extends PGraphics {
           tinfo = textTex.addToTexture(this, glyph);
         }
 
-        float high    = glyph.height     / (float) textFont.getSize();
-        float bwidth  = glyph.width      / (float) textFont.getSize();
-        float lextent = glyph.leftExtent / (float) textFont.getSize();
-        float textent = glyph.topExtent  / (float) textFont.getSize();
+        // Distance fields extend beyond the glyph's bitmap by the padding.
+        int pad = textTex.padding;
+        float high    = (glyph.height + 2 * pad)    / (float) textFont.getSize();
+        float bwidth  = (glyph.width + 2 * pad)     / (float) textFont.getSize();
+        float lextent = (glyph.leftExtent - pad)    / (float) textFont.getSize();
+        float textent = (glyph.topExtent + pad)     / (float) textFont.getSize();
 
         float x1 = x + lextent * textSize;
         float y1 = y - textent * textSize;
@@ -5574,6 +5621,99 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  //////////////////////////////////////////////////////////////
+
+  // ASYNC PIXEL READBACK
+
+
+  /**
+   * Receives the pixels requested with requestPixels(). It is called from a
+   * worker thread, and the image is reused for later requests once the call
+   * returns, so it should be copied if needed afterwards.
+   */
+  public interface PixelsCallback {
+    void pixelsReady(PImage pixels);
+  }
+
+
+  /**
+   * Reads the current contents of the renderer without stalling the GL
+   * pipeline: the pixels are copied into a pixel buffer object and passed
+   * to the callback a few frames later, after being converted to the ARGB
+   * (or RGB, for the main surface) format on a worker thread. Falls back
+   * to loadPixels() when pixel buffers are not supported.
+   * <p>
+   * The renderer never waits for the callback: if it is still busy with
+   * all the earlier images when the pixels of a frame arrive, the pixels of
+   * that frame are dropped.
+   */
+  public void requestPixels(PixelsCallback callback) {
+    if (!asyncPixelReaderInitialized) {
+      if (pgl.hasPBOs() && pgl.hasSynchronization()) {
+        asyncPixelReader = new AsyncPixelReader();
+      }
+      asyncPixelReaderInitialized = true;
+    }
+
+    if (asyncPixelReader != null && !loaded) {
+      boolean needEndDraw = false;
+      if (!drawing) {
+        beginDraw();
+        needEndDraw = true;
+      }
+      flush();
+      updatePixelSize();
+
+      asyncPixelReader.readAsync(callback);
+
+      if (needEndDraw) endDraw();
+    } else {
+      // Pixels are already in memory or transfers are not supported, the
+      // callback is still invoked from the worker thread.
+      if (!loaded) loadPixels();
+      PImage target;
+      BlockingQueue<PImage> pool = null;
+      if (asyncPixelReader != null) {
+        pool = asyncPixelReader.callbackTargets;
+        target = asyncPixelReader.getAvailableTarget(pixelWidth, pixelHeight);
+      } else {
+        target = new PImage(pixelWidth, pixelHeight);
+      }
+      if (target == null) return;
+      target.format = primaryGraphics ? RGB : ARGB;
+      int count = PApplet.min(pixels.length, target.pixels.length);
+      System.arraycopy(pixels, 0, target.pixels, 0, count);
+      deliverPixelsAsync(target, callback, pool);
+    }
+  }
+
+
+  protected void deliverPixelsAsync(final PImage target,
+                                    final PixelsCallback callback,
+                                    final BlockingQueue<PImage> pool) {
+    synchronized (PGraphicsOpenGL.class) {
+      if (pixelCallbackExecutor == null) {
+        pixelCallbackExecutor = Executors.newSingleThreadExecutor(r -> {
+          Thread thread = new Thread(r, "Pixel Readback");
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+    }
+    target.parent = parent;
+    pixelCallbackExecutor.submit(() -> {
+      try {
+        processImageBeforeAsyncSave(target);
+        callback.pixelsReady(target);
+      } catch (Exception e) {
+        e.printStackTrace();
+      } finally {
+        if (pool != null) pool.offer(target);
+      }
+    });
+  }
+
+
   @Override
   protected void processImageBeforeAsyncSave(PImage image) {
     if (image.format == AsyncPixelReader.OPENGL_NATIVE) {
@@ -5634,9 +5774,14 @@ public class PGraphicsOpenGL extends PGraphics {
     int[] pbos;
     long[] fences;
     File[] files;
+    PixelsCallback[] callbacks;
     int[] widths;
     int[] heights;
 
+    // Images handed to the pixel callbacks, recycled once they return.
+    BlockingQueue<PImage> callbackTargets;
+    int callbackTargetsCreated;
+
     int head;
     int tail;
     int size;
@@ -5654,6 +5799,8 @@ public class PGraphicsOpenGL extends PGraphics {
         pbos = new int[BUFFER_COUNT];
         fences = new long[BUFFER_COUNT];
         files = new File[BUFFER_COUNT];
+        callbacks = new PixelsCallback[BUFFER_COUNT];
+        callbackTargets = new ArrayBlockingQueue<>(BUFFER_COUNT);
         widths = new int[BUFFER_COUNT];
         heights = new int[BUFFER_COUNT];
 
@@ -5684,6 +5831,8 @@ public class PGraphicsOpenGL extends PGraphics {
         pbos = null;
       }
       files = null;
+      callbacks = null;
+      callbackTargets = null;
       widths = null;
       heights = null;
       size = 0;
@@ -5702,13 +5851,30 @@ public class PGraphicsOpenGL extends PGraphics {
       } else {
         ongoingPixelTransfers.add(this);
       }
-      beginTransfer(file);
+      beginTransfer(file, null);
+      calledThisFrame = true;
+    }
+
+
+    public void readAsync(PixelsCallback callback) {
+      if (size > 0) {
+        // The oldest transfer is only waited for when all the buffers are in
+        // use, which gives BUFFER_COUNT frames of latency at most.
+        if (size == BUFFER_COUNT) {
+          endTransfer();
+        }
+        while (size > 0 && canEndTransfer() && isLastTransferComplete()) {
+          endTransfer();
+        }
+      }
+      ongoingPixelTransfers.add(this);
+      beginTransfer(null, callback);
       calledThisFrame = true;
     }
 
 
     public void completeFinishedTransfers() {
-      if (size <= 0 || !asyncImageSaver.hasAvailableTarget()) return;
+      if (size <= 0 || !canEndTransfer()) return;
 
       boolean needEndDraw = false;
       if (!drawing) {
@@ -5716,8 +5882,7 @@ public class PGraphicsOpenGL extends PGraphics {
         needEndDraw = true;
       }
 
-      while (asyncImageSaver.hasAvailableTarget() &&
-          isLastTransferComplete()) {
+      while (size > 0 && canEndTransfer() && isLastTransferComplete()) {
         endTransfer();
       }
 
@@ -5781,6 +5946,41 @@ public class PGraphicsOpenGL extends PGraphics {
     }
 
 
+    protected boolean canEndTransfer() {
+      // Pixel callbacks need a free image, and saving needs one of the
+      // targets of the image saver. Until then the pixels stay in the PBO.
+      if (callbacks[tail] != null) return hasAvailableTarget();
+      return files[tail] == null || asyncImageSaver.hasAvailableTarget();
+    }
+
+
+    protected boolean hasAvailableTarget() {
+      return !callbackTargets.isEmpty() ||
+          callbackTargetsCreated < BUFFER_COUNT;
+    }
+
+
+    /**
+     * Get an image for the pixels passed to a callback. Doesn't wait for the
+     * callbacks to return the ones they have, so that drawing never stalls.
+     * @return null if all the images are still in use
+     */
+    protected PImage getAvailableTarget(int w, int h) {
+      PImage target = callbackTargets.poll();
+      if (target == null) {
+        if (callbackTargetsCreated < BUFFER_COUNT) {
+          callbackTargetsCreated++;
+          return new PImage(w, h);
+        }
+        return null;
+      }
+      if (target.pixelWidth != w || target.pixelHeight != h) {
+        target = new PImage(w, h);
+      }
+      return target;
+    }
+
+
     /// TRANSFERS //////////////////////////////////////////////////////////////
 
     public boolean isLastTransferComplete() {
@@ -5791,7 +5991,7 @@ public class PGraphicsOpenGL extends PGraphics {
     }
 
 
-    public void beginTransfer(File file) {
+    public void beginTransfer(File file, PixelsCallback callback) {
       // check the size of the buffer
       if (widths[head] != pixelWidth || heights[head] != pixelHeight) {
         if (widths[head] * heights[head] != pixelWidth * pixelHeight) {
@@ -5811,6 +6011,7 @@ public class PGraphicsOpenGL extends PGraphics {
 
       fences[head] = pgl.fenceSync(PGL.SYNC_GPU_COMMANDS_COMPLETE, 0);
       files[head] = file;
+      callbacks[head] = callback;
 
       head = (head + 1) % BUFFER_COUNT;
       size++;
@@ -5822,7 +6023,18 @@ public class PGraphicsOpenGL extends PGraphics {
       pgl.bindBuffer(PGL.PIXEL_PACK_BUFFER, pbos[tail]);
       ByteBuffer readBuffer = pgl.mapBuffer(PGL.PIXEL_PACK_BUFFER,
                                             PGL.READ_ONLY);
-      if (readBuffer != null) {
+      if (readBuffer != null && callbacks[tail] != null) {
+        int format = primaryGraphics ? OPENGL_NATIVE_OPAQUE : OPENGL_NATIVE;
+        PImage target = getAvailableTarget(widths[tail], heights[tail]);
+        if (target != null) {
+          target.format = format;
+          readBuffer.rewind();
+          readBuffer.asIntBuffer().get(target.pixels);
+          deliverPixelsAsync(target, callbacks[tail], callbackTargets);
+        }
+        pgl.unmapBuffer(PGL.PIXEL_PACK_BUFFER);
+        callbacks[tail] = null;
+      } else if (readBuffer != null) {
         int format = primaryGraphics ? OPENGL_NATIVE_OPAQUE : OPENGL_NATIVE;
         PImage target = asyncImageSaver.getAvailableTarget(widths[tail],
                                                            heights[tail],
@@ -6894,6 +7106,7 @@ public class PGraphicsOpenGL extends PGraphics {
     anisoSamplingSupported = pgl.hasAnisoSamplingSupport();
     readBufferSupported = pgl.hasReadBuffer();
     drawBufferSupported = pgl.hasDrawBuffer();
+    bgraSupported = pgl.hasBGRASupport();
 
     try {
       pgl.blendEquation(PGL.FUNC_ADD);
@@ -7112,6 +7325,35 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  protected PShader getDistanceFieldShader(boolean lit) {
+    if (polyShader != null) {
+      // Custom shaders are applied to the text as to any other texture.
+      return getPolyShader(lit, true);
+    }
+    PShader shader;
+    PGraphicsOpenGL ppg = getPrimaryPG();
+    if (lit) {
+      if (ppg.sdfLightShader == null) {
+        String[] vertSource = pgl.loadVertexShader(defTexlightShaderVertURL);
+        String[] fragSource = pgl.loadFragmentShader(sdfLightShaderFragURL);
+        ppg.sdfLightShader = new PShader(parent, vertSource, fragSource);
+      }
+      shader = ppg.sdfLightShader;
+    } else {
+      if (ppg.sdfShader == null) {
+        String[] vertSource = pgl.loadVertexShader(defTextureShaderVertURL);
+        String[] fragSource = pgl.loadFragmentShader(sdfShaderFragURL);
+        ppg.sdfShader = new PShader(parent, vertSource, fragSource);
+      }
+      shader = ppg.sdfShader;
+    }
+    shader.setRenderer(this);
+    shader.loadAttributes();
+    shader.loadUniforms();
+    return shader;
+  }
+
+
   protected PShader getLineShader() {
     PShader shader;
     PGraphicsOpenGL ppg = getPrimaryPG();
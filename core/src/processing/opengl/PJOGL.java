@@ -765,6 +765,9 @@ public class PJOGL extends PGL {
     ALPHA           = GL.GL_ALPHA;
     LUMINANCE       = GL.GL_LUMINANCE;
     LUMINANCE_ALPHA = GL.GL_LUMINANCE_ALPHA;
+    BGRA            = GL.GL_BGRA;
+
+    UNSIGNED_INT_8_8_8_8_REV = GL2GL3.GL_UNSIGNED_INT_8_8_8_8_REV;
 
     UNSIGNED_SHORT_5_6_5   = GL.GL_UNSIGNED_SHORT_5_6_5;
     UNSIGNED_SHORT_4_4_4_4 = GL.GL_UNSIGNED_SHORT_4_4_4_4;
@@ -33,6 +33,7 @@ import processing.core.PMatrix2D;
 import processing.core.PMatrix3D;
 import processing.core.PShape;
 import processing.core.PVector;
+import processing.core.PVectorArray;
 import processing.opengl.PGraphicsOpenGL.AttributeMap;
 import processing.opengl.PGraphicsOpenGL.IndexCache;
 import processing.opengl.PGraphicsOpenGL.InGeometry;
@@ -802,6 +803,10 @@ public class PShapeOpenGL extends PShape {
       scaleTextureUV(uFactor, vFactor);
     }
 
+    if (image0 != tex) {
+      retainFontPage(image0, false);
+      retainFontPage(image, true);
+    }
     if (image0 != tex && parent != null) {
       ((PShapeOpenGL)parent).removeTexture(image0, this);
     }
@@ -886,6 +891,22 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  // The pages of a font texture are recycled when it runs out of space,
+  // unless they are used by some shape, which keeps the texture coordinates
+  // of the glyphs in the page.
+  protected void retainFontPage(PImage img, boolean retain) {
+    if (img == null || pg == null) return;
+    Object cache = pg.getCache(img);
+    if (cache instanceof Texture && ((Texture)cache).shapes != null) {
+      if (retain) {
+        ((Texture)cache).shapes.add(this);
+      } else {
+        ((Texture)cache).shapes.remove(this);
+      }
+    }
+  }
+
+
   protected void strokedTexture(boolean newValue) {
     strokedTexture(newValue, null);
   }
@@ -1683,6 +1704,33 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  @Override
+  public void setVertices(PVectorArray vectors) {
+    if (openShape) {
+      PGraphics.showWarning(INSIDE_BEGIN_END_ERROR, "setVertices()");
+      return;
+    }
+
+    if (family == PATH) {
+      super.setVertices(vectors);
+    } else if (family != GROUP) {
+      // Same layout as inGeo.vertices, so it can be copied straight in,
+      // and tessellated once for all the vertices.
+      int n = getVertexCount();
+      if (vectors.size() <= n) {
+        vectors.interleave(inGeo.vertices, 0);
+      } else {
+        for (int i = 0; i < n; i++) {
+          inGeo.vertices[3 * i + 0] = vectors.x[i];
+          inGeo.vertices[3 * i + 1] = vectors.y[i];
+          inGeo.vertices[3 * i + 2] = vectors.z[i];
+        }
+      }
+      markForTessellation();
+    }
+  }
+
+
   @Override
   public void setVertex(int index, PVector vec) {
     if (openShape) {
@@ -3003,6 +3051,7 @@ public class PShapeOpenGL extends PShape {
         if (image != null && parent != null) {
           ((PShapeOpenGL)parent).addTexture(image);
         }
+        retainFontPage(image, true);
 
         firstPolyIndexCache = tessellator.firstPolyIndexCache;
         lastPolyIndexCache = tessellator.lastPolyIndexCache;
@@ -68,6 +68,7 @@ import com.jogamp.opengl.util.FPSAnimator;
 
 import processing.core.PApplet;
 import processing.core.PConstants;
+import processing.core.PFrameTimings;
 import processing.core.PGraphics;
 import processing.core.PImage;
 import processing.core.PSurface;
@@ -250,6 +251,10 @@ public class PSurfaceJOGL implements PSurface {
     // https://github.com/processing/processing/issues/4690
     window.setDefaultCloseOperation(WindowClosingProtocol.WindowClosingMode.DO_NOTHING_ON_CLOSE);
 
+    // Buffers are swapped by the DrawListener, so that the time it takes
+    // shows up in the frame timings.
+    window.setAutoSwapBufferMode(false);
+
 //    if (displayDevice == null) {
 //
 //
@@ -872,6 +877,11 @@ public class PSurfaceJOGL implements PSurface {
           pgl.endRender(sketch.sketchWindowColor());
         }
         PGraphicsOpenGL.completeFinishedPixelTransfers();
+
+        long swapStart = System.nanoTime();
+        drawable.swapBuffers();
+        sketch.frameTimings().record(PFrameTimings.SWAP, swapStart,
+                                     System.nanoTime());
       }
 
       if (sketch.exitCalled()) {
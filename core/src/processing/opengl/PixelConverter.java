@@ -0,0 +1,247 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * Conversion kernels between the Java ARGB pixel format and the native
+ * OpenGL one (RGBA on big endian, ABGR on little endian), flipping the
+ * image vertically at the same time. The endianness is resolved once, so
+ * the loops don't test it per pixel, and large images are split in bands
+ * of rows converted in parallel.
+ * <p/>
+ * Also keeps a direct buffer per thread, so that uploads of pixel arrays
+ * don't need to allocate a new native buffer each time. Only buffers up
+ * to MAX_CACHED_PIXELS are kept, so a thread that once uploaded a huge
+ * image doesn't hold on to that much native memory for the rest of its
+ * life.
+ */
+final class PixelConverter {
+  static final int NATIVE_TO_ARGB = 0;
+  static final int NATIVE_TO_RGB  = 1;
+  static final int ARGB_TO_NATIVE = 2;
+  static final int RGB_TO_NATIVE  = 3;
+
+  static final boolean BIG_ENDIAN =
+    ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+  /** Number of pixels above which the conversion runs in parallel. */
+  static int PARALLEL_MIN_PIXELS = 512 * 512;
+
+  /** Number of rows converted by each parallel task. */
+  static int PARALLEL_BAND_ROWS = 64;
+
+  /** Largest buffer kept for reuse, in pixels (4 MB, a 1024x1024 image). */
+  static int MAX_CACHED_PIXELS = 1024 * 1024;
+
+  static private final ThreadLocal<IntBuffer> directBuffer =
+    new ThreadLocal<IntBuffer>();
+
+
+  private PixelConverter() { }
+
+
+  /**
+   * Returns a direct buffer with at least the given capacity, reused across
+   * calls from the same thread (unless it's larger than MAX_CACHED_PIXELS).
+   * Its position is set to 0, and its limit to the requested size.
+   */
+  static IntBuffer getDirectBuffer(int size) {
+    IntBuffer buf;
+    if (size > MAX_CACHED_PIXELS) {
+      // used once and left to the garbage collector
+      buf = allocateDirect(size);
+    } else {
+      buf = directBuffer.get();
+      if (buf == null || buf.capacity() < size) {
+        int capacity =
+          Math.min(MAX_CACHED_PIXELS,
+                   PGL.nextPowerOfTwo(Math.max(PGL.MIN_DIRECT_BUFFER_SIZE, size)));
+        buf = allocateDirect(capacity);
+        directBuffer.set(buf);
+      }
+    }
+    buf.clear();
+    buf.limit(size);
+    return buf;
+  }
+
+
+  static private IntBuffer allocateDirect(int size) {
+    return ByteBuffer.allocateDirect(size * PGL.SIZEOF_INT).
+           order(ByteOrder.nativeOrder()).asIntBuffer();
+  }
+
+
+  /**
+   * Copies the first size elements of the array into the direct buffer of
+   * the current thread.
+   */
+  static IntBuffer toDirectBuffer(int[] arr, int size) {
+    IntBuffer buf = getDirectBuffer(size);
+    buf.put(arr, 0, size);
+    buf.rewind();
+    return buf;
+  }
+
+
+  /**
+   * Converts the pixels of a width x height image in place, and flips the
+   * image vertically.
+   */
+  static void convert(final int[] pixels, final int width, final int height,
+                      final int mode) {
+    // Row y is swapped with row height - 1 - y, so only the first half of
+    // the rows (plus the center one for odd heights) need to be visited.
+    final int rows = (height + 1) / 2;
+    if (width * height < PARALLEL_MIN_PIXELS || rows <= PARALLEL_BAND_ROWS) {
+      convertRows(pixels, width, height, 0, rows, mode);
+    } else {
+      int bands = (rows + PARALLEL_BAND_ROWS - 1) / PARALLEL_BAND_ROWS;
+      IntStream.range(0, bands).parallel().forEach(b -> {
+        int y0 = b * PARALLEL_BAND_ROWS;
+        int y1 = Math.min(rows, y0 + PARALLEL_BAND_ROWS);
+        convertRows(pixels, width, height, y0, y1, mode);
+      });
+    }
+  }
+
+
+  static private void convertRows(int[] pixels, int width, int height,
+                                  int y0, int y1, int mode) {
+    switch (mode) {
+    case NATIVE_TO_ARGB:
+      for (int y = y0; y < y1; y++) {
+        int index = y * width;
+        int yindex = (height - 1 - y) * width;
+        if (index == yindex) {
+          for (int x = 0; x < width; x++, index++) {
+            pixels[index] = nativeToJavaARGB(pixels[index]);
+          }
+        } else {
+          for (int x = 0; x < width; x++, index++, yindex++) {
+            int pixi = pixels[index];
+            pixels[index] = nativeToJavaARGB(pixels[yindex]);
+            pixels[yindex] = nativeToJavaARGB(pixi);
+          }
+        }
+      }
+      break;
+    case NATIVE_TO_RGB:
+      for (int y = y0; y < y1; y++) {
+        int index = y * width;
+        int yindex = (height - 1 - y) * width;
+        if (index == yindex) {
+          for (int x = 0; x < width; x++, index++) {
+            pixels[index] = nativeToJavaRGB(pixels[index]);
+          }
+        } else {
+          for (int x = 0; x < width; x++, index++, yindex++) {
+            int pixi = pixels[index];
+            pixels[index] = nativeToJavaRGB(pixels[yindex]);
+            pixels[yindex] = nativeToJavaRGB(pixi);
+          }
+        }
+      }
+      break;
+    case ARGB_TO_NATIVE:
+      for (int y = y0; y < y1; y++) {
+        int index = y * width;
+        int yindex = (height - 1 - y) * width;
+        if (index == yindex) {
+          for (int x = 0; x < width; x++, index++) {
+            pixels[index] = javaToNativeARGB(pixels[index]);
+          }
+        } else {
+          for (int x = 0; x < width; x++, index++, yindex++) {
+            int pixi = pixels[index];
+            pixels[index] = javaToNativeARGB(pixels[yindex]);
+            pixels[yindex] = javaToNativeARGB(pixi);
+          }
+        }
+      }
+      break;
+    case RGB_TO_NATIVE:
+      for (int y = y0; y < y1; y++) {
+        int index = y * width;
+        int yindex = (height - 1 - y) * width;
+        if (index == yindex) {
+          for (int x = 0; x < width; x++, index++) {
+            pixels[index] = javaToNativeRGB(pixels[index]);
+          }
+        } else {
+          for (int x = 0; x < width; x++, index++, yindex++) {
+            int pixi = pixels[index];
+            pixels[index] = javaToNativeRGB(pixels[yindex]);
+            pixels[yindex] = javaToNativeRGB(pixi);
+          }
+        }
+      }
+      break;
+    }
+  }
+
+
+  static int nativeToJavaARGB(int color) {
+    if (BIG_ENDIAN) { // RGBA to ARGB
+      return (color >>> 8) | (color << 24);
+    } else { // ABGR to ARGB
+      int rb = color & 0x00FF00FF;
+      return (color & 0xFF00FF00) | (rb << 16) | (rb >> 16);
+    }
+  }
+
+
+  static int nativeToJavaRGB(int color) {
+    if (BIG_ENDIAN) { // RGBA to ARGB
+      return (color >>> 8) | 0xFF000000;
+    } else { // ABGR to ARGB
+      int rb = color & 0x00FF00FF;
+      return 0xFF000000 | (rb << 16) | (color & 0x0000FF00) | (rb >> 16);
+    }
+  }
+
+
+  static int javaToNativeARGB(int color) {
+    if (BIG_ENDIAN) { // ARGB to RGBA
+      return (color >>> 24) | (color << 8);
+    } else { // ARGB to ABGR
+      int rb = color & 0x00FF00FF;
+      return (color & 0xFF00FF00) | (rb << 16) | (rb >> 16);
+    }
+  }
+
+
+  static int javaToNativeRGB(int color) {
+    if (BIG_ENDIAN) { // ARGB to RGB
+      return 0xFF | (color << 8);
+    } else { // ARGB to BGR
+      int rb = color & 0x00FF00FF;
+      return 0xFF000000 | (rb << 16) | (color & 0x0000FF00) | (rb >> 16);
+    }
+  }
+}
@@ -35,6 +35,7 @@ import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * This class wraps an OpenGL texture.
@@ -105,6 +106,12 @@ public class Texture implements PConstants {
   protected boolean invertedX;
   protected boolean invertedY;
 
+  protected boolean distanceField;  // true if it holds the signed distance
+                                    // fields of font glyphs.
+
+  protected Set<PShapeOpenGL> shapes; // retained shapes using the glyphs in
+                                      // it, if it is a page of a FontTexture.
+
   protected int[] rgbaPixels = null;
   protected IntBuffer pixelBuffer = null;
 
@@ -338,13 +345,24 @@ public class Texture implements PConstants {
     }
     pgl.bindTexture(glTarget, glName);
 
-    loadPixels(w * h);
-    convertToRGBA(pixels, format, w, h);
-    if (invertedX) flipArrayOnX(rgbaPixels, 1);
-    if (invertedY) flipArrayOnY(rgbaPixels, 1);
-    updatePixelBuffer(rgbaPixels);
-    pgl.texSubImage2D(glTarget, 0, x, y, w, h, PGL.RGBA, PGL.UNSIGNED_BYTE,
-                      pixelBuffer);
+    if (format == ARGB && !invertedX && !invertedY &&
+        width == glWidth && height == glHeight &&
+        PGraphicsOpenGL.bgraSupported) {
+      // The ARGB ints can be uploaded as they are, with OpenGL doing the
+      // reordering of the components. Padded textures take the slow path,
+      // since their edges are filled from the converted pixels.
+      updatePixelBuffer(pixels);
+      pgl.texSubImage2D(glTarget, 0, x, y, w, h, PGL.BGRA,
+                        PGL.UNSIGNED_INT_8_8_8_8_REV, pixelBuffer);
+    } else {
+      loadPixels(w * h);
+      convertToRGBA(pixels, format, w, h);
+      if (invertedX) flipArrayOnX(rgbaPixels, 1);
+      if (invertedY) flipArrayOnY(rgbaPixels, 1);
+      updatePixelBuffer(rgbaPixels);
+      pgl.texSubImage2D(glTarget, 0, x, y, w, h, PGL.RGBA, PGL.UNSIGNED_BYTE,
+                        pixelBuffer);
+    }
     fillEdges(x, y, w, h);
 
     if (usingMipmaps) {
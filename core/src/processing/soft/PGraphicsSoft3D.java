@@ -0,0 +1,2279 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.soft;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import processing.core.*;
+
+
+/**
+ * Pure Java 3D renderer, for machines that have neither a GPU nor a
+ * display. It follows the conventions of P3D (default camera and
+ * perspective, stroke weights in pixels, per-vertex lighting with the same
+ * model as the OpenGL light shaders), but transforms, lights and clips the
+ * geometry on the CPU and rasterizes it into the pixels array with a depth
+ * buffer.
+ * <p/>
+ * Triangles are buffered until the pixels are needed (endDraw(),
+ * loadPixels(), get(), etc.) or until the buffer is full. At that point
+ * they are binned into square tiles of the framebuffer, and the tiles are
+ * rasterized in parallel. Each tile processes its triangles in submission
+ * order, so blending gives the same result as a sequential rasterizer.
+ * <p/>
+ * Use it like any other renderer, for instance
+ * <tt>size(800, 600, "processing.soft.PGraphicsSoft3D")</tt>, or with
+ * createGraphics() to render offscreen. Lines and points are drawn as
+ * screen-space polygons, textures are clamped, and smooth() only affects
+ * texture filtering.
+ */
+public class PGraphicsSoft3D extends PGraphics {
+
+  /** Side of the square tiles the framebuffer is split into. */
+  static protected int TILE_SIZE = 64;
+
+  /** Number of buffered triangles that forces a flush. */
+  static protected int FLUSH_TRIANGLE_COUNT = 1 << 16;
+
+  /**
+   * Number of (triangle, tile) pairs below which the tiles are rasterized
+   * on the calling thread, because splitting the work would cost more than
+   * it saves.
+   */
+  static protected int PARALLEL_MIN_BIN_ENTRIES = 64;
+
+  static protected final int MATRIX_STACK_DEPTH = 32;
+  static protected final int MAX_LIGHTS = 8;
+
+  // Same tessellation accuracy as the OpenGL renderers.
+  static protected final int   MIN_POINT_ACCURACY    = 20;
+  static protected final int   MAX_POINT_ACCURACY    = 200;
+  static protected final float POINT_ACCURACY_FACTOR = 10.0f;
+  static protected final int   MIN_DISC_ACCURACY     = 8;
+  static protected final float MIN_CAPS_JOINS_WEIGHT = 2f;
+
+  /** Factor applied to the eye coordinates of the strokes, so that they
+   * are drawn in front of the fills they outline. */
+  static protected final float STROKE_DISPLACEMENT = 0.999f;
+
+  // Layout of the screen-space vertices stored in the triangle buffer.
+  // Depth is in the [0, 1] range, and Q is 1/w. Colors and texture
+  // coordinates are premultiplied by Q, so that interpolating them
+  // linearly on screen gives perspective-correct values.
+  static protected final int VX = 0;
+  static protected final int VY = 1;
+  static protected final int VZ = 2;
+  static protected final int VQ = 3;
+  static protected final int VR = 4;
+  static protected final int VG = 5;
+  static protected final int VB = 6;
+  static protected final int VA = 7;
+  static protected final int VU = 8;
+  static protected final int VV = 9;
+  static protected final int VERTEX_SIZE = 10;
+  static protected final int TRIANGLE_SIZE = 3 * VERTEX_SIZE;
+
+  // Layout of the clip-space vertices of the fill triangles, which carry
+  // both the front and the back colors until the winding is known.
+  static protected final int CX  = 0;
+  static protected final int CY  = 1;
+  static protected final int CZ  = 2;
+  static protected final int CW  = 3;
+  static protected final int CFR = 4;
+  static protected final int CBR = 8;
+  static protected final int CU  = 12;
+  static protected final int CV  = 13;
+  static protected final int CLIP_SIZE = 14;
+
+  /** Sub-pixel precision of the vertex positions during rasterization. */
+  static protected final int SUBPIXEL_BITS = 4;
+  static protected final int SUBPIXEL_ONE = 1 << SUBPIXEL_BITS;
+
+  /** Coordinates are clamped to this range, in pixels, so that the fixed
+   * point edge functions can't overflow. */
+  static protected final float MAX_COORDINATE = 1 << 22;
+
+  // Faces of the box: the normal, then the corners as multiples of the
+  // half dimensions, in the same order as the OpenGL renderers.
+  static protected final int[][] BOX_FACES = {
+    {  0,  0, -1,   -1, -1, -1,   -1, +1, -1,   +1, +1, -1,   +1, -1, -1 },
+    {  0,  0, +1,   -1, +1, +1,   -1, -1, +1,   +1, -1, +1,   +1, +1, +1 },
+    { +1,  0,  0,   +1, -1, -1,   +1, +1, -1,   +1, +1, +1,   +1, -1, +1 },
+    { -1,  0,  0,   -1, +1, -1,   -1, -1, -1,   -1, -1, +1,   -1, +1, +1 },
+    {  0, -1,  0,   +1, -1, -1,   +1, -1, +1,   -1, -1, +1,   -1, -1, -1 },
+    {  0, +1,  0,   -1, +1, -1,   -1, +1, +1,   +1, +1, +1,   +1, +1, -1 }
+  };
+
+  /** Depth buffer, with one value in [0, 1] per pixel. */
+  public float[] zbuffer;
+
+  // ........................................................
+
+  // Matrices
+
+  public PMatrix3D projection;
+  public PMatrix3D camera;
+  public PMatrix3D cameraInv;
+  public PMatrix3D modelview;
+  public PMatrix3D modelviewInv;
+
+  protected int modelviewStackDepth;
+  protected float[][] modelviewStack = new float[MATRIX_STACK_DEPTH][16];
+  protected float[][] cameraStack = new float[MATRIX_STACK_DEPTH][16];
+
+  protected boolean manipulatingCamera;
+
+  // ........................................................
+
+  // Camera
+
+  public float cameraFOV;
+  public float cameraX, cameraY, cameraZ;
+  public float cameraNear, cameraFar;
+  public float cameraAspect;
+  protected float eyeDist;
+
+  protected float defCameraFOV;
+  protected float defCameraX, defCameraY, defCameraZ;
+  protected float defCameraNear, defCameraFar;
+  protected float defCameraAspect;
+
+  protected boolean sized;
+
+  // ........................................................
+
+  // Lights, with the same layout as in PGraphicsOpenGL. Positions and
+  // directions are in eye coordinates.
+
+  public boolean lights;
+  public int lightCount = 0;
+  public int[] lightType = new int[MAX_LIGHTS];
+  public float[] lightPosition = new float[4 * MAX_LIGHTS];
+  public float[] lightNormal = new float[3 * MAX_LIGHTS];
+  public float[] lightAmbient = new float[3 * MAX_LIGHTS];
+  public float[] lightDiffuse = new float[3 * MAX_LIGHTS];
+  public float[] lightSpecular = new float[3 * MAX_LIGHTS];
+  public float[] lightFalloffCoefficients = new float[3 * MAX_LIGHTS];
+  public float[] lightSpotParameters = new float[2 * MAX_LIGHTS];
+
+  public float[] currentLightSpecular = new float[3];
+  public float currentLightFalloffConstant;
+  public float currentLightFalloffLinear;
+  public float currentLightFalloffQuadratic;
+
+  // ........................................................
+
+  // Geometry
+
+  /** Eye and clip coordinates of the vertices of the current shape. */
+  protected float[] eyeCoords = new float[3 * DEFAULT_VERTICES];
+  protected float[] clipCoords = new float[4 * DEFAULT_VERTICES];
+
+  protected float[] clipIn = new float[3 * CLIP_SIZE];
+  protected float[] clipOut = new float[4 * CLIP_SIZE];
+  protected float[] screenPoly = new float[4 * VERTEX_SIZE];
+  protected float[] lineEnds = new float[2 * VERTEX_SIZE];
+  protected float[] lineQuad = new float[4 * VERTEX_SIZE];
+  protected float[] disc = new float[(MAX_POINT_ACCURACY + 1) * VERTEX_SIZE];
+
+  protected float[] polyA = new float[DEFAULT_VERTICES];
+  protected float[] polyB = new float[DEFAULT_VERTICES];
+  protected int[] polyIndices = new int[DEFAULT_VERTICES];
+
+  // ........................................................
+
+  // Rasterization
+
+  protected float[] triangles = new float[1024 * TRIANGLE_SIZE];
+  protected PImage[] triangleTextures = new PImage[1024];
+  protected int triangleCount;
+
+  protected int tileCols, tileRows;
+  protected int[][] tileBins;
+  protected int[] tileBinCounts;
+
+
+  public PGraphicsSoft3D() {
+    projection = new PMatrix3D();
+    camera = new PMatrix3D();
+    cameraInv = new PMatrix3D();
+    modelview = new PMatrix3D();
+    modelviewInv = new PMatrix3D();
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // RENDERER SETUP
+
+
+  @Override
+  public boolean is2D() {
+    return false;
+  }
+
+
+  @Override
+  public boolean is3D() {
+    return true;
+  }
+
+
+  @Override
+  public void setSize(int iwidth, int iheight) {
+    super.setSize(iwidth, iheight);
+    allocate();
+
+    // Same defaults as P3D.
+    defCameraFOV = 60 * DEG_TO_RAD;
+    defCameraX = width / 2.0f;
+    defCameraY = height / 2.0f;
+    defCameraZ = defCameraY / ((float) Math.tan(defCameraFOV / 2.0f));
+    defCameraNear = defCameraZ / 10.0f;
+    defCameraFar = defCameraZ * 10.0f;
+    defCameraAspect = (float) width / (float) height;
+
+    cameraFOV = defCameraFOV;
+    cameraX = defCameraX;
+    cameraY = defCameraY;
+    cameraZ = defCameraZ;
+    cameraNear = defCameraNear;
+    cameraFar = defCameraFar;
+    cameraAspect = defCameraAspect;
+
+    sized = true;
+  }
+
+
+  protected void allocate() {
+    triangleCount = 0;
+    pixels = new int[pixelWidth * pixelHeight];
+    zbuffer = new float[pixelWidth * pixelHeight];
+    Arrays.fill(zbuffer, 1);
+
+    tileCols = (pixelWidth + TILE_SIZE - 1) / TILE_SIZE;
+    tileRows = (pixelHeight + TILE_SIZE - 1) / TILE_SIZE;
+    tileBins = new int[tileCols * tileRows][16];
+    tileBinCounts = new int[tileCols * tileRows];
+  }
+
+
+  @Override
+  public void beginDraw() {
+    if (pixels == null || zbuffer == null ||
+        pixels.length != pixelWidth * pixelHeight) {
+      allocate();
+    }
+    checkSettings();
+
+    if (sized) {
+      defaultPerspective();
+      defaultCamera();
+      sized = false;
+    } else {
+      // Going back to the camera, dropping the user's transformations.
+      modelview.set(camera);
+    }
+
+    noLights();
+    lightFalloff(1, 0, 0);
+    lightSpecular(0, 0, 0);
+
+    // Each frame starts with an empty depth buffer, as in P3D.
+    Arrays.fill(zbuffer, 1);
+    vertexCount = 0;
+  }
+
+
+  @Override
+  public void endDraw() {
+    flush();
+    setLoaded();
+  }
+
+
+  @Override
+  public void hint(int which) {
+    int h = Math.abs(which);
+    if (h == DISABLE_DEPTH_TEST || h == DISABLE_DEPTH_MASK) {
+      // These change how the pending triangles would be rasterized.
+      flush();
+    }
+    super.hint(which);
+  }
+
+
+  @Override
+  public void blendMode(int mode) {
+    if (mode != blendMode) flush();
+    super.blendMode(mode);
+  }
+
+
+  @Override
+  protected void blendModeImpl() {
+    // All the modes are supported, through PImage.blendColor().
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // SHAPES
+
+
+  @Override
+  public void beginShape(int kind) {
+    shape = kind;
+    vertexCount = 0;
+    curveVertexCount = 0;
+    normalMode = NORMAL_MODE_AUTO;
+    textureImage = null;
+  }
+
+
+  @Override
+  public void vertex(float x, float y) {
+    // Going through the 3D version, so that the material is set as well.
+    vertex(x, y, 0);
+  }
+
+
+  @Override
+  public void endShape(int mode) {
+    if (vertexCount == 0) return;
+
+    transformVertices();
+    PImage tex = textureImage;
+    if (tex != null && tex != this) {
+      tex.loadPixels();
+      if (tex.pixels == null) tex = null;
+    }
+    boolean filled = fill || tex != null;
+
+    int n = vertexCount;
+    switch (shape) {
+    case POINTS:
+      if (stroke) {
+        for (int i = 0; i < n; i++) addPoint(i);
+      }
+      break;
+
+    case LINES:
+      if (stroke) {
+        for (int i = 0; i + 1 < n; i += 2) addLine(i, i + 1);
+      }
+      break;
+
+    case LINE_STRIP:
+    case LINE_LOOP:
+      if (stroke) {
+        for (int i = 0; i + 1 < n; i++) addLine(i, i + 1);
+        if (shape == LINE_LOOP && n > 2) addLine(n - 1, 0);
+      }
+      break;
+
+    case TRIANGLES:
+      if (filled) {
+        for (int i = 0; i + 2 < n; i += 3) {
+          addFillTriangle(i, i + 1, i + 2, tex);
+        }
+      }
+      if (stroke) {
+        for (int i = 0; i + 2 < n; i += 3) {
+          addLine(i, i + 1);
+          addLine(i + 1, i + 2);
+          addLine(i + 2, i);
+        }
+      }
+      break;
+
+    case TRIANGLE_FAN:
+      if (filled) {
+        for (int i = 1; i + 1 < n; i++) addFillTriangle(0, i, i + 1, tex);
+      }
+      if (stroke && n > 2) {
+        addLine(0, 1);
+        for (int i = 1; i + 1 < n; i++) {
+          addLine(i, i + 1);
+          addLine(i + 1, 0);
+        }
+      }
+      break;
+
+    case TRIANGLE_STRIP:
+      if (filled) {
+        for (int i = 0; i + 2 < n; i++) {
+          // Every other triangle is flipped to keep the winding consistent.
+          if (i % 2 == 0) {
+            addFillTriangle(i, i + 1, i + 2, tex);
+          } else {
+            addFillTriangle(i + 1, i, i + 2, tex);
+          }
+        }
+      }
+      if (stroke && n > 2) {
+        addLine(0, 1);
+        for (int i = 2; i < n; i++) {
+          addLine(i - 1, i);
+          addLine(i - 2, i);
+        }
+      }
+      break;
+
+    case QUADS:
+      for (int i = 0; i + 3 < n; i += 4) {
+        if (filled) {
+          addFillTriangle(i, i + 1, i + 2, tex);
+          addFillTriangle(i, i + 2, i + 3, tex);
+        }
+        if (stroke) {
+          addLine(i, i + 1);
+          addLine(i + 1, i + 2);
+          addLine(i + 2, i + 3);
+          addLine(i + 3, i);
+        }
+      }
+      break;
+
+    case QUAD_STRIP:
+      if (filled) {
+        for (int i = 0; i + 3 < n; i += 2) {
+          addFillTriangle(i, i + 1, i + 3, tex);
+          addFillTriangle(i, i + 3, i + 2, tex);
+        }
+      }
+      if (stroke && n > 3) {
+        addLine(0, 1);
+        for (int i = 0; i + 3 < n; i += 2) {
+          addLine(i, i + 2);
+          addLine(i + 1, i + 3);
+          addLine(i + 2, i + 3);
+        }
+      }
+      break;
+
+    case POLYGON:
+    default:
+      if (filled && n > 2) addPolygonFill(tex);
+      if (stroke) {
+        for (int i = 0; i + 1 < n; i++) addLine(i, i + 1);
+        if (mode == CLOSE && n > 2) addLine(n - 1, 0);
+      }
+      break;
+    }
+
+    vertexCount = 0;
+  }
+
+
+  @Override
+  protected void ellipseImpl(float x, float y, float w, float h) {
+    float radiusH = w / 2;
+    float radiusV = h / 2;
+    float centerX = x + radiusH;
+    float centerY = y + radiusV;
+
+    int accuracy = ellipseAccuracy(x, y, w, h, TWO_PI);
+    beginShape(POLYGON);
+    for (int i = 0; i < accuracy; i++) {
+      float a = TWO_PI * i / accuracy;
+      vertex(centerX + PApplet.cos(a) * radiusH,
+             centerY + PApplet.sin(a) * radiusV);
+    }
+    endShape(CLOSE);
+  }
+
+
+  @Override
+  protected void arcImpl(float x, float y, float w, float h,
+                         float start, float stop, int mode) {
+    float radiusH = w / 2;
+    float radiusV = h / 2;
+    float centerX = x + radiusH;
+    float centerY = y + radiusV;
+
+    int accuracy = Math.max(2, ellipseAccuracy(x, y, w, h, stop - start));
+    boolean savedFill = fill;
+    boolean savedStroke = stroke;
+
+    if (savedFill) {
+      // The default mode fills as a pie and strokes as an open arc.
+      stroke = false;
+      beginShape(POLYGON);
+      if (mode == 0 || mode == PIE) vertex(centerX, centerY);
+      arcVertices(centerX, centerY, radiusH, radiusV, start, stop, accuracy);
+      endShape(CLOSE);
+      stroke = savedStroke;
+    }
+
+    if (savedStroke) {
+      fill = false;
+      beginShape(POLYGON);
+      if (mode == PIE) vertex(centerX, centerY);
+      arcVertices(centerX, centerY, radiusH, radiusV, start, stop, accuracy);
+      endShape(mode == CHORD || mode == PIE ? CLOSE : OPEN);
+      fill = savedFill;
+    }
+  }
+
+
+  /**
+   * Same faces, normals and winding as the box of the OpenGL renderers.
+   */
+  @Override
+  public void box(float w, float h, float d) {
+    // Normals always extend from the front faces, even when some of the
+    // dimensions are negative.
+    int normX = (h > 0) != (d > 0) ? -1 : 1;
+    int normY = (w > 0) != (d > 0) ? -1 : 1;
+    int normZ = (w > 0) != (h > 0) ? -1 : 1;
+
+    beginShape(QUADS);
+    for (int[] face : BOX_FACES) {
+      normal(face[0] * normX, face[1] * normY, face[2] * normZ);
+      for (int k = 3; k < face.length; k += 3) {
+        vertex(face[k] * w / 2f, face[k + 1] * h / 2f, face[k + 2] * d / 2f);
+      }
+    }
+    endShape();
+  }
+
+
+  /**
+   * Same triangles and winding as the sphere of the OpenGL renderers, from
+   * the south pole at (0, r, 0) to the north pole at (0, -r, 0). Strokes
+   * are drawn separately so that the shared edges are drawn only once.
+   */
+  @Override
+  public void sphere(float r) {
+    if ((sphereDetailU < 3) || (sphereDetailV < 2)) {
+      sphereDetail(30);
+    }
+    int detailU = sphereDetailU;
+    int last = (sphereDetailV - 2) * detailU;
+
+    boolean savedFill = fill;
+    boolean savedStroke = stroke;
+
+    if (savedFill) {
+      stroke = false;
+      beginShape(TRIANGLES);
+      for (int i = 0; i < detailU; i++) {
+        int i1 = (i + 1) % detailU;
+        sphereVertex(r, i);
+        normal(0, 1, 0);
+        vertex(0, r, 0);
+        sphereVertex(r, i1);
+      }
+      for (int ring = detailU; ring <= last; ring += detailU) {
+        int prev = ring - detailU;
+        for (int i = 0; i < detailU; i++) {
+          int i1 = (i + 1) % detailU;
+          sphereVertex(r, ring + i);
+          sphereVertex(r, prev + i);
+          sphereVertex(r, prev + i1);
+
+          sphereVertex(r, ring + i);
+          sphereVertex(r, prev + i1);
+          sphereVertex(r, ring + i1);
+        }
+      }
+      for (int i = 0; i < detailU; i++) {
+        int i1 = (i + 1) % detailU;
+        normal(0, -1, 0);
+        vertex(0, -r, 0);
+        sphereVertex(r, last + i);
+        sphereVertex(r, last + i1);
+      }
+      endShape();
+      stroke = savedStroke;
+    }
+
+    if (savedStroke) {
+      fill = false;
+      beginShape(LINES);
+      for (int ring = 0; ring <= last; ring += detailU) {
+        for (int i = 0; i < detailU; i++) {
+          int i1 = (i + 1) % detailU;
+          // Along the ring, and towards the previous ring or the pole.
+          sphereVertex(r, ring + i);
+          sphereVertex(r, ring + i1);
+          sphereVertex(r, ring + i);
+          if (ring == 0) {
+            vertex(0, r, 0);
+          } else {
+            sphereVertex(r, ring - detailU + i);
+            sphereVertex(r, ring + i);
+            sphereVertex(r, ring - detailU + i1);
+          }
+        }
+      }
+      for (int i = 0; i < detailU; i++) {
+        sphereVertex(r, last + i);
+        vertex(0, -r, 0);
+      }
+      endShape();
+      fill = savedFill;
+    }
+  }
+
+
+  protected void sphereVertex(float r, int i) {
+    normal(sphereX[i], sphereY[i], sphereZ[i]);
+    vertex(r * sphereX[i], r * sphereY[i], r * sphereZ[i]);
+  }
+
+
+  protected void arcVertices(float centerX, float centerY,
+                             float radiusH, float radiusV,
+                             float start, float stop, int accuracy) {
+    for (int i = 0; i <= accuracy; i++) {
+      float a = start + (stop - start) * i / accuracy;
+      vertex(centerX + PApplet.cos(a) * radiusH,
+             centerY + PApplet.sin(a) * radiusV);
+    }
+  }
+
+
+  protected int ellipseAccuracy(float x, float y, float w, float h,
+                                float angle) {
+    float sx1 = screenX(x, y);
+    float sy1 = screenY(x, y);
+    float sx2 = screenX(x + w, y + h);
+    float sy2 = screenY(x + w, y + h);
+    int accuracy =
+      PApplet.min(MAX_POINT_ACCURACY, PApplet.max(MIN_POINT_ACCURACY,
+                  (int) (TWO_PI * PApplet.dist(sx1, sy1, sx2, sy2) /
+                  POINT_ACCURACY_FACTOR)));
+    return Math.max(1, (int) (accuracy * Math.abs(angle) / TWO_PI + 0.5f));
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // GEOMETRY PROCESSING
+
+
+  /**
+   * Computes the eye and clip coordinates of the vertices of the current
+   * shape, and the inverse modelview needed to transform the normals.
+   */
+  protected void transformVertices() {
+    int n = vertexCount;
+    if (eyeCoords.length < 3 * n) {
+      eyeCoords = new float[3 * PApplet.max(n, 2 * eyeCoords.length / 3)];
+      clipCoords = new float[4 * PApplet.max(n, clipCoords.length / 2)];
+    }
+
+    PMatrix3D mv = modelview;
+    PMatrix3D pr = projection;
+    for (int i = 0; i < n; i++) {
+      float[] vert = vertices[i];
+      float x = vert[X];
+      float y = vert[Y];
+      float z = vert[Z];
+
+      float ex = mv.m00*x + mv.m01*y + mv.m02*z + mv.m03;
+      float ey = mv.m10*x + mv.m11*y + mv.m12*z + mv.m13;
+      float ez = mv.m20*x + mv.m21*y + mv.m22*z + mv.m23;
+      eyeCoords[3 * i + 0] = ex;
+      eyeCoords[3 * i + 1] = ey;
+      eyeCoords[3 * i + 2] = ez;
+
+      clipCoords[4 * i + 0] = pr.m00*ex + pr.m01*ey + pr.m02*ez + pr.m03;
+      clipCoords[4 * i + 1] = pr.m10*ex + pr.m11*ey + pr.m12*ez + pr.m13;
+      clipCoords[4 * i + 2] = pr.m20*ex + pr.m21*ey + pr.m22*ez + pr.m23;
+      clipCoords[4 * i + 3] = pr.m30*ex + pr.m31*ey + pr.m32*ez + pr.m33;
+    }
+
+    if (lights) {
+      modelviewInv.set(modelview);
+      modelviewInv.invert();
+    }
+  }
+
+
+  protected void addFillTriangle(int i0, int i1, int i2, PImage tex) {
+    // Face normal in object coordinates, computed as in the OpenGL
+    // tessellator when the shape doesn't specify normals.
+    float fnx = 0, fny = 0, fnz = 0;
+    if (lights && normalMode == NORMAL_MODE_AUTO) {
+      float[] v0 = vertices[i0];
+      float[] v1 = vertices[i1];
+      float[] v2 = vertices[i2];
+      float v12x = v2[X] - v1[X];
+      float v12y = v2[Y] - v1[Y];
+      float v12z = v2[Z] - v1[Z];
+      float v10x = v0[X] - v1[X];
+      float v10y = v0[Y] - v1[Y];
+      float v10z = v0[Z] - v1[Z];
+      fnx = v12y * v10z - v10y * v12z;
+      fny = v12z * v10x - v10z * v12x;
+      fnz = v12x * v10y - v10x * v12y;
+    }
+
+    setClipVertex(0, i0, fnx, fny, fnz, tex != null);
+    setClipVertex(1, i1, fnx, fny, fnz, tex != null);
+    setClipVertex(2, i2, fnx, fny, fnz, tex != null);
+    clipFillTriangle(tex);
+  }
+
+
+  protected void setClipVertex(int k, int i, float fnx, float fny, float fnz,
+                               boolean textured) {
+    float[] vert = vertices[i];
+    float[] out = clipIn;
+    int o = k * CLIP_SIZE;
+    out[o + CX] = clipCoords[4 * i + 0];
+    out[o + CY] = clipCoords[4 * i + 1];
+    out[o + CZ] = clipCoords[4 * i + 2];
+    out[o + CW] = clipCoords[4 * i + 3];
+
+    if (lights) {
+      float nx, ny, nz;
+      if (normalMode == NORMAL_MODE_AUTO) {
+        nx = fnx; ny = fny; nz = fnz;
+      } else {
+        nx = vert[NX]; ny = vert[NY]; nz = vert[NZ];
+      }
+      // Normal matrix, the transpose of the inverse of the modelview.
+      PMatrix3D inv = modelviewInv;
+      float enx = nx*inv.m00 + ny*inv.m10 + nz*inv.m20;
+      float eny = nx*inv.m01 + ny*inv.m11 + nz*inv.m21;
+      float enz = nx*inv.m02 + ny*inv.m12 + nz*inv.m22;
+      float d = PApplet.sqrt(enx*enx + eny*eny + enz*enz);
+      if (0 < d) {
+        enx /= d; eny /= d; enz /= d;
+      }
+      calcLighting(vert, eyeCoords[3 * i], eyeCoords[3 * i + 1],
+                   eyeCoords[3 * i + 2], enx, eny, enz, out, o);
+    } else {
+      out[o + CFR + 0] = out[o + CBR + 0] = vert[R];
+      out[o + CFR + 1] = out[o + CBR + 1] = vert[G];
+      out[o + CFR + 2] = out[o + CBR + 2] = vert[B];
+      out[o + CFR + 3] = out[o + CBR + 3] = vert[A];
+    }
+
+    if (textured) {
+      out[o + CU] = vert[U];
+      out[o + CV] = vert[V];
+    } else {
+      out[o + CU] = out[o + CV] = 0;
+    }
+  }
+
+
+  /**
+   * Per-vertex lighting, following the model of the OpenGL light shader.
+   * Writes the front and back colors of the vertex into out.
+   */
+  protected void calcLighting(float[] vert, float px, float py, float pz,
+                              float nx, float ny, float nz,
+                              float[] out, int o) {
+    float ambR = 0, ambG = 0, ambB = 0;
+    float frontDiffR = 0, frontDiffG = 0, frontDiffB = 0;
+    float frontSpecR = 0, frontSpecG = 0, frontSpecB = 0;
+    float backDiffR = 0, backDiffG = 0, backDiffB = 0;
+    float backSpecR = 0, backSpecG = 0, backSpecB = 0;
+    float shine = vert[SHINE];
+
+    for (int i = 0; i < lightCount; i++) {
+      float lpx = lightPosition[4 * i + 0];
+      float lpy = lightPosition[4 * i + 1];
+      float lpz = lightPosition[4 * i + 2];
+      boolean isDir = lightPosition[4 * i + 3] < 1;
+      float lnx = lightNormal[3 * i + 0];
+      float lny = lightNormal[3 * i + 1];
+      float lnz = lightNormal[3 * i + 2];
+
+      float ldx, ldy, ldz;
+      float falloff;
+      if (isDir) {
+        falloff = 1;
+        ldx = -lnx; ldy = -lny; ldz = -lnz;
+      } else {
+        ldx = lpx - px; ldy = lpy - py; ldz = lpz - pz;
+        float d2 = ldx*ldx + ldy*ldy + ldz*ldz;
+        float d = PApplet.sqrt(d2);
+        falloff = 1 / (lightFalloffCoefficients[3 * i + 0] +
+                       lightFalloffCoefficients[3 * i + 1] * d +
+                       lightFalloffCoefficients[3 * i + 2] * d2);
+        if (0 < d) {
+          ldx /= d; ldy /= d; ldz /= d;
+        }
+      }
+
+      float spotf = 1;
+      float spotExp = lightSpotParameters[2 * i + 1];
+      if (0 < spotExp) {
+        float dx = lpx - px, dy = lpy - py, dz = lpz - pz;
+        float d = PApplet.sqrt(dx*dx + dy*dy + dz*dz);
+        float spotCos = 0 < d ? -(lnx*dx + lny*dy + lnz*dz) / d : 0;
+        spotf = spotCos <= lightSpotParameters[2 * i] ?
+                0 : (float) Math.pow(spotCos, spotExp);
+      }
+
+      float lar = lightAmbient[3 * i + 0];
+      float lag = lightAmbient[3 * i + 1];
+      float lab = lightAmbient[3 * i + 2];
+      if (0 < lar || 0 < lag || 0 < lab) {
+        ambR += lar * falloff;
+        ambG += lag * falloff;
+        ambB += lab * falloff;
+      }
+
+      float ldr = lightDiffuse[3 * i + 0];
+      float ldg = lightDiffuse[3 * i + 1];
+      float ldb = lightDiffuse[3 * i + 2];
+      if (0 < ldr || 0 < ldg || 0 < ldb) {
+        float lambert = ldx*nx + ldy*ny + ldz*nz;
+        float front = falloff * spotf * Math.max(0, lambert);
+        float back = falloff * spotf * Math.max(0, -lambert);
+        frontDiffR += ldr * front;
+        frontDiffG += ldg * front;
+        frontDiffB += ldb * front;
+        backDiffR += ldr * back;
+        backDiffG += ldg * back;
+        backDiffB += ldb * back;
+      }
+
+      float lsr = lightSpecular[3 * i + 0];
+      float lsg = lightSpecular[3 * i + 1];
+      float lsb = lightSpecular[3 * i + 2];
+      if (0 < lsr || 0 < lsg || 0 < lsb) {
+        // Blinn-Phong, with the half vector between the light and the eye.
+        float pd = PApplet.sqrt(px*px + py*py + pz*pz);
+        float hx = ldx, hy = ldy, hz = ldz;
+        if (0 < pd) {
+          hx -= px / pd; hy -= py / pd; hz -= pz / pd;
+        }
+        float hd = PApplet.sqrt(hx*hx + hy*hy + hz*hz);
+        float dot = 0 < hd ? (hx*nx + hy*ny + hz*nz) / hd : 0;
+        float front = falloff * spotf *
+                      (float) Math.pow(Math.max(0, dot), shine);
+        float back = falloff * spotf *
+                     (float) Math.pow(Math.max(0, -dot), shine);
+        frontSpecR += lsr * front;
+        frontSpecG += lsg * front;
+        frontSpecB += lsb * front;
+        backSpecR += lsr * back;
+        backSpecG += lsg * back;
+        backSpecB += lsb * back;
+      }
+    }
+
+    float ambientR = ambR * vert[AR] + vert[ER];
+    float ambientG = ambG * vert[AG] + vert[EG];
+    float ambientB = ambB * vert[AB] + vert[EB];
+
+    out[o + CFR + 0] = ambientR + frontDiffR * vert[R] + frontSpecR * vert[SPR];
+    out[o + CFR + 1] = ambientG + frontDiffG * vert[G] + frontSpecG * vert[SPG];
+    out[o + CFR + 2] = ambientB + frontDiffB * vert[B] + frontSpecB * vert[SPB];
+    out[o + CFR + 3] = vert[A];
+
+    out[o + CBR + 0] = ambientR + backDiffR * vert[R] + backSpecR * vert[SPR];
+    out[o + CBR + 1] = ambientG + backDiffG * vert[G] + backSpecG * vert[SPG];
+    out[o + CBR + 2] = ambientB + backDiffB * vert[B] + backSpecB * vert[SPB];
+    out[o + CBR + 3] = vert[A];
+  }
+
+
+  /**
+   * Clips the triangle in clipIn against the near plane, projects it to the
+   * screen, and adds the result to the triangle buffer.
+   */
+  protected void clipFillTriangle(PImage tex) {
+    float[] in = clipIn;
+    float d0 = in[CZ] + in[CW];
+    float d1 = in[CLIP_SIZE + CZ] + in[CLIP_SIZE + CW];
+    float d2 = in[2 * CLIP_SIZE + CZ] + in[2 * CLIP_SIZE + CW];
+    if (d0 < 0 && d1 < 0 && d2 < 0) return;
+
+    float[] poly = in;
+    int count = 3;
+    if (d0 < 0 || d1 < 0 || d2 < 0) {
+      // Sutherland-Hodgman against z = -w, giving at most a quad.
+      poly = clipOut;
+      count = 0;
+      for (int k = 0; k < 3; k++) {
+        int k1 = (k + 1) % 3;
+        float da = in[k * CLIP_SIZE + CZ] + in[k * CLIP_SIZE + CW];
+        float db = in[k1 * CLIP_SIZE + CZ] + in[k1 * CLIP_SIZE + CW];
+        if (0 <= da) {
+          System.arraycopy(in, k * CLIP_SIZE, poly, count * CLIP_SIZE,
+                           CLIP_SIZE);
+          count++;
+        }
+        if ((0 <= da) != (0 <= db)) {
+          lerpVertex(in, k * CLIP_SIZE, k1 * CLIP_SIZE, da / (da - db),
+                     poly, count * CLIP_SIZE, CLIP_SIZE);
+          count++;
+        }
+      }
+      if (count < 3) return;
+    }
+
+    // Projecting, and deciding which side is visible. As in P3D, front
+    // faces are the ones that go clockwise on the screen.
+    float area = 0;
+    float[] screen = screenPoly;
+    for (int k = 0; k < count; k++) {
+      int o = k * CLIP_SIZE;
+      int s = k * VERTEX_SIZE;
+      float q = 1 / poly[o + CW];
+      screen[s + VX] = (poly[o + CX] * q + 1) * 0.5f * pixelWidth;
+      screen[s + VY] = (1 - poly[o + CY] * q) * 0.5f * pixelHeight;
+      screen[s + VZ] = (poly[o + CZ] * q + 1) * 0.5f;
+      screen[s + VQ] = q;
+      screen[s + VU] = poly[o + CU] * q;
+      screen[s + VV] = poly[o + CV] * q;
+    }
+    for (int k = 0; k < count; k++) {
+      int s0 = k * VERTEX_SIZE;
+      int s1 = ((k + 1) % count) * VERTEX_SIZE;
+      area += screen[s0 + VX] * screen[s1 + VY] -
+              screen[s1 + VX] * screen[s0 + VY];
+    }
+    int color = 0 <= area ? CFR : CBR;
+    for (int k = 0; k < count; k++) {
+      int o = k * CLIP_SIZE + color;
+      int s = k * VERTEX_SIZE;
+      float q = screen[s + VQ];
+      screen[s + VR] = poly[o + 0] * q;
+      screen[s + VG] = poly[o + 1] * q;
+      screen[s + VB] = poly[o + 2] * q;
+      screen[s + VA] = poly[o + 3] * q;
+    }
+
+    for (int k = 1; k + 1 < count; k++) {
+      addTriangle(screen, 0, k * VERTEX_SIZE, (k + 1) * VERTEX_SIZE, tex);
+    }
+  }
+
+
+  static protected void lerpVertex(float[] src, int a, int b, float t,
+                                   float[] dest, int d, int size) {
+    for (int i = 0; i < size; i++) {
+      dest[d + i] = src[a + i] + t * (src[b + i] - src[a + i]);
+    }
+  }
+
+
+  /**
+   * Triangulates the current polygon: as a fan when it is convex, and by
+   * ear clipping otherwise. Ears are searched on the plane that the
+   * polygon is most parallel to.
+   */
+  protected void addPolygonFill(PImage tex) {
+    int n = vertexCount;
+    if (polyA.length < n) {
+      polyA = new float[n];
+      polyB = new float[n];
+      polyIndices = new int[n];
+    }
+
+    // Newell's normal
+    float nx = 0, ny = 0, nz = 0;
+    for (int i = 0; i < n; i++) {
+      float[] vi = vertices[i];
+      float[] vj = vertices[(i + 1) % n];
+      nx += (vi[Y] - vj[Y]) * (vi[Z] + vj[Z]);
+      ny += (vi[Z] - vj[Z]) * (vi[X] + vj[X]);
+      nz += (vi[X] - vj[X]) * (vi[Y] + vj[Y]);
+    }
+    float anx = Math.abs(nx), any = Math.abs(ny), anz = Math.abs(nz);
+    int ia = X, ib = Y;
+    if (anx > any && anx > anz) {
+      ia = Y; ib = Z;
+    } else if (any > anz) {
+      ia = Z; ib = X;
+    }
+
+    float area = 0;
+    for (int i = 0; i < n; i++) {
+      polyA[i] = vertices[i][ia];
+      polyB[i] = vertices[i][ib];
+    }
+    for (int i = 0; i < n; i++) {
+      int j = (i + 1) % n;
+      area += polyA[i] * polyB[j] - polyA[j] * polyB[i];
+    }
+    if (area == 0) return;
+    float sign = area > 0 ? 1 : -1;
+
+    boolean convex = true;
+    for (int i = 0; i < n && convex; i++) {
+      if (sign * cross(i, (i + 1) % n, (i + 2) % n) < 0) convex = false;
+    }
+    if (convex) {
+      for (int i = 1; i + 1 < n; i++) addFillTriangle(0, i, i + 1, tex);
+      return;
+    }
+
+    int[] idx = polyIndices;
+    for (int i = 0; i < n; i++) idx[i] = i;
+    int count = n;
+    while (count > 3) {
+      boolean found = false;
+      for (int k = 0; k < count; k++) {
+        int p = idx[(k + count - 1) % count];
+        int c = idx[k];
+        int q = idx[(k + 1) % count];
+        if (sign * cross(p, c, q) <= 0) continue;
+
+        boolean ear = true;
+        for (int m = 0; m < count && ear; m++) {
+          int o = idx[m];
+          if (o == p || o == c || o == q) continue;
+          if (sign * cross(p, c, o) >= 0 &&
+              sign * cross(c, q, o) >= 0 &&
+              sign * cross(q, p, o) >= 0) {
+            ear = false;
+          }
+        }
+        if (ear) {
+          addFillTriangle(p, c, q, tex);
+          System.arraycopy(idx, k + 1, idx, k, count - k - 1);
+          count--;
+          found = true;
+          break;
+        }
+      }
+      if (!found) {
+        // Self-intersecting or degenerate, fill what is left as a fan.
+        for (int k = 1; k + 1 < count; k++) {
+          addFillTriangle(idx[0], idx[k], idx[k + 1], tex);
+        }
+        return;
+      }
+    }
+    addFillTriangle(idx[0], idx[1], idx[2], tex);
+  }
+
+
+  protected float cross(int a, int b, int c) {
+    return (polyA[b] - polyA[a]) * (polyB[c] - polyB[a]) -
+           (polyB[b] - polyB[a]) * (polyA[c] - polyA[a]);
+  }
+
+
+  /**
+   * Lines are quads of constant width on the screen. Their eye coordinates
+   * are scaled towards the camera, as in P3D, so they are drawn on top of
+   * the surfaces they belong to.
+   */
+  protected void addLine(int i0, int i1) {
+    float weight = vertices[i0][SW] * pixelDensity;
+    if (weight <= 0) return;
+
+    float[] ends = lineEnds;
+    setStrokeVertex(i0, ends, 0, true);
+    setStrokeVertex(i1, ends, VERTEX_SIZE, true);
+
+    // ends holds clip coordinates at this point, in the first four slots.
+    float d0 = ends[VZ] + ends[VQ];
+    float d1 = ends[VERTEX_SIZE + VZ] + ends[VERTEX_SIZE + VQ];
+    if (d0 < 0 && d1 < 0) return;
+    if (d0 < 0) {
+      lerpVertex(ends, 0, VERTEX_SIZE, d0 / (d0 - d1), ends, 0, VERTEX_SIZE);
+    } else if (d1 < 0) {
+      lerpVertex(ends, VERTEX_SIZE, 0, d1 / (d1 - d0),
+                 ends, VERTEX_SIZE, VERTEX_SIZE);
+    }
+    projectVertex(ends, 0);
+    projectVertex(ends, VERTEX_SIZE);
+
+    float dx = ends[VERTEX_SIZE + VX] - ends[VX];
+    float dy = ends[VERTEX_SIZE + VY] - ends[VY];
+    float len = PApplet.sqrt(dx * dx + dy * dy);
+    float hw = weight / 2;
+    boolean round = strokeCap == ROUND && MIN_CAPS_JOINS_WEIGHT <= weight;
+
+    if (0 < len) {
+      float ux = dx / len;
+      float uy = dy / len;
+      float ext = strokeCap == PROJECT ? hw : 0;
+      float[] quad = lineQuad;
+      for (int k = 0; k < 4; k++) {
+        int end = k < 2 ? 0 : VERTEX_SIZE;
+        float side = k == 0 || k == 3 ? 1 : -1;
+        float along = k < 2 ? -ext : ext;
+        System.arraycopy(ends, end, quad, k * VERTEX_SIZE, VERTEX_SIZE);
+        quad[k * VERTEX_SIZE + VX] += -uy * hw * side + ux * along;
+        quad[k * VERTEX_SIZE + VY] += ux * hw * side + uy * along;
+      }
+      addTriangle(quad, 0, VERTEX_SIZE, 2 * VERTEX_SIZE, null);
+      addTriangle(quad, 0, 2 * VERTEX_SIZE, 3 * VERTEX_SIZE, null);
+    }
+
+    if (round) {
+      addDisc(ends, 0, hw);
+      addDisc(ends, VERTEX_SIZE, hw);
+    } else if (len == 0 && strokeCap != ROUND) {
+      addSquare(ends, 0, hw);
+    }
+  }
+
+
+  protected void addPoint(int i) {
+    float weight = vertices[i][SW] * pixelDensity;
+    if (weight <= 0) return;
+
+    float[] ends = lineEnds;
+    setStrokeVertex(i, ends, 0, false);
+    if (ends[VZ] + ends[VQ] < 0) return;
+    projectVertex(ends, 0);
+
+    if (strokeCap == ROUND) {
+      addDisc(ends, 0, weight / 2);
+    } else {
+      addSquare(ends, 0, weight / 2);
+    }
+  }
+
+
+  /**
+   * Writes the clip coordinates and the stroke color of a vertex, in the
+   * layout of the screen vertices (with w in the Q slot), so that it can
+   * be clipped and then projected in place.
+   */
+  protected void setStrokeVertex(int i, float[] out, int o,
+                                 boolean displace) {
+    float ex = eyeCoords[3 * i + 0];
+    float ey = eyeCoords[3 * i + 1];
+    float ez = eyeCoords[3 * i + 2];
+    PMatrix3D pr = projection;
+    if (displace && !hints[DISABLE_OPTIMIZED_STROKE]) {
+      if (pr.m32 == 0) {  // orthographic
+        ez *= STROKE_DISPLACEMENT;
+      } else {
+        ex *= STROKE_DISPLACEMENT;
+        ey *= STROKE_DISPLACEMENT;
+        ez *= STROKE_DISPLACEMENT;
+      }
+    }
+    out[o + VX] = pr.m00*ex + pr.m01*ey + pr.m02*ez + pr.m03;
+    out[o + VY] = pr.m10*ex + pr.m11*ey + pr.m12*ez + pr.m13;
+    out[o + VZ] = pr.m20*ex + pr.m21*ey + pr.m22*ez + pr.m23;
+    out[o + VQ] = pr.m30*ex + pr.m31*ey + pr.m32*ez + pr.m33;
+
+    float[] vert = vertices[i];
+    out[o + VR] = vert[SR];
+    out[o + VG] = vert[SG];
+    out[o + VB] = vert[SB];
+    out[o + VA] = vert[SA];
+    out[o + VU] = out[o + VV] = 0;
+  }
+
+
+  /** Replaces the clip coordinates of a vertex by its screen ones. */
+  protected void projectVertex(float[] v, int o) {
+    float q = 1 / v[o + VQ];
+    v[o + VX] = (v[o + VX] * q + 1) * 0.5f * pixelWidth;
+    v[o + VY] = (1 - v[o + VY] * q) * 0.5f * pixelHeight;
+    v[o + VZ] = (v[o + VZ] * q + 1) * 0.5f;
+    v[o + VQ] = q;
+    v[o + VR] *= q;
+    v[o + VG] *= q;
+    v[o + VB] *= q;
+    v[o + VA] *= q;
+  }
+
+
+  protected void addDisc(float[] center, int o, float radius) {
+    int accuracy =
+      PApplet.min(MAX_POINT_ACCURACY, PApplet.max(MIN_DISC_ACCURACY,
+                  (int) (TWO_PI * radius / POINT_ACCURACY_FACTOR)));
+    float[] verts = disc;
+    System.arraycopy(center, o, verts, 0, VERTEX_SIZE);
+    for (int k = 0; k < accuracy; k++) {
+      float a = TWO_PI * k / accuracy;
+      int s = (k + 1) * VERTEX_SIZE;
+      System.arraycopy(center, o, verts, s, VERTEX_SIZE);
+      verts[s + VX] += radius * PApplet.cos(a);
+      verts[s + VY] += radius * PApplet.sin(a);
+    }
+    for (int k = 0; k < accuracy; k++) {
+      addTriangle(verts, 0, (k + 1) * VERTEX_SIZE,
+                  ((k + 1) % accuracy + 1) * VERTEX_SIZE, null);
+    }
+  }
+
+
+  protected void addSquare(float[] center, int o, float half) {
+    float[] quad = lineQuad;
+    for (int k = 0; k < 4; k++) {
+      int s = k * VERTEX_SIZE;
+      System.arraycopy(center, o, quad, s, VERTEX_SIZE);
+      quad[s + VX] += k == 0 || k == 3 ? -half : half;
+      quad[s + VY] += k < 2 ? -half : half;
+    }
+    addTriangle(quad, 0, VERTEX_SIZE, 2 * VERTEX_SIZE, null);
+    addTriangle(quad, 0, 2 * VERTEX_SIZE, 3 * VERTEX_SIZE, null);
+  }
+
+
+  protected void addTriangle(float[] src, int a, int b, int c, PImage tex) {
+    if (triangleCount == FLUSH_TRIANGLE_COUNT) flush();
+    if (triangleCount == triangleTextures.length) {
+      int newSize = triangleCount << 1;
+      triangles = PApplet.expand(triangles, newSize * TRIANGLE_SIZE);
+      triangleTextures = (PImage[]) PApplet.expand(triangleTextures, newSize);
+    }
+    int o = triangleCount * TRIANGLE_SIZE;
+    System.arraycopy(src, a, triangles, o, VERTEX_SIZE);
+    System.arraycopy(src, b, triangles, o + VERTEX_SIZE, VERTEX_SIZE);
+    System.arraycopy(src, c, triangles, o + 2 * VERTEX_SIZE, VERTEX_SIZE);
+    triangleTextures[triangleCount] = tex;
+    triangleCount++;
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // RASTERIZATION
+
+
+  /**
+   * Rasterizes the buffered triangles. The triangles are first binned into
+   * the tiles they overlap, then the tiles are processed in parallel, each
+   * one going through its triangles in the order they were drawn.
+   */
+  @Override
+  public void flush() {
+    if (triangleCount == 0) return;
+
+    int entries = binTriangles();
+    int tiles = tileCols * tileRows;
+    if (entries < PARALLEL_MIN_BIN_ENTRIES || tiles == 1) {
+      for (int tile = 0; tile < tiles; tile++) rasterizeTile(tile);
+    } else {
+      IntStream.range(0, tiles).parallel().forEach(this::rasterizeTile);
+    }
+
+    Arrays.fill(triangleTextures, 0, triangleCount, null);
+    triangleCount = 0;
+  }
+
+
+  protected int binTriangles() {
+    Arrays.fill(tileBinCounts, 0);
+    int entries = 0;
+    float[] tris = triangles;
+    for (int t = 0; t < triangleCount; t++) {
+      int o = t * TRIANGLE_SIZE;
+      float x0 = tris[o + VX];
+      float y0 = tris[o + VY];
+      float x1 = tris[o + VERTEX_SIZE + VX];
+      float y1 = tris[o + VERTEX_SIZE + VY];
+      float x2 = tris[o + 2 * VERTEX_SIZE + VX];
+      float y2 = tris[o + 2 * VERTEX_SIZE + VY];
+      float minX = Math.min(x0, Math.min(x1, x2));
+      float maxX = Math.max(x0, Math.max(x1, x2));
+      float minY = Math.min(y0, Math.min(y1, y2));
+      float maxY = Math.max(y0, Math.max(y1, y2));
+      // Also skips the triangles with NaN coordinates.
+      if (!(minX < pixelWidth && 0 <= maxX && minY < pixelHeight && 0 <= maxY)) {
+        continue;
+      }
+
+      int col0 = Math.max(0, (int) minX / TILE_SIZE);
+      int col1 = Math.min(tileCols - 1, (int) maxX / TILE_SIZE);
+      int row0 = Math.max(0, (int) minY / TILE_SIZE);
+      int row1 = Math.min(tileRows - 1, (int) maxY / TILE_SIZE);
+      for (int row = row0; row <= row1; row++) {
+        for (int col = col0; col <= col1; col++) {
+          int tile = row * tileCols + col;
+          int count = tileBinCounts[tile];
+          if (count == tileBins[tile].length) {
+            tileBins[tile] = PApplet.expand(tileBins[tile], count << 1);
+          }
+          tileBins[tile][count] = t;
+          tileBinCounts[tile] = count + 1;
+          entries++;
+        }
+      }
+    }
+    return entries;
+  }
+
+
+  protected void rasterizeTile(int tile) {
+    int count = tileBinCounts[tile];
+    if (count == 0) return;
+    int x0 = (tile % tileCols) * TILE_SIZE;
+    int y0 = (tile / tileCols) * TILE_SIZE;
+    int x1 = Math.min(pixelWidth, x0 + TILE_SIZE);
+    int y1 = Math.min(pixelHeight, y0 + TILE_SIZE);
+    int[] bin = tileBins[tile];
+    for (int i = 0; i < count; i++) {
+      rasterizeTriangle(bin[i], x0, y0, x1, y1);
+    }
+  }
+
+
+  /**
+   * Draws the part of a triangle that falls inside the given rectangle,
+   * sampling at the pixel centers. Pixels exactly on an edge shared by two
+   * triangles are drawn by only one of them.
+   */
+  protected void rasterizeTriangle(int t, int rx0, int ry0, int rx1, int ry1) {
+    float[] tris = triangles;
+    int a = t * TRIANGLE_SIZE;
+    int b = a + VERTEX_SIZE;
+    int c = b + VERTEX_SIZE;
+
+    // Positions in fixed point, so that the edge functions are exact and
+    // adjacent triangles agree on which pixels they cover.
+    int ax = toFixed(tris[a + VX]), ay = toFixed(tris[a + VY]);
+    int bx = toFixed(tris[b + VX]), by = toFixed(tris[b + VY]);
+    int cx = toFixed(tris[c + VX]), cy = toFixed(tris[c + VY]);
+
+    long area = (long) (bx - ax) * (cy - ay) - (long) (by - ay) * (cx - ax);
+    if (area == 0) return;
+    if (area < 0) {
+      int tmp = b; b = c; c = tmp;
+      tmp = bx; bx = cx; cx = tmp;
+      tmp = by; by = cy; cy = tmp;
+      area = -area;
+    }
+
+    int half = SUBPIXEL_ONE / 2;
+    int minX = Math.max(rx0, (Math.min(ax, Math.min(bx, cx)) - half +
+                              SUBPIXEL_ONE - 1) >> SUBPIXEL_BITS);
+    int maxX = Math.min(rx1 - 1, (Math.max(ax, Math.max(bx, cx)) - half) >>
+                                 SUBPIXEL_BITS);
+    int minY = Math.max(ry0, (Math.min(ay, Math.min(by, cy)) - half +
+                              SUBPIXEL_ONE - 1) >> SUBPIXEL_BITS);
+    int maxY = Math.min(ry1 - 1, (Math.max(ay, Math.max(by, cy)) - half) >>
+                                 SUBPIXEL_BITS);
+    if (minX > maxX || minY > maxY) return;
+
+    // Edge functions at the center of the first pixel. e0 is the weight of
+    // a (edge bc), e1 of b (edge ca), and e2 of c (edge ab). The edges that
+    // don't include their own pixels are biased by one, so that the inside
+    // test is just a sign check.
+    int px = (minX << SUBPIXEL_BITS) + half;
+    int py = (minY << SUBPIXEL_BITS) + half;
+    long e0dx = (long) -(cy - by) << SUBPIXEL_BITS;
+    long e0dy = (long) (cx - bx) << SUBPIXEL_BITS;
+    long e1dx = (long) -(ay - cy) << SUBPIXEL_BITS;
+    long e1dy = (long) (ax - cx) << SUBPIXEL_BITS;
+    long e2dx = (long) -(by - ay) << SUBPIXEL_BITS;
+    long e2dy = (long) (bx - ax) << SUBPIXEL_BITS;
+    long e0row = (long) (cx - bx) * (py - by) - (long) (cy - by) * (px - bx);
+    long e1row = (long) (ax - cx) * (py - cy) - (long) (ay - cy) * (px - cx);
+    long e2row = (long) (bx - ax) * (py - ay) - (long) (by - ay) * (px - ax);
+    if (!isTopLeft(e0dx, e0dy)) e0row--;
+    if (!isTopLeft(e1dx, e1dy)) e1row--;
+    if (!isTopLeft(e2dx, e2dy)) e2row--;
+    float invArea = 1f / area;
+
+    float az = tris[a + VZ], bz = tris[b + VZ], cz = tris[c + VZ];
+    float aq = tris[a + VQ], bq = tris[b + VQ], cq = tris[c + VQ];
+    float ar = tris[a + VR], br = tris[b + VR], cr = tris[c + VR];
+    float ag = tris[a + VG], bg = tris[b + VG], cg = tris[c + VG];
+    float ab = tris[a + VB], bb = tris[b + VB], cb = tris[c + VB];
+    float aa = tris[a + VA], ba = tris[b + VA], ca = tris[c + VA];
+    float au = tris[a + VU], bu = tris[b + VU], cu = tris[c + VU];
+    float av = tris[a + VV], bv = tris[b + VV], cv = tris[c + VV];
+
+    PImage tex = triangleTextures[t];
+    int[] texels = null;
+    int texWidth = 0, texHeight = 0, texFormat = 0;
+    if (tex != null && tex.pixels != null) {
+      texels = tex.pixels;
+      texWidth = tex.pixelWidth;
+      texHeight = tex.pixelHeight;
+      texFormat = tex.format;
+      if (texels.length < texWidth * texHeight) texels = null;
+    }
+    boolean bilinear = smooth != 0;
+
+    // Untextured triangles of a single color (the most common case) skip
+    // the color interpolation.
+    int flatColor = 0;
+    boolean flat = false;
+    if (texels == null) {
+      int ca0 = toARGB(ar / aq, ag / aq, ab / aq, aa / aq);
+      flat = ca0 == toARGB(br / bq, bg / bq, bb / bq, ba / bq) &&
+             ca0 == toARGB(cr / cq, cg / cq, cb / cq, ca / cq);
+      flatColor = ca0;
+      if (flat && (flatColor >>> 24) == 0) return;
+    }
+
+    int[] pix = pixels;
+    float[] zbuf = zbuffer;
+    boolean depthTest = !hints[DISABLE_DEPTH_TEST];
+    boolean depthMask = !hints[DISABLE_DEPTH_MASK];
+    int mode = blendMode;
+    boolean opaqueRGB = format == RGB;
+
+    for (int y = minY; y <= maxY; y++) {
+      long e0 = e0row, e1 = e1row, e2 = e2row;
+      int index = y * pixelWidth + minX;
+      for (int x = minX; x <= maxX; x++, index++,
+           e0 += e0dx, e1 += e1dx, e2 += e2dx) {
+        if ((e0 | e1 | e2) < 0) continue;
+        float l0 = e0 * invArea;
+        float l1 = e1 * invArea;
+        float l2 = e2 * invArea;
+
+        float z = l0 * az + l1 * bz + l2 * cz;
+        if (depthTest && z > zbuf[index]) continue;
+
+        int src;
+        if (flat) {
+          src = flatColor;
+        } else {
+          float iq = 1 / (l0 * aq + l1 * bq + l2 * cq);
+          float r = (l0 * ar + l1 * br + l2 * cr) * iq;
+          float g = (l0 * ag + l1 * bg + l2 * cg) * iq;
+          float bl = (l0 * ab + l1 * bb + l2 * cb) * iq;
+          float al = (l0 * aa + l1 * ba + l2 * ca) * iq;
+          if (texels != null) {
+            float u = (l0 * au + l1 * bu + l2 * cu) * iq;
+            float v = (l0 * av + l1 * bv + l2 * cv) * iq;
+            int texel = sample(texels, texWidth, texHeight, texFormat,
+                               u, v, bilinear);
+            r *= ((texel >> 16) & 0xff) / 255f;
+            g *= ((texel >> 8) & 0xff) / 255f;
+            bl *= (texel & 0xff) / 255f;
+            al *= (texel >>> 24) / 255f;
+          }
+          src = toARGB(r, g, bl, al);
+          if ((src >>> 24) == 0) continue;
+        }
+
+        if (mode == BLEND && (src >>> 24) == 0xff) {
+          pix[index] = src;
+        } else {
+          pix[index] = PImage.blendColor(pix[index], src, mode);
+        }
+        if (opaqueRGB) pix[index] |= 0xff000000;
+        if (depthMask) zbuf[index] = z;
+      }
+      e0row += e0dy;
+      e1row += e1dy;
+      e2row += e2dy;
+    }
+  }
+
+
+  /**
+   * Tie-breaking rule for the pixels that fall exactly on an edge. Two
+   * triangles sharing an edge traverse it in opposite directions, so
+   * exactly one of them includes those pixels.
+   */
+  static protected boolean isTopLeft(long stepX, long stepY) {
+    return stepX > 0 || (stepX == 0 && stepY < 0);
+  }
+
+
+  static protected int toFixed(float coord) {
+    if (coord < -MAX_COORDINATE) coord = -MAX_COORDINATE;
+    else if (coord > MAX_COORDINATE) coord = MAX_COORDINATE;
+    return Math.round(coord * SUBPIXEL_ONE);
+  }
+
+
+  static protected int toARGB(float r, float g, float b, float a) {
+    int ir = (int) (r * 255 + 0.5f);
+    int ig = (int) (g * 255 + 0.5f);
+    int ib = (int) (b * 255 + 0.5f);
+    int ia = (int) (a * 255 + 0.5f);
+    if (ir < 0) ir = 0; else if (ir > 255) ir = 255;
+    if (ig < 0) ig = 0; else if (ig > 255) ig = 255;
+    if (ib < 0) ib = 0; else if (ib > 255) ib = 255;
+    if (ia < 0) ia = 0; else if (ia > 255) ia = 255;
+    return ia << 24 | ir << 16 | ig << 8 | ib;
+  }
+
+
+  /**
+   * Returns the ARGB color of the texture at the normalized coordinates
+   * (u, v), clamping at the borders.
+   */
+  static protected int sample(int[] texels, int w, int h, int format,
+                              float u, float v, boolean bilinear) {
+    if (!bilinear) {
+      int tx = Math.min(w - 1, Math.max(0, (int) (u * w)));
+      int ty = Math.min(h - 1, Math.max(0, (int) (v * h)));
+      return texel(texels[ty * w + tx], format);
+    }
+
+    float fx = u * w - 0.5f;
+    float fy = v * h - 0.5f;
+    int tx0 = (int) Math.floor(fx);
+    int ty0 = (int) Math.floor(fy);
+    int wx = (int) ((fx - tx0) * 256);
+    int wy = (int) ((fy - ty0) * 256);
+    int tx1 = Math.min(w - 1, Math.max(0, tx0 + 1));
+    int ty1 = Math.min(h - 1, Math.max(0, ty0 + 1));
+    tx0 = Math.min(w - 1, Math.max(0, tx0));
+    ty0 = Math.min(h - 1, Math.max(0, ty0));
+
+    int c00 = texel(texels[ty0 * w + tx0], format);
+    int c10 = texel(texels[ty0 * w + tx1], format);
+    int c01 = texel(texels[ty1 * w + tx0], format);
+    int c11 = texel(texels[ty1 * w + tx1], format);
+    int result = 0;
+    for (int shift = 0; shift < 32; shift += 8) {
+      int top = ((c00 >>> shift) & 0xff) * (256 - wx) +
+                ((c10 >>> shift) & 0xff) * wx;
+      int bottom = ((c01 >>> shift) & 0xff) * (256 - wx) +
+                   ((c11 >>> shift) & 0xff) * wx;
+      int value = (top * (256 - wy) + bottom * wy) >>> 16;
+      result |= value << shift;
+    }
+    return result;
+  }
+
+
+  static protected int texel(int pixel, int format) {
+    switch (format) {
+    case RGB:
+      return pixel | 0xff000000;
+    case ALPHA:
+      return (pixel << 24) | 0xffffff;
+    default:
+      return pixel;
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // BACKGROUND
+
+
+  @Override
+  protected void backgroundImpl() {
+    // Anything pending would be covered by the background anyway.
+    Arrays.fill(triangleTextures, 0, triangleCount, null);
+    triangleCount = 0;
+    Arrays.fill(pixels, backgroundColor);
+    Arrays.fill(zbuffer, 1);
+  }
+
+
+  @Override
+  protected void backgroundImpl(PImage image) {
+    Arrays.fill(triangleTextures, 0, triangleCount, null);
+    triangleCount = 0;
+    super.backgroundImpl(image);
+    Arrays.fill(zbuffer, 1);
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // PIXELS
+
+
+  @Override
+  public void loadPixels() {
+    flush();
+    super.loadPixels();
+  }
+
+
+  @Override
+  public int get(int x, int y) {
+    flush();
+    return super.get(x, y);
+  }
+
+
+  @Override
+  protected void getImpl(int sourceX, int sourceY,
+                         int sourceWidth, int sourceHeight,
+                         PImage target, int targetX, int targetY) {
+    flush();
+    super.getImpl(sourceX, sourceY, sourceWidth, sourceHeight,
+                  target, targetX, targetY);
+  }
+
+
+  @Override
+  public void set(int x, int y, int argb) {
+    flush();
+    super.set(x, y, argb);
+  }
+
+
+  @Override
+  protected void setImpl(PImage sourceImage,
+                         int sourceX, int sourceY,
+                         int sourceWidth, int sourceHeight,
+                         int targetX, int targetY) {
+    flush();
+    super.setImpl(sourceImage, sourceX, sourceY, sourceWidth, sourceHeight,
+                  targetX, targetY);
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // MATRIX STACK
+
+
+  @Override
+  public void pushMatrix() {
+    if (modelviewStackDepth == MATRIX_STACK_DEPTH) {
+      throw new RuntimeException(ERROR_PUSHMATRIX_OVERFLOW);
+    }
+    modelview.get(modelviewStack[modelviewStackDepth]);
+    camera.get(cameraStack[modelviewStackDepth]);
+    modelviewStackDepth++;
+  }
+
+
+  @Override
+  public void popMatrix() {
+    if (modelviewStackDepth == 0) {
+      throw new RuntimeException(ERROR_PUSHMATRIX_UNDERFLOW);
+    }
+    modelviewStackDepth--;
+    modelview.set(modelviewStack[modelviewStackDepth]);
+    camera.set(cameraStack[modelviewStackDepth]);
+  }
+
+
+  @Override
+  public void translate(float tx, float ty) {
+    modelview.translate(tx, ty);
+  }
+
+
+  @Override
+  public void translate(float tx, float ty, float tz) {
+    modelview.translate(tx, ty, tz);
+  }
+
+
+  @Override
+  public void rotate(float angle) {
+    modelview.rotateZ(angle);
+  }
+
+
+  @Override
+  public void rotateX(float angle) {
+    modelview.rotateX(angle);
+  }
+
+
+  @Override
+  public void rotateY(float angle) {
+    modelview.rotateY(angle);
+  }
+
+
+  @Override
+  public void rotateZ(float angle) {
+    modelview.rotateZ(angle);
+  }
+
+
+  @Override
+  public void rotate(float angle, float v0, float v1, float v2) {
+    modelview.rotate(angle, v0, v1, v2);
+  }
+
+
+  @Override
+  public void scale(float s) {
+    modelview.scale(s);
+  }
+
+
+  @Override
+  public void scale(float sx, float sy) {
+    modelview.scale(sx, sy);
+  }
+
+
+  @Override
+  public void scale(float sx, float sy, float sz) {
+    modelview.scale(sx, sy, sz);
+  }
+
+
+  @Override
+  public void shearX(float angle) {
+    modelview.shearX(angle);
+  }
+
+
+  @Override
+  public void shearY(float angle) {
+    modelview.shearY(angle);
+  }
+
+
+  @Override
+  public void resetMatrix() {
+    modelview.reset();
+    camera.reset();
+  }
+
+
+  @Override
+  public void applyMatrix(float n00, float n01, float n02,
+                          float n10, float n11, float n12) {
+    modelview.apply(n00, n01, n02, n10, n11, n12);
+  }
+
+
+  @Override
+  public void applyMatrix(float n00, float n01, float n02, float n03,
+                          float n10, float n11, float n12, float n13,
+                          float n20, float n21, float n22, float n23,
+                          float n30, float n31, float n32, float n33) {
+    modelview.apply(n00, n01, n02, n03,
+                    n10, n11, n12, n13,
+                    n20, n21, n22, n23,
+                    n30, n31, n32, n33);
+  }
+
+
+  @Override
+  public PMatrix getMatrix() {
+    return modelview.get();
+  }
+
+
+  @Override
+  public PMatrix3D getMatrix(PMatrix3D target) {
+    if (target == null) {
+      target = new PMatrix3D();
+    }
+    target.set(modelview);
+    return target;
+  }
+
+
+  @Override
+  public void setMatrix(PMatrix2D source) {
+    resetMatrix();
+    applyMatrix(source);
+  }
+
+
+  @Override
+  public void setMatrix(PMatrix3D source) {
+    resetMatrix();
+    applyMatrix(source);
+  }
+
+
+  @Override
+  public void printMatrix() {
+    modelview.print();
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // CAMERA
+
+
+  @Override
+  public void beginCamera() {
+    if (manipulatingCamera) {
+      throw new RuntimeException("beginCamera() cannot be called again " +
+                                 "before endCamera()");
+    }
+    manipulatingCamera = true;
+  }
+
+
+  @Override
+  public void endCamera() {
+    if (!manipulatingCamera) {
+      throw new RuntimeException("Cannot call endCamera() " +
+                                 "without first calling beginCamera()");
+    }
+    camera.set(modelview);
+    manipulatingCamera = false;
+  }
+
+
+  @Override
+  public void camera() {
+    camera(defCameraX, defCameraY, defCameraZ, defCameraX, defCameraY,
+           0, 0, 1, 0);
+  }
+
+
+  @Override
+  public void camera(float eyeX, float eyeY, float eyeZ,
+                     float centerX, float centerY, float centerZ,
+                     float upX, float upY, float upZ) {
+    cameraX = eyeX;
+    cameraY = eyeY;
+    cameraZ = eyeZ;
+
+    // Calculating Z vector
+    float z0 = eyeX - centerX;
+    float z1 = eyeY - centerY;
+    float z2 = eyeZ - centerZ;
+    eyeDist = PApplet.sqrt(z0 * z0 + z1 * z1 + z2 * z2);
+    if (eyeDist != 0) {
+      z0 /= eyeDist;
+      z1 /= eyeDist;
+      z2 /= eyeDist;
+    }
+
+    // Calculating Y vector
+    float y0 = upX;
+    float y1 = upY;
+    float y2 = upZ;
+
+    // Computing X vector as Y cross Z
+    float x0 =  y1 * z2 - y2 * z1;
+    float x1 = -y0 * z2 + y2 * z0;
+    float x2 =  y0 * z1 - y1 * z0;
+
+    // Recompute Y = Z cross X
+    y0 =  z1 * x2 - z2 * x1;
+    y1 = -z0 * x2 + z2 * x0;
+    y2 =  z0 * x1 - z1 * x0;
+
+    float xmag = PApplet.sqrt(x0 * x0 + x1 * x1 + x2 * x2);
+    if (xmag != 0) {
+      x0 /= xmag;
+      x1 /= xmag;
+      x2 /= xmag;
+    }
+
+    float ymag = PApplet.sqrt(y0 * y0 + y1 * y1 + y2 * y2);
+    if (ymag != 0) {
+      y0 /= ymag;
+      y1 /= ymag;
+      y2 /= ymag;
+    }
+
+    modelview.set(x0, x1, x2, 0,
+                  y0, y1, y2, 0,
+                  z0, z1, z2, 0,
+                   0,  0,  0, 1);
+    modelview.translate(-eyeX, -eyeY, -eyeZ);
+    camera.set(modelview);
+  }
+
+
+  @Override
+  public void printCamera() {
+    camera.print();
+  }
+
+
+  protected void defaultCamera() {
+    camera();
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // PROJECTION
+
+
+  @Override
+  public void ortho() {
+    ortho(-width/2f, width/2f, -height/2f, height/2f, 0, eyeDist * 10);
+  }
+
+
+  @Override
+  public void ortho(float left, float right,
+                    float bottom, float top) {
+    ortho(left, right, bottom, top, 0, eyeDist * 10);
+  }
+
+
+  @Override
+  public void ortho(float left, float right,
+                    float bottom, float top,
+                    float near, float far) {
+    float w = right - left;
+    float h = top - bottom;
+    float d = far - near;
+
+    float x = +2.0f / w;
+    float y = +2.0f / h;
+    float z = -2.0f / d;
+
+    float tx = -(right + left) / w;
+    float ty = -(top + bottom) / h;
+    float tz = -(far + near)   / d;
+
+    // The minus sign is needed to invert the Y axis.
+    projection.set(x,  0, 0, tx,
+                   0, -y, 0, ty,
+                   0,  0, z, tz,
+                   0,  0, 0,  1);
+  }
+
+
+  @Override
+  public void perspective() {
+    perspective(defCameraFOV, defCameraAspect, defCameraNear, defCameraFar);
+  }
+
+
+  @Override
+  public void perspective(float fov, float aspect, float zNear, float zFar) {
+    float ymax = zNear * (float) Math.tan(fov / 2);
+    float ymin = -ymax;
+    float xmin = ymin * aspect;
+    float xmax = ymax * aspect;
+    frustum(xmin, xmax, ymin, ymax, zNear, zFar);
+  }
+
+
+  @Override
+  public void frustum(float left, float right, float bottom, float top,
+                      float znear, float zfar) {
+    cameraFOV = 2 * (float) Math.atan2(top, znear);
+    cameraAspect = left / bottom;
+    cameraNear = znear;
+    cameraFar = zfar;
+
+    float n2 = 2 * znear;
+    float w = right - left;
+    float h = top - bottom;
+    float d = zfar - znear;
+
+    projection.set(n2 / w,       0,  (right + left) / w,                0,
+                        0, -n2 / h,  (top + bottom) / h,                0,
+                        0,       0, -(zfar + znear) / d, -(n2 * zfar) / d,
+                        0,       0,                  -1,                0);
+  }
+
+
+  @Override
+  public void printProjection() {
+    projection.print();
+  }
+
+
+  protected void defaultPerspective() {
+    perspective();
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // SCREEN AND MODEL COORDS
+
+
+  @Override
+  public float screenX(float x, float y) {
+    return screenX(x, y, 0);
+  }
+
+
+  @Override
+  public float screenY(float x, float y) {
+    return screenY(x, y, 0);
+  }
+
+
+  @Override
+  public float screenX(float x, float y, float z) {
+    float[] clip = clipCoordinates(x, y, z);
+    float ox = clip[3] != 0 ? clip[0] / clip[3] : clip[0];
+    return width * (1 + ox) / 2.0f;
+  }
+
+
+  @Override
+  public float screenY(float x, float y, float z) {
+    float[] clip = clipCoordinates(x, y, z);
+    float oy = clip[3] != 0 ? clip[1] / clip[3] : clip[1];
+    return height - height * (1 + oy) / 2.0f;
+  }
+
+
+  @Override
+  public float screenZ(float x, float y, float z) {
+    float[] clip = clipCoordinates(x, y, z);
+    float oz = clip[3] != 0 ? clip[2] / clip[3] : clip[2];
+    return (oz + 1) / 2.0f;
+  }
+
+
+  protected float[] clipCoordinates(float x, float y, float z) {
+    float[] eye = new float[4];
+    float[] clip = new float[4];
+    modelview.mult(new float[] { x, y, z, 1 }, eye);
+    projection.mult(eye, clip);
+    return clip;
+  }
+
+
+  @Override
+  public float modelX(float x, float y, float z) {
+    return worldCoordinates(x, y, z, 0);
+  }
+
+
+  @Override
+  public float modelY(float x, float y, float z) {
+    return worldCoordinates(x, y, z, 1);
+  }
+
+
+  @Override
+  public float modelZ(float x, float y, float z) {
+    return worldCoordinates(x, y, z, 2);
+  }
+
+
+  protected float worldCoordinates(float x, float y, float z, int coord) {
+    float[] eye = new float[4];
+    float[] world = new float[4];
+    modelview.mult(new float[] { x, y, z, 1 }, eye);
+    cameraInv.set(camera);
+    cameraInv.invert();
+    cameraInv.mult(eye, world);
+    return world[3] != 0 ? world[coord] / world[3] : world[coord];
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // LIGHTS
+
+
+  @Override
+  public void lights() {
+    lights = true;
+
+    // reset number of lights
+    lightCount = 0;
+
+    // need to make sure colorMode is RGB 255 here
+    int colorModeSaved = colorMode;
+    colorMode = RGB;
+
+    lightFalloff(1, 0, 0);
+    lightSpecular(0, 0, 0);
+
+    ambientLight(colorModeX * 0.5f, colorModeY * 0.5f, colorModeZ * 0.5f);
+    directionalLight(colorModeX * 0.5f, colorModeY * 0.5f, colorModeZ * 0.5f,
+                     0, 0, -1);
+
+    colorMode = colorModeSaved;
+  }
+
+
+  @Override
+  public void noLights() {
+    lights = false;
+    lightCount = 0;
+  }
+
+
+  @Override
+  public void ambientLight(float r, float g, float b) {
+    ambientLight(r, g, b, 0, 0, 0);
+  }
+
+
+  @Override
+  public void ambientLight(float r, float g, float b,
+                           float x, float y, float z) {
+    int num = newLight(AMBIENT);
+    lightPosition(num, x, y, z, false);
+    lightNormal(num, 0, 0, 0);
+    lightColor(lightAmbient, num, r, g, b);
+    lightColor(lightDiffuse, num, 0, 0, 0);
+    lightColor(lightSpecular, num, 0, 0, 0);
+    lightSpot(num, 0, 0);
+    lightFalloff(num, currentLightFalloffConstant,
+                      currentLightFalloffLinear,
+                      currentLightFalloffQuadratic);
+  }
+
+
+  @Override
+  public void directionalLight(float r, float g, float b,
+                               float dx, float dy, float dz) {
+    int num = newLight(DIRECTIONAL);
+    lightPosition(num, 0, 0, 0, true);
+    lightNormal(num, dx, dy, dz);
+    lightColor(lightAmbient, num, 0, 0, 0);
+    lightColor(lightDiffuse, num, r, g, b);
+    currentLightSpecular(num);
+    lightSpot(num, 0, 0);
+    lightFalloff(num, 1, 0, 0);
+  }
+
+
+  @Override
+  public void pointLight(float r, float g, float b,
+                         float x, float y, float z) {
+    int num = newLight(POINT);
+    lightPosition(num, x, y, z, false);
+    lightNormal(num, 0, 0, 0);
+    lightColor(lightAmbient, num, 0, 0, 0);
+    lightColor(lightDiffuse, num, r, g, b);
+    currentLightSpecular(num);
+    lightSpot(num, 0, 0);
+    lightFalloff(num, currentLightFalloffConstant,
+                      currentLightFalloffLinear,
+                      currentLightFalloffQuadratic);
+  }
+
+
+  @Override
+  public void spotLight(float r, float g, float b,
+                        float x, float y, float z,
+                        float dx, float dy, float dz,
+                        float angle, float concentration) {
+    int num = newLight(SPOT);
+    lightPosition(num, x, y, z, false);
+    lightNormal(num, dx, dy, dz);
+    lightColor(lightAmbient, num, 0, 0, 0);
+    lightColor(lightDiffuse, num, r, g, b);
+    currentLightSpecular(num);
+    lightSpot(num, Math.max(0, PApplet.cos(angle)), concentration);
+    lightFalloff(num, currentLightFalloffConstant,
+                      currentLightFalloffLinear,
+                      currentLightFalloffQuadratic);
+  }
+
+
+  @Override
+  public void lightFalloff(float constant, float linear, float quadratic) {
+    currentLightFalloffConstant = constant;
+    currentLightFalloffLinear = linear;
+    currentLightFalloffQuadratic = quadratic;
+  }
+
+
+  @Override
+  public void lightSpecular(float x, float y, float z) {
+    colorCalc(x, y, z);
+    currentLightSpecular[0] = calcR;
+    currentLightSpecular[1] = calcG;
+    currentLightSpecular[2] = calcB;
+  }
+
+
+  protected int newLight(int type) {
+    if (lightCount == MAX_LIGHTS) {
+      throw new RuntimeException("can only create " + MAX_LIGHTS + " lights");
+    }
+    lights = true;
+    lightType[lightCount] = type;
+    return lightCount++;
+  }
+
+
+  protected void lightPosition(int num, float x, float y, float z,
+                               boolean dir) {
+    PMatrix3D mv = modelview;
+    lightPosition[4 * num + 0] = x*mv.m00 + y*mv.m01 + z*mv.m02 + mv.m03;
+    lightPosition[4 * num + 1] = x*mv.m10 + y*mv.m11 + z*mv.m12 + mv.m13;
+    lightPosition[4 * num + 2] = x*mv.m20 + y*mv.m21 + z*mv.m22 + mv.m23;
+    lightPosition[4 * num + 3] = dir ? 0 : 1;
+  }
+
+
+  protected void lightNormal(int num, float dx, float dy, float dz) {
+    // Directions are transformed by the normal matrix, as the normals.
+    modelviewInv.set(modelview);
+    modelviewInv.invert();
+    PMatrix3D inv = modelviewInv;
+    float nx = dx*inv.m00 + dy*inv.m10 + dz*inv.m20;
+    float ny = dx*inv.m01 + dy*inv.m11 + dz*inv.m21;
+    float nz = dx*inv.m02 + dy*inv.m12 + dz*inv.m22;
+
+    float d = PApplet.dist(0, 0, 0, nx, ny, nz);
+    if (0 < d) {
+      float invn = 1.0f / d;
+      lightNormal[3 * num + 0] = invn * nx;
+      lightNormal[3 * num + 1] = invn * ny;
+      lightNormal[3 * num + 2] = invn * nz;
+    } else {
+      lightNormal[3 * num + 0] = 0;
+      lightNormal[3 * num + 1] = 0;
+      lightNormal[3 * num + 2] = 0;
+    }
+  }
+
+
+  protected void lightColor(float[] target, int num,
+                            float r, float g, float b) {
+    if (r == 0 && g == 0 && b == 0) {
+      target[3 * num + 0] = target[3 * num + 1] = target[3 * num + 2] = 0;
+    } else {
+      colorCalc(r, g, b);
+      target[3 * num + 0] = calcR;
+      target[3 * num + 1] = calcG;
+      target[3 * num + 2] = calcB;
+    }
+  }
+
+
+  protected void currentLightSpecular(int num) {
+    lightSpecular[3 * num + 0] = currentLightSpecular[0];
+    lightSpecular[3 * num + 1] = currentLightSpecular[1];
+    lightSpecular[3 * num + 2] = currentLightSpecular[2];
+  }
+
+
+  protected void lightSpot(int num, float cos, float exponent) {
+    lightSpotParameters[2 * num + 0] = cos;
+    lightSpotParameters[2 * num + 1] = exponent;
+  }
+
+
+  protected void lightFalloff(int num, float c0, float c1, float c2) {
+    lightFalloffCoefficients[3 * num + 0] = c0;
+    lightFalloffCoefficients[3 * num + 1] = c1;
+    lightFalloffCoefficients[3 * num + 2] = c2;
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // MATERIAL
+
+
+  @Override
+  protected void fillFromCalc() {
+    super.fillFromCalc();
+
+    if (!setAmbient) {
+      // As in P3D, the ambient color follows the fill unless it was set.
+      ambientFromCalc();
+      setAmbient = false;
+    }
+  }
+}
@@ -0,0 +1,288 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License version 2
+  as published by the Free Software Foundation.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software Foundation,
+  Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package processing.mode.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import processing.app.Base;
+import processing.app.Platform;
+import processing.app.Sketch;
+import processing.app.SketchException;
+import processing.core.PApplet;
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+
+
+/**
+ * Builds or exports many sketches with the same mode and libraries, on a
+ * pool of threads. Used by processing-java with --sketches, so that a whole
+ * sketchbook can be checked without starting Java again for each sketch.
+ * <p>
+ * The result is a JSON report with the outcome, timings and error (if
+ * any) of each sketch.
+ */
+public class BatchBuild {
+  protected final JavaMode mode;
+  protected final boolean export;
+  protected final PrintStream log;
+
+  protected File outputFolder;
+  protected int platform = PApplet.platform;
+  protected boolean embedJava = true;
+
+  // sketch folders, and the names of their output folders
+  protected final List<File> folders = new ArrayList<>();
+  protected final List<String> names = new ArrayList<>();
+  protected final Set<String> usedNames = new HashSet<>();
+
+
+  /**
+   * @param export true to export applications, false to only build
+   * @param log where to write the progress
+   */
+  public BatchBuild(JavaMode mode, boolean export, PrintStream log) {
+    this.mode = mode;
+    this.export = export;
+    this.log = log;
+  }
+
+
+  /**
+   * Where to put the results, in a subfolder for each sketch. When not set,
+   * builds go to temporary folders, and applications are exported to the
+   * sketch folders, as with the Export button.
+   */
+  public void setOutputFolder(File outputFolder) {
+    this.outputFolder = outputFolder;
+  }
+
+
+  /** Platform to export applications for, and whether to embed Java. */
+  public void setPlatform(int platform, boolean embedJava) {
+    this.platform = platform;
+    this.embedJava = embedJava;
+  }
+
+
+  /**
+   * Add the sketches in a folder and its subfolders, or the ones listed
+   * in a text file, one folder per line (relative to the file's folder).
+   * Empty lines and lines starting with # are ignored.
+   */
+  public void addSketches(File file) throws IOException {
+    if (file.isDirectory()) {
+      addFolder(file.getAbsoluteFile(), "");
+
+    } else {
+      String[] lines = PApplet.loadStrings(file);
+      if (lines == null) {
+        throw new IOException("Could not read " + file);
+      }
+      File parent = file.getAbsoluteFile().getParentFile();
+      for (String line : lines) {
+        line = line.trim();
+        if (line.length() != 0 && !line.startsWith("#")) {
+          File folder = new File(line);
+          if (!folder.isAbsolute()) {
+            folder = new File(parent, line);
+          }
+          if (!isSketchFolder(folder)) {
+            throw new IOException("Not a valid sketch folder: " + folder);
+          }
+          addSketch(folder, folder.getName());
+        }
+      }
+    }
+  }
+
+
+  protected void addFolder(File folder, String path) {
+    if (isSketchFolder(folder)) {
+      addSketch(folder, path.length() == 0 ? folder.getName() : path);
+
+    } else if (!folder.equals(outputFolder)) {
+      String[] list = folder.list();
+      if (list != null) {
+        Arrays.sort(list);
+        for (String name : list) {
+          File sub = new File(folder, name);
+          if (name.charAt(0) != '.' && sub.isDirectory()) {
+            addFolder(sub, path.length() == 0 ? name : path + "/" + name);
+          }
+        }
+      }
+    }
+  }
+
+
+  protected void addSketch(File folder, String name) {
+    String unique = name;
+    for (int i = 2; usedNames.contains(unique); i++) {
+      unique = name + "-" + i;
+    }
+    usedNames.add(unique);
+    folders.add(folder);
+    names.add(unique);
+  }
+
+
+  static protected boolean isSketchFolder(File folder) {
+    return new File(folder, folder.getName() + ".pde").isFile();
+  }
+
+
+  /**
+   * Build all the sketches.
+   * @param jobs number of sketches to build at the same time
+   * @return the report, with an entry for each sketch, in the order added
+   */
+  public JSONObject run(int jobs) {
+    long started = System.currentTimeMillis();
+    final int count = folders.size();
+    final AtomicInteger done = new AtomicInteger();
+
+    ExecutorService executor = Executors.newFixedThreadPool(jobs);
+    List<Future<JSONObject>> results = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final File folder = folders.get(i);
+      final String name = names.get(i);
+      results.add(executor.submit(() -> {
+        JSONObject result = build(folder, name);
+        String status = result.getBoolean("success") ? "ok" : "failed";
+        log.println("[" + done.incrementAndGet() + "/" + count + "] " +
+                    name + ": " + status + " (" + result.getLong("time") + " ms)");
+        return result;
+      }));
+    }
+    executor.shutdown();
+
+    JSONArray sketches = new JSONArray();
+    int failed = 0;
+    for (int i = 0; i < count; i++) {
+      JSONObject result;
+      try {
+        result = results.get(i).get();
+      } catch (InterruptedException | ExecutionException e) {
+        result = new JSONObject();
+        result.setString("name", names.get(i));
+        result.setString("path", folders.get(i).getAbsolutePath());
+        result.setBoolean("success", false);
+        result.setString("error", String.valueOf(e.getCause()));
+      }
+      if (!result.getBoolean("success")) {
+        failed++;
+      }
+      sketches.append(result);
+    }
+
+    JSONObject report = new JSONObject();
+    report.setString("version", Base.getVersionName());
+    report.setString("task", export ? "export" : "build");
+    report.setInt("jobs", jobs);
+    report.setInt("sketches", count);
+    report.setInt("failed", failed);
+    report.setLong("time", System.currentTimeMillis() - started);
+    report.setJSONArray("results", sketches);
+    return report;
+  }
+
+
+  /**
+   * Build (and maybe export) a single sketch.
+   * @param name name of the output folder for this sketch
+   */
+  protected JSONObject build(File folder, String name) {
+    JSONObject result = new JSONObject();
+    result.setString("name", name);
+    result.setString("path", folder.getAbsolutePath());
+
+    long started = System.currentTimeMillis();
+    boolean success = false;
+    Sketch sketch = null;
+    try {
+      sketch = new Sketch(new File(folder, folder.getName() + ".pde").getAbsolutePath(), mode);
+      // Each sketch is built only once, so always in folders of its own,
+      // never in the ones kept by the incremental compiler.
+      JavaBuild build = new JavaBuild(sketch);
+      if (export && outputFolder == null) {
+        // builds, then exports for the platforms set in the preferences
+        success = build.exportApplication();
+
+      } else {
+        String className;
+        if (outputFolder == null || export) {
+          className = build.build(sketch.makeTempFolder(), sketch.makeTempFolder(), true);
+        } else {
+          File target = new File(outputFolder, name);
+          className = build.build(new File(target, "source"), target, true);
+        }
+        success = (className != null);
+        if (success && export) {
+          long exportStarted = System.currentTimeMillis();
+          success = build.exportApplication(new File(outputFolder, name), platform,
+                                            Platform.getVariant(), embedJava);
+          result.setLong("exportTime", System.currentTimeMillis() - exportStarted);
+        }
+      }
+      if (build.getSketchClassName() != null) {
+        result.setString("className", build.getSketchClassName());
+        result.setLong("preprocessTime", build.getPreprocessTime());
+        result.setLong("compileTime", build.getCompileTime());
+        result.setBoolean("cached", build.isRestoredFromCache());
+      }
+      if (!success) {
+        // the details went to the console
+        result.setString("error", export ? "Export failed" : "Build failed");
+      }
+
+    } catch (SketchException se) {
+      if (se.getCodeIndex() != -1 && sketch != null) {
+        result.setString("error", Commander.formatError(sketch, se));
+        result.setString("file", sketch.getCode(se.getCodeIndex()).getFileName());
+        result.setInt("line", se.getCodeLine() + 1);
+        result.setInt("column", se.getCodeColumn() + 1);
+      } else {
+        result.setString("error", se.getMessage());
+      }
+
+    } catch (Exception e) {
+      // keep going with the other sketches
+      result.setString("error", e.toString());
+    }
+
+    result.setBoolean("success", success);
+    result.setLong("time", System.currentTimeMillis() - started);
+    return result;
+  }
+}
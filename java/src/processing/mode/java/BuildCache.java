@@ -0,0 +1,319 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License version 2
+  as published by the Free Software Foundation.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software Foundation,
+  Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package processing.mode.java;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import processing.app.Base;
+import processing.app.Messages;
+import processing.app.Preferences;
+import processing.app.Util;
+import processing.core.PApplet;
+import processing.data.StringList;
+
+
+/**
+ * Classes of previous builds, kept on disk and shared by all sketches, so
+ * that building code that has already been compiled once (by the PDE or by
+ * processing-java, in this or an earlier session) only has to copy them.
+ * <p>
+ * Entries are keyed by a hash of the preprocessed sources, the compiler
+ * options and the contents of the jars on the class path. Each entry is a
+ * folder with the .class files of the build, named after the key. Only
+ * the last build.cache.size entries are kept.
+ * <p>
+ * One cache is shared by the threads of a batch build, and the folder by
+ * all the processes using it. Methods are synchronized for the former.
+ * For the latter, entries are written and removed by renaming their
+ * folder, so another process either sees all of an entry or none of it,
+ * and a restore that loses its entry halfway through fails cleanly.
+ */
+public class BuildCache {
+  // Change when the key or the layout of the entries change
+  static final String VERSION = "1";
+
+  static final String JARS_INDEX = "jars.txt";
+
+  protected final File folder;
+
+  // "path\tlength\tmodified" -> hash of the jar contents
+  protected final Map<String, String> jarHashes = new HashMap<>();
+  protected boolean jarHashesChanged;
+
+
+  public BuildCache(File folder) {
+    this.folder = folder;
+    loadJarHashes();
+  }
+
+
+  static public boolean isEnabled() {
+    return Preferences.getBoolean("build.cache");
+  }
+
+
+  /** The cache in the settings folder. */
+  static public BuildCache create() {
+    return new BuildCache(new File(Base.getSettingsFolder(), "build-cache"));
+  }
+
+
+  /**
+   * Get the key for a sketch that has just been preprocessed.
+   * @param options compiler options that affect the classes
+   * @return null if the sources can't be read
+   */
+  public synchronized String getKey(JavaBuild build, String options) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      update(digest, VERSION);
+      update(digest, String.valueOf(Base.getRevision()));
+      update(digest, options);
+
+      File srcFolder = build.getSrcFolder();
+      String[] paths = Util.listFiles(srcFolder, true, ".java");
+      Arrays.sort(paths);
+      for (String path : paths) {
+        update(digest, path.replace(File.separatorChar, '/'));
+        digest.update(Util.loadBytesRaw(new File(srcFolder, path)));
+      }
+
+      File binFolder = build.getBinFolder().getAbsoluteFile();
+      for (String entry : PApplet.split(build.getClassPath(), File.pathSeparatorChar)) {
+        if (entry.length() != 0) {
+          File file = new File(entry).getAbsoluteFile();
+          if (!file.equals(binFolder)) {
+            // only the contents, so that moving a sketch keeps its entry
+            update(digest, hashEntry(file));
+          }
+        }
+      }
+      saveJarHashes();
+      return hex(digest.digest());
+
+    } catch (IOException | NoSuchAlgorithmException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+
+  /**
+   * Copy the classes of an earlier build into binFolder.
+   * @return false if there's no entry for this key, or it was removed (by
+   *         another process) while it was being copied, in which case the
+   *         classes copied so far are removed again
+   */
+  public synchronized boolean restore(String key, File binFolder) {
+    File entry = new File(folder, key);
+    // recently used entries are the last to go, so mark it before copying
+    if (!entry.setLastModified(System.currentTimeMillis())) {
+      return false;
+    }
+    List<File> copied = new ArrayList<>();
+    try {
+      for (String path : Util.listFiles(entry, true, ".class")) {
+        File target = new File(binFolder, path);
+        target.getParentFile().mkdirs();
+        Util.copyFile(new File(entry, path), target);
+        copied.add(target);
+      }
+      // still there, so nothing was removed while listing it
+      if (!copied.isEmpty() && entry.isDirectory()) {
+        return true;
+      }
+
+    } catch (IOException e) {
+      if (entry.isDirectory()) {
+        Messages.loge("Could not restore classes from the build cache", e);
+      }
+    }
+    for (File file : copied) {
+      file.delete();
+    }
+    return false;
+  }
+
+
+  /** Whether there's an entry for this key. */
+  public synchronized boolean contains(String key) {
+    return new File(folder, key).isDirectory();
+  }
+
+
+  /**
+   * Add the classes from a successful build. Several processes may be
+   * storing the same entry, so it's written to a temporary folder first.
+   */
+  public synchronized void store(String key, File binFolder) {
+    File entry = new File(folder, key);
+    if (entry.isDirectory()) {
+      return;
+    }
+    File temp = new File(folder, key + "." + System.nanoTime() + ".tmp");
+    try {
+      for (String path : Util.listFiles(binFolder, true, ".class")) {
+        File target = new File(temp, path);
+        target.getParentFile().mkdirs();
+        Util.copyFile(new File(binFolder, path), target);
+      }
+      if (!temp.renameTo(entry)) {
+        // someone else just stored it, or the folder can't be written
+        Util.removeDir(temp);
+      }
+      trim(Preferences.getInteger("build.cache.size"));
+
+    } catch (IOException e) {
+      Messages.loge("Could not add classes to the build cache", e);
+      Util.removeDir(temp);
+    }
+  }
+
+
+  /**
+   * Remove the least recently used entries, keeping the last count. Each is
+   * renamed before its files are removed, so that it disappears at once
+   * for restore() in other processes.
+   */
+  protected synchronized void trim(int count) {
+    File[] entries = folder.listFiles((dir, name) ->
+      new File(dir, name).isDirectory() && !name.endsWith(".tmp"));
+    if (entries != null && entries.length > count) {
+      Arrays.sort(entries, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+      for (int i = 0; i < entries.length - count; i++) {
+        File removed = new File(folder, entries[i].getName() + "." +
+                                System.nanoTime() + ".tmp");
+        if (entries[i].renameTo(removed)) {
+          Util.removeDir(removed);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Hash of a class path entry. The contents of jars are hashed (once for
+   * each version of the file), folders only by the size and modification
+   * time of their files.
+   */
+  protected String hashEntry(File file) throws IOException, NoSuchAlgorithmException {
+    if (!file.exists()) {
+      return "missing";
+    }
+    if (file.isDirectory()) {
+      StringBuilder sb = new StringBuilder();
+      String[] paths = Util.listFiles(file, true);
+      Arrays.sort(paths);
+      for (String path : paths) {
+        File item = new File(file, path);
+        sb.append(path + "," + item.length() + "," + item.lastModified() + "\n");
+      }
+      return sb.toString();
+    }
+
+    String stamp = file.getPath() + "\t" + file.length() + "\t" + file.lastModified();
+    String hash = jarHashes.get(stamp);
+    if (hash == null) {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] buffer = new byte[64 * 1024];
+      try (InputStream input = new FileInputStream(file)) {
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+          digest.update(buffer, 0, count);
+        }
+      }
+      hash = hex(digest.digest());
+      jarHashes.put(stamp, hash);
+      jarHashesChanged = true;
+    }
+    return hash;
+  }
+
+
+  protected void loadJarHashes() {
+    File index = new File(folder, JARS_INDEX);
+    if (index.exists()) {
+      String[] lines = PApplet.loadStrings(index);
+      if (lines != null) {
+        for (String line : lines) {
+          int tab = line.lastIndexOf('\t');
+          if (tab != -1) {
+            jarHashes.put(line.substring(0, tab), line.substring(tab + 1));
+          }
+        }
+      }
+    }
+  }
+
+
+  protected void saveJarHashes() {
+    if (jarHashesChanged) {
+      StringList lines = new StringList();
+      for (Map.Entry<String, String> entry : jarHashes.entrySet()) {
+        // only keep the versions of the files that are still around
+        String[] stamp = PApplet.split(entry.getKey(), '\t');
+        if (new File(stamp[0]).lastModified() == Long.parseLong(stamp[2])) {
+          lines.append(entry.getKey() + "\t" + entry.getValue());
+        }
+      }
+      folder.mkdirs();
+      File temp = new File(folder, JARS_INDEX + "." + System.nanoTime() + ".tmp");
+      PApplet.saveStrings(temp, lines.array());
+      try {
+        Files.move(temp.toPath(), new File(folder, JARS_INDEX).toPath(),
+                   StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException e) {
+        temp.delete();
+      }
+      jarHashesChanged = false;
+    }
+  }
+
+
+  static protected void update(MessageDigest digest, String s) {
+    digest.update(s.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+  }
+
+
+  static protected String hex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder();
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+      sb.append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+}
@@ -37,6 +37,9 @@ import processing.app.SketchException;
 import processing.app.Util;
 import processing.app.contrib.ModeContribution;
 import processing.core.PApplet;
+import processing.data.JSONObject;
+import processing.mode.java.runner.Profile;
+import processing.mode.java.runner.Profiler;
 import processing.mode.java.runner.Runner;
 
 
@@ -51,7 +54,12 @@ public class Commander implements RunnerListener {
   static final String buildArg = "--build";
   static final String runArg = "--run";
   static final String presentArg = "--present";
+  static final String profileArg = "--profile";
+  static final String durationArg = "--duration=";
   static final String sketchArg = "--sketch=";
+  static final String sketchesArg = "--sketches=";
+  static final String jobsArg = "--jobs=";
+  static final String reportArg = "--report=";
   static final String forceArg = "--force";
   static final String outputArg = "--output=";
   static final String exportApplicationArg = "--export";
@@ -67,6 +75,10 @@ public class Commander implements RunnerListener {
   static final int PRESENT = 3;
 //  static final int EXPORT_APPLET = 4;
   static final int EXPORT = 4;
+  static final int PROFILE = 5;
+
+  // Methods and lines listed after --profile
+  static final int PROFILE_COUNT = 25;
 
   Sketch sketch;
 
@@ -91,6 +103,10 @@ public class Commander implements RunnerListener {
     String sketchPath = null;
     File sketchFolder = null;
     String pdePath = null;  // path to the .pde file
+    File sketchesFile = null;  // folder or list of sketches for a batch
+    int jobs = Runtime.getRuntime().availableProcessors();
+    File reportFile = null;
+    int duration = 0;  // seconds to profile for, 0 until the sketch quits
     String outputPath = null;
     File outputFolder = null;
     boolean outputSet = false;  // set an output folder
@@ -144,6 +160,10 @@ public class Commander implements RunnerListener {
         task = PRESENT;
         break;
 
+      } else if (arg.equals(profileArg)) {
+        task = PROFILE;
+        break;
+
       } else if (arg.equals(exportApplicationArg)) {
         task = EXPORT;
         break;
@@ -183,6 +203,27 @@ public class Commander implements RunnerListener {
         }
         pdePath = pdeFile.getAbsolutePath();
 
+      } else if (arg.startsWith(sketchesArg)) {
+        sketchesFile = new File(arg.substring(sketchesArg.length()));
+        if (!sketchesFile.exists()) {
+          complainAndQuit(sketchesFile + " does not exist.", false);
+        }
+
+      } else if (arg.startsWith(jobsArg)) {
+        jobs = PApplet.parseInt(arg.substring(jobsArg.length()), 0);
+        if (jobs < 1) {
+          complainAndQuit("The number of jobs should be 1 or more.", true);
+        }
+
+      } else if (arg.startsWith(reportArg)) {
+        reportFile = new File(arg.substring(reportArg.length()));
+
+      } else if (arg.startsWith(durationArg)) {
+        duration = PApplet.parseInt(arg.substring(durationArg.length()), 0);
+        if (duration < 1) {
+          complainAndQuit("The duration should be 1 second or more.", true);
+        }
+
 //      } else if (arg.startsWith(preferencesArg)) {
 //        preferencesPath = arg.substring(preferencesArg.length());
 
@@ -211,6 +252,16 @@ public class Commander implements RunnerListener {
       System.exit(0);
     }
 
+    if (sketchesFile != null) {
+      if (sketchPath != null) {
+        complainAndQuit("Use either " + sketchArg + " or " + sketchesArg + ", not both.", true);
+      }
+      if (task != BUILD && task != EXPORT) {
+        complainAndQuit(sketchesArg + " can only be used with " +
+                        buildArg + " or " + exportApplicationArg + ".", true);
+      }
+    }
+
     if (outputSet) {
       if (outputPath == null) {
         complainAndQuit("An output path must be specified.", true);
@@ -240,7 +291,29 @@ public class Commander implements RunnerListener {
     Preferences.init();
     Base.locateSketchbookFolder();
 
-    if (sketchPath == null) {
+    if (sketchesFile != null) {
+      JavaMode javaMode = (JavaMode)
+        ModeContribution.load(null, Platform.getContentFile("modes/java"),
+                              "processing.mode.java.JavaMode").getMode();
+      BatchBuild batch = new BatchBuild(javaMode, task == EXPORT, systemErr);
+      batch.setOutputFolder(outputFolder);
+      batch.setPlatform(platform, embedJava);
+      boolean success = false;
+      try {
+        batch.addSketches(sketchesFile);
+        JSONObject report = batch.run(jobs);
+        if (reportFile != null) {
+          report.save(reportFile, null);
+        } else {
+          systemOut.println(report.format(2));
+        }
+        success = report.getInt("failed") == 0;
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      System.exit(success ? 0 : 1);
+
+    } else if (sketchPath == null) {
       complainAndQuit("No sketch path specified.", true);
 
 //    } else if (!pdePath.toLowerCase().endsWith(".pde")) {
@@ -268,21 +341,37 @@ public class Commander implements RunnerListener {
           outputFolder = sketch.makeTempFolder();
         }
 
-        if (task == BUILD || task == RUN || task == PRESENT) {
+        if (task == BUILD || task == RUN || task == PRESENT || task == PROFILE) {
           JavaBuild build = new JavaBuild(sketch);
           File srcFolder = new File(outputFolder, "source");
           String className = build.build(srcFolder, outputFolder, true);
 //          String className = build.build(sketchFolder, outputFolder, true);
           if (className != null) {
             success = true;
-            if (task == RUN || task == PRESENT) {
+            if (task == RUN || task == PRESENT || task == PROFILE) {
               Runner runner = new Runner(build, this);
+              Profiler profiler = null;
+              if (task == PROFILE) {
+                profiler = new Profiler(build);
+                runner.setProfiler(profiler);
+                if (duration != 0) {
+                  stopAfter(runner, duration);
+                }
+              }
               if (task == PRESENT) {
                 runner.present(sketchArgs);
               } else {
                 runner.launch(sketchArgs);
               }
               success = !runner.vmReturnedError();
+              if (profiler != null) {
+                Profile profile = profiler.getProfile();
+                File stacksFile = (reportFile != null) ?
+                  reportFile : new File(outputFolder, "profile.txt");
+                profile.writeCollapsed(stacksFile);
+                systemOut.print(profile.format(PROFILE_COUNT));
+                systemOut.println("Stacks written to " + stacksFile.getAbsolutePath());
+              }
             }
           } else {
             success = false;
@@ -318,6 +407,19 @@ public class Commander implements RunnerListener {
   }
 
 
+  /** Close the sketch after a number of seconds. */
+  static void stopAfter(final Runner runner, final int seconds) {
+    Thread timer = new Thread(() -> {
+      try {
+        Thread.sleep(seconds * 1000L);
+        runner.close();
+      } catch (InterruptedException e) { }
+    }, "Profile timer");
+    timer.setDaemon(true);
+    timer.start();
+  }
+
+
   public void statusNotice(String message) {
     systemErr.println(message);
   }
@@ -332,21 +434,8 @@ public class Commander implements RunnerListener {
     if (exception instanceof SketchException) {
       SketchException re = (SketchException) exception;
 
-      int codeIndex = re.getCodeIndex();
-      if (codeIndex != -1) {
-        // format the runner exception like emacs
-        //blah.java:2:10:2:13: Syntax Error: This is a big error message
-        // Emacs doesn't like the double line thing coming from Java
-        // https://github.com/processing/processing/issues/2158
-        String filename = sketch.getCode(codeIndex).getFileName();
-        int line = re.getCodeLine() + 1;
-        int column = re.getCodeColumn() + 1;
-        //if (column == -1) column = 0;
-        // TODO if column not specified, should just select the whole line.
-        // But what's the correct syntax for that?
-        systemErr.println(filename + ":" +
-          line + ":" + column + ":" +
-          line + ":" + column + ":" + " " + re.getMessage());
+      if (re.getCodeIndex() != -1) {
+        systemErr.println(formatError(sketch, re));
 
       } else {  // no line number, pass the trace along to the user
         exception.printStackTrace();
@@ -357,6 +446,25 @@ public class Commander implements RunnerListener {
   }
 
 
+  /**
+   * Format an error that has a location in the sketch like emacs does.
+   */
+  static String formatError(Sketch sketch, SketchException re) {
+    //blah.java:2:10:2:13: Syntax Error: This is a big error message
+    // Emacs doesn't like the double line thing coming from Java
+    // https://github.com/processing/processing/issues/2158
+    String filename = sketch.getCode(re.getCodeIndex()).getFileName();
+    int line = re.getCodeLine() + 1;
+    int column = re.getCodeColumn() + 1;
+    //if (column == -1) column = 0;
+    // TODO if column not specified, should just select the whole line.
+    // But what's the correct syntax for that?
+    return filename + ":" +
+      line + ":" + column + ":" +
+      line + ":" + column + ":" + " " + re.getMessage();
+  }
+
+
   void complainAndQuit(String lastWords, boolean schoolEmFirst) {
     if (schoolEmFirst) {
       printCommandLine(systemErr);
@@ -373,6 +481,17 @@ public class Commander implements RunnerListener {
     out.println("--help               Show this help text. Congratulations.");
     out.println();
     out.println("--sketch=<name>      Specify the sketch folder (required)");
+    out.println("--sketches=<name>    Build or export many sketches at once: a folder");
+    out.println("                     (sketches are looked for in all its subfolders),");
+    out.println("                     or a text file with one sketch folder per line.");
+    out.println("                     Used instead of --sketch, with --build or --export.");
+    out.println("--jobs=<n>           Number of sketches to build at the same time with");
+    out.println("                     --sketches. Defaults to the number of processors.");
+    out.println("--report=<name>      Write the results of --sketches to this file as");
+    out.println("                     JSON, instead of to the console. With --profile,");
+    out.println("                     where to write the sampled stacks (by default");
+    out.println("                     profile.txt in the output folder).");
+    out.println("--duration=<n>       Stop the sketch after n seconds with --profile.");
     out.println("--output=<name>      Specify the output folder (optional and");
     out.println("                     cannot be the same as the sketch folder.)");
     out.println();
@@ -384,6 +503,10 @@ public class Commander implements RunnerListener {
     out.println("--build              Preprocess and compile a sketch into .class files.");
     out.println("--run                Preprocess, compile, and run a sketch.");
     out.println("--present            Preprocess, compile, and run a sketch in presentation mode.");
+    out.println("--profile            Preprocess, compile, and run a sketch, sampling where it");
+    out.println("                     spends its time. When it quits, the busiest methods");
+    out.println("                     and lines are listed, and the stacks are written in");
+    out.println("                     the collapsed format used by flame graph tools.");
     out.println();
     out.println("--export             Export an application.");
     out.println("--no-java            Do not embed Java. Use at your own risk!");
@@ -394,8 +517,8 @@ public class Commander implements RunnerListener {
 //    out.println("                     Otherwise specify 0 or leave it out.");
 
     out.println();
-    out.println("The --build, --run, --present, or --export must be the final parameter");
-    out.println("passed to Processing. Arguments passed following one of those four will");
+    out.println("The --build, --run, --present, --profile, or --export must be the final");
+    out.println("parameter passed to Processing. Arguments passed following one of those will");
     out.println("be passed through to the sketch itself, and therefore available to the");
     out.println("sketch via the 'args' field. To pass options understood by PApplet.main(),");
     out.println("write a custom main() method so that the preprocessor does not add one.");
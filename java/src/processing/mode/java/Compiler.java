@@ -57,6 +57,17 @@ public class Compiler {
    * @throws SketchException Only if there's a problem. Only then.
    */
   static public boolean compile(JavaBuild build) throws SketchException {
+    return compile(build, build.getBinFolder(), build.getClassPath());
+  }
+
+
+  /**
+   * Compile the sources of a build into another folder, with another class
+   * path. Used by the {@link IncrementalCompiler}, which only replaces the
+   * classes in the bin folder once the build has worked.
+   */
+  static public boolean compile(JavaBuild build, File binFolder,
+                                String classPath) throws SketchException {
 
     // This will be filled in if anyone gets angry
     SketchException exception = null;
@@ -69,9 +80,9 @@ public class Compiler {
       "-source", "1.7",
       "-target", "1.7",
       "-encoding", "utf8",
-      "-classpath", build.getClassPath(),
+      "-classpath", classPath,
       "-nowarn", // we're not currently interested in warnings (works in ecj)
-      "-d", build.getBinFolder().getAbsolutePath() // output the classes in the buildPath
+      "-d", binFolder.getAbsolutePath() // output the classes in the buildPath
     };
     //PApplet.println(baseCommand);
 
@@ -126,9 +137,31 @@ public class Compiler {
       writer.flush();
       writer.close();
 
-      BufferedReader reader =
-        new BufferedReader(new StringReader(errorBuffer.toString()));
-      //System.err.println(errorBuffer.toString());
+      exception = parseErrors(build, errorBuffer.toString());
+    } catch (IOException e) {
+      String bigSigh = "Error while compiling. (" + e.getMessage() + ")";
+      exception = new SketchException(bigSigh);
+      e.printStackTrace();
+      success = false;
+    }
+    // In case there was something else.
+    if (exception != null) throw exception;
+
+    return success;
+  }
+
+
+  /**
+   * Parse the error text from ecj (in its -Xemacs format), and turn the
+   * first error into an exception placed in the sketch.
+   * @return null if there are no errors in the text
+   */
+  static protected SketchException parseErrors(JavaBuild build,
+                                               String errors) throws IOException {
+    SketchException exception = null;
+    BufferedReader reader = new BufferedReader(new StringReader(errors));
+    try {
+      //System.err.println(errors);
 
       String line = null;
       while ((line = reader.readLine()) != null) {
@@ -304,16 +337,10 @@ public class Compiler {
           break;
         }
       }
-    } catch (IOException e) {
-      String bigSigh = "Error while compiling. (" + e.getMessage() + ")";
-      exception = new SketchException(bigSigh);
-      e.printStackTrace();
-      success = false;
+    } finally {
+      reader.close();
     }
-    // In case there was something else.
-    if (exception != null) throw exception;
-
-    return success;
+    return exception;
   }
 
 
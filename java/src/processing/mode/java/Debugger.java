@@ -35,6 +35,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 import javax.swing.JTree; // needed for javadocs
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -48,6 +51,8 @@ import processing.mode.java.runner.Runner;
 
 
 public class Debugger {
+  /// arrays longer than this are shown as ranges of this many elements
+  static public final int ARRAY_PAGE_SIZE = 100;
 
   /// editor window, acting as main view
   protected JavaEditor editor;
@@ -94,6 +99,16 @@ public class Debugger {
   /// VM event listener
   protected VMEventListener vmEventListener = this::vmEvent;
 
+  /// reads variables from the VM, so that neither the EDT nor the event thread wait for it
+  protected ExecutorService inspector = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "Debugger variables");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /// incremented each time the VM is resumed, the variables read before are out of date
+  protected volatile int resumeCount;
+
 
   public Debugger(JavaEditor editor) {
     this.editor = editor;
@@ -227,6 +242,7 @@ public class Debugger {
    * VMDisconnectEvent.
    */
   public synchronized void stopDebug() {
+    resumeCount++;
     editor.variableInspector().lock();
     if (runtime != null) {
       Messages.log("closing runtime");
@@ -263,6 +279,7 @@ public class Debugger {
     if (!isStarted()) {
       startDebug();
     } else if (isPaused()) {
+      resumeCount++;
       runtime.vm().resume();
       paused = false;
       editor.statusBusy();
@@ -287,6 +304,7 @@ public class Debugger {
       requestedStep.addCountFilter(1); // valid for one step only
       requestedStep.enable();
       paused = false;
+      resumeCount++;
       runtime.vm().resume();
       editor.statusBusy();
     }
@@ -613,7 +631,7 @@ public class Debugger {
 
   private void vmBreakPointEvent(BreakpointEvent be) {
     currentThread = be.thread(); // save this thread
-    updateVariableInspector(currentThread); // this is already on the EDT
+    updateVariableInspector(currentThread);
     final LineID newCurrentLine = locationToLineID(be.location());
     javax.swing.SwingUtilities.invokeLater(new Runnable() {
       @Override
@@ -643,7 +661,7 @@ public class Debugger {
     currentThread = se.thread();
 
     //printSourceLocation(currentThread);
-    updateVariableInspector(currentThread); // this is already on the EDT
+    updateVariableInspector(currentThread);
     final LineID newCurrentLine = locationToLineID(se.location());
     javax.swing.SwingUtilities.invokeLater(new Runnable() {
       @Override
@@ -872,43 +890,94 @@ public class Debugger {
 
   /**
    * Update variable inspector window. Displays local variables and this
-   * fields.
+   * fields. The variables are read in the background, and only the ones
+   * at the top level: the children of a variable are read when it's
+   * expanded, see {@link #loadChildren}.
    * @param t suspended thread to retrieve locals and this
    */
-  protected void updateVariableInspector(ThreadReference t) {
-    if (!t.isSuspended()) {
-      return;
-    }
-    try {
-      if (t.frameCount() == 0) {
-        // TODO: needs to be handled in a better way:
-        log("call stack empty");
-      } else {
-        final VariableInspector vi = editor.variableInspector();
-        // first get data
-        final List<DefaultMutableTreeNode> stackTrace = getStackTrace(t);
-        final List<VariableNode> locals = getLocals(t, 0);
-        final String currentLocation = currentLocation(t);
-        final List<VariableNode> thisFields = getThisFields(t, 0, true);
-        final List<VariableNode> declaredThisFields = getThisFields(t, 0, false);
-        final String thisName = thisName(t);
-        // now update asynchronously
-        javax.swing.SwingUtilities.invokeLater(new Runnable() {
-          @Override
-          public void run() {
-            //System.out.println("updating vi. from EDT: " + javax.swing.SwingUtilities.isEventDispatchThread());
+  protected void updateVariableInspector(final ThreadReference t) {
+    final int resumed = resumeCount;
+    inspect(resumed, () -> {
+      if (!t.isSuspended()) {
+        return;
+      }
+      try {
+        if (t.frameCount() == 0) {
+          // TODO: needs to be handled in a better way:
+          log("call stack empty");
+        } else {
+          final VariableInspector vi = editor.variableInspector();
+          // first get data
+          final List<DefaultMutableTreeNode> stackTrace = getStackTrace(t);
+          final List<VariableNode> locals = getLocals(t, 0);
+          final String currentLocation = currentLocation(t);
+          final List<VariableNode> thisFields = getThisFields(t, 0, true);
+          final List<VariableNode> declaredThisFields = getThisFields(t, 0, false);
+          final String thisName = thisName(t);
+          // now update asynchronously
+          javax.swing.SwingUtilities.invokeLater(() -> {
+            if (resumed != resumeCount) {
+              return;  // already running again
+            }
             vi.updateCallStack(stackTrace, "Call Stack");
             vi.updateLocals(locals, "Locals at " + currentLocation);
             vi.updateThisFields(thisFields, "Class " + thisName);
             vi.updateDeclaredThisFields(declaredThisFields, "Class " + thisName);
             vi.unlock(); // need to do this before rebuilding, otherwise we get these ... dots in the labels
             vi.rebuild();
-          }
-        });
+          });
+        }
+      } catch (IncompatibleThreadStateException ex) {
+        logitse(ex);
       }
-    } catch (IncompatibleThreadStateException ex) {
-      logitse(ex);
-    }
+    });
+  }
+
+
+  /**
+   * Read the children of a variable (fields of an object, or elements of
+   * an array) in the background.
+   * @param var the variable, usually one that's being expanded
+   * @param callback receives the children on the EDT. Not called if the VM
+   * was resumed in the meantime, since the values are out of date.
+   */
+  public void loadChildren(final VariableNode var,
+                           final Consumer<List<VariableNode>> callback) {
+    final int resumed = resumeCount;
+    inspect(resumed, () -> {
+      final List<VariableNode> children;
+      if (var instanceof ArrayRangeNode) {
+        ArrayRangeNode range = (ArrayRangeNode) var;
+        children = getArrayFields(range.getArray(), range.getStart(), range.getEnd());
+      } else {
+        children = getFields(var.getValue(), 0, true);
+      }
+      javax.swing.SwingUtilities.invokeLater(() -> {
+        if (resumed == resumeCount) {
+          callback.accept(children);
+        }
+      });
+    });
+  }
+
+
+  /**
+   * Run something that reads from the VM on the inspector thread. It's
+   * skipped if the VM was resumed before it gets to run.
+   * @param resumed {@link #resumeCount} when the values were asked for
+   */
+  protected void inspect(final int resumed, final Runnable task) {
+    inspector.execute(() -> {
+      if (resumed == resumeCount) {
+        try {
+          task.run();
+        } catch (VMDisconnectedException | ObjectCollectedException |
+                 InvalidStackFrameException e) {
+          // resumed or gone while reading, nothing worth showing
+          log("could not read variables: " + e);
+        }
+      }
+    });
   }
 
 
@@ -979,13 +1048,17 @@ public class Debugger {
     try {
       if (t.frameCount() > 0) {
         StackFrame sf = t.frame(0);
-        for (LocalVariable lv : sf.visibleVariables()) {
+        List<LocalVariable> visible = sf.visibleVariables();
+        // one request for all the values, instead of one for each
+        Map<LocalVariable, Value> values = sf.getValues(visible);
+        for (LocalVariable lv : visible) {
           //System.out.println("local var: " + lv.name());
-          Value val = sf.getValue(lv);
+          Value val = values.get(lv);
           VariableNode var = new LocalVariableNode(lv.name(), lv.typeName(), val, lv, sf);
           if (depth > 0) {
             var.addChildren(getFields(val, depth - 1, true));
           }
+          var.fetch();
           vars.add(var);
         }
       }
@@ -1040,13 +1113,16 @@ public class Debugger {
         ObjectReference obj = (ObjectReference) value;
         // get the fields of this object
         List<Field> fields = includeInherited ? obj.referenceType().visibleFields() : obj.referenceType().fields();
+        // one request for all the values, instead of one for each field
+        Map<Field, Value> values = obj.getValues(fields);
         for (Field field : fields) {
-          Value val = obj.getValue(field); // get the value, may be null
+          Value val = values.get(field); // get the value, may be null
           VariableNode var = new FieldNode(field.name(), field.typeName(), val, field, obj);
           // recursively add children
           if (val != null) {
             var.addChildren(getFields(val, depth + 1, maxDepth, includeInherited));
           }
+          var.fetch();
           vars.add(var);
         }
       }
@@ -1074,17 +1150,50 @@ public class Debugger {
    * @return list of array fields
    */
   protected List<VariableNode> getArrayFields(ArrayReference array) {
+    if (array == null) {
+      return new ArrayList<>();
+    }
+    return getArrayFields(array, 0, array.length());
+  }
+
+
+  /**
+   * Get the elements of an array from start to end (exclusive). If there are
+   * more than {@link #ARRAY_PAGE_SIZE}, they're split into ranges instead,
+   * so that elements are only read once their range is expanded.
+   * @param array the array reference
+   * @return list of array fields, or of {@link ArrayRangeNode}s
+   */
+  protected List<VariableNode> getArrayFields(ArrayReference array, int start, int end) {
     List<VariableNode> fields = new ArrayList<>();
     if (array != null) {
-      String arrayType = array.type().name();
-      if (arrayType.endsWith("[]")) {
-        arrayType = arrayType.substring(0, arrayType.length() - 2);
-      }
-      int i = 0;
-      for (Value val : array.getValues()) {
-        VariableNode var = new ArrayFieldNode("[" + i + "]", arrayType, val, array, i);
-        fields.add(var);
-        i++;
+      int count = end - start;
+      if (count > ARRAY_PAGE_SIZE) {
+        // no more than ARRAY_PAGE_SIZE ranges, each of them a power of it
+        long size = ARRAY_PAGE_SIZE;
+        while (count > size * ARRAY_PAGE_SIZE) {
+          size *= ARRAY_PAGE_SIZE;
+        }
+        for (long i = start; i < end; i += size) {
+          VariableNode range =
+            new ArrayRangeNode(array, (int) i, (int) Math.min(i + size, end));
+          range.fetch();
+          fields.add(range);
+        }
+
+      } else if (count > 0) {
+        String arrayType = array.type().name();
+        if (arrayType.endsWith("[]")) {
+          arrayType = arrayType.substring(0, arrayType.length() - 2);
+        }
+        int i = start;
+        // one request for the whole range, instead of one for each element
+        for (Value val : array.getValues(start, count)) {
+          VariableNode var = new ArrayFieldNode("[" + i + "]", arrayType, val, array, i);
+          var.fetch();
+          fields.add(var);
+          i++;
+        }
       }
     }
     return fields;
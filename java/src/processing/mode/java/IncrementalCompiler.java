@@ -0,0 +1,448 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License version 2
+  as published by the Free Software Foundation.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software Foundation,
+  Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package processing.mode.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+import processing.app.Messages;
+import processing.app.Mode;
+import processing.app.Sketch;
+import processing.app.SketchException;
+import processing.app.Util;
+import processing.core.PApplet;
+import processing.data.StringList;
+
+
+/**
+ * Compiler that stays around between builds of the same sketch, so that a
+ * Run only recompiles what changed since the previous one.
+ * <p>
+ * Each sketch gets a pair of build folders that are kept for as long as
+ * the PDE is open, instead of new temporary folders for every Run. The
+ * sources written there by the preprocessor are compared with those of
+ * the last successful build: if only the main tab (all the .pde code) has
+ * changed, only it and the .java tabs that refer to the sketch class are
+ * recompiled, against the classes already in the bin folder. Any change to
+ * a .java tab, the imported libraries or the set of tabs causes a full
+ * build, and nothing is compiled when nothing changed.
+ * <p>
+ * The bin folder is on the class path of the running sketch (see
+ * Runner.hotSwap()), so classes are compiled into a third, staging folder,
+ * and only moved into the bin folder once the build has worked. A build
+ * with errors leaves the classes of the running sketch alone.
+ * <p>
+ * ecj is used through its javax.tools interface, loaded once. Its file
+ * manager is closed after each build, so that the jars of the class path
+ * aren't held open (and locked, on Windows) while the sketch runs or
+ * libraries are updated, and a jar replaced at the same path is read
+ * again. If that interface is not available, builds are done from scratch
+ * with {@link Compiler#compile(JavaBuild)}.
+ */
+public class IncrementalCompiler {
+  // Same as Compiler.compile(), the class path and folders are set on the
+  // file manager instead.
+  static final List<String> OPTIONS =
+    Arrays.asList("-g", "-source", "1.7", "-target", "1.7", "-nowarn");
+
+  static final String ECJ_TOOL =
+    "org.eclipse.jdt.internal.compiler.tool.EclipseCompiler";
+
+  protected final Mode mode;
+
+  protected boolean loaded;
+  protected JavaCompiler compiler;
+
+  protected final Map<File, Target> targets = new HashMap<>();
+
+  protected int compiledCount;
+
+
+  /** Build folders of a sketch and what was built there last time. */
+  static class Target {
+    File srcFolder;
+    File binFolder;
+    File stageFolder;
+
+    String classPath;
+    /** Path relative to srcFolder -> source, null if the build failed */
+    Map<String, String> sources;
+  }
+
+
+  public IncrementalCompiler(Mode mode) {
+    this.mode = mode;
+  }
+
+
+  /**
+   * Get the source and bin folders to build a sketch in, the same ones as
+   * the last time. Leftover sources from the previous build are removed,
+   * classes are kept.
+   * @return { srcFolder, binFolder }, or null if they can't be created
+   */
+  public synchronized File[] prepareFolders(Sketch sketch) {
+    File key = sketch.getFolder().getAbsoluteFile();
+    Target target = targets.get(key);
+    if (target == null ||
+        !target.srcFolder.isDirectory() || !target.binFolder.isDirectory() ||
+        !target.stageFolder.isDirectory()) {
+      target = new Target();
+      target.srcFolder = sketch.makeTempFolder();
+      target.binFolder = sketch.makeTempFolder();
+      target.stageFolder = sketch.makeTempFolder();
+      if (target.srcFolder == null || target.binFolder == null ||
+          target.stageFolder == null) {
+        return null;
+      }
+      targets.put(key, target);
+
+    } else {
+      // tabs may have been removed or renamed since the last build
+      clearFolder(target.srcFolder);
+    }
+    return new File[] { target.srcFolder, target.binFolder };
+  }
+
+
+  /**
+   * Compile a sketch that has been preprocessed into folders returned by
+   * prepareFolders().
+   * @param className main class of the sketch, as found by the preprocessor
+   * @return true if successful
+   * @throws SketchException if there is an error in the code
+   */
+  public synchronized boolean compile(JavaBuild build,
+                                      String className) throws SketchException {
+    File key = build.sketch.getFolder().getAbsoluteFile();
+    Target target = targets.get(key);
+    if (target == null || !loadCompiler()) {
+      return compileAll(build, target);
+    }
+
+    File srcFolder = build.getSrcFolder();
+    File binFolder = build.getBinFolder();
+    String classPath = build.getClassPath();
+
+    Map<String, String> sources = new HashMap<>();
+    for (String path : Util.listFiles(srcFolder, true, ".java")) {
+      try {
+        sources.put(path, Util.loadFile(new File(srcFolder, path)));
+      } catch (IOException e) {
+        e.printStackTrace();
+        target.sources = null;
+        return compileAll(build, target);
+      }
+    }
+
+    List<String> changed = new ArrayList<>();
+    boolean full = target.sources == null ||
+      !classPath.equals(target.classPath) ||
+      !sources.keySet().equals(target.sources.keySet());
+    if (!full) {
+      for (Map.Entry<String, String> entry : sources.entrySet()) {
+        if (!entry.getValue().equals(target.sources.get(entry.getKey()))) {
+          changed.add(entry.getKey());
+        }
+      }
+    }
+    // Don't keep the sources around until this build has worked
+    target.sources = null;
+    target.classPath = classPath;
+
+    String mainPath = build.sketch.getName() + ".java";
+    List<File> units = new ArrayList<>();
+    if (!full && changed.isEmpty()) {
+      // nothing to do, the classes from last time are still good
+
+    } else if (!full && className != null &&
+               changed.size() == 1 && changed.get(0).equals(mainPath)) {
+      // Only the .pde code changed. Recompile it along with the .java tabs
+      // that use it, against the other classes in the bin folder.
+      units.add(new File(srcFolder, mainPath));
+      Pattern usage =
+        Pattern.compile("\\b" + Pattern.quote(className) + "\\b");
+      for (Map.Entry<String, String> entry : sources.entrySet()) {
+        if (!entry.getKey().equals(mainPath) &&
+            usage.matcher(entry.getValue()).find()) {
+          units.add(new File(srcFolder, entry.getKey()));
+        }
+      }
+
+    } else {
+      // Everything is compiled, without the old classes on the class path,
+      // so that code using a class from a removed tab doesn't compile.
+      for (String path : sources.keySet()) {
+        units.add(new File(srcFolder, path));
+      }
+      classPath = removeFromClassPath(classPath, binFolder);
+      className = null;
+    }
+
+    boolean success = true;
+    if (!units.isEmpty()) {
+      clearFolder(target.stageFolder);
+      success = compile(build, units, target.stageFolder, classPath);
+      if (success) {
+        publish(target.stageFolder, binFolder, className);
+      }
+    }
+    if (success) {
+      target.sources = sources;
+    }
+    compiledCount = units.size();
+    return success;
+  }
+
+
+  /** Whether the last build of this sketch worked and its classes are kept. */
+  public synchronized boolean hasClasses(Sketch sketch) {
+    Target target = targets.get(sketch.getFolder().getAbsoluteFile());
+    return target != null && target.sources != null;
+  }
+
+
+  /**
+   * Replace the classes in the bin folder with those of an earlier build
+   * from the build cache, and record it so that the next build can start
+   * from them.
+   * @return false if the cache doesn't have them
+   */
+  public synchronized boolean restore(JavaBuild build, BuildCache cache,
+                                      String key) throws SketchException {
+    Target target = targets.get(build.sketch.getFolder().getAbsoluteFile());
+    if (target == null) {
+      return cache.restore(key, build.getBinFolder());
+    }
+    target.sources = null;
+    clearFolder(target.stageFolder);
+    if (!cache.restore(key, target.stageFolder)) {
+      return false;
+    }
+    publish(target.stageFolder, build.getBinFolder(), null);
+
+    target.classPath = build.getClassPath();
+    File srcFolder = build.getSrcFolder();
+    Map<String, String> sources = new HashMap<>();
+    try {
+      for (String path : Util.listFiles(srcFolder, true, ".java")) {
+        sources.put(path, Util.loadFile(new File(srcFolder, path)));
+      }
+      target.sources = sources;
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return true;
+  }
+
+
+  /** Number of .java files compiled by the last call to compile(). */
+  public synchronized int getCompiledCount() {
+    return compiledCount;
+  }
+
+
+  protected boolean compileAll(JavaBuild build,
+                               Target target) throws SketchException {
+    compiledCount = Util.listFiles(build.getSrcFolder(), false, ".java").length;
+    if (target == null) {
+      return Compiler.compile(build);
+    }
+    // compiled from scratch, so that classes of tabs that were removed or
+    // renamed are left out
+    File binFolder = build.getBinFolder();
+    clearFolder(target.stageFolder);
+    boolean success =
+      Compiler.compile(build, target.stageFolder,
+                       removeFromClassPath(build.getClassPath(), binFolder));
+    if (success) {
+      publish(target.stageFolder, binFolder, null);
+    }
+    return success;
+  }
+
+
+  protected boolean compile(JavaBuild build, List<File> units,
+                            File outputFolder,
+                            String classPathList) throws SketchException {
+    List<File> classPath = new ArrayList<>();
+    for (String entry : PApplet.split(classPathList, File.pathSeparatorChar)) {
+      // empty or missing entries make ecj complain
+      if (entry.length() != 0) {
+        File file = new File(entry);
+        if (file.exists()) {
+          classPath.add(file);
+        }
+      }
+    }
+
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    boolean success;
+    StandardJavaFileManager fileManager =
+      compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+    try {
+      fileManager.setLocation(StandardLocation.CLASS_PATH, classPath);
+      fileManager.setLocation(StandardLocation.CLASS_OUTPUT,
+                              Collections.singletonList(outputFolder));
+      success = compiler.getTask(null, fileManager, diagnostics, OPTIONS, null,
+                                 fileManager.getJavaFileObjectsFromFiles(units)).call();
+    } catch (Exception e) {
+      e.printStackTrace();
+      throw new SketchException("Unknown error inside the compiler.");
+
+    } finally {
+      try {
+        fileManager.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+
+    // Write the errors the same way as ecj's -Xemacs option, so that they
+    // go through the same translation into sketch locations and messages.
+    StringBuilder errors = new StringBuilder();
+    for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+      if (d.getKind() == Diagnostic.Kind.ERROR) {
+        String filename = (d.getSource() == null) ?
+          "" : new File(d.getSource().toUri()).getName();
+        errors.append(filename + ":" + d.getLineNumber() + ": error: " +
+                      d.getMessage(null) + "\n");
+      }
+    }
+    if (errors.length() != 0) {
+      SketchException exception;
+      try {
+        exception = Compiler.parseErrors(build, errors.toString());
+      } catch (IOException e) {
+        exception = new SketchException("Error while compiling. (" + e.getMessage() + ")");
+      }
+      if (exception != null) {
+        throw exception;
+      }
+    }
+    return success;
+  }
+
+
+  /**
+   * Load ecj's javax.tools compiler from the mode's class loader.
+   * @return false if it's not available
+   */
+  protected boolean loadCompiler() {
+    if (!loaded) {
+      loaded = true;
+      try {
+        Class<?> toolClass = Class.forName(ECJ_TOOL, true, mode.getClassLoader());
+        compiler = (JavaCompiler) toolClass.newInstance();
+
+      } catch (Exception | LinkageError e) {
+        Messages.loge("Incremental compilation not available", e);
+        compiler = null;
+      }
+    }
+    return compiler != null;
+  }
+
+
+  /**
+   * Move the classes of a build that worked from the staging folder into
+   * the bin folder. Each class file is replaced in one step, so the running
+   * sketch never finds one missing or half written. Then the classes that
+   * the build didn't make are removed: the old ones of className (inner
+   * classes may have been removed or renumbered), or all of them when
+   * everything was built (className is null).
+   */
+  static protected void publish(File stageFolder, File binFolder,
+                                String className) throws SketchException {
+    Set<String> built = new HashSet<>();
+    try {
+      for (String path : Util.listFiles(stageFolder, true, ".class")) {
+        File target = new File(binFolder, path);
+        target.getParentFile().mkdirs();
+        Files.move(new File(stageFolder, path).toPath(), target.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING);
+        built.add(path);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      throw new SketchException("Error while copying the compiled classes. (" +
+                                e.getMessage() + ")");
+    }
+
+    String prefix = (className == null) ?
+      null : className.replace('.', File.separatorChar);
+    for (String path : Util.listFiles(binFolder, true, ".class")) {
+      if (!built.contains(path) &&
+          (prefix == null || path.equals(prefix + ".class") ||
+           path.startsWith(prefix + "$"))) {
+        new File(binFolder, path).delete();
+      }
+    }
+  }
+
+
+  /** Remove a folder from a class path. */
+  static protected String removeFromClassPath(String classPath, File folder) {
+    StringList outgoing = new StringList();
+    File absolute = folder.getAbsoluteFile();
+    for (String entry : PApplet.split(classPath, File.pathSeparatorChar)) {
+      if (!new File(entry).getAbsoluteFile().equals(absolute)) {
+        outgoing.append(entry);
+      }
+    }
+    return outgoing.join(File.pathSeparator);
+  }
+
+
+  /** Remove everything inside a folder, but keep the folder. */
+  static protected void clearFolder(File folder) {
+    File[] list = folder.listFiles();
+    if (list != null) {
+      for (File file : list) {
+        if (file.isDirectory()) {
+          Util.removeDir(file);
+        } else {
+          file.delete();
+        }
+      }
+    }
+  }
+}
@@ -88,6 +88,14 @@ public class JavaBuild {
   /** List of library folders, as figured out during preprocessing. */
   private List<Library> importedLibraries;
 
+  /** Set when building in the folders kept by the incremental compiler. */
+  private IncrementalCompiler incremental;
+
+  // How long the last build() took, in milliseconds
+  private long preprocessTime;
+  private long compileTime;
+  private boolean restoredFromCache;
+
 
   public JavaBuild(Sketch sketch) {
     this.sketch = sketch;
@@ -101,6 +109,15 @@ public class JavaBuild {
    * @throws RunnerException
    */
   public String build(boolean sizeWarning) throws SketchException {
+    if (mode instanceof JavaMode && Preferences.getBoolean("build.incremental")) {
+      // reuse the folders (and classes) from the last build of this sketch
+      incremental = ((JavaMode) mode).getIncrementalCompiler();
+      File[] folders = incremental.prepareFolders(sketch);
+      if (folders != null) {
+        return build(folders[0], folders[1], sizeWarning);
+      }
+      incremental = null;
+    }
     return build(sketch.makeTempFolder(), sketch.makeTempFolder(), sizeWarning);
   }
 
@@ -118,12 +135,64 @@ public class JavaBuild {
     this.srcFolder = srcFolder;
     this.binFolder = binFolder;
 
+    long started = System.currentTimeMillis();
+
     // run the preprocessor
     String classNameFound = preprocess(srcFolder, sizeWarning);
+    long preprocessed = System.currentTimeMillis();
+
+    // Use the classes from an earlier build of the same code, if any. When
+    // the incremental compiler already has classes for this sketch, it's
+    // quicker for it to update them.
+    BuildCache cache = null;
+    String cacheKey = null;
+    if (classNameFound != null && mode instanceof JavaMode && BuildCache.isEnabled() &&
+        (incremental == null || !incremental.hasClasses(sketch))) {
+      cache = ((JavaMode) mode).getBuildCache();
+      cacheKey = cache.getKey(this, String.join(" ", IncrementalCompiler.OPTIONS));
+    }
+
+    boolean success;
+    boolean cached = false;
+    if (cacheKey != null && cache.contains(cacheKey)) {
+      cached = (incremental != null) ?
+        incremental.restore(this, cache, cacheKey) :
+        cache.restore(cacheKey, binFolder);
+    }
+    if (cached) {
+      success = true;
 
-    // compile the program. errors will happen as a RunnerException
-    // that will bubble up to whomever called build().
-    if (Compiler.compile(this)) {
+    } else {
+      // compile the program. errors will happen as a RunnerException
+      // that will bubble up to whomever called build().
+      success = (incremental != null) ?
+        incremental.compile(this, classNameFound) : Compiler.compile(this);
+      if (success && cacheKey != null) {
+        cache.store(cacheKey, binFolder);
+      }
+    }
+
+    long compiled = System.currentTimeMillis();
+    preprocessTime = preprocessed - started;
+    compileTime = compiled - preprocessed;
+    restoredFromCache = cached;
+
+    if (Preferences.getBoolean("build.timing")) {
+      if (cached) {
+        System.out.println("Preprocessed in " + (preprocessed - started) + " ms, " +
+                           "classes restored from the build cache in " +
+                           (compiled - preprocessed) + " ms");
+      } else {
+        String files = "";
+        if (incremental != null) {
+          int count = incremental.getCompiledCount();
+          files = (count == 1) ? " 1 file" : " " + count + " files";
+        }
+        System.out.println("Preprocessed in " + (preprocessed - started) + " ms, " +
+                           "compiled" + files + " in " + (compiled - preprocessed) + " ms");
+      }
+    }
+    if (success) {
       sketchClassName = classNameFound;
       return classNameFound;
     }
@@ -131,11 +200,37 @@ public class JavaBuild {
   }
 
 
+  public Sketch getSketch() {
+    return sketch;
+  }
+
+
   public String getSketchClassName() {
     return sketchClassName;
   }
 
 
+  /** Milliseconds spent in the preprocessor by the last build(). */
+  public long getPreprocessTime() {
+    return preprocessTime;
+  }
+
+
+  /**
+   * Milliseconds spent compiling (or restoring classes from the build
+   * cache) by the last build().
+   */
+  public long getCompileTime() {
+    return compileTime;
+  }
+
+
+  /** Whether the classes of the last build() came from the build cache. */
+  public boolean isRestoredFromCache() {
+    return restoredFromCache;
+  }
+
+
   /**
    * Build all the code for this sketch.
    *
@@ -678,8 +773,10 @@ public class JavaBuild {
     // the situation is with their native libs), and also for efficiency of
     // not redoing the compilation for each platform. In particular, though,
     // importedLibraries won't be set until the preprocessing has finished,
-    // so we have to do that before the stuff below.
-    String foundName = build(true);
+    // so we have to do that before the stuff below. Always built from
+    // scratch in new folders, not in the ones kept by the incremental
+    // compiler, so that the export never has classes left from other runs.
+    String foundName = build(sketch.makeTempFolder(), sketch.makeTempFolder(), true);
 
     // (already reported) error during export, exit this function
     if (foundName == null) return false;
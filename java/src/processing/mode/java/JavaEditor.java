@@ -240,8 +240,15 @@ public class JavaEditor extends Editor {
         }
       });
 
+    JMenuItem profileItem = new JMenuItem(Language.text("menu.sketch.profile"));
+    profileItem.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent e) {
+        handleProfile();
+      }
+    });
+
     return buildSketchMenu(new JMenuItem[] {
-      runItem, presentItem, tweakItem, stopItem
+      runItem, presentItem, tweakItem, profileItem, stopItem
     });
   }
 
@@ -1083,7 +1090,33 @@ public class JavaEditor extends Editor {
     handleLaunch(false, true);
   }
 
+  /** Run the sketch with the profiler, see {@link ProfilerWindow}. */
+  public void handleProfile() {
+    launch(false, false, true);
+  }
+
+
   protected void handleLaunch(boolean present, boolean tweak) {
+    if (!present && !tweak && Preferences.getBoolean("run.live")) {
+      Runner running;
+      synchronized (runtimeLock) {
+        running = runtime;
+      }
+      if (running != null && running.isRunning()) {
+        handleLiveUpdate(running);
+        return;
+      }
+    }
+    launch(present, tweak);
+  }
+
+
+  protected void launch(boolean present, boolean tweak) {
+    launch(present, tweak, false);
+  }
+
+
+  protected void launch(boolean present, boolean tweak, boolean profile) {
     prepareRun();
     toolbar.activateRun();
     synchronized (runtimeLock) {
@@ -1095,7 +1128,9 @@ public class JavaEditor extends Editor {
           if (runtimeLaunchRequested) {
             runtimeLaunchRequested = false;
             RunnerListener listener = new RunnerListenerEdtAdapter(JavaEditor.this);
-            if (!tweak) {
+            if (profile) {
+              runtime = jmode.handleProfile(sketch, listener, JavaEditor.this);
+            } else if (!tweak) {
               runtime = jmode.handleLaunch(sketch, listener, present);
             } else {
               runtime = jmode.handleTweak(sketch, listener, JavaEditor.this);
@@ -1109,6 +1144,55 @@ public class JavaEditor extends Editor {
   }
 
 
+  /**
+   * Rebuild the sketch and swap the new code into the copy that's already
+   * running, so that it keeps its state. Restarts it instead if the changes
+   * can't be applied to the running code (see Runner.hotSwap()).
+   */
+  protected void handleLiveUpdate(final Runner running) {
+    autoSave();
+    statusEmpty();
+
+    // Same as prepareRun(), without stopping the sketch
+    sketch.ensureExistence();
+    for (SketchCode sc : sketch.getCode()) {
+      if (sc.getDocument() != null) {
+        try {
+          sc.setProgram(sc.getDocumentText());
+        } catch (BadLocationException e) { }
+      }
+    }
+    preprocessingService.cancel();
+
+    new Thread(() -> {
+      try {
+        String problem;
+        synchronized (runtimeLock) {
+          JavaBuild build = new JavaBuild(sketch);
+          if (build.build(true) == null) {
+            return;
+          }
+          problem = (runtime == running) ?
+            running.hotSwap(build) :
+            Language.text("editor.status.live_update.stopped");
+        }
+        if (problem == null) {
+          EventQueue.invokeLater(() -> {
+            statusNotice(Language.text("editor.status.live_update"));
+          });
+        } else {
+          EventQueue.invokeLater(() -> {
+            launch(false, false);
+            statusNotice(Language.interpolate("editor.status.live_update.restart", problem));
+          });
+        }
+      } catch (Exception e) {
+        EventQueue.invokeLater(() -> statusError(e));
+      }
+    }).start();
+  }
+
+
   /**
    * Event handler called when hitting the stop button. Stops a running debug
    * session or performs standard stop action if not currently debugging.
@@ -37,7 +37,9 @@ import processing.app.*;
 import processing.app.ui.Editor;
 import processing.app.ui.EditorException;
 import processing.app.ui.EditorState;
+import processing.mode.java.runner.Profiler;
 import processing.mode.java.runner.Runner;
+import processing.mode.java.runner.RunnerPool;
 import processing.mode.java.tweak.SketchParser;
 
 
@@ -114,6 +116,33 @@ public class JavaMode extends Mode {
 
 
 
+  protected IncrementalCompiler incrementalCompiler;
+  protected BuildCache buildCache;
+
+  /**
+   * Compiler that keeps the classes of each sketch between builds, so that
+   * only what has changed is recompiled. Used when build.incremental is set.
+   */
+  public synchronized IncrementalCompiler getIncrementalCompiler() {
+    if (incrementalCompiler == null) {
+      incrementalCompiler = new IncrementalCompiler(this);
+    }
+    return incrementalCompiler;
+  }
+
+
+  /**
+   * Classes of earlier builds, shared by all sketches and kept between
+   * sessions. Used when build.cache is set.
+   */
+  public synchronized BuildCache getBuildCache() {
+    if (buildCache == null) {
+      buildCache = BuildCache.create();
+    }
+    return buildCache;
+  }
+
+
   /** Handles the standard Java "Run" or "Present" */
   public Runner handleLaunch(Sketch sketch, RunnerListener listener,
                              final boolean present) throws SketchException {
@@ -132,6 +161,32 @@ public class JavaMode extends Mode {
           }
         }
       }).start();
+      if (RunnerPool.isEnabled()) {
+        // get a VM ready for the next Run
+        RunnerPool.prestart(getCoreLibrary());
+      }
+      return runtime;
+    }
+    return null;
+  }
+
+
+  /**
+   * Run a sketch with the profiler sampling it, and show the results in a
+   * window as it runs.
+   */
+  public Runner handleProfile(Sketch sketch, RunnerListener listener,
+                              final JavaEditor editor) throws SketchException {
+    JavaBuild build = new JavaBuild(sketch);
+    String appletClassName = build.build(true);
+    if (appletClassName != null) {
+      final Runner runtime = new Runner(build, listener);
+      final Profiler profiler = new Profiler(build);
+      runtime.setProfiler(profiler);
+      SwingUtilities.invokeLater(() -> {
+        new ProfilerWindow(editor, profiler).setVisible(true);
+      });
+      new Thread(() -> runtime.launch(null)).start();
       return runtime;
     }
     return null;
@@ -0,0 +1,284 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License version 2
+  as published by the Free Software Foundation.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software Foundation,
+  Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package processing.mode.java;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.BorderFactory;
+import javax.swing.Box;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import javax.swing.ToolTipManager;
+
+import processing.app.Language;
+import processing.app.ui.Toolkit;
+import processing.core.PApplet;
+import processing.mode.java.runner.Profile;
+import processing.mode.java.runner.Profiler;
+
+
+/**
+ * Shows the results of Run with Profiler while the sketch runs: a flame
+ * graph of the sampled stacks (callers at the bottom, the width of each
+ * bar is the share of the samples with that method on the stack), and the
+ * methods and lines of the sketch that took the most time.
+ */
+public class ProfilerWindow extends JDialog {
+  static final int DEFAULT_WIDTH = 800;
+  static final int DEFAULT_HEIGHT = 600;
+
+  // Refresh while the sketch runs
+  static final int UPDATE_INTERVAL = 1000;
+
+  // Number of methods and lines in the summary
+  static final int SUMMARY_COUNT = 25;
+
+  protected final JavaEditor editor;
+  protected final Profiler profiler;
+  protected Profile profile;
+
+  protected FlameGraph graph;
+  protected JTextArea summary;
+  protected JLabel status;
+  protected Timer timer;
+
+
+  public ProfilerWindow(JavaEditor editor, Profiler profiler) {
+    super(editor, Language.text("profiler.title"));
+    this.editor = editor;
+    this.profiler = profiler;
+
+    graph = new FlameGraph();
+    summary = new JTextArea();
+    summary.setEditable(false);
+    summary.setFont(Toolkit.getMonoFont(12, java.awt.Font.PLAIN));
+
+    JSplitPane split =
+      new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                     new JScrollPane(graph), new JScrollPane(summary));
+    split.setResizeWeight(0.6);
+    split.setBorder(BorderFactory.createEmptyBorder());
+
+    status = new JLabel();
+    JButton saveButton = new JButton(Language.text("profiler.save"));
+    saveButton.addActionListener(e -> saveStacks());
+    Box bottom = Box.createHorizontalBox();
+    bottom.setBorder(BorderFactory.createEmptyBorder(6, 8, 6, 8));
+    bottom.add(status);
+    bottom.add(Box.createHorizontalGlue());
+    bottom.add(saveButton);
+
+    getContentPane().add(split, BorderLayout.CENTER);
+    getContentPane().add(bottom, BorderLayout.SOUTH);
+    setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    setSize(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+    setLocationRelativeTo(editor);
+
+    timer = new Timer(UPDATE_INTERVAL, e -> update());
+    timer.start();
+    update();
+  }
+
+
+  /**
+   * Show the latest samples, and stop updating once the sketch quits or
+   * fails to start.
+   */
+  protected void update() {
+    boolean finished = profiler.isFinished();
+    boolean running = profiler.isRunning();
+    profile = profiler.getProfile();
+    graph.setProfile(profile);
+    int caret = summary.getCaretPosition();
+    summary.setText(profile.format(SUMMARY_COUNT));
+    summary.setCaretPosition(Math.min(caret, summary.getDocument().getLength()));
+    String name = editor.getSketch().getName();
+    status.setText(Language.interpolate(running ?
+                                        "profiler.running" : "profiler.finished", name));
+    if (finished) {
+      timer.stop();
+    }
+  }
+
+
+  @Override
+  public void dispose() {
+    timer.stop();
+    super.dispose();
+  }
+
+
+  /** Write the stacks in the collapsed format, for other flame graph tools. */
+  protected void saveStacks() {
+    JFileChooser chooser = new JFileChooser(editor.getSketch().getFolder());
+    chooser.setSelectedFile(new File(editor.getSketch().getFolder(), "profile.txt"));
+    if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+      profile.writeCollapsed(chooser.getSelectedFile());
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** A frame of the flame graph, and the ones it called. */
+  static class Node {
+    final String name;
+    int count;
+    final Map<String, Node> children = new LinkedHashMap<>();
+
+    Node(String name) {
+      this.name = name;
+    }
+
+    Node child(String name) {
+      return children.computeIfAbsent(name, Node::new);
+    }
+
+    int depth() {
+      int depth = 0;
+      for (Node child : children.values()) {
+        depth = Math.max(depth, child.depth());
+      }
+      return depth + 1;
+    }
+  }
+
+
+  /**
+   * The stacks drawn on top of each other, the outermost frame at the
+   * bottom. Frames from the sketch's own code are in warm colors, the rest
+   * (core, libraries, Java) in gray.
+   */
+  class FlameGraph extends JComponent {
+    static final int ROW_HEIGHT = 18;
+
+    Node root = new Node("all");
+    // bars drawn in the last paint, for the tool tips
+    Map<Rectangle, Node> bars = new LinkedHashMap<>();
+
+    FlameGraph() {
+      ToolTipManager.sharedInstance().registerComponent(this);
+    }
+
+    void setProfile(Profile profile) {
+      Node top = new Node("all");
+      for (Map.Entry<String, Integer> entry : profile.getStacks().entrySet()) {
+        int count = entry.getValue();
+        Node node = top;
+        node.count += count;
+        for (String frame : PApplet.split(entry.getKey(), ';')) {
+          node = node.child(frame);
+          node.count += count;
+        }
+      }
+      root = top;
+      revalidate();
+      repaint();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+      return new Dimension(DEFAULT_WIDTH - 40, root.depth() * ROW_HEIGHT);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, getWidth(), getHeight());
+      g.setFont(Toolkit.getSansFont(11, java.awt.Font.PLAIN));
+      bars.clear();
+      if (root.count != 0) {
+        paintNode(g, root, 0, getWidth(), getHeight() - ROW_HEIGHT);
+      }
+    }
+
+    void paintNode(Graphics g, Node node, double x, double width, int y) {
+      int left = (int) x;
+      int right = (int) (x + width);
+      if (right - left < 1 || y < -ROW_HEIGHT) {
+        return;
+      }
+      boolean sketch = Profile.isSketchFrame(node.name);
+      // vary the color a little by name, so neighbors can be told apart
+      int shade = (node.name.hashCode() & 0x1f);
+      g.setColor(sketch ?
+                 new Color(230, 110 + shade * 2, 40 + shade) :
+                 new Color(190 + shade, 190 + shade, 180 + shade));
+      g.fillRect(left, y, right - left - 1, ROW_HEIGHT - 1);
+      bars.put(new Rectangle(left, y, right - left, ROW_HEIGHT), node);
+
+      FontMetrics metrics = g.getFontMetrics();
+      String label = node.name;
+      int available = right - left - 6;
+      if (metrics.stringWidth(label) > available) {
+        // drop the package, then cut it short
+        int end = (label.indexOf(' ') == -1) ? label.length() : label.indexOf(' ');
+        int methodDot = label.lastIndexOf('.', end - 1);
+        label = label.substring(label.lastIndexOf('.', methodDot - 1) + 1);
+        while (label.length() > 0 &&
+               metrics.stringWidth(label + "\u2026") > available) {
+          label = label.substring(0, label.length() - 1);
+        }
+        label = (label.length() == 0) ? "" : label + "\u2026";
+      }
+      g.setColor(Color.BLACK);
+      g.drawString(label, left + 3, y + ROW_HEIGHT - 5);
+
+      double childX = x;
+      for (Node child : node.children.values()) {
+        double childWidth = width * child.count / node.count;
+        paintNode(g, child, childX, childWidth, y - ROW_HEIGHT);
+        childX += childWidth;
+      }
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+      for (Map.Entry<Rectangle, Node> bar : bars.entrySet()) {
+        if (bar.getKey().contains(e.getPoint())) {
+          Node node = bar.getValue();
+          return String.format("%s: %.1f%%, %.0f ms", node.name,
+                               100.0 * node.count / root.count,
+                               profile.toMillis(node.count));
+        }
+      }
+      return null;
+    }
+  }
+}
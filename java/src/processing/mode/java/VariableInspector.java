@@ -671,9 +671,18 @@ public class VariableInspector extends JDialog {
       if (!(last instanceof VariableNode)) {
         return;
       }
-      VariableNode var = (VariableNode) last;
-      var.removeAllChildren(); // TODO: should we only load it once?
-      var.addChildren(filterNodes(editor.getDebugger().getFields(var.getValue(), 0, true), new ThisFilter()));
+      final VariableNode var = (VariableNode) last;
+      if (!var.isLoaded()) {
+        // read in the background, so the editor doesn't wait for the VM
+        var.setLoaded(true);
+        editor.getDebugger().loadChildren(var, children -> {
+          var.removeAllChildren();
+          var.addChildren(filterNodes(children, new ThisFilter()));
+          treeModel.nodeStructureChanged(var);
+          // the children that were expanded before stepping
+          expandPaths();
+        });
+      }
     }
 
     @Override
@@ -854,18 +863,29 @@ public class VariableInspector extends JDialog {
     treeModel.nodeStructureChanged(rootNode);
 
     // handle node expansions
-    for (TreePath path : expandedNodes) {
+    expandPaths();
+
+    // this expansion causes problems when sorted and stepping
+    //tree.expandPath(new TreePath(new Object[]{rootNode, builtins}));
+  }
+
+
+  /**
+   * Expand the nodes that were expanded by the user, if they're in the tree.
+   * Nodes whose parents haven't been loaded yet are expanded once they are.
+   */
+  protected void expandPaths() {
+    for (TreePath path : new ArrayList<>(expandedNodes)) {
       //System.out.println("re-expanding: " + path);
       path = synthesizePath(path);
       if (path != null) {
-        tree.expandPath(path);
+        if (!tree.isExpanded(path)) {
+          tree.expandPath(path);
+        }
       } else {
         //System.out.println("couldn't synthesize path");
       }
     }
-
-    // this expansion causes problems when sorted and stepping
-    //tree.expandPath(new TreePath(new Object[]{rootNode, builtins}));
   }
 
 
@@ -55,6 +55,6 @@ public class ArrayFieldNode extends VariableNode {
     } catch (InvalidTypeException | ClassNotLoadedException ex) {
       Messages.loge(null, ex);
     }
-    this.value = value;
+    super.setValue(value);
   }
 }
@@ -0,0 +1,81 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  version 2, as published by the Free Software Foundation.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software Foundation,
+  Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package processing.mode.java.debug;
+
+import com.sun.jdi.ArrayReference;
+
+
+/**
+ * A range of elements of a large array, such as [100..199]. Used instead
+ * of a node for each element, so that only the elements of the ranges that
+ * are expanded have to be read from the VM.
+ */
+public class ArrayRangeNode extends VariableNode {
+  protected ArrayReference array;
+  protected int start;
+  protected int end;
+
+
+  /**
+   * @param start index of the first element
+   * @param end index after the last element
+   */
+  public ArrayRangeNode(ArrayReference array, int start, int end) {
+    super("[" + start + ".." + (end - 1) + "]", null, array);
+    this.array = array;
+    this.start = start;
+    this.end = end;
+  }
+
+
+  public ArrayReference getArray() {
+    return array;
+  }
+
+
+  public int getStart() {
+    return start;
+  }
+
+
+  public int getEnd() {
+    return end;
+  }
+
+
+  @Override
+  public String getStringValue() {
+    return "";
+  }
+
+
+  @Override
+  protected boolean hasChildren() {
+    return true;
+  }
+
+
+  @Override
+  public String getDescription() {
+    return name;
+  }
+}
@@ -60,6 +60,6 @@ public class FieldNode extends VariableNode {
     } catch (ClassNotLoadedException cnle) {
       Messages.loge(null, cnle);
     }
-    this.value = value;
+    super.setValue(value);
   }
 }
@@ -54,6 +54,6 @@ public class LocalVariableNode extends VariableNode {
     } catch (InvalidTypeException | ClassNotLoadedException ex) {
       Messages.loge(null, ex);
     }
-    this.value = value;
+    super.setValue(value);
   }
 }
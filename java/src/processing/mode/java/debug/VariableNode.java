@@ -58,6 +58,13 @@ public class VariableNode implements MutableTreeNode {
   protected List<MutableTreeNode> children = new ArrayList<>();
   protected MutableTreeNode parent;
 
+  // Read from the VM once, so that painting the tree doesn't have to
+  protected String stringValue;
+  protected Boolean allowsChildren;
+
+  // children have been requested, they're only read from the VM once
+  protected boolean loaded;
+
 
   /**
    * Construct a {@link VariableNode}.
@@ -74,6 +81,8 @@ public class VariableNode implements MutableTreeNode {
 
   public void setValue(Value value) {
     this.value = value;
+    stringValue = null;
+    allowsChildren = null;
   }
 
 
@@ -88,6 +97,9 @@ public class VariableNode implements MutableTreeNode {
    * @return a String representing the value.
    */
   public String getStringValue() {
+    if (stringValue != null) {
+      return stringValue;
+    }
     String str;
     if (value != null) {
       if (getType() == TYPE_OBJECT) {
@@ -103,6 +115,7 @@ public class VariableNode implements MutableTreeNode {
     } else {
       str = "null";
     }
+    stringValue = str;
     return str;
   }
 
@@ -212,6 +225,14 @@ public class VariableNode implements MutableTreeNode {
 
   @Override
   public boolean getAllowsChildren() {
+    if (allowsChildren == null) {
+      allowsChildren = hasChildren();
+    }
+    return allowsChildren;
+  }
+
+
+  protected boolean hasChildren() {
     if (value == null) {
       return false;
     }
@@ -237,6 +258,30 @@ public class VariableNode implements MutableTreeNode {
   }
 
 
+  /**
+   * Read everything needed to show this node from the VM. Call this before
+   * handing the node to the inspector, so that the Event Dispatch Thread
+   * doesn't have to wait for the VM while painting.
+   */
+  public void fetch() {
+    getStringValue();
+    getAllowsChildren();
+  }
+
+
+  /**
+   * Whether the children of this node have been requested from the VM.
+   */
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+
+  public void setLoaded(boolean loaded) {
+    this.loaded = loaded;
+  }
+
+
   /**
    * This controls the default icon and disclosure triangle.
    *
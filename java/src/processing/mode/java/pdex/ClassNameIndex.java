@@ -0,0 +1,317 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+Part of the Processing project - http://processing.org
+Copyright (c) 2012-19 The Processing Foundation
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License version 2
+as published by the Free Software Foundation.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software Foundation, Inc.
+51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+*/
+
+package processing.mode.java.pdex;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import processing.app.Base;
+import processing.app.Messages;
+import processing.app.Util;
+import processing.core.PApplet;
+
+
+/**
+ * Names of all the classes on a class path, sorted by their simple names,
+ * for finding classes by name without going through every jar each time.
+ * <p>
+ * The index is built in the background. Until it's ready, {@link #isReady()}
+ * returns false and the class path has to be searched the slow way. The
+ * classes in each jar are kept in memory for as long as the PDE runs, and
+ * in the settings folder between sessions, so they're only listed again
+ * when the jar changes. Folders are listed again for every new index.
+ */
+public class ClassNameIndex {
+  static private final ExecutorService executor =
+    Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "Class name index");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+  // "path,length,modified" of a jar -> its classes
+  static private final Map<String, String[]> entries = new ConcurrentHashMap<>();
+
+  // whether the files of jars that changed or are gone have been removed
+  static private boolean pruned;
+
+  // Lowercase simple names (the part after the last / or $), sorted,
+  // and the resource name of the class ("java/util/ArrayList") for each
+  private volatile String[] keys;
+  private volatile String[] names;
+
+
+  /**
+   * Start indexing a class path in the background.
+   */
+  public ClassNameIndex(final String[] classPath) {
+    executor.execute(() -> build(classPath));
+  }
+
+
+  public boolean isReady() {
+    return names != null;
+  }
+
+
+  /**
+   * Top-level classes with a simple name that starts with prefix, ignoring
+   * case. Same as looking for prefix + "[a-zA-Z_0-9]*.class" with a
+   * RegExpResourceFilter.
+   * @return resource names, such as "java/util/ArrayList.class"
+   */
+  public String[] startingWith(String prefix) {
+    String key = prefix.toLowerCase(Locale.ROOT);
+    List<String> outgoing = new ArrayList<>();
+    for (int i = lowerBound(key); i < keys.length && keys[i].startsWith(key); i++) {
+      if (names[i].indexOf('$') == -1) {
+        outgoing.add(names[i] + ".class");
+      }
+    }
+    return outgoing.toArray(new String[0]);
+  }
+
+
+  /**
+   * Classes, including nested ones, with this simple name, ignoring case.
+   * @return resource names, such as "java/util/Map$Entry.class"
+   */
+  public String[] named(String simpleName) {
+    String key = simpleName.toLowerCase(Locale.ROOT);
+    List<String> outgoing = new ArrayList<>();
+    for (int i = lowerBound(key); i < keys.length && keys[i].equals(key); i++) {
+      outgoing.add(names[i] + ".class");
+    }
+    return outgoing.toArray(new String[0]);
+  }
+
+
+  private int lowerBound(String key) {
+    int index = Arrays.binarySearch(keys, key);
+    if (index < 0) {
+      return -(index + 1);
+    }
+    // step back to the first one of the same key
+    while (index > 0 && keys[index - 1].equals(key)) {
+      index--;
+    }
+    return index;
+  }
+
+
+  private void build(String[] classPath) {
+    long started = System.currentTimeMillis();
+    if (!pruned) {
+      pruneCache();
+      pruned = true;
+    }
+    List<String[]> pairs = new ArrayList<>();
+    for (String path : classPath) {
+      for (String name : listClasses(new File(path))) {
+        int slash = Math.max(name.lastIndexOf('/'), name.lastIndexOf('$'));
+        String simple = name.substring(slash + 1).toLowerCase(Locale.ROOT);
+        pairs.add(new String[] { simple, name });
+      }
+    }
+    pairs.sort((a, b) -> {
+      int diff = a[0].compareTo(b[0]);
+      return (diff != 0) ? diff : a[1].compareTo(b[1]);
+    });
+
+    List<String> keyList = new ArrayList<>(pairs.size());
+    List<String> nameList = new ArrayList<>(pairs.size());
+    String last = null;
+    for (String[] pair : pairs) {
+      // the same class can be in more than one jar
+      if (!pair[1].equals(last)) {
+        keyList.add(pair[0]);
+        nameList.add(pair[1]);
+        last = pair[1];
+      }
+    }
+    keys = keyList.toArray(new String[0]);
+    names = nameList.toArray(new String[0]);
+    Messages.log("Indexed " + names.length + " classes in " +
+                 (System.currentTimeMillis() - started) + " ms");
+  }
+
+
+  /**
+   * Get the classes in a folder of class files, or in a jar, from memory or
+   * from the disk cache if it hasn't changed since it was last listed.
+   * Folders are always listed, since adding a class to a subfolder doesn't
+   * change the modification time of the folder itself.
+   */
+  static protected String[] listClasses(File file) {
+    if (!file.exists()) {
+      return new String[0];
+    }
+    if (file.isDirectory()) {
+      return listFolder(file);
+    }
+    String stamp = getStamp(file);
+    String[] outgoing = entries.get(stamp);
+    if (outgoing == null) {
+      File cacheFile = getCacheFile(stamp);
+      if (cacheFile != null && cacheFile.exists()) {
+        // the first line is the stamp of the jar
+        String[] lines = PApplet.loadStrings(cacheFile);
+        if (lines != null && lines.length != 0 && lines[0].equals(stamp)) {
+          outgoing = PApplet.subset(lines, 1);
+        }
+      }
+      if (outgoing == null) {
+        outgoing = listJar(file);
+        if (cacheFile != null) {
+          saveCacheFile(cacheFile, stamp, outgoing);
+        }
+      }
+      entries.put(stamp, outgoing);
+    }
+    return outgoing;
+  }
+
+
+  /**
+   * Write to a temporary file first, so that a file cut short (when the
+   * PDE quits halfway through) is never read as the list of a jar.
+   */
+  static private void saveCacheFile(File cacheFile, String stamp, String[] classes) {
+    File folder = cacheFile.getParentFile();
+    folder.mkdirs();
+    String[] lines = PApplet.splice(classes, stamp, 0);
+    File temp = new File(folder, cacheFile.getName() + "." + System.nanoTime() + ".tmp");
+    PApplet.saveStrings(temp, lines);
+    try {
+      Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      temp.delete();
+    }
+  }
+
+
+  /**
+   * Remove the files for jars that have changed or been removed since they
+   * were listed, and any temporary files left behind.
+   */
+  static private void pruneCache() {
+    File folder = new File(Base.getSettingsFolder(), "class-index");
+    File[] files = folder.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.getName().endsWith(".tmp")) {
+        file.delete();
+
+      } else if (file.getName().endsWith(".txt")) {
+        String stamp = null;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+          stamp = reader.readLine();
+        } catch (IOException e) {
+          // removed below
+        }
+        if (stamp == null || !isCurrent(stamp)) {
+          file.delete();
+        }
+      }
+    }
+  }
+
+
+  static private boolean isCurrent(String stamp) {
+    // the path itself may contain commas
+    int modified = stamp.lastIndexOf(',');
+    int length = (modified == -1) ? -1 : stamp.lastIndexOf(',', modified - 1);
+    if (length == -1) {
+      return false;
+    }
+    File jar = new File(stamp.substring(0, length));
+    return jar.isFile() && stamp.equals(getStamp(jar));
+  }
+
+
+  static private String getStamp(File jar) {
+    return jar.getAbsolutePath() + "," + jar.length() + "," + jar.lastModified();
+  }
+
+
+  static private String[] listJar(File file) {
+    List<String> outgoing = new ArrayList<>();
+    try (ZipFile zip = new ZipFile(file)) {
+      Enumeration<? extends ZipEntry> en = zip.entries();
+      while (en.hasMoreElements()) {
+        String name = en.nextElement().getName();
+        if (name.endsWith(".class") && !name.startsWith("META-INF/") &&
+            !name.endsWith("module-info.class")) {
+          outgoing.add(name.substring(0, name.length() - 6));
+        }
+      }
+    } catch (IOException e) {
+      Messages.loge("Could not list the classes in " + file, e);
+    }
+    return outgoing.toArray(new String[0]);
+  }
+
+
+  static private String[] listFolder(File folder) {
+    String[] list = Util.listFiles(folder, true, ".class");
+    for (int i = 0; i < list.length; i++) {
+      String name = list[i].replace(File.separatorChar, '/');
+      list[i] = name.substring(0, name.length() - 6);
+    }
+    return list;
+  }
+
+
+  static private File getCacheFile(String stamp) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      byte[] hash = digest.digest(stamp.getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : hash) {
+        sb.append(PApplet.hex(b));
+      }
+      File folder = new File(Base.getSettingsFolder(), "class-index");
+      return new File(folder, sb.toString().toLowerCase(Locale.ROOT) + ".txt");
+
+    } catch (NoSuchAlgorithmException e) {
+      return null;
+    }
+  }
+}
@@ -1875,11 +1875,17 @@ public class CompletionGenerator {
       log("Empty can. " + phrase);
       ClassPath classPath = ps.classPath;
       if (classPath != null) {
-        RegExpResourceFilter regExpResourceFilter =
-            new RegExpResourceFilter(Pattern.compile(".*"),
-                                     Pattern.compile(phrase + "[a-zA-Z_0-9]*.class",
-                                                     Pattern.CASE_INSENSITIVE));
-        String[] resources = classPath.findResources("", regExpResourceFilter);
+        String[] resources;
+        if (ps.classNameIndex != null && ps.classNameIndex.isReady()) {
+          resources = ps.classNameIndex.startingWith(phrase);
+        } else {
+          // still being indexed, search through the class path
+          RegExpResourceFilter regExpResourceFilter =
+              new RegExpResourceFilter(Pattern.compile(".*"),
+                                       Pattern.compile(phrase + "[a-zA-Z_0-9]*.class",
+                                                       Pattern.CASE_INSENSITIVE));
+          resources = classPath.findResources("", regExpResourceFilter);
+        }
 
         for (String matchedClass2 : resources) {
           matchedClass2 = matchedClass2.replace('/', '.'); //package name
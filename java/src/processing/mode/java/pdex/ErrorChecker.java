@@ -119,10 +119,16 @@ class ErrorChecker {
 
             // Handle import suggestions
             if (p != null && JavaMode.importSuggestEnabled && isUndefinedTypeProblem(iproblem)) {
-              ClassPath cp = searchClassPath.updateAndGet(prev -> prev != null ?
-                  prev : new ClassPathFactory().createFromPaths(ps.searchClassPathArray));
-              String[] s = suggCache.computeIfAbsent(iproblem.getArguments()[0],
-                                                     name -> getImportSuggestions(cp, name));
+              String[] s;
+              if (ps.searchClassNameIndex != null && ps.searchClassNameIndex.isReady()) {
+                s = suggCache.computeIfAbsent(iproblem.getArguments()[0],
+                                              name -> getImportSuggestions(ps.searchClassNameIndex, name));
+              } else {
+                ClassPath cp = searchClassPath.updateAndGet(prev -> prev != null ?
+                    prev : new ClassPathFactory().createFromPaths(ps.searchClassPathArray));
+                s = suggCache.computeIfAbsent(iproblem.getArguments()[0],
+                                              name -> getImportSuggestions(cp, name));
+              }
               p.setImportSuggestions(s);
             }
 
@@ -304,6 +310,16 @@ class ErrorChecker {
                         Pattern.CASE_INSENSITIVE));
 
     String[] resources = cp.findResources("", regf);
+    return sortImportSuggestions(resources);
+  }
+
+
+  static public String[] getImportSuggestions(ClassNameIndex index, String className) {
+    return sortImportSuggestions(index.named(className));
+  }
+
+
+  static private String[] sortImportSuggestions(String[] resources) {
     return Arrays.stream(resources)
         // remove ".class" suffix
         .map(res -> res.substring(0, res.length() - 6))
@@ -28,6 +28,9 @@ public class PreprocessedSketch {
 
   public final String[] searchClassPathArray;
 
+  public final ClassNameIndex classNameIndex;
+  public final ClassNameIndex searchClassNameIndex;
+
   public final int[] tabStartOffsets;
 
   public final String scrubbedPdeCode;
@@ -221,6 +224,9 @@ public class PreprocessedSketch {
 
     public String[] searchClassPathArray;
 
+    public ClassNameIndex classNameIndex;
+    public ClassNameIndex searchClassNameIndex;
+
     public int[] tabStartOffsets = new int[0];
 
     public String scrubbedPdeCode;
@@ -256,6 +262,9 @@ public class PreprocessedSketch {
 
     searchClassPathArray = b.searchClassPathArray;
 
+    classNameIndex = b.classNameIndex;
+    searchClassNameIndex = b.searchClassNameIndex;
+
     tabStartOffsets = b.tabStartOffsets;
 
     scrubbedPdeCode = b.scrubbedPdeCode;
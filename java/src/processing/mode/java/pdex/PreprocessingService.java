@@ -64,6 +64,7 @@ import processing.data.IntList;
 import processing.data.StringList;
 import processing.mode.java.JavaEditor;
 import processing.mode.java.JavaMode;
+import processing.mode.java.pdex.TextTransform.Edit;
 import processing.mode.java.pdex.TextTransform.OffsetMapper;
 import processing.mode.java.preproc.PdePreprocessor;
 import processing.mode.java.preproc.PdePreprocessor.Mode;
@@ -258,6 +259,8 @@ public class PreprocessingService {
 
     boolean firstCheck = prevResult == null;
 
+    long started = System.nanoTime();
+
     PreprocessedSketch.Builder result = new PreprocessedSketch.Builder();
 
     List<ImportStatement> codeFolderImports = result.codeFolderImports;
@@ -271,18 +274,22 @@ public class PreprocessingService {
 
     // Combine code into one buffer
     IntList tabStartsList = new IntList();
+    List<String> tabs = new ArrayList<>();
     for (SketchCode sc : sketch.getCode()) {
       if (sc.isExtension("pde")) {
         tabStartsList.append(workBuffer.length());
+        String program = "";
         if (sc.getDocument() != null) {
           try {
-            workBuffer.append(sc.getDocumentText());
+            program = sc.getDocumentText();
           } catch (BadLocationException e) {
             e.printStackTrace();
           }
         } else {
-          workBuffer.append(sc.getProgram());
+          program = sc.getProgram();
         }
+        tabs.add(program + '\n');
+        workBuffer.append(program);
         workBuffer.append('\n');
       }
     }
@@ -294,6 +301,17 @@ public class PreprocessingService {
     boolean reloadCodeFolder = firstCheck || codeFolderChanged.getAndSet(false);
     boolean reloadLibraries = firstCheck || librariesChanged.getAndSet(false);
 
+    // Nothing has changed since the last time (a tab was only selected,
+    // or the edits were undone), so the last result is still good
+    if (!reloadCodeFolder && !reloadLibraries &&
+        className.equals(prevClassName) &&
+        pdeStage.equals(prevResult.pdeCode) &&
+        Arrays.equals(result.tabStartOffsets, prevResult.tabStartOffsets)) {
+      Messages.log("PPS: Unchanged");
+      return prevResult;
+    }
+    prevClassName = className;
+
     // Core and default imports
     if (coreAndDefaultImports == null) {
       PdePreprocessor p = editor.createPreprocessor(null);
@@ -310,7 +328,50 @@ public class PreprocessingService {
 
     // TODO: convert unicode escapes to chars
 
-    SourceUtils.scrubCommentsAndStrings(workBuffer);
+    // Scrub comments and strings, and find the imports and the code that
+    // needs to be replaced, tab by tab. Only the tabs that have changed
+    // since the last time are done again.
+    List<Edit> importEdits = new ArrayList<>();
+    List<Edit> typeConstructorEdits = new ArrayList<>();
+    List<Edit> hexLiteralEdits = new ArrayList<>();
+    Map<String, TabResult> tabResults = new HashMap<>();
+    StringBuilder scrubbed = new StringBuilder(workBuffer.length());
+    boolean separable = true;
+    for (int i = 0; i < tabs.size(); i++) {
+      String tab = tabs.get(i);
+      int tabStart = result.tabStartOffsets[i];
+      TabResult tabResult = tabResults.get(tab);  // the same code twice
+      if (tabResult == null) {
+        tabResult = tabCache.get(tab);
+        if (tabResult == null) {
+          tabResult = new TabResult(tab);
+        }
+        tabResults.put(tab, tabResult);
+      }
+      // A block comment left open continues into the next tab
+      if (tabResult.openComment && i != tabs.size() - 1) {
+        separable = false;
+      }
+      scrubbed.append(tabResult.scrubbed);
+      importEdits.addAll(tabResult.getImportEdits(tabStart, programImports));
+      for (Edit edit : tabResult.typeConstructorEdits) {
+        typeConstructorEdits.add(edit.shift(tabStart));
+      }
+      for (Edit edit : tabResult.hexLiteralEdits) {
+        hexLiteralEdits.add(edit.shift(tabStart));
+      }
+    }
+    tabCache = tabResults;
+
+    if (separable) {
+      workBuffer = scrubbed;
+    } else {
+      programImports.clear();
+      SourceUtils.scrubCommentsAndStrings(workBuffer);
+      importEdits = SourceUtils.parseProgramImports(workBuffer, programImports);
+      typeConstructorEdits = SourceUtils.replaceTypeConstructors(workBuffer);
+      hexLiteralEdits = SourceUtils.replaceHexLiterals(workBuffer);
+    }
 
     result.scrubbedPdeCode = workBuffer.toString();
 
@@ -320,11 +381,13 @@ public class PreprocessingService {
     TextTransform toParsable = new TextTransform(pdeStage);
     toParsable.addAll(SourceUtils.insertImports(coreAndDefaultImports));
     toParsable.addAll(SourceUtils.insertImports(codeFolderImports));
-    toParsable.addAll(SourceUtils.parseProgramImports(workBuffer, programImports));
-    toParsable.addAll(SourceUtils.replaceTypeConstructors(workBuffer));
-    toParsable.addAll(SourceUtils.replaceHexLiterals(workBuffer));
+    toParsable.addAll(importEdits);
+    toParsable.addAll(typeConstructorEdits);
+    toParsable.addAll(hexLiteralEdits);
     toParsable.addAll(SourceUtils.wrapSketch(sketchMode, className, workBuffer.length()));
 
+    long scrubTime = System.nanoTime();
+
     { // Refresh sketch classloader and classpath if imports changed
       if (javaRuntimeClassPath == null) {
         javaRuntimeClassPath = buildJavaRuntimeClassPath();
@@ -376,6 +439,7 @@ public class PreprocessingService {
           result.classLoader = new URLClassLoader(urlArray, null);
           result.classPath = classPathFactory.createFromPaths(classPathArray);
           result.classPathArray = classPathArray;
+          result.classNameIndex = new ClassNameIndex(classPathArray);
         }
 
         { // Search class path
@@ -387,15 +451,20 @@ public class PreprocessingService {
           searchClassPath.addAll(codeFolderClassPath);
 
           result.searchClassPathArray = searchClassPath.stream().toArray(String[]::new);
+          result.searchClassNameIndex = new ClassNameIndex(result.searchClassPathArray);
         }
       } else {
         result.classLoader = prevResult.classLoader;
         result.classPath = prevResult.classPath;
         result.searchClassPathArray = prevResult.searchClassPathArray;
         result.classPathArray = prevResult.classPathArray;
+        result.classNameIndex = prevResult.classNameIndex;
+        result.searchClassNameIndex = prevResult.searchClassNameIndex;
       }
     }
 
+    long classPathTime = System.nanoTime();
+
     // Transform code to parsable state
     String parsableStage = toParsable.apply();
     OffsetMapper parsableMapper = toParsable.getMapper();
@@ -413,10 +482,14 @@ public class PreprocessingService {
     OffsetMapper compilableMapper = toCompilable.getMapper();
     char[] compilableStageChars = compilableStage.toCharArray();
 
+    long transformTime = System.nanoTime();
+
     // Create compilable AST to get syntax problems
     CompilationUnit compilableCU =
         makeAST(parser, compilableStageChars, COMPILER_OPTIONS);
 
+    long parseTime = System.nanoTime();
+
     // Get syntax problems from compilable AST
     result.hasSyntaxErrors |= Arrays.stream(compilableCU.getProblems())
         .anyMatch(IProblem::isError);
@@ -432,6 +505,17 @@ public class PreprocessingService {
     result.hasCompilationErrors = bindingsProblems.stream()
         .anyMatch(IProblem::isError);
 
+    long bindingsTime = System.nanoTime();
+    Messages.log(String.format("PPS: Preprocessed in %.1f ms: " +
+                               "scrub %.1f, class path %.1f, transform %.1f, " +
+                               "parse %.1f, bindings %.1f",
+                               (bindingsTime - started) / 1e6,
+                               (scrubTime - started) / 1e6,
+                               (classPathTime - scrubTime) / 1e6,
+                               (transformTime - classPathTime) / 1e6,
+                               (parseTime - transformTime) / 1e6,
+                               (bindingsTime - parseTime) / 1e6));
+
     // Update builder
     result.offsetMapper = parsableMapper.thenMapping(compilableMapper);
     result.javaCode = compilableStage;
@@ -442,6 +526,58 @@ public class PreprocessingService {
   }
 
 
+  /// TABS --------------------------------------------------------------------
+
+  private String prevClassName;
+
+  // Code of each tab (with the newline added after it) -> its results
+  private Map<String, TabResult> tabCache = new HashMap<>();
+
+
+  /**
+   * What's found in the code of a tab on its own. Offsets are relative to
+   * the start of the tab.
+   */
+  private static class TabResult {
+    final String scrubbed;
+    final boolean openComment;
+
+    final List<Edit> typeConstructorEdits;
+    final List<Edit> hexLiteralEdits;
+
+    // Imports, and where they were for the last tab with this code
+    final List<ImportStatement> imports = new ArrayList<>();
+    List<Edit> importEdits;
+    int importOffset;
+
+
+    TabResult(String code) {
+      StringBuilder sb = new StringBuilder(code);
+      openComment = SourceUtils.scrubCommentsAndStringsPart(sb);
+      scrubbed = sb.toString();
+      typeConstructorEdits = SourceUtils.replaceTypeConstructors(sb);
+      hexLiteralEdits = SourceUtils.replaceHexLiterals(sb);
+      importEdits = SourceUtils.parseProgramImports(sb, 0, imports);
+    }
+
+
+    /**
+     * Edits that move the imports of this tab to the top of the program.
+     * They're found again if the tab has moved, since they can't be shifted.
+     */
+    List<Edit> getImportEdits(int offset, List<ImportStatement> outImports) {
+      if (offset != importOffset) {
+        imports.clear();
+        importEdits = SourceUtils.parseProgramImports(scrubbed, offset, imports);
+        importOffset = offset;
+      }
+      outImports.addAll(imports);
+      return importEdits;
+    }
+  }
+
+
+
   /// IMPORTS -----------------------------------------------------------------
 
   private List<ImportStatement> coreAndDefaultImports;
@@ -38,13 +38,22 @@ public class SourceUtils {
 
   public static List<Edit> parseProgramImports(CharSequence source,
                                                List<ImportStatement> outImports) {
+    return parseProgramImports(source, 0, outImports);
+  }
+
+  /**
+   * @param offset where the source starts in the whole program, when it's
+   *               only a part of it (such as a tab)
+   */
+  public static List<Edit> parseProgramImports(CharSequence source, int offset,
+                                               List<ImportStatement> outImports) {
     List<Edit> result = new ArrayList<>();
     Matcher matcher = IMPORT_REGEX.matcher(source);
     while (matcher.find()) {
       ImportStatement is = ImportStatement.parse(matcher.toMatchResult());
       outImports.add(is);
-      int idx = matcher.start(1);
-      int len = matcher.end(1) - idx;
+      int idx = offset + matcher.start(1);
+      int len = matcher.end(1) - matcher.start(1);
       // Remove the import from the main program
       // Substitute with white spaces
       result.add(Edit.move(idx, len, 0));
@@ -249,6 +258,17 @@ public class SourceUtils {
   }
 
   static public void scrubCommentsAndStrings(StringBuilder p) {
+    scrubCommentsAndStringsPart(p);
+  }
+
+
+  /**
+   * Scrub a piece of code that may be followed by more, such as a tab.
+   * @return true if it ends inside a block comment, in which case the code
+   *         that follows would be scrubbed differently if both were
+   *         scrubbed together
+   */
+  static public boolean scrubCommentsAndStringsPart(StringBuilder p) {
 
     final int length = p.length();
 
@@ -262,6 +282,7 @@ public class SourceUtils {
 
     int prevState = OUT;
     int state = OUT;
+    boolean open = false;
 
     for (int i = 0; i <= length; i++) {
       char ch = (i < length) ? p.charAt(i) : 0;
@@ -307,6 +328,7 @@ public class SourceUtils {
 
       // Terminate ongoing block at last char
       if (i == length) {
+        open = (state == IN_BLOCK_COMMENT);
         state = OUT;
       }
 
@@ -329,6 +351,7 @@ public class SourceUtils {
       prevState = state;
     }
 
+    return open;
   }
 
 
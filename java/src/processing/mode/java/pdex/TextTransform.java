@@ -180,6 +180,15 @@ public class TextTransform {
       return new Edit(position, length, position, 0, null);
     }
 
+    /**
+     * Same edit for the input moved by delta. Only for edits that don't
+     * move text elsewhere (insert, replace, delete).
+     */
+    Edit shift(int delta) {
+      return new Edit(fromOffset + delta, fromLength,
+                      toOffset + delta, toLength, outputText);
+    }
+
     Edit(Edit edit) {
       this.fromOffset = edit.fromOffset;
       this.fromLength = edit.fromLength;
@@ -600,10 +600,14 @@ public class PdePreprocessor {
     //final String right = "\\s*\\(([^\\)]+)\\)\\s*;";
     final String right = "\\s*\\(([^\\)]*)\\)\\s*;";
     String regexp = left + methodName + right;
-    Pattern p = matchPatterns.get(regexp);
-    if (p == null) {
-      p = Pattern.compile(regexp, Pattern.MULTILINE | Pattern.DOTALL);
-      matchPatterns.put(regexp, p);
+    Pattern p;
+    // shared by builds running in parallel, and get() reorders the entries
+    synchronized (matchPatterns) {
+      p = matchPatterns.get(regexp);
+      if (p == null) {
+        p = Pattern.compile(regexp, Pattern.MULTILINE | Pattern.DOTALL);
+        matchPatterns.put(regexp, p);
+      }
     }
     MatchResult match = findInCurrentScope(p, searchArea);
     if (match != null) {
@@ -0,0 +1,260 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License version 2
+  as published by the Free Software Foundation.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software Foundation,
+  Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package processing.mode.java.runner;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import processing.core.PApplet;
+
+
+/**
+ * Results of a {@link Profiler}: the stacks that were sampled, and the
+ * instance counts. Stacks are kept in the "collapsed" format used by flame
+ * graph tools, one line per distinct stack with its frames from the
+ * outermost to the innermost, separated by semicolons, and the number of
+ * times it was sampled.
+ */
+public class Profile {
+  protected final Map<String, Integer> stacks;
+  protected final int samples;
+  protected final int idleSamples;
+  protected final long time;
+  protected final List<Instances> instances;
+
+
+  /** Time spent in a method, or on a line of the sketch. */
+  static public class Entry {
+    public final String name;
+    /**
+     * Tab and line, like "Sketch.pde:12" (only the tab for methods), or
+     * null if it's not in the sketch.
+     */
+    public final String location;
+    /** samples with this on top of the stack */
+    public int self;
+    /** samples with this anywhere on the stack */
+    public int total;
+
+    Entry(String name, String location) {
+      this.name = name;
+      this.location = location;
+    }
+  }
+
+
+  /** Live instances of a class. */
+  static public class Instances {
+    public final String className;
+    public final long count;
+    /** change in the number of live instances per second */
+    public final double rate;
+
+    Instances(String className, long count, double rate) {
+      this.className = className;
+      this.count = count;
+      this.rate = rate;
+    }
+  }
+
+
+  Profile(Map<String, Integer> stacks, int samples, int idleSamples,
+          long time, List<Instances> instances) {
+    this.stacks = stacks;
+    this.samples = samples;
+    this.idleSamples = idleSamples;
+    this.time = time;
+    this.instances = instances;
+  }
+
+
+  /** Collapsed stacks and the number of samples of each. */
+  public Map<String, Integer> getStacks() {
+    return stacks;
+  }
+
+
+  /** Number of samples, including idle ones. */
+  public int getSamples() {
+    return samples;
+  }
+
+
+  /** Samples where the sketch was sleeping or waiting (not in the stacks). */
+  public int getIdleSamples() {
+    return idleSamples;
+  }
+
+
+  /** Milliseconds the profiler ran. */
+  public long getTime() {
+    return time;
+  }
+
+
+  /** Estimated milliseconds spent in a number of samples. */
+  public double toMillis(int count) {
+    return (samples == 0) ? 0 : (double) time * count / samples;
+  }
+
+
+  public List<Instances> getInstances() {
+    return instances;
+  }
+
+
+  /**
+   * Whether a frame is in the sketch's own code, i.e. it has a location.
+   */
+  static public boolean isSketchFrame(String frame) {
+    return frame.endsWith(")") && frame.lastIndexOf(" (") != -1;
+  }
+
+
+  /** Time per method, most time first. */
+  public List<Entry> getMethods() {
+    return getEntries(false);
+  }
+
+
+  /** Time per line of sketch code, most time first. */
+  public List<Entry> getLines() {
+    return getEntries(true);
+  }
+
+
+  protected List<Entry> getEntries(boolean lines) {
+    Map<String, Entry> entries = new HashMap<>();
+    for (Map.Entry<String, Integer> stack : stacks.entrySet()) {
+      String[] frames = PApplet.split(stack.getKey(), ';');
+      int count = stack.getValue();
+      // recursive calls only count once toward the total
+      Set<Entry> seen = new HashSet<>();
+      for (int i = 0; i < frames.length; i++) {
+        String frame = frames[i];
+        String name = frame;
+        String location = null;
+        if (isSketchFrame(frame)) {
+          int paren = frame.lastIndexOf(" (");
+          name = frame.substring(0, paren);
+          location = frame.substring(paren + 2, frame.length() - 1);
+        } else if (lines) {
+          continue;
+        }
+        String key = lines ? location : name;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+          if (!lines && location != null) {
+            // only the tab, since the lines are listed separately
+            location = location.substring(0, location.lastIndexOf(':'));
+          }
+          entry = new Entry(name, location);
+          entries.put(key, entry);
+        }
+        if (seen.add(entry)) {
+          entry.total += count;
+        }
+        if (i == frames.length - 1) {
+          entry.self += count;
+        }
+      }
+    }
+    List<Entry> outgoing = new ArrayList<>(entries.values());
+    outgoing.sort((a, b) -> (a.total != b.total) ?
+                  Integer.compare(b.total, a.total) :
+                  Integer.compare(b.self, a.self));
+    return outgoing;
+  }
+
+
+  /**
+   * Write the stacks in the collapsed format, which can be turned into a
+   * flame graph by tools like flamegraph.pl or speedscope.
+   */
+  public void writeCollapsed(File file) {
+    List<String> lines = new ArrayList<>();
+    for (Map.Entry<String, Integer> stack : stacks.entrySet()) {
+      lines.add(stack.getKey() + " " + stack.getValue());
+    }
+    Collections.sort(lines);
+    PrintWriter writer = PApplet.createWriter(file);
+    for (String line : lines) {
+      writer.println(line);
+    }
+    writer.flush();
+    writer.close();
+  }
+
+
+  /**
+   * Summary of the profile as text: the methods and sketch lines that took
+   * the most time, and the instance counts.
+   * @param max number of methods and lines to list
+   */
+  public String format(int max) {
+    StringBuilder sb = new StringBuilder();
+    int busy = samples - idleSamples;
+    sb.append(String.format("%d samples in %.1f s, %.0f%% sleeping or waiting%n",
+                            samples, time / 1000.0,
+                            (samples == 0) ? 0 : 100.0 * idleSamples / samples));
+    if (busy == 0) {
+      return sb.toString();
+    }
+
+    sb.append(String.format("%n%7s %7s  %s%n", "Total", "Self", "Method"));
+    List<Entry> methods = getMethods();
+    for (int i = 0; i < Math.min(max, methods.size()); i++) {
+      Entry entry = methods.get(i);
+      sb.append(String.format("%6.1f%% %6.1f%%  %s%s%n",
+                              100.0 * entry.total / busy,
+                              100.0 * entry.self / busy, entry.name,
+                              (entry.location != null) ? " (" + entry.location + ")" : ""));
+    }
+
+    List<Entry> lines = getLines();
+    if (!lines.isEmpty()) {
+      sb.append(String.format("%n%7s %7s  %s%n", "Total", "Self", "Line"));
+      for (int i = 0; i < Math.min(max, lines.size()); i++) {
+        Entry entry = lines.get(i);
+        sb.append(String.format("%6.1f%% %6.1f%%  %s in %s%n",
+                                100.0 * entry.total / busy,
+                                100.0 * entry.self / busy,
+                                entry.location, entry.name));
+      }
+    }
+
+    if (!instances.isEmpty()) {
+      sb.append(String.format("%n%12s %10s  %s%n", "Instances", "Per second", "Class"));
+      for (Instances in : instances) {
+        sb.append(String.format("%12d %+10.1f  %s%n", in.count, in.rate, in.className));
+      }
+    }
+    return sb.toString();
+  }
+}
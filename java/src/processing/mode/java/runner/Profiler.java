@@ -0,0 +1,385 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License version 2
+  as published by the Free Software Foundation.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software Foundation,
+  Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package processing.mode.java.runner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.jdi.AbsentInformationException;
+import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.Location;
+import com.sun.jdi.ObjectCollectedException;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VMDisconnectedException;
+import com.sun.jdi.VirtualMachine;
+
+import processing.app.Messages;
+import processing.app.Preferences;
+import processing.app.Sketch;
+import processing.app.SketchCode;
+import processing.app.SketchException;
+import processing.mode.java.JavaBuild;
+
+
+/**
+ * Samples the stacks of a running sketch through the debugger interface,
+ * to find out where it spends its time. Every few milliseconds
+ * (run.profile.interval), the threads that run sketch code (the animation
+ * thread, and any others with the sketch's code on their stack) are
+ * suspended just long enough to read their stacks.
+ * <p>
+ * Frames in the sketch's own code are labeled with their tab and line.
+ * The debugger interface can't see allocations, so instead the number of
+ * live instances of the sketch's classes (and a few common ones) is read
+ * about once a second, which shows what's piling up.
+ */
+public class Profiler {
+  // Look for new sketch threads, and count instances, this often
+  static final int REFRESH_TIME = 1000;
+
+  // Classes that most sketches create lots of, besides their own
+  static final String[] COMMON_CLASSES = {
+    "processing.core.PVector",
+    "processing.core.PImage",
+    "processing.core.PShape",
+    "processing.core.PFont",
+    "java.lang.String",
+    "float[]",
+    "int[]"
+  };
+
+  protected final JavaBuild build;
+  protected final int interval;
+
+  protected VirtualMachine vm;
+  protected Thread thread;
+  protected volatile boolean running;
+  protected volatile boolean finished;
+
+  protected List<ThreadReference> threads = new ArrayList<>();
+
+  // "type.method:line" -> label for the frame, locations don't move
+  protected final Map<String, String> labels = new HashMap<>();
+
+  // Everything below is guarded by this
+
+  // collapsed stack ("outer;inner;innermost") -> number of samples
+  protected final Map<String, Integer> stacks = new HashMap<>();
+  protected int samples;
+  protected int idleSamples;
+  protected long started;
+  protected long stopped;
+
+  // class name -> instances at the first and last count
+  protected final Map<String, Long> firstInstances = new LinkedHashMap<>();
+  protected final Map<String, Long> lastInstances = new LinkedHashMap<>();
+  protected long firstCounted;
+  protected long lastCounted;
+
+
+  public Profiler(JavaBuild build) {
+    this.build = build;
+    interval = Math.max(1, Preferences.getInteger("run.profile.interval"));
+  }
+
+
+  /**
+   * Start sampling. Called by the Runner once the sketch is running.
+   */
+  synchronized void start(VirtualMachine vm) {
+    if (running) {
+      return;
+    }
+    this.vm = vm;
+    running = true;
+    started = System.currentTimeMillis();
+    thread = new Thread(this::sampleLoop, "Sketch profiler");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+
+  /**
+   * Stop sampling, called when the sketch quits. The samples so far are
+   * kept, see {@link #getProfile()}.
+   */
+  public void stop() {
+    running = false;
+    Thread sampler = thread;
+    if (sampler != null && sampler != Thread.currentThread()) {
+      try {
+        sampler.join(1000);
+      } catch (InterruptedException e) { }
+    }
+    synchronized (this) {
+      if (stopped == 0 && started != 0) {
+        stopped = System.currentTimeMillis();
+      }
+    }
+  }
+
+
+  public boolean isRunning() {
+    return running;
+  }
+
+
+  /**
+   * Called by the Runner when the sketch has quit, or couldn't be started,
+   * in which case no samples were taken.
+   */
+  void finish() {
+    stop();
+    finished = true;
+  }
+
+
+  /** Whether the sketch is done, so there won't be any more samples. */
+  public boolean isFinished() {
+    return finished;
+  }
+
+
+  /** The results so far. */
+  public synchronized Profile getProfile() {
+    long end = (stopped != 0) ? stopped : System.currentTimeMillis();
+    long time = (started != 0) ? end - started : 0;
+    double seconds = (lastCounted - firstCounted) / 1000.0;
+    List<Profile.Instances> instances = new ArrayList<>();
+    for (Map.Entry<String, Long> entry : lastInstances.entrySet()) {
+      Long first = firstInstances.get(entry.getKey());
+      long count = entry.getValue();
+      double rate = (first != null && seconds > 0) ? (count - first) / seconds : 0;
+      instances.add(new Profile.Instances(entry.getKey(), count, rate));
+    }
+    return new Profile(new HashMap<>(stacks), samples, idleSamples, time, instances);
+  }
+
+
+  protected void sampleLoop() {
+    long nextRefresh = 0;
+    try {
+      while (running) {
+        // Finding threads suspends all of them, and counting instances
+        // walks the heap, so only do it once in a while, even when no sketch
+        // threads were found (with noLoop(), or between frames).
+        long now = System.currentTimeMillis();
+        if (now >= nextRefresh) {
+          refresh();
+          nextRefresh = now + REFRESH_TIME;
+        }
+        if (threads.isEmpty()) {
+          // nothing running sketch code
+          synchronized (this) {
+            samples++;
+            idleSamples++;
+          }
+        }
+        for (ThreadReference thread : threads) {
+          sample(thread);
+        }
+        Thread.sleep(interval);
+      }
+    } catch (VMDisconnectedException e) {
+      // the sketch quit
+    } catch (InterruptedException e) {
+      // stopped
+    } catch (Exception e) {
+      Messages.loge("Profiler stopped", e);
+    }
+    running = false;
+  }
+
+
+  /**
+   * Find the threads that run sketch code, and count instances.
+   */
+  protected void refresh() {
+    List<ThreadReference> found = new ArrayList<>();
+    for (ThreadReference thread : vm.allThreads()) {
+      if (isAnimationThread(thread)) {
+        // found even between frames, when draw() isn't on its stack
+        found.add(thread);
+        continue;
+      }
+      try {
+        thread.suspend();
+        try {
+          for (StackFrame frame : thread.frames()) {
+            Location location = frame.location();
+            if (location.method().name().equals("handleDraw") &&
+                location.declaringType().name().equals("processing.core.PApplet") ||
+                Profile.isSketchFrame(getLabel(location))) {
+              found.add(thread);
+              break;
+            }
+          }
+        } finally {
+          thread.resume();
+        }
+      } catch (IncompatibleThreadStateException | ObjectCollectedException e) {
+        // thread is gone or just starting, try again next time
+      }
+    }
+    threads = found;
+    countInstances();
+  }
+
+
+  /**
+   * Whether a thread calls draw(): the one of the default renderer
+   * (PSurfaceNone.AnimationThread), or the animator of the OpenGL ones.
+   */
+  static protected boolean isAnimationThread(ThreadReference thread) {
+    try {
+      String name = thread.name();
+      return name.equals("Animation Thread") || name.contains("Animator");
+    } catch (ObjectCollectedException e) {
+      return false;
+    }
+  }
+
+
+  protected void countInstances() {
+    if (!vm.canGetInstanceInfo()) {
+      return;
+    }
+    String className = build.getSketchClassName();
+    List<ReferenceType> types = new ArrayList<>();
+    for (ReferenceType type : vm.allClasses()) {
+      String name = type.name();
+      if (name.equals(className) || name.startsWith(className + "$") ||
+          isSketchClass(name)) {
+        types.add(type);
+      }
+    }
+    for (String name : COMMON_CLASSES) {
+      types.addAll(vm.classesByName(name));
+    }
+    long[] counts = vm.instanceCounts(types);
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      for (int i = 0; i < counts.length; i++) {
+        String name = types.get(i).name();
+        if (!firstInstances.containsKey(name)) {
+          // classes loaded later start from when they're first seen
+          firstInstances.put(name, counts[i]);
+        }
+        lastInstances.put(name, counts[i]);
+      }
+      if (firstCounted == 0) {
+        firstCounted = now;
+      }
+      lastCounted = now;
+    }
+  }
+
+
+  /** Whether a class is from one of the .java tabs of the sketch. */
+  protected boolean isSketchClass(String name) {
+    for (SketchCode code : build.getSketch().getCode()) {
+      if (code.isExtension("java")) {
+        String className = code.getPrettyName();
+        if (name.equals(className) || name.startsWith(className + "$")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+
+  protected void sample(ThreadReference thread) {
+    List<StackFrame> frames;
+    boolean idle;
+    try {
+      thread.suspend();
+      try {
+        // sleeping or waiting, usually for the next frame
+        idle = thread.status() != ThreadReference.THREAD_STATUS_RUNNING;
+        frames = idle ? null : thread.frames();
+      } finally {
+        thread.resume();
+      }
+    } catch (IncompatibleThreadStateException | ObjectCollectedException e) {
+      return;
+    }
+
+    if (idle) {
+      synchronized (this) {
+        samples++;
+        idleSamples++;
+      }
+      return;
+    }
+    StringBuilder sb = new StringBuilder();
+    // outermost first, the way flame graphs are written
+    for (int i = frames.size() - 1; i >= 0; --i) {
+      if (sb.length() != 0) {
+        sb.append(';');
+      }
+      sb.append(getLabel(frames.get(i).location()));
+    }
+    String stack = sb.toString();
+    synchronized (this) {
+      samples++;
+      stacks.merge(stack, 1, Integer::sum);
+    }
+  }
+
+
+  /**
+   * Name for a stack frame: "Class.method" for code outside the sketch, or
+   * with the tab and line added, "Sketch.draw (Sketch.pde:12)", for the
+   * sketch's own code.
+   */
+  protected String getLabel(Location location) {
+    String type = location.declaringType().name();
+    String method = location.method().name();
+    int line = location.lineNumber();
+    String key = type + "." + method + ":" + line;
+    String label = labels.get(key);
+    if (label == null) {
+      label = type + "." + method;
+      if (line > 0) {
+        try {
+          SketchException place =
+            build.placeException(null, location.sourceName(), line - 1);
+          if (place != null && place.getCodeLine() >= 0) {
+            Sketch sketch = build.getSketch();
+            label += " (" + sketch.getCode(place.getCodeIndex()).getFileName() +
+              ":" + (place.getCodeLine() + 1) + ")";
+          }
+        } catch (AbsentInformationException e) {
+          // no source, not the sketch's code
+        }
+      }
+      labels.put(key, label);
+    }
+    return label;
+  }
+}
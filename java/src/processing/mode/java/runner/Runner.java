@@ -82,6 +82,16 @@ public class Runner implements MessageConsumer {
   protected volatile boolean cancelled;
   protected final Object cancelLock = new Object[0];
 
+  // Class files of the running sketch, to find what changed in hotSwap()
+  protected Map<String, byte[]> loadedClasses;
+
+  // Sketch to send to a prestarted VM once the exception handler is set up
+  protected RunnerPool.Spare prestarted;
+  protected StringList prestartedParams;
+
+  // Samples the sketch while it runs, if set
+  protected Profiler profiler;
+
 
   public Runner(JavaBuild build, RunnerListener listener) throws SketchException {
     this.listener = listener;
@@ -148,21 +158,40 @@ public class Runner implements MessageConsumer {
 
 
   public VirtualMachine launch(String[] args) {
-    if (launchVirtualMachine(false, args)) {
+    if (launchPrestarted(false, args) || launchVirtualMachine(false, args)) {
       generateTrace();
     }
+    finishProfiler();
     return vm;
   }
 
 
   public VirtualMachine present(String[] args) {
-    if (launchVirtualMachine(true, args)) {
+    if (launchPrestarted(true, args) || launchVirtualMachine(true, args)) {
       generateTrace();
     }
+    finishProfiler();
     return vm;
   }
 
 
+  /**
+   * Sample the sketch with a profiler while it runs. Set before launching.
+   */
+  public void setProfiler(Profiler profiler) {
+    this.profiler = profiler;
+  }
+
+
+  // Also when the sketch didn't start, so that the profiler window knows
+  // that there won't be any samples.
+  protected void finishProfiler() {
+    if (profiler != null) {
+      profiler.finish();
+    }
+  }
+
+
   /**
    * Whether the last invocation of launchJava() was successful or not
    */
@@ -204,7 +233,41 @@ public class Runner implements MessageConsumer {
   }
 
 
+  /**
+   * Run the sketch in the VM kept ready by RunnerPool, if there's one that
+   * can run this sketch.
+   * @return true if the VM was taken, false to launch a new one instead
+   */
+  protected boolean launchPrestarted(boolean present, String[] args) {
+    if (editor == null || !RunnerPool.isEnabled()) {
+      return false;
+    }
+    RunnerPool.Spare spare = RunnerPool.take(build.getJavaLibraryPath());
+    if (spare == null) {
+      return false;
+    }
+    if (Preferences.getBoolean("run.live")) {
+      loadedClasses = readClasses(build.getBinFolder());
+    }
+    synchronized (cancelLock) {
+      if (cancelled) {
+        spare.destroy();
+        return false;
+      }
+      prestarted = spare;
+      prestartedParams = getSketchParams(present, args);
+      process = spare.process;
+      vm = spare.vm;
+    }
+    Messages.log(getClass().getName() + " using a prestarted VM");
+    return true;
+  }
+
+
   public boolean launchVirtualMachine(boolean present, String[] args) {
+    if (Preferences.getBoolean("run.live")) {
+      loadedClasses = readClasses(build.getBinFolder());
+    }
     StringList vmParams = getMachineParams();
     StringList sketchParams = getSketchParams(present, args);
 //    PApplet.printArray(sketchParams);
@@ -300,7 +363,131 @@ public class Runner implements MessageConsumer {
   }
 
 
+  /**
+   * Whether the sketch VM is still up, i.e. it hasn't been closed, and the
+   * sketch hasn't quit or crashed.
+   */
+  public boolean isRunning() {
+    return vm != null && !cancelled && process != null && process.isAlive();
+  }
+
+
+  /**
+   * Replace the classes of the running sketch with those of a new build, so
+   * that changes to the code inside methods (like draw()) show up without
+   * restarting the sketch and losing its state.
+   * <p>
+   * This is only possible when the new build went to the same folder as the
+   * running one (build.incremental) with the same libraries, and when only
+   * the bodies of methods have changed: the VM can't add or remove fields or
+   * methods, or change their signatures, in classes that are already loaded.
+   * Classes that haven't been loaded yet are picked up from the bin folder.
+   *
+   * @return null if the new code is running, or why the sketch has to be
+   *         restarted for the changes to apply
+   */
+  public String hotSwap(JavaBuild newBuild) {
+    if (!isRunning()) {
+      return Language.text("editor.status.live_update.stopped");
+    }
+    if (loadedClasses == null) {
+      // run.live was turned on after the sketch was launched
+      return Language.text("editor.status.live_update.launched");
+    }
+    if (!newBuild.getBinFolder().equals(build.getBinFolder())) {
+      return Language.text("editor.status.live_update.folder");
+    }
+    if (!newBuild.getClassPath().equals(build.getClassPath())) {
+      return Language.text("editor.status.live_update.libraries");
+    }
+    try {
+      if (!vm.canRedefineClasses()) {
+        return Language.text("editor.status.live_update.unsupported");
+      }
+      Map<String, byte[]> classes = readClasses(newBuild.getBinFolder());
+      Map<ReferenceType, byte[]> changed = new HashMap<>();
+      for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+        byte[] previous = loadedClasses.get(entry.getKey());
+        if (previous != null && !Arrays.equals(previous, entry.getValue())) {
+          for (ReferenceType type : vm.classesByName(entry.getKey())) {
+            changed.put(type, entry.getValue());
+          }
+        }
+      }
+      if (!changed.isEmpty()) {
+        vm.redefineClasses(changed);
+      }
+      loadedClasses = classes;
+      build = newBuild;
+      return null;
+
+    } catch (UnsupportedOperationException e) {
+      // fields or methods were added or removed
+      Messages.log(getClass().getName() + " could not redefine classes: " +
+                   e.getMessage());
+      return Language.text("editor.status.live_update.changed");
+
+    } catch (LinkageError e) {
+      // the new class won't load
+      Messages.log(getClass().getName() + " could not redefine classes: " +
+                   e.getMessage());
+      return Language.interpolate("editor.status.live_update.error", e.getMessage());
+
+    } catch (VMDisconnectedException e) {
+      // the sketch quit while the classes were being read
+      return Language.text("editor.status.live_update.stopped");
+    }
+  }
+
+
+  /** Read all the class files in a folder, by fully qualified class name. */
+  static protected Map<String, byte[]> readClasses(File binFolder) {
+    Map<String, byte[]> classes = new HashMap<>();
+    for (String path : Util.listFiles(binFolder, true, ".class")) {
+      String name = path.substring(0, path.length() - ".class".length());
+      byte[] bytes = PApplet.loadBytes(new File(binFolder, path));
+      if (bytes != null) {
+        classes.put(name.replace(File.separatorChar, '.'), bytes);
+      }
+    }
+    return classes;
+  }
+
+
   protected StringList getMachineParams() {
+    StringList params = getCommonMachineParams();
+
+    if (Platform.isMacOS()) {
+      // This successfully sets the application menu name,
+      // but somehow, not the dock name itself.
+      params.append("-Xdock:name=" + build.getSketchClassName());
+      // No longer needed / doesn't seem to do anything differently
+      //params.append("-Dcom.apple.mrj.application.apple.menu.about.name=" +
+      //              build.getSketchClassName());
+    }
+    // sketch.libraryPath might be ""
+    // librariesClassPath will always have sep char prepended
+    params.append("-Djava.library.path=" +
+                  build.getJavaLibraryPath() +
+                  File.pathSeparator +
+                  System.getProperty("java.library.path"));
+
+    params.append("-cp");
+    params.append(build.getClassPath());
+
+    // enable assertions
+    // http://dev.processing.org/bugs/show_bug.cgi?id=1188
+    params.append("-ea");
+    //PApplet.println(PApplet.split(sketch.classPath, ':'));
+
+    return params;
+  }
+
+
+  /**
+   * VM options from Preferences, the ones that don't depend on the sketch.
+   */
+  static protected StringList getCommonMachineParams() {
     StringList params = new StringList();
 
     //params.add("-Xint"); // interpreted mode
@@ -339,30 +526,6 @@ public class Runner implements MessageConsumer {
     } catch (IOException e) {
       e.printStackTrace();
     }
-
-    if (Platform.isMacOS()) {
-      // This successfully sets the application menu name,
-      // but somehow, not the dock name itself.
-      params.append("-Xdock:name=" + build.getSketchClassName());
-      // No longer needed / doesn't seem to do anything differently
-      //params.append("-Dcom.apple.mrj.application.apple.menu.about.name=" +
-      //              build.getSketchClassName());
-    }
-    // sketch.libraryPath might be ""
-    // librariesClassPath will always have sep char prepended
-    params.append("-Djava.library.path=" +
-                  build.getJavaLibraryPath() +
-                  File.pathSeparator +
-                  System.getProperty("java.library.path"));
-
-    params.append("-cp");
-    params.append(build.getClassPath());
-
-    // enable assertions
-    // http://dev.processing.org/bugs/show_bug.cgi?id=1188
-    params.append("-ea");
-    //PApplet.println(PApplet.split(sketch.classPath, ':'));
-
     return params;
   }
 
@@ -577,6 +740,21 @@ public class Runner implements MessageConsumer {
       return;
     }
 
+    if (prestarted != null) {
+      // exceptions will be caught now, so the sketch can be started
+      try {
+        RunnerPool.launch(prestarted, build.getClassPath(), prestartedParams);
+      } catch (IOException e) {
+        sketchErr.println("Could not start the sketch in the prestarted VM.");
+        e.printStackTrace();
+      }
+      prestarted = null;
+    }
+
+    if (profiler != null) {
+      profiler.start(vm);
+    }
+
     Thread eventThread = new Thread() {
       public void run() {
         try {
@@ -626,6 +804,9 @@ public class Runner implements MessageConsumer {
     // Shutdown begins when event thread terminates
     try {
       if (eventThread != null) eventThread.join();  // is this the problem?
+      if (profiler != null) {
+        profiler.stop();
+      }
 
 //      System.out.println("in here");
       // Bug #852 tracked to this next line in the code.
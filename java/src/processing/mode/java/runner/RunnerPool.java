@@ -0,0 +1,271 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License version 2
+  as published by the Free Software Foundation.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software Foundation,
+  Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package processing.mode.java.runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.connect.AttachingConnector;
+import com.sun.jdi.connect.Connector;
+import com.sun.jdi.connect.IllegalConnectorArgumentsException;
+
+import processing.app.Library;
+import processing.app.Messages;
+import processing.app.Platform;
+import processing.app.Preferences;
+import processing.core.PApplet;
+import processing.data.StringList;
+
+
+/**
+ * Keeps a sketch VM started in the background, so that the next Run can
+ * skip starting Java, loading core.jar (and optionally initializing
+ * OpenGL), and attaching the debugger interface. The VM runs
+ * {@link SketchLauncher}, which waits for the sketch to run, and loads it
+ * with a class loader of its own.
+ * <p>
+ * Enabled with the run.prestart preference. Only one VM is kept, since
+ * it's meant for the next Run, and it's replaced as soon as it's taken.
+ * It's not used when the memory or other options for running sketches
+ * changed since it was started.
+ */
+public class RunnerPool {
+  // Start waiting for the VM when it's started, give up after a while
+  static final int ATTACH_TRIES = 200;
+  static final int ATTACH_DELAY = 100;
+
+  static private Spare spare;
+  static private boolean starting;
+  static private boolean hooked;
+
+
+  /** A VM waiting for a sketch. */
+  static class Spare {
+    String key;
+    String libraryPath;
+    Process process;
+    VirtualMachine vm;
+
+    boolean isAlive() {
+      return process.isAlive();
+    }
+
+    void destroy() {
+      try {
+        vm.dispose();
+      } catch (Exception e) { }
+      process.destroy();
+    }
+  }
+
+
+  static public boolean isEnabled() {
+    return Preferences.getBoolean("run.prestart");
+  }
+
+
+  /**
+   * Options for the VM that don't depend on the sketch. A spare VM can
+   * only be used if these haven't changed since it was started.
+   */
+  static String getKey() {
+    return Runner.getCommonMachineParams().join(" ") +
+      (Preferences.getBoolean("run.prestart.opengl") ? " " + SketchLauncher.ARGS_OPENGL : "");
+  }
+
+
+  /**
+   * Take the spare VM to run a sketch in, if there is one ready that was
+   * started with the current options, and that has what the sketch needs
+   * on its library path: the library path of a VM can't be changed once
+   * it's started, so it only works for sketches that don't need native
+   * libraries other than the ones from core.
+   * @param libraryPath java.library.path for the sketch
+   * @return null if there's none
+   */
+  static synchronized Spare take(String libraryPath) {
+    if (spare != null && spare.isAlive() && spare.key.equals(getKey())) {
+      if (needsNatives(libraryPath, spare.libraryPath)) {
+        return null;  // keep it for the next sketch
+      }
+      Spare outgoing = spare;
+      spare = null;
+      return outgoing;
+    }
+    discard();
+    return null;
+  }
+
+
+  static synchronized void discard() {
+    if (spare != null) {
+      spare.destroy();
+      spare = null;
+    }
+  }
+
+
+  /**
+   * Whether a java.library.path has folders with native libraries in them
+   * that aren't on the path of the VM.
+   */
+  static protected boolean needsNatives(String libraryPath, String available) {
+    List<String> availableList =
+      Arrays.asList(PApplet.split(available, File.pathSeparatorChar));
+    for (String entry : PApplet.split(libraryPath, File.pathSeparatorChar)) {
+      if (entry.length() != 0 && !availableList.contains(entry)) {
+        File[] natives = new File(entry).listFiles((dir, name) -> {
+          String lower = name.toLowerCase();
+          return lower.endsWith(".so") || lower.endsWith(".dll") ||
+            lower.endsWith(".dylib") || lower.endsWith(".jnilib");
+        });
+        if (natives != null && natives.length != 0) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Send a sketch to run to a VM taken from the pool.
+   * @param params main class and its arguments
+   */
+  static void launch(Spare spare, String classPath,
+                     StringList params) throws IOException {
+    Writer writer =
+      new OutputStreamWriter(spare.process.getOutputStream(), StandardCharsets.UTF_8);
+    writer.write(classPath + "\n");
+    for (String param : params) {
+      writer.write(param + "\n");
+    }
+    writer.write("\n");
+    writer.flush();
+  }
+
+
+  /**
+   * Start a VM in the background if there isn't one ready already.
+   * @param core the core library, loaded into the VM ahead of the sketch
+   */
+  static synchronized public void prestart(final Library core) {
+    if (starting || (spare != null && spare.isAlive() &&
+                     spare.key.equals(getKey()))) {
+      return;
+    }
+    discard();
+    if (!hooked) {
+      // don't leave a VM behind when the PDE quits
+      Runtime.getRuntime().addShutdownHook(new Thread(RunnerPool::discard));
+      hooked = true;
+    }
+    starting = true;
+    new Thread(() -> {
+      Spare started = null;
+      try {
+        started = start(core);
+      } finally {
+        synchronized (RunnerPool.class) {
+          starting = false;
+          spare = started;
+        }
+      }
+    }, "Sketch VM prestart").start();
+  }
+
+
+  static protected Spare start(Library core) {
+    Spare outgoing = new Spare();
+    outgoing.key = getKey();
+    outgoing.libraryPath = File.pathSeparator + core.getNativePath();
+
+    String classPath = core.getClassPath();
+    try {
+      File launcher = new File(SketchLauncher.class.getProtectionDomain()
+                               .getCodeSource().getLocation().toURI());
+      classPath = launcher.getAbsolutePath() + classPath;
+    } catch (URISyntaxException | SecurityException e) {
+      Messages.loge("Could not find the sketch launcher", e);
+      return null;
+    }
+
+    int port = 8000 + (int) (Math.random() * 1000);
+    StringList command = new StringList();
+    command.append(Platform.getJavaPath());
+    // Not suspended, so that it can load its classes while waiting
+    command.append("-agentlib:jdwp=transport=dt_socket,address=" + port +
+                   ",server=y,suspend=n,quiet=y");
+    command.append(Runner.getCommonMachineParams());
+    command.append("-Djava.library.path=" + outgoing.libraryPath +
+                   File.pathSeparator + System.getProperty("java.library.path"));
+    command.append("-cp");
+    command.append(classPath);
+    command.append("-ea");
+    command.append(SketchLauncher.class.getName());
+    if (Preferences.getBoolean("run.prestart.opengl")) {
+      command.append(SketchLauncher.ARGS_OPENGL);
+    }
+    outgoing.process = PApplet.exec(command.array());
+
+    AttachingConnector connector = null;
+    for (Connector c : org.eclipse.jdi.Bootstrap.virtualMachineManager().allConnectors()) {
+      if (c.name().equals("com.sun.jdi.SocketAttach")) {
+        connector = (AttachingConnector) c;
+      }
+    }
+    if (connector != null) {
+      Map<String, Connector.Argument> arguments = connector.defaultArguments();
+      arguments.get("port").setValue(String.valueOf(port));
+      for (int i = 0; i < ATTACH_TRIES && outgoing.process.isAlive(); i++) {
+        try {
+          outgoing.vm = connector.attach(arguments);
+          if (outgoing.vm != null) {
+            Messages.log("Prestarted sketch VM is ready");
+            return outgoing;
+          }
+        } catch (ConnectException ce) {
+          // not listening yet
+        } catch (IOException | IllegalConnectorArgumentsException e) {
+          Messages.loge("Could not attach to the prestarted VM", e);
+          break;
+        }
+        try {
+          Thread.sleep(ATTACH_DELAY);
+        } catch (InterruptedException ie) {
+          break;
+        }
+      }
+    }
+    outgoing.process.destroy();
+    return null;
+  }
+}
@@ -0,0 +1,109 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-19 The Processing Foundation
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License version 2
+  as published by the Free Software Foundation.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software Foundation,
+  Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package processing.mode.java.runner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Main class of the sketch VMs started ahead of time by {@link RunnerPool}.
+ * Loads the classes that every sketch needs, then waits for the PDE to
+ * send the sketch to run on stdin: a line with its class path, one line
+ * for each of the arguments that would have been passed to java (the main
+ * class, then its arguments), and an empty line.
+ * <p>
+ * This runs in the sketch VM, so it can only use the JDK and core.jar.
+ */
+public class SketchLauncher {
+  static public final String ARGS_OPENGL = "--opengl";
+
+
+  static public void main(String[] args) throws Throwable {
+    // Get the class loading and initialization out of the way
+    Class.forName("processing.core.PApplet");
+    for (String arg : args) {
+      if (arg.equals(ARGS_OPENGL)) {
+        initOpenGL();
+      }
+    }
+
+    BufferedReader reader =
+      new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    String classPath = reader.readLine();
+    if (classPath == null) {
+      return;  // the PDE quit without using this VM
+    }
+    List<String> params = new ArrayList<>();
+    String line;
+    while ((line = reader.readLine()) != null && line.length() != 0) {
+      params.add(line);
+    }
+
+    List<URL> urls = new ArrayList<>();
+    for (String entry : classPath.split(File.pathSeparator)) {
+      if (entry.length() != 0) {
+        urls.add(new File(entry).toURI().toURL());
+      }
+    }
+    // The classes already loaded from core.jar are shared with the sketch,
+    // since the parent is asked first.
+    ClassLoader loader =
+      new URLClassLoader(urls.toArray(new URL[0]),
+                         SketchLauncher.class.getClassLoader());
+    // PApplet.main() loads the sketch (and renderer) classes through this
+    Thread.currentThread().setContextClassLoader(loader);
+
+    Class<?> mainClass = Class.forName(params.get(0), true, loader);
+    Method main = mainClass.getMethod("main", String[].class);
+    String[] mainArgs = params.subList(1, params.size()).toArray(new String[0]);
+    try {
+      main.invoke(null, (Object) mainArgs);
+    } catch (InvocationTargetException e) {
+      // let the PDE see the sketch's exception, not the reflection one
+      throw e.getCause();
+    }
+  }
+
+
+  /**
+   * Load the JOGL natives and probe the OpenGL profiles, which takes a
+   * while the first time. Done through reflection, so that it's skipped
+   * if JOGL is not on the class path.
+   */
+  static protected void initOpenGL() {
+    try {
+      Class<?> profile = Class.forName("com.jogamp.opengl.GLProfile");
+      profile.getMethod("initSingleton").invoke(null);
+    } catch (Throwable t) {
+      // The sketch will report any problem if it uses OpenGL
+    }
+  }
+}